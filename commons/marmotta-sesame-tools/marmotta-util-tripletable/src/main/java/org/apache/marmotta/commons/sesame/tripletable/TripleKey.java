@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.commons.sesame.tripletable;
+
+import org.openrdf.model.Literal;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+
+import java.io.Serializable;
+
+/**
+ * A compact key for indexing triples, consisting of the 32 bit hash codes of the four triple components packed into
+ * two primitive longs in the order of the index (e.g. SPOC or CSPO). Keys compare like the sequence of their signed
+ * hash codes, so range lookups with wildcards can use the createXXXKey/createXXXMaxKey pairs, where unbound
+ * components are represented by Integer.MIN_VALUE resp. Integer.MAX_VALUE.
+ * <p/>
+ * In contrast to IntArray, creating and comparing keys does not allocate any intermediate arrays, buffers or hash
+ * code objects. In addition, spocHash() computes a 64 bit hash of a quadruple without allocating a key at all, for
+ * use in primitive long-keyed maps.
+ */
+public final class TripleKey implements Comparable<TripleKey>, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long high;
+    private final long low;
+
+    private TripleKey(int first, int second, int third, int fourth) {
+        this.high = pack(first, second);
+        this.low  = pack(third, fourth);
+    }
+
+    /**
+     * Pack two ints into a long such that comparing the longs (signed) yields the same order as comparing the
+     * ints in sequence. The sign bit of the second int is flipped so it sorts correctly in the unsigned lower half.
+     */
+    private static long pack(int a, int b) {
+        return ((long) a << 32) | ((b ^ 0x80000000) & 0xFFFFFFFFL);
+    }
+
+    public static TripleKey createSPOCKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(hash(subject, Integer.MIN_VALUE), hash(property, Integer.MIN_VALUE), objectHash(object, Integer.MIN_VALUE), hash(context, Integer.MIN_VALUE));
+    }
+
+    public static TripleKey createSPOCMaxKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(hash(subject, Integer.MAX_VALUE), hash(property, Integer.MAX_VALUE), objectHash(object, Integer.MAX_VALUE), hash(context, Integer.MAX_VALUE));
+    }
+
+    public static TripleKey createPOSCKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(hash(property, Integer.MIN_VALUE), objectHash(object, Integer.MIN_VALUE), hash(subject, Integer.MIN_VALUE), hash(context, Integer.MIN_VALUE));
+    }
+
+    public static TripleKey createPOSCMaxKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(hash(property, Integer.MAX_VALUE), objectHash(object, Integer.MAX_VALUE), hash(subject, Integer.MAX_VALUE), hash(context, Integer.MAX_VALUE));
+    }
+
+    public static TripleKey createOSPCKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(objectHash(object, Integer.MIN_VALUE), hash(subject, Integer.MIN_VALUE), hash(property, Integer.MIN_VALUE), hash(context, Integer.MIN_VALUE));
+    }
+
+    public static TripleKey createOSPCMaxKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(objectHash(object, Integer.MAX_VALUE), hash(subject, Integer.MAX_VALUE), hash(property, Integer.MAX_VALUE), hash(context, Integer.MAX_VALUE));
+    }
+
+    public static TripleKey createCSPOKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(hash(context, Integer.MIN_VALUE), hash(subject, Integer.MIN_VALUE), hash(property, Integer.MIN_VALUE), objectHash(object, Integer.MIN_VALUE));
+    }
+
+    public static TripleKey createCSPOMaxKey(Resource subject, URI property, Value object, Resource context) {
+        return new TripleKey(hash(context, Integer.MAX_VALUE), hash(subject, Integer.MAX_VALUE), hash(property, Integer.MAX_VALUE), objectHash(object, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Compute a 64 bit hash of the quadruple given as argument, e.g. for registering triples in a map with
+     * primitive long keys. The hash is deterministic across JVMs, so it can also be used for shared registries.
+     */
+    public static long spocHash(Resource subject, URI property, Value object, Resource context) {
+        long h = pack(hash(subject, Integer.MIN_VALUE), hash(property, Integer.MIN_VALUE));
+        h = mix(h) * 31 + pack(objectHash(object, Integer.MIN_VALUE), hash(context, Integer.MIN_VALUE));
+        return mix(h);
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3, spreading the bits of the argument over the whole long.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int hash(Value value, int wildcard) {
+        return value != null ? value.hashCode() : wildcard;
+    }
+
+    private static int objectHash(Value value, int wildcard) {
+        if(value == null) {
+            return wildcard;
+        } else if(value instanceof Literal) {
+            int i = value.stringValue().hashCode();
+            if(((Literal) value).getLanguage() != null) {
+                i = i*31 + ((Literal) value).getLanguage().hashCode();
+            } else {
+                i = i*31;
+            }
+            if(((Literal) value).getDatatype() != null) {
+                i = i*31 + ((Literal) value).getDatatype().hashCode();
+            } else {
+                i = i*31;
+            }
+            return i;
+        } else {
+            return value.hashCode();
+        }
+    }
+
+    @Override
+    public int compareTo(TripleKey o) {
+        if(high != o.high) {
+            return high < o.high ? -1 : 1;
+        } else if(low != o.low) {
+            return low < o.low ? -1 : 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        TripleKey that = (TripleKey) o;
+
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (mix(high * 31 + low));
+    }
+
+    @Override
+    public String toString() {
+        return "TripleKey{" +
+                "high=" + Long.toHexString(high) +
+                ", low=" + Long.toHexString(low) +
+                '}';
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.apache.marmotta.commons.sesame.tripletable;
 
+import com.google.common.base.Equivalence;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import org.apache.marmotta.commons.sesame.model.StatementCommons;
@@ -27,44 +28,84 @@ import org.openrdf.model.Value;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * A triple table that allows efficient in-memory operations over large collections of triples. This can be used as
  * a simplified version of a Sesame in-memory repository (MemStore) using typical collection methods.
  * <p/>
+ * The triple table is thread-safe: triples are kept in a concurrent hash map and indexed in concurrent skip lists
+ * in SPOC, POSC, OSPC and CSPO order, so that lookups with any combination of bound subject, predicate, object or
+ * context are range scans. Reads do not lock; adding and removing a triple updates the map and the indexes under a
+ * lock striped by the triple, so concurrent modifications of the same triple cannot leave the indexes and the map
+ * inconsistent. Like the concurrent collections it is built on, iterators and query results are weakly consistent
+ * and reflect concurrent modifications only partially.
+ * <p/>
  * Author: Sebastian Schaffert
  */
 public class TripleTable<Triple extends Statement> implements Set<Triple>, Serializable {
 
 	private static final long serialVersionUID = 1L;
 
-	private Set<Triple> data;
+    private static final Equivalence<Statement> equivalence = StatementCommons.quadrupleEquivalence();
+
+    private ConcurrentMap<Equivalence.Wrapper<Statement>,Triple> data;
 
     /**
      * A set that orders triples orderd in a way that the subject is the most significant, while the context is the
      * least significant property in the order. Can be used for efficient queries that involve either just a subject,
      * a subject and a property, a subject, property and object or a subject, property, object and context
      */
-    private NavigableMap<IntArray,Triple> indexSPOC;
+    private ConcurrentNavigableMap<TripleKey,Triple> indexSPOC;
+
+    /**
+     * A set that orders triples orderd in a way that the property is the most significant, while the context is the
+     * least significant property in the order. Can be used for efficient queries that involve either just a
+     * property or a property and an object
+     */
+    private ConcurrentNavigableMap<TripleKey,Triple> indexPOSC;
+
+    /**
+     * A set that orders triples orderd in a way that the object is the most significant, while the context is the
+     * least significant property in the order. Can be used for efficient queries that involve either just an
+     * object or an object and a subject
+     */
+    private ConcurrentNavigableMap<TripleKey,Triple> indexOSPC;
 
     /**
      * A set that orders triples orderd in a way that the context is the most significant, while the object is the
      * least significant property in the order. Can be used for efficient queries that involve either just a context,
      * a context and a subject, a context, subject, and property
      */
-    private NavigableMap<IntArray,Triple> indexCSPO;
+    private ConcurrentNavigableMap<TripleKey,Triple> indexCSPO;
+
+    /**
+     * Locks serializing the modifications of the same triple; a triple is mapped to a lock by its hash code
+     */
+    private ReentrantLock[] locks;
+
+    private static final int LOCK_STRIPES = 64;
 
     public TripleTable() {
-        data = StatementCommons.newQuadrupleSet();
-        indexSPOC = new TreeMap<>();
-        indexCSPO = new TreeMap<>();
+        data = new ConcurrentHashMap<>();
+        indexSPOC = new ConcurrentSkipListMap<>();
+        indexPOSC = new ConcurrentSkipListMap<>();
+        indexOSPC = new ConcurrentSkipListMap<>();
+        indexCSPO = new ConcurrentSkipListMap<>();
+
+        locks = new ReentrantLock[LOCK_STRIPES];
+        for(int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
     }
 
 
     public TripleTable(Collection<Triple> triples) {
-        data = StatementCommons.newQuadrupleSet();
-        indexSPOC = new TreeMap<>();
-        indexCSPO = new TreeMap<>();
+        this();
         addAll(triples);
     }
 
@@ -77,7 +118,7 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @return the number of elements in this set (its cardinality)
      */
     @Override
-    public synchronized int size() {
+    public int size() {
         return data.size();
     }
 
@@ -87,7 +128,7 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @return <tt>true</tt> if this set contains no elements
      */
     @Override
-    public synchronized boolean isEmpty() {
+    public boolean isEmpty() {
         return data.isEmpty();
     }
 
@@ -105,8 +146,8 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      *         set does not permit null elements (optional)
      */
     @Override
-    public synchronized boolean contains(Object o) {
-        return data.contains(o);
+    public boolean contains(Object o) {
+        return o instanceof Statement && data.containsKey(equivalence.wrap((Statement) o));
     }
 
     /**
@@ -118,7 +159,30 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      */
     @Override
     public Iterator<Triple> iterator() {
-        return data.iterator();
+        final Iterator<Triple> it = data.values().iterator();
+        return new Iterator<Triple>() {
+            private Triple current;
+
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public Triple next() {
+                current = it.next();
+                return current;
+            }
+
+            @Override
+            public void remove() {
+                if(current == null) {
+                    throw new IllegalStateException("next() has not been called");
+                }
+                TripleTable.this.remove(current);
+                current = null;
+            }
+        };
     }
 
     /**
@@ -138,8 +202,8 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @return an array containing all the elements in this set
      */
     @Override
-    public synchronized Object[] toArray() {
-        return data.toArray();
+    public Object[] toArray() {
+        return data.values().toArray();
     }
 
     /**
@@ -185,8 +249,8 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @throws NullPointerException if the specified array is null
      */
     @Override
-    public synchronized <T> T[] toArray(T[] a) {
-        return data.toArray(a);
+    public <T> T[] toArray(T[] a) {
+        return data.values().toArray(a);
     }
 
     /**
@@ -220,10 +284,23 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      *         prevents it from being added to this set
      */
     @Override
-    public synchronized boolean add(Triple triple) {
-        indexSPOC.put(IntArray.createSPOCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()),triple);
-        indexCSPO.put(IntArray.createCSPOKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()),triple);
-        return data.add(triple);
+    public boolean add(Triple triple) {
+        Equivalence.Wrapper<Statement> key = equivalence.wrap((Statement) triple);
+
+        ReentrantLock lock = getLock(key);
+        lock.lock();
+        try {
+            if(data.putIfAbsent(key, triple) != null) {
+                return false;
+            }
+            indexSPOC.put(TripleKey.createSPOCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()),triple);
+            indexPOSC.put(TripleKey.createPOSCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()),triple);
+            indexOSPC.put(TripleKey.createOSPCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()),triple);
+            indexCSPO.put(TripleKey.createCSPOKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()),triple);
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -246,13 +323,26 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      *         is not supported by this set
      */
     @Override
-    public synchronized boolean remove(Object o) {
+    public boolean remove(Object o) {
         if(o instanceof Statement) {
-            Statement triple = (Statement)o;
-            indexSPOC.remove(IntArray.createSPOCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()));
-            indexCSPO.remove(IntArray.createCSPOKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()));
+            Equivalence.Wrapper<Statement> key = equivalence.wrap((Statement) o);
+
+            ReentrantLock lock = getLock(key);
+            lock.lock();
+            try {
+                Triple triple = data.remove(key);
+                if(triple != null) {
+                    indexSPOC.remove(TripleKey.createSPOCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()), triple);
+                    indexPOSC.remove(TripleKey.createPOSCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()), triple);
+                    indexOSPC.remove(TripleKey.createOSPCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()), triple);
+                    indexCSPO.remove(TripleKey.createCSPOKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext()), triple);
+                    return true;
+                }
+            } finally {
+                lock.unlock();
+            }
         }
-        return data.remove(o);
+        return false;
     }
 
     /**
@@ -272,8 +362,13 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @see    #contains(Object)
      */
     @Override
-    public synchronized boolean containsAll(Collection<?> c) {
-        return data.containsAll(c);
+    public boolean containsAll(Collection<?> c) {
+        for(Object o : c) {
+            if(!contains(o)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -299,7 +394,7 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @see #add(Object)
      */
     @Override
-    public synchronized boolean addAll(Collection<? extends Triple> c) {
+    public boolean addAll(Collection<? extends Triple> c) {
         boolean modified = false;
         for(Triple t : c) {
             modified = add(t) || modified;
@@ -327,20 +422,14 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @see #remove(Object)
      */
     @Override
-    public synchronized boolean retainAll(Collection<?> c) {
-        Iterator<Map.Entry<IntArray,Triple>> it = indexSPOC.entrySet().iterator();
-        while(it.hasNext()) {
-            if(!c.contains(it.next().getValue())) {
-                it.remove();
-            }
-        }
-        Iterator<Map.Entry<IntArray,Triple>> it2 = indexCSPO.entrySet().iterator();
-        while(it2.hasNext()) {
-            if(!c.contains(it2.next().getValue())) {
-                it2.remove();
+    public boolean retainAll(Collection<?> c) {
+        boolean modified = false;
+        for(Triple t : data.values()) {
+            if(!c.contains(t)) {
+                modified = remove(t) || modified;
             }
         }
-        return data.retainAll(c);
+        return modified;
     }
 
     /**
@@ -363,7 +452,7 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @see #contains(Object)
      */
     @Override
-    public synchronized boolean removeAll(Collection<?> c) {
+    public boolean removeAll(Collection<?> c) {
         boolean modified = false;
         for(Object o : c) {
             modified = remove(o) || modified;
@@ -379,14 +468,33 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      *         is not supported by this set
      */
     @Override
-    public synchronized void clear() {
-        data.clear();
-        indexSPOC.clear();
-        indexCSPO.clear();
+    public void clear() {
+        for(ReentrantLock lock : locks) {
+            lock.lock();
+        }
+        try {
+            data.clear();
+            indexSPOC.clear();
+            indexPOSC.clear();
+            indexOSPC.clear();
+            indexCSPO.clear();
+        } finally {
+            for(ReentrantLock lock : locks) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ReentrantLock getLock(Equivalence.Wrapper<Statement> key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (locks.length - 1)];
     }
 
     /**
      * Return a subset of the triples matching the filter criteria. Arguments with null value are treated as wildcards.
+     * The lookup uses the index whose order starts with the longest sequence of bound arguments and filters the
+     * result by the remaining bound arguments; only if no argument is bound all triples are returned.
      *
      *
      * @param subject
@@ -396,33 +504,47 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
      * @param wildcardContext
      * @return
      */
-    public synchronized Collection<Triple> listTriples(final Resource subject, final URI property, final Value object, final Resource context, boolean wildcardContext) {
+    public Collection<Triple> listTriples(final Resource subject, final URI property, final Value object, final Resource context, boolean wildcardContext) {
         // in special cases we can make use of the index
         if(subject != null && property != null && object != null && context != null) {
-            IntArray key = IntArray.createSPOCKey(subject, property, object, context);
+            TripleKey key = TripleKey.createSPOCKey(subject, property, object, context);
             Triple result = indexSPOC.get(key);
             if(result != null) {
                 return Collections.singleton(result);
             } else {
                 return Collections.emptyList();
             }
-        } else if(wildcardContext &&
-                (  (subject != null && property != null && object != null)
-                 || (subject != null && property != null)
-                 || subject != null)) {
-            IntArray fromKey = IntArray.createSPOCKey(subject, property, object, context);
-            IntArray toKey   = IntArray.createSPOCMaxKey(subject, property, object, context);
-
-            return indexSPOC.subMap(fromKey,true,toKey,true).values();
-        } else if(  (context != null && subject != null && property != null)
-                 || (context != null && subject != null)
-                 || context != null) {
-            IntArray fromKey = IntArray.createCSPOKey(subject, property, object, context);
-            IntArray toKey   = IntArray.createCSPOMaxKey(subject, property, object, context);
-
-            return indexCSPO.subMap(fromKey,true,toKey,true).values();
+        } else if(subject == null && property == null && object == null && context == null) {
+            return Collections.unmodifiableCollection(data.values());
+        }
+
+        // number of leading bound arguments for each index order
+        int spoc = prefix(subject, property, object, context);
+        int posc = prefix(property, object, subject, context);
+        int ospc = prefix(object, subject, property, context);
+        int cspo = prefix(context, subject, property, object);
+        int bound = prefix(subject) + prefix(property) + prefix(object) + prefix(context);
+
+        Collection<Triple> candidates;
+        int covered;
+        if(spoc >= posc && spoc >= ospc && spoc >= cspo) {
+            covered = spoc;
+            candidates = indexSPOC.subMap(TripleKey.createSPOCKey(subject, property, object, context), true, TripleKey.createSPOCMaxKey(subject, property, object, context), true).values();
+        } else if(posc >= ospc && posc >= cspo) {
+            covered = posc;
+            candidates = indexPOSC.subMap(TripleKey.createPOSCKey(subject, property, object, context), true, TripleKey.createPOSCMaxKey(subject, property, object, context), true).values();
+        } else if(ospc >= cspo) {
+            covered = ospc;
+            candidates = indexOSPC.subMap(TripleKey.createOSPCKey(subject, property, object, context), true, TripleKey.createOSPCMaxKey(subject, property, object, context), true).values();
+        } else {
+            covered = cspo;
+            candidates = indexCSPO.subMap(TripleKey.createCSPOKey(subject, property, object, context), true, TripleKey.createCSPOMaxKey(subject, property, object, context), true).values();
+        }
+
+        if(covered == bound) {
+            return candidates;
         } else {
-            // in all other cases we need to iterate and filter :-(
+            // some bound arguments are not covered by the index prefix, so we need to filter :-(
             Predicate<Statement> p = new Predicate<Statement>() {
                 @Override
                 public boolean apply(Statement triple) {
@@ -435,7 +557,7 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
                     if(object != null && !triple.getObject().equals(object)) {
                         return false;
                     }
-                    if(context != null && !triple.getContext().equals(context)) {
+                    if(context != null && !context.equals(triple.getContext())) {
                         return false;
                     }
 
@@ -443,33 +565,44 @@ public class TripleTable<Triple extends Statement> implements Set<Triple>, Seria
                 }
             };
 
-            return Collections2.filter(data, p);
+            return Collections2.filter(candidates, p);
+        }
+    }
+
+    /**
+     * Return the number of leading non-null values.
+     */
+    private static int prefix(Value... values) {
+        int i = 0;
+        while(i < values.length && values[i] != null) {
+            i++;
         }
+        return i;
     }
 
-    public synchronized Collection<Resource> listContextIDs() {
+    public Collection<Resource> listContextIDs() {
         Set<Resource> result = new HashSet<>();
-        for(Triple t : data) {
+        for(Triple t : data.values()) {
             result.add(t.getContext());
         }
         return result;
     }
 
     @Override
-    public synchronized boolean equals(Object o) {
+    public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
 
 		@SuppressWarnings("rawtypes")
 		TripleTable that = (TripleTable) o;
 
-        return data.equals(that.data);
+        return data.keySet().equals(that.data.keySet());
 
     }
 
     @Override
-    public synchronized int hashCode() {
-        return data.hashCode();
+    public int hashCode() {
+        return data.keySet().hashCode();
     }
 
 
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.commons.sesame.tripletable;
+
+import org.junit.Test;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the ordering and hashing of packed triple keys.
+ */
+public class TripleKeyTest {
+
+    private URI subject   = new URIImpl("http://localhost/subject");
+    private URI property  = new URIImpl("http://localhost/property");
+    private URI context   = new URIImpl("http://localhost/context");
+
+    @Test
+    public void testRangeContainsKey() {
+        TripleKey key = TripleKey.createSPOCKey(subject, property, new LiteralImpl("value"), context);
+
+        // a key with bound subject and property lies between the minimum and maximum keys with wildcard object and context
+        assertTrue(TripleKey.createSPOCKey(subject, property, null, null).compareTo(key) < 0);
+        assertTrue(TripleKey.createSPOCMaxKey(subject, property, null, null).compareTo(key) > 0);
+
+        // the same holds for the other index orders
+        assertTrue(TripleKey.createOSPCKey(null, null, new LiteralImpl("value"), null).compareTo(TripleKey.createOSPCKey(subject, property, new LiteralImpl("value"), context)) < 0);
+        assertTrue(TripleKey.createOSPCMaxKey(null, null, new LiteralImpl("value"), null).compareTo(TripleKey.createOSPCKey(subject, property, new LiteralImpl("value"), context)) > 0);
+    }
+
+    @Test
+    public void testEquality() {
+        TripleKey key1 = TripleKey.createSPOCKey(subject, property, new LiteralImpl("value"), context);
+        TripleKey key2 = TripleKey.createSPOCKey(new URIImpl(subject.stringValue()), property, new LiteralImpl("value"), context);
+        TripleKey key3 = TripleKey.createSPOCKey(subject, property, new LiteralImpl("other"), context);
+
+        assertEquals(key1, key2);
+        assertEquals(0, key1.compareTo(key2));
+        assertEquals(key1.hashCode(), key2.hashCode());
+        assertNotEquals(key1, key3);
+    }
+
+    @Test
+    public void testSpocHash() {
+        assertEquals(TripleKey.spocHash(subject, property, new LiteralImpl("value"), context), TripleKey.spocHash(subject, property, new LiteralImpl("value"), context));
+        assertNotEquals(TripleKey.spocHash(subject, property, new LiteralImpl("value"), context), TripleKey.spocHash(subject, property, new LiteralImpl("value"), null));
+        assertNotEquals(TripleKey.spocHash(subject, property, new LiteralImpl("value"), context), TripleKey.spocHash(context, property, new LiteralImpl("value"), subject));
+    }
+}
@@ -23,11 +23,21 @@ import org.junit.Test;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Statement;
 import org.openrdf.model.URI;
+import org.openrdf.model.impl.ContextStatementImpl;
 import org.openrdf.model.impl.LiteralImpl;
 import org.openrdf.model.impl.StatementImpl;
 import org.openrdf.model.impl.URIImpl;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for triple tables.
@@ -125,4 +135,122 @@ public class TripleTableTest {
         assertEquals(0, table.listTriples(subject2,predicate2,object2,null, true).size());
     }
 
+
+    @Test
+    public void testListTriplesContext() {
+        URI subject1 = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        URI subject2 = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        URI predicate1 = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        URI predicate2 = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        Literal object1 = new LiteralImpl("http://localhost/"+ RandomStringUtils.random(40));
+        URI context1 = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        URI context2 = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+
+        TripleTable<Statement> table = new TripleTable<>();
+        table.add(new ContextStatementImpl(subject1,predicate1,object1,context1));
+        table.add(new ContextStatementImpl(subject1,predicate2,object1,context1));
+        table.add(new ContextStatementImpl(subject2,predicate1,object1,context2));
+        table.add(new ContextStatementImpl(subject2,predicate2,subject1,context2));
+
+        // adding the same quadruple twice does not change the table
+        assertEquals(false, table.add(new ContextStatementImpl(subject1,predicate1,object1,context1)));
+        assertEquals(4, table.size());
+
+        assertEquals(2, table.listTriples(null,null,null,context1, true).size());
+        assertEquals(1, table.listTriples(subject2,null,null,context2, true).size());
+        assertEquals(1, table.listTriples(null,predicate1,null,context2, true).size());
+        assertEquals(2, table.listTriples(subject1,null,object1,null, true).size());
+        assertEquals(1, table.listTriples(null,null,subject1,null, true).size());
+        assertEquals(0, table.listTriples(null,predicate2,object1,context2, true).size());
+        assertEquals(1, table.listTriples(subject2,predicate1,object1,context2, true).size());
+    }
+
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        final URI predicate = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        final TripleTable<Statement> table = new TripleTable<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for(int t = 0; t < 4; t++) {
+                final URI subject = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for(int i = 0; i < 1000; i++) {
+                            table.add(new StatementImpl(subject, predicate, new LiteralImpl("value " + i)));
+                            table.listTriples(null, predicate, null, null, true).size();
+                        }
+                        return null;
+                    }
+                });
+            }
+            for(Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4000, table.size());
+        assertEquals(4000, table.listTriples(null,predicate,null,null, true).size());
+        assertTrue(table.listTriples(null,null,new LiteralImpl("value 1"),null, true).size() == 4);
+    }
+
+    /**
+     * Threads concurrently add and remove the same triples; afterwards all indexes contain exactly the triples in
+     * the table.
+     */
+    @Test
+    public void testConcurrentAddRemove() throws Exception {
+        final URI subject = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        final URI predicate = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        final URI context = new URIImpl("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+        final List<Statement> triples = new ArrayList<>();
+        for(int i = 0; i < 20; i++) {
+            triples.add(new ContextStatementImpl(subject, predicate, new LiteralImpl("value " + i), context));
+        }
+        final TripleTable<Statement> table = new TripleTable<>();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for(int t = 0; t < 8; t++) {
+                final Random random = new Random(t);
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for(int i = 0; i < 20000; i++) {
+                            // use new but equal statement instances, like independent callers would
+                            Statement triple = triples.get(random.nextInt(triples.size()));
+                            Statement copy = new ContextStatementImpl(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext());
+                            if(random.nextBoolean()) {
+                                table.add(copy);
+                            } else {
+                                table.remove(copy);
+                            }
+                        }
+                        return null;
+                    }
+                });
+            }
+            for(Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // each lookup uses a different index (SPOC, POSC, OSPC, CSPO)
+        assertEquals(table.size(), table.listTriples(subject,null,null,null, true).size());
+        assertEquals(table.size(), table.listTriples(null,predicate,null,null, true).size());
+        assertEquals(table.size(), table.listTriples(null,null,null,context, false).size());
+        for(Statement triple : triples) {
+            int expected = table.contains(triple) ? 1 : 0;
+            assertEquals(expected, table.listTriples(null,null,triple.getObject(),null, true).size());
+            assertEquals(expected, table.listTriples(subject,predicate,triple.getObject(),context, false).size());
+        }
+    }
+
 }
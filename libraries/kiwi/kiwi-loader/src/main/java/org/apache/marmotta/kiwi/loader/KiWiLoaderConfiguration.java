@@ -36,6 +36,7 @@ public class KiWiLoaderConfiguration {
     public static final String LOADER_STATISTICS_ENABLED = "loader.statistics.enabled";
     public static final String LOADER_STATISTICS_GRAPH = "loader.statistics.graph";
     public static final String IGNORE_NAMESPACES = "loader.namespaces.ignore";
+    public static final String LOADER_BINARY_COPY = "loader.pgsql.binaryCopy";
 
 
     private Configuration config;
@@ -161,5 +162,22 @@ public class KiWiLoaderConfiguration {
         config.setProperty(IGNORE_NAMESPACES,v);
     }
 
+    /**
+     * If set to true, the PostgreSQL loader sends nodes and triples to the database in the binary COPY format instead
+     * of CSV, which saves formatting the values on the client and parsing them on the server. Default: false
+     * @return
+     */
+    public boolean isBinaryCopy() {
+        return config.getBoolean(LOADER_BINARY_COPY, false);
+    }
+
+    /**
+     * If set to true, the PostgreSQL loader sends nodes and triples to the database in the binary COPY format instead
+     * of CSV, which saves formatting the values on the client and parsing them on the server. Default: false
+     */
+    public void setBinaryCopy(boolean v) {
+        config.setProperty(LOADER_BINARY_COPY,v);
+    }
+
 
 }
@@ -20,7 +20,7 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import org.apache.marmotta.commons.sesame.model.Namespaces;
-import org.apache.marmotta.commons.sesame.tripletable.IntArray;
+import org.apache.marmotta.commons.sesame.tripletable.TripleKey;
 import org.apache.marmotta.commons.vocabulary.XSD;
 import org.apache.marmotta.kiwi.loader.KiWiLoaderConfiguration;
 import org.apache.marmotta.kiwi.model.rdf.*;
@@ -269,7 +269,7 @@ public class KiWiHandler implements RDFHandler {
 
             // statement existance check; use the triple registry to lookup if there are any concurrent triple creations
             if(config.isStatementExistanceCheck()) {
-                IntArray cacheKey = IntArray.createSPOCKey(subject, predicate, object, context);
+                long cacheKey = TripleKey.spocHash(subject, predicate, object, context);
                 long tripleId = registry.lookupKey(cacheKey);
 
                 if(tripleId >= 0) {
@@ -284,12 +284,15 @@ public class KiWiHandler implements RDFHandler {
 
                 // triple has no id from registry or database, so we create one and flag it for reasoning
                 if(result.getId() < 0) {
-                    result.setId(connection.getNextSequence());
-                    result.setNewTriple(true);
+                    long newId = connection.getNextSequence();
+                    result.setId(registry.registerKeyIfAbsent(cacheKey, connection.getTransactionId(), newId));
 
-                    registry.registerKey(cacheKey, connection.getTransactionId(), result.getId());
+                    // only store the triple if no concurrent transaction created it in the meantime
+                    if(result.getId() == newId) {
+                        result.setNewTriple(true);
 
-                    storeTriple(result);
+                        storeTriple(result);
+                    }
                 }
             } else {
                 result.setId(connection.getNextSequence());
@@ -33,7 +33,8 @@ import java.sql.SQLException;
 /**
  * A fast-lane RDF import handler for PostgreSQL backends. This importer takes advantage of the PostgreSQL COPY command
  * that allows direct injection into the database. It works by creating an intermediate CSV buffer that is flushed into
- * the databases in batches (using a configurable batch size).
+ * the databases in batches (using a configurable batch size). Optionally, the data is sent in the binary COPY format
+ * instead of CSV (see KiWiLoaderConfiguration.isBinaryCopy()).
  *
  * @author Sebastian Schaffert (sschaffert@apache.org)
  */
@@ -51,15 +52,27 @@ public class KiWiPostgresHandler extends KiWiBatchHandler implements RDFHandler
     @Override
     protected void flushBacklogInternal() throws SQLException {
         try {
-            // flush out nodes
-            PGCopyOutputStream nodesOut = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(connection.getJDBCConnection()), "COPY nodes(id,ntype,svalue,dvalue,ivalue,tvalue,tzoffset,bvalue,ltype,lang,createdAt) FROM STDIN (FORMAT csv)");
-            PGCopyUtil.flushNodes(nodeBacklog, nodesOut);
-            nodesOut.close();
-
-            // flush out triples
-            PGCopyOutputStream triplesOut = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(connection.getJDBCConnection()), "COPY triples FROM STDIN (FORMAT csv)");
-            PGCopyUtil.flushTriples(tripleBacklog, triplesOut);
-            triplesOut.close();
+            if(config.isBinaryCopy()) {
+                // flush out nodes
+                PGCopyOutputStream nodesOut = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(connection.getJDBCConnection()), "COPY nodes(id,ntype,svalue,dvalue,ivalue,tvalue,tzoffset,bvalue,ltype,lang,createdAt) FROM STDIN (FORMAT binary)");
+                PGBinaryCopyUtil.flushNodes(nodeBacklog, nodesOut);
+                nodesOut.close();
+
+                // flush out triples
+                PGCopyOutputStream triplesOut = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(connection.getJDBCConnection()), "COPY triples(id,subject,predicate,object,context,creator,inferred,deleted,createdAt,deletedAt) FROM STDIN (FORMAT binary)");
+                PGBinaryCopyUtil.flushTriples(tripleBacklog, triplesOut);
+                triplesOut.close();
+            } else {
+                // flush out nodes
+                PGCopyOutputStream nodesOut = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(connection.getJDBCConnection()), "COPY nodes(id,ntype,svalue,dvalue,ivalue,tvalue,tzoffset,bvalue,ltype,lang,createdAt) FROM STDIN (FORMAT csv)");
+                PGCopyUtil.flushNodes(nodeBacklog, nodesOut);
+                nodesOut.close();
+
+                // flush out triples
+                PGCopyOutputStream triplesOut = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(connection.getJDBCConnection()), "COPY triples FROM STDIN (FORMAT csv)");
+                PGCopyUtil.flushTriples(tripleBacklog, triplesOut);
+                triplesOut.close();
+            }
         } catch (IOException ex) {
             throw new SQLException("error while flushing out data",ex);
         }
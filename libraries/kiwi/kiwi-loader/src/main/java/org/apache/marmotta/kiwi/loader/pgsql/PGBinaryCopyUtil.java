@@ -0,0 +1,229 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.loader.pgsql;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.marmotta.kiwi.model.rdf.*;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Write nodes and triples to a PostgreSQL COPY stream in the binary COPY format. Other than the CSV format
+ * written by {@link PGCopyUtil}, values are written directly from the fields of the nodes and triples without
+ * formatting them as text, and the server does not need to parse them again.
+ * <p/>
+ * The streams need to be opened with "COPY ... FROM STDIN (FORMAT binary)"; the column order is the same as for
+ * the CSV format. Timestamps are written as local time, like the CSV writer does, and the datetime values of date
+ * literals as UTC. Literals without language are written with a NULL language, like KiWiConnection does.
+ */
+public class PGBinaryCopyUtil {
+
+    private static Logger log = LoggerFactory.getLogger(PGBinaryCopyUtil.class);
+
+    // "PGCOPY\n\377\r\n\0"
+    private static final byte[] SIGNATURE = new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 };
+
+    // 2000-01-01 00:00:00, the epoch of PostgreSQL timestamps, in milliseconds since 1970-01-01 00:00:00
+    private static final long PG_EPOCH = 946684800000L;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private PGBinaryCopyUtil() {
+        // static access only
+    }
+
+    public static void flushTriples(Iterable<KiWiTriple> tripleBacklog, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        writeHeader(data);
+
+        for(KiWiTriple t : tripleBacklog) {
+            data.writeShort(10);
+            writeLong(data, t.getId());
+            writeNodeId(data, t.getSubject());
+            writeNodeId(data, t.getPredicate());
+            writeNodeId(data, t.getObject());
+            writeNodeId(data, t.getContext());
+            writeNodeId(data, t.getCreator());
+            writeBoolean(data, t.isInferred());
+            writeBoolean(data, t.isDeleted());
+            writeTimestamp(data, t.getCreated());
+            writeTimestamp(data, t.getDeletedAt());
+        }
+
+        writeTrailer(data);
+    }
+
+    public static void flushNodes(Iterable<KiWiNode> nodeBacklog, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        writeHeader(data);
+
+        for(KiWiNode n : nodeBacklog) {
+            if(n instanceof KiWiUriResource) {
+                KiWiUriResource u = (KiWiUriResource)n;
+                writeNode(data, u.getId(), "uri", u.stringValue(), null, null, null, null, null, null, null, u.getCreated());
+            } else if(n instanceof KiWiAnonResource) {
+                KiWiAnonResource a = (KiWiAnonResource)n;
+                writeNode(data, a.getId(), "bnode", a.stringValue(), null, null, null, null, null, null, null, a.getCreated());
+            } else if(n instanceof KiWiIntLiteral) {
+                KiWiIntLiteral l = (KiWiIntLiteral)n;
+                writeNode(data, l.getId(), "int", l.getContent(), l.getDoubleContent(), l.getIntContent(), null, null, null, l.getType(), l.getLocale() != null ? l.getLocale().getLanguage() : null, l.getCreated());
+            } else if(n instanceof KiWiDoubleLiteral) {
+                KiWiDoubleLiteral l = (KiWiDoubleLiteral)n;
+                writeNode(data, l.getId(), "double", l.getContent(), l.getDoubleContent(), null, null, null, null, l.getType(), l.getLocale() != null ? l.getLocale().getLanguage() : null, l.getCreated());
+            } else if(n instanceof KiWiBooleanLiteral) {
+                KiWiBooleanLiteral l = (KiWiBooleanLiteral)n;
+                writeNode(data, l.getId(), "boolean", l.getContent(), null, null, null, null, l.booleanValue(), l.getType(), l.getLocale() != null ? l.getLocale().getLanguage() : null, l.getCreated());
+            } else if(n instanceof KiWiDateLiteral) {
+                KiWiDateLiteral l = (KiWiDateLiteral)n;
+                writeNode(data, l.getId(), "date", l.getContent(), null, null, l.getDateContent(), l.getDateContent().getZone().getOffset(l.getDateContent()) / 1000, null, l.getType(), l.getLocale() != null ? l.getLocale().getLanguage() : null, l.getCreated());
+            } else if(n instanceof KiWiStringLiteral) {
+                KiWiStringLiteral l = (KiWiStringLiteral)n;
+
+                Double dbl_value = null;
+                Long   lng_value = null;
+                if(l.getContent().length() < 64 && NumberUtils.isNumber(l.getContent()))  {
+                    try {
+                        dbl_value = Double.parseDouble(l.getContent());
+                        lng_value = Long.parseLong(l.getContent());
+                    } catch (NumberFormatException ex) {
+                        // ignore, keep NaN
+                    }
+                }
+                writeNode(data, l.getId(), "string", l.getContent(), dbl_value, lng_value, null, null, null, l.getType(), l.getLocale() != null ? l.getLocale().getLanguage() : null, l.getCreated());
+            } else {
+                log.warn("unknown node type, cannot flush to import stream: {}", n.getClass());
+            }
+        }
+
+        writeTrailer(data);
+    }
+
+    private static void writeNode(DataOutputStream data, long id, String type, String content, Double dbl, Long lng, DateTime date, Integer tzoffset, Boolean bool, KiWiUriResource dtype, String lang, Date created) throws IOException {
+        data.writeShort(11);
+        writeLong(data, id);
+        writeString(data, type);
+        writeString(data, content);
+        writeDouble(data, dbl);
+        writeLong(data, lng);
+        writeDateTime(data, date);
+        writeInt(data, tzoffset);
+        writeBoolean(data, bool);
+        writeNodeId(data, dtype);
+        writeString(data, lang != null ? lang.toLowerCase() : null);
+        writeTimestamp(data, created);
+    }
+
+    private static void writeHeader(DataOutputStream data) throws IOException {
+        data.write(SIGNATURE);
+        data.writeInt(0); // flags
+        data.writeInt(0); // header extension length
+    }
+
+    private static void writeTrailer(DataOutputStream data) throws IOException {
+        data.writeShort(-1);
+        data.flush();
+    }
+
+    private static void writeNull(DataOutputStream data) throws IOException {
+        data.writeInt(-1);
+    }
+
+    private static void writeLong(DataOutputStream data, long value) throws IOException {
+        data.writeInt(8);
+        data.writeLong(value);
+    }
+
+    private static void writeLong(DataOutputStream data, Long value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            data.writeInt(8);
+            data.writeLong(value);
+        }
+    }
+
+    private static void writeInt(DataOutputStream data, Integer value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            data.writeInt(4);
+            data.writeInt(value);
+        }
+    }
+
+    private static void writeDouble(DataOutputStream data, Double value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            data.writeInt(8);
+            data.writeDouble(value);
+        }
+    }
+
+    private static void writeBoolean(DataOutputStream data, Boolean value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            data.writeInt(1);
+            data.writeByte(value ? 1 : 0);
+        }
+    }
+
+    private static void writeString(DataOutputStream data, String value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            data.writeInt(bytes.length);
+            data.write(bytes);
+        }
+    }
+
+    private static void writeNodeId(DataOutputStream data, KiWiNode node) throws IOException {
+        writeLong(data, node != null ? node.getId() : null);
+    }
+
+    // timestamp without time zone, in local time of the JVM (same as java.sql.Timestamp.toString())
+    private static void writeTimestamp(DataOutputStream data, Date value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            long millis = value.getTime() + TimeZone.getDefault().getOffset(value.getTime());
+            data.writeInt(8);
+            data.writeLong((millis - PG_EPOCH) * 1000);
+        }
+    }
+
+    // timestamp without time zone, in UTC
+    private static void writeDateTime(DataOutputStream data, DateTime value) throws IOException {
+        if(value == null) {
+            writeNull(data);
+        } else {
+            data.writeInt(8);
+            data.writeLong((value.getMillis() - PG_EPOCH) * 1000);
+        }
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.marmotta.kiwi.loader;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.marmotta.commons.vocabulary.XSD;
 import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.loader.pgsql.PGBinaryCopyUtil;
 import org.apache.marmotta.kiwi.loader.pgsql.PGCopyUtil;
 import org.apache.marmotta.kiwi.model.rdf.*;
 import org.apache.marmotta.kiwi.persistence.KiWiConnection;
@@ -150,6 +151,52 @@ public class PGCopyUtilTest {
 
 
 
+    @Test
+    public void testWriteNodesBinary() throws IOException, SQLException {
+        KiWiConnection con = store.getPersistence().getConnection();
+
+        PGCopyOutputStream out = new PGCopyOutputStream(PGCopyUtil.getWrappedConnection(con.getJDBCConnection()), "COPY nodes(id,ntype,svalue,dvalue,ivalue,tvalue,tzoffset,bvalue,ltype,lang,createdAt) FROM STDIN (FORMAT binary)");
+
+        long start = System.currentTimeMillis();
+
+        List<KiWiNode> nodes = new ArrayList<>(10000);
+
+        nodes.add(TYPE_INT);
+        nodes.add(TYPE_DBL);
+        nodes.add(TYPE_BOOL);
+        nodes.add(TYPE_DATE);
+        nodes.add(EMPTY);
+
+        // randomly create 10000 nodes
+        for(int i=0; i<10000; i++) {
+            nodes.add(randomObject());
+        }
+
+        // flush out nodes
+        PGBinaryCopyUtil.flushNodes(nodes, out);
+
+        out.close();
+
+        long imported = System.currentTimeMillis();
+
+        log.info("imported {} nodes in {} ms", nodes.size(), imported-start);
+
+        // check if database contains the nodes (based on ID) and the nodes are loaded with the right type
+        PreparedStatement stmt = con.getJDBCConnection().prepareStatement("SELECT * FROM nodes WHERE id = ?");
+        for(KiWiNode node : nodes) {
+            stmt.setLong(1, node.getId());
+            ResultSet dbResult = stmt.executeQuery();
+            Assert.assertTrue(dbResult.next());
+            Assert.assertEquals(node.stringValue(),dbResult.getString("svalue"));
+
+            Assert.assertEquals(node.getClass(), con.loadNodeById(node.getId()).getClass());
+        }
+
+        log.info("checked {} nodes in {} ms", nodes.size(), System.currentTimeMillis()-imported);
+    }
+
+
+
     /**
      * Return a random URI, with a 10% chance of returning a URI that has already been used.
      * @return
@@ -0,0 +1,157 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.reasoner.engine;
+
+import org.apache.marmotta.kiwi.model.rdf.KiWiTriple;
+import org.apache.marmotta.kiwi.reasoner.model.program.Field;
+import org.apache.marmotta.kiwi.reasoner.model.program.LiteralField;
+import org.apache.marmotta.kiwi.reasoner.model.program.Pattern;
+import org.apache.marmotta.kiwi.reasoner.model.program.ResourceField;
+
+import java.util.*;
+
+/**
+ * A discrimination index over the rule body patterns of the active reasoning programs. Patterns are indexed by
+ * their constant predicate and, within a predicate, by their constant object or subject; patterns with a variable
+ * predicate are indexed by their constant subject or object. Looking up the candidate patterns for a triple then
+ * only touches the patterns that can possibly match, instead of testing every pattern against every triple.
+ * <p/>
+ * The index is a coarse filter keyed by the string value of the constants: candidates still need to be
+ * checked with ReasoningEngine.matches(). Each pattern is contained in exactly one bucket, so the candidates
+ * for a triple never contain duplicates.
+ */
+public class PatternIndex {
+
+    // constant predicate -> constant object -> patterns
+    private Map<String, Map<String, List<Pattern>>> byPredicateObject  = new HashMap<>();
+
+    // constant predicate -> constant subject -> patterns (only patterns with variable object)
+    private Map<String, Map<String, List<Pattern>>> byPredicateSubject = new HashMap<>();
+
+    // constant predicate -> patterns (only patterns with variable subject and object)
+    private Map<String, List<Pattern>> byPredicate = new HashMap<>();
+
+    // variable predicate, constant subject -> patterns
+    private Map<String, List<Pattern>> bySubject = new HashMap<>();
+
+    // variable predicate and subject, constant object -> patterns
+    private Map<String, List<Pattern>> byObject  = new HashMap<>();
+
+    // patterns where subject, predicate and object are variables
+    private List<Pattern> wildcard = new ArrayList<>();
+
+    private int size = 0;
+
+    public PatternIndex() {
+    }
+
+    public PatternIndex(Collection<Pattern> patterns) {
+        for (Pattern pattern : patterns) {
+            add(pattern);
+        }
+    }
+
+    /**
+     * Add a pattern to the index. Adding the same pattern twice will add it to the index twice.
+     */
+    public void add(Pattern pattern) {
+        String subject   = constant(pattern.getSubject());
+        String predicate = constant(pattern.getProperty());
+        String object    = constant(pattern.getObject());
+
+        if (predicate != null) {
+            if (object != null) {
+                patterns(constants(byPredicateObject, predicate), object).add(pattern);
+            } else if (subject != null) {
+                patterns(constants(byPredicateSubject, predicate), subject).add(pattern);
+            } else {
+                patterns(byPredicate, predicate).add(pattern);
+            }
+        } else if (subject != null) {
+            patterns(bySubject, subject).add(pattern);
+        } else if (object != null) {
+            patterns(byObject, object).add(pattern);
+        } else {
+            wildcard.add(pattern);
+        }
+        size++;
+    }
+
+    /**
+     * Return the patterns that might match the triple given as argument.
+     */
+    public List<Pattern> getCandidates(KiWiTriple triple) {
+        String subject   = triple.getSubject().stringValue();
+        String predicate = triple.getPredicate().stringValue();
+        String object    = triple.getObject().stringValue();
+
+        List<Pattern> result = new ArrayList<>(wildcard);
+
+        Map<String, List<Pattern>> objects = byPredicateObject.get(predicate);
+        if (objects != null) {
+            addAll(result, objects.get(object));
+        }
+        Map<String, List<Pattern>> subjects = byPredicateSubject.get(predicate);
+        if (subjects != null) {
+            addAll(result, subjects.get(subject));
+        }
+        addAll(result, byPredicate.get(predicate));
+        addAll(result, bySubject.get(subject));
+        addAll(result, byObject.get(object));
+
+        return result;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static String constant(Field field) {
+        if (field != null && field.isResourceField()) {
+            return ((ResourceField) field).getResource().stringValue();
+        } else if (field != null && field.isLiteralField()) {
+            return ((LiteralField) field).getLiteral().stringValue();
+        } else {
+            return null;
+        }
+    }
+
+    private static void addAll(List<Pattern> result, List<Pattern> patterns) {
+        if (patterns != null) {
+            result.addAll(patterns);
+        }
+    }
+
+    private static Map<String, List<Pattern>> constants(Map<String, Map<String, List<Pattern>>> map, String key) {
+        Map<String, List<Pattern>> value = map.get(key);
+        if (value == null) {
+            value = new HashMap<>();
+            map.put(key, value);
+        }
+        return value;
+    }
+
+    private static List<Pattern> patterns(Map<String, List<Pattern>> map, String key) {
+        List<Pattern> value = map.get(key);
+        if (value == null) {
+            value = new ArrayList<>();
+            map.put(key, value);
+        }
+        return value;
+    }
+}
@@ -39,6 +39,12 @@ public class ReasoningConfiguration {
      */
     private int workers = 4;
 
+    /**
+     * Evaluate the rules of a full reasoning run semi-naively until a fixpoint is reached instead of evaluating each
+     * rule once and relying on the resulting transactions to trigger further reasoning.
+     */
+    private boolean semiNaiveEvaluation = false;
+
     public ReasoningConfiguration() {
     }
 
@@ -58,4 +64,20 @@ public class ReasoningConfiguration {
         this.removeDuplicateJustifications = removeDuplicateJustifications;
     }
 
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public boolean isSemiNaiveEvaluation() {
+        return semiNaiveEvaluation;
+    }
+
+    public void setSemiNaiveEvaluation(boolean semiNaiveEvaluation) {
+        this.semiNaiveEvaluation = semiNaiveEvaluation;
+    }
+
 }
@@ -20,6 +20,7 @@ package org.apache.marmotta.kiwi.reasoner.engine;
 import com.google.common.base.Equivalence;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.EmptyIteration;
 import info.aduna.iteration.Iterations;
@@ -33,6 +34,7 @@ import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
 import org.apache.marmotta.kiwi.model.rdf.KiWiResource;
 import org.apache.marmotta.kiwi.model.rdf.KiWiTriple;
 import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.persistence.KiWiConnection;
 import org.apache.marmotta.kiwi.reasoner.model.exception.ReasoningException;
 import org.apache.marmotta.kiwi.reasoner.model.exception.UnjustifiedTripleException;
 import org.apache.marmotta.kiwi.reasoner.model.program.*;
@@ -52,9 +54,12 @@ import org.slf4j.LoggerFactory;
 
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class implements the evaluation of reasoning programs on the triple store. It has two different modes:
@@ -68,10 +73,10 @@ import java.util.concurrent.locks.ReentrantLock;
  * <p/>
  * The reasoning engine uses its own connection to the database to carry out reasoning tasks.
  * <p/>
- * TODO: we need to clarify conceptually whether it would be correct to run several reasoner threads in parallel.
- * In theory, reasoning here is strictly monotonic so there should not be a problem. In practice, we might miss
- * certain triples because the order of transactions might be messed up. Maybe it makes more sense to parallelize
- * the execution or rules instead.
+ * Transactions are processed by a single reasoner thread to preserve their order; the rule evaluations for a
+ * transaction (or for a full reasoning run) are distributed over a pool of worker threads (see
+ * ReasoningConfiguration.getWorkers()). Each rule evaluation uses its own connections and commits its inferred
+ * triples in batches, storing the justifications of each batch in the same database transaction as its triples.
  * <p/>
  * User: Sebastian Schaffert (sschaffert@apache.org)
  */
@@ -116,6 +121,12 @@ public class ReasoningEngine implements TransactionListener {
      */
     private Multimap<Pattern,Rule> patternRuleMap;
 
+    /**
+     * Discrimination index over the patterns in patternRuleMap, used for selecting the candidate patterns for
+     * each added triple.
+     */
+    private PatternIndex patternIndex;
+
     /**
      * Internal counter to count executions of the reasoner (informational purposes only)
      */
@@ -128,12 +139,25 @@ public class ReasoningEngine implements TransactionListener {
      */
     private SKWRLReasoner reasonerThread;
 
-    protected static Equivalence<Statement> equivalence = StatementCommons.quadrupleEquivalence();
+    /**
+     * Worker threads for evaluating rules in parallel.
+     */
+    private ExecutorService workers;
 
     /**
-     * A lock to ensure that only once thread at a time is carrying out persistence
+     * Set while a semi-naive fixpoint evaluation is running; transactions only containing inferred triples are then
+     * collected in fixpointTransactions instead of being queued for incremental reasoning right away, since the next
+     * round of the fixpoint evaluation usually considers their triples anyway. Guarded by fixpointTransactions.
      */
-    private Lock persistenceLock;
+    private boolean fixpointRunning = false;
+
+    /**
+     * Transactions only containing inferred triples that were committed during the current round of a semi-naive
+     * fixpoint evaluation, see {@link #queueUncoveredTransactions(long, long)}.
+     */
+    private final List<TransactionData> fixpointTransactions = new ArrayList<>();
+
+    protected static Equivalence<Statement> equivalence = StatementCommons.quadrupleEquivalence();
 
     // for mocking
     protected ReasoningEngine() {
@@ -144,10 +168,12 @@ public class ReasoningEngine implements TransactionListener {
         this.persistence = persistence;
         this.store = store;
         this.config = config;
-        this.persistenceLock = new ReentrantLock();
 
         loadPrograms();
 
+        this.workers = Executors.newFixedThreadPool(Math.max(1, config.getWorkers()),
+                new ThreadFactoryBuilder().setNameFormat("SKWRL Worker %d").setDaemon(true).build());
+
         this.reasoningQueue = new LinkedBlockingQueue<>();
         this.reasonerThread = new SKWRLReasoner();
     }
@@ -172,6 +198,8 @@ public class ReasoningEngine implements TransactionListener {
             programs = Collections.emptyList();
             log.warn("cannot load reasoning programs, reasoning disabled (error message: {})", ex.getMessage());
         }
+
+        patternIndex = new PatternIndex(patternRuleMap.keySet());
     }
 
 
@@ -191,7 +219,7 @@ public class ReasoningEngine implements TransactionListener {
 
         try {
             updateTaskStatus("processing new rule ...");
-            processRule(rule, null, null);
+            processRule(rule, null, null, null);
 
         } catch(Exception ex) {
             log.error("error while processing rule",ex);
@@ -259,6 +287,23 @@ public class ReasoningEngine implements TransactionListener {
      */
     @Override
     public void afterCommit(TransactionData data) {
+        if(isInferredOnly(data)) {
+            synchronized (fixpointTransactions) {
+                if(fixpointRunning) {
+                    // checked against the delta of the next round of the fixpoint evaluation
+                    fixpointTransactions.add(data);
+                    return;
+                }
+            }
+        }
+
+        queueTransaction(data);
+    }
+
+    /**
+     * Add the transaction data to the queue of the reasoner thread for incremental reasoning.
+     */
+    private void queueTransaction(TransactionData data) {
         if( (data.getAddedTriples().size() > 0 || data.getRemovedTriples().size() > 0) && patternRuleMap.size() > 0) {
 
             reasoningQueue.remove(data);
@@ -394,6 +439,21 @@ public class ReasoningEngine implements TransactionListener {
         }
     }
 
+    /**
+     * Return true in case the transaction data only consists of added inferred triples.
+     */
+    private static boolean isInferredOnly(TransactionData data) {
+        if(data.getRemovedTriples().size() > 0) {
+            return false;
+        }
+        for(Statement stmt : data.getAddedTriples()) {
+            if(!((KiWiTriple)stmt).isInferred()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Clean all inferred triples and re-run all reasoning rules.
      */
@@ -447,36 +507,178 @@ public class ReasoningEngine implements TransactionListener {
         try {
             updateTaskStatus("processing rules ...");
 
-            //Set<Callable<Boolean>> tasks = new HashSet<Callable<Boolean>>();
+            if(config.isSemiNaiveEvaluation()) {
+                executeSemiNaive();
+            } else {
+                List<Callable<Void>> tasks = new ArrayList<>();
+                for(Program p : programs) {
+                    for(final Rule rule : p.getRules()) {
+                        tasks.add(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                startTask("Rule Processing", TASK_GROUP);
+                                updateTaskStatus("processing rule " + rule.getName() + " ...");
+                                try {
+                                    processRule(rule, null, null, null);
+                                } finally {
+                                    endTask();
+                                }
+                                return null;
+                            }
+                        });
+                    }
+                }
+                runTasks(tasks);
+            }
+        } catch(Exception ex) {
+            log.error("error while processing rules", ex);
+        }
+
+    }
+
+
+    /**
+     * Evaluate all rules semi-naively until a fixpoint is reached. In the first round, each rule is evaluated
+     * against all triples existing at the start of the round. In each following round, only rule instantiations
+     * that use at least one triple created in the previous round (the delta) are evaluated: for a rule body
+     * P1,...,Pn, the rule is evaluated n times, with Pi restricted to the delta, the patterns before Pi restricted
+     * to the triples existing before the previous round, and the patterns after Pi to all triples up to the end of
+     * the previous round. Each of these evaluations is a single SQL join restricted by triple id ranges. The
+     * evaluation terminates when a round does not create any new triples.
+     * <p/>
+     * Triple ids increase in the order the triples are created, not in the order they are committed. The triples
+     * inferred by a round are created and committed within that round and are therefore always in the delta, but
+     * triples committed concurrently by incremental reasoning may have been created before the round started. Such
+     * transactions are checked against the delta and queued for incremental reasoning if they are not covered (see
+     * {@link #queueUncoveredTransactions(long, long)}). Transactions committed by other KiWi instances sharing the
+     * same database are not seen by this engine; their triples are only considered if their ids fall into a range
+     * evaluated later.
+     */
+    private void executeSemiNaive() throws SQLException, SailException, ReasoningException {
+        synchronized (fixpointTransactions) {
+            fixpointRunning = true;
+        }
+        try {
+            long upper = getMaximumTripleId();
+            int round = 0;
+
+            // first round: evaluate all rules over the triples existing so far
+            List<Callable<Void>> tasks = new ArrayList<>();
             for(Program p : programs) {
-                for(final Rule rule : p.getRules()) {
-                    startTask("Rule Processing", TASK_GROUP);
-                    updateTaskStatus("processing rule " + rule.getName() + " ...");
-                    processRule(rule, null, null);
-                    endTask();
-                    // TODO: multithreading is currently not working reliably (some nodes might get inserted twice)
+                for(Rule rule : p.getRules()) {
+                    long[][] ranges = new long[rule.getBody().size()][];
+                    for(int i = 0; i < ranges.length; i++) {
+                        ranges[i] = new long[] {Long.MIN_VALUE, upper};
+                    }
+                    tasks.add(createRuleTask(rule, ranges));
+                }
+            }
 
-/*
-                    tasks.add(new Callable<Boolean>() {
-                        @Override
-                        public Boolean call() throws Exception {
-                            startTask("Rule Processing", TASK_GROUP);
-                            updateTaskStatus("processing rule " + rule.getName() + " ...");
-                            processRule(rule, null, null);
-                            endTask();
-                            return Boolean.TRUE;
+            while(tasks.size() > 0) {
+                round++;
+                updateTaskStatus("semi-naive evaluation, round " + round + " (" + tasks.size() + " rule evaluations) ...");
+                runTasks(tasks);
+
+                long lower = upper;
+                upper = getMaximumTripleId();
+
+                log.debug("REASONER: semi-naive evaluation round {} created triples with ids in ({},{}]", round, lower, upper);
+
+                queueUncoveredTransactions(lower, upper);
+
+                // next round: evaluate all rule instantiations involving at least one triple of the delta
+                tasks = new ArrayList<>();
+                if(upper > lower) {
+                    for(Program p : programs) {
+                        for(Rule rule : p.getRules()) {
+                            List<Pattern> body = rule.getBody();
+                            for(int i = 0; i < body.size(); i++) {
+                                long[][] ranges = new long[body.size()][];
+                                for(int j = 0; j < body.size(); j++) {
+                                    if(j < i) {
+                                        ranges[j] = new long[] {Long.MIN_VALUE, lower};
+                                    } else if(j > i) {
+                                        ranges[j] = new long[] {Long.MIN_VALUE, upper};
+                                    } else {
+                                        ranges[j] = new long[] {lower, upper};
+                                    }
+                                }
+                                tasks.add(createRuleTask(rule, ranges));
+                            }
                         }
-                    });
-*/
+                    }
                 }
             }
-            //workers.invokeAll(tasks);
-        } catch(Exception ex) {
-            log.error("error while processing rules", ex);
+
+            log.info("REASONER: semi-naive evaluation reached fixpoint after {} rounds", round);
+        } finally {
+            // transactions committed after the last round are not covered by the fixpoint evaluation
+            List<TransactionData> remaining;
+            synchronized (fixpointTransactions) {
+                fixpointRunning = false;
+                remaining = new ArrayList<>(fixpointTransactions);
+                fixpointTransactions.clear();
+            }
+            for(TransactionData data : remaining) {
+                queueTransaction(data);
+            }
+        }
+    }
+
+    /**
+     * Check the transactions collected during a round of the fixpoint evaluation against the delta (lower, upper]
+     * evaluated by the next round. Triples in the delta are marked as no longer new; transactions with other new
+     * triples are queued for incremental reasoning, which only considers these remaining triples.
+     *
+     * @param lower the maximum triple id before the round
+     * @param upper the maximum triple id after the round
+     */
+    private void queueUncoveredTransactions(long lower, long upper) {
+        List<TransactionData> collected;
+        synchronized (fixpointTransactions) {
+            collected = new ArrayList<>(fixpointTransactions);
+            fixpointTransactions.clear();
+        }
+
+        for(TransactionData data : collected) {
+            boolean covered = true;
+            for(Statement stmt : data.getAddedTriples()) {
+                KiWiTriple t = (KiWiTriple)stmt;
+                if(t.isNewTriple()) {
+                    if(t.getId() > lower && t.getId() <= upper) {
+                        t.setNewTriple(false);
+                    } else {
+                        covered = false;
+                    }
+                }
+            }
+            if(!covered) {
+                log.debug("REASONER: transaction {} committed during semi-naive evaluation contains triples outside of the delta, queueing it", data.getTransactionId());
+                queueTransaction(data);
+            }
         }
+    }
 
+    private Callable<Void> createRuleTask(final Rule rule, final long[][] ranges) {
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                processRule(rule, null, null, ranges);
+                return null;
+            }
+        };
     }
 
+    private long getMaximumTripleId() throws SQLException {
+        KiWiReasoningConnection connection = persistence.getConnection();
+        try {
+            long maxId = connection.getMaximumTripleId();
+            connection.commit();
+            return maxId;
+        } finally {
+            connection.close();
+        }
+    }
 
     /**
      * This method iterates over all triples that are passed as argument and
@@ -542,18 +744,100 @@ public class ReasoningEngine implements TransactionListener {
     private void processRules(final Set<KiWiTriple> addedTriples) throws SQLException, SailException, ReasoningException {
         updateTaskStatus("processing rules ...");
         // select the rules that have at least one matching pattern; the match method will
-        // return a set of variable bindings that we will be used to prepopulate the bindings
-        for(final Pattern pattern : patternRuleMap.keySet()) {
-            for(KiWiTriple triple : addedTriples) {
-                QueryResult match = matches(pattern,triple);
+        // return a set of variable bindings that we will be used to prepopulate the bindings;
+        // the pattern index restricts the patterns to test to those that can possibly match the triple
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(KiWiTriple triple : addedTriples) {
+            for(final Pattern pattern : patternIndex.getCandidates(triple)) {
+                final QueryResult match = matches(pattern,triple);
                 if(match != null) {
-                    for(Rule rule : patternRuleMap.get(pattern)) {
+                    for(final Rule rule : patternRuleMap.get(pattern)) {
                         log.debug("REASONER(rule '{}'): pattern {} matched with triple {}", rule.getName(), pattern.toString(), triple.toString());
-                        processRule(rule, match, pattern);
+                        tasks.add(new Callable<Void>() {
+                            @Override
+                            public Void call() throws Exception {
+                                processRule(rule, match, pattern, null);
+                                return null;
+                            }
+                        });
                     }
                 }
             }
         }
+        runTasks(tasks);
+    }
+
+    /**
+     * Run the rule evaluation tasks given as argument on the worker pool and wait for their completion. The first
+     * exception thrown by a task is rethrown after all tasks have finished.
+     *
+     * @param tasks
+     */
+    private void runTasks(List<Callable<Void>> tasks) throws SQLException, SailException, ReasoningException {
+        if(tasks.size() == 0) {
+            return;
+        }
+
+        Throwable error = null;
+        if(workers == null || tasks.size() == 1) {
+            // no worker pool configured or nothing to parallelize: evaluate in the calling thread
+            for(Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    error = e;
+                    break;
+                }
+            }
+        } else {
+            List<Future<Void>> results;
+            try {
+                results = workers.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                throw new ReasoningException("interrupted while waiting for rule evaluation", e);
+            }
+
+            for(Future<Void> result : results) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    throw new ReasoningException("interrupted while waiting for rule evaluation", e);
+                } catch (ExecutionException e) {
+                    if(error == null) {
+                        error = e.getCause();
+                    }
+                }
+            }
+        }
+
+        if(error instanceof SQLException) {
+            throw (SQLException) error;
+        } else if(error instanceof SailException) {
+            throw (SailException) error;
+        } else if(error instanceof ReasoningException) {
+            throw (ReasoningException) error;
+        } else if(error != null) {
+            throw new ReasoningException("error while evaluating rule", error);
+        }
+    }
+
+    /**
+     * Resolve the base justifications of a batch of justifications created by a rule evaluation, i.e. replace
+     * inferred supporting triples by their justifications.
+     */
+    private Set<Justification> resolveJustifications(KiWiReasoningConnection connection, Set<Justification> justifications) throws SQLException, ReasoningException {
+        log.debug("adding {} justifications",justifications.size());
+        updateTaskStatus("resolving justifications ...");
+
+        Set<Justification> baseJustifications = getBaseJustifications(connection,justifications);
+
+        if(config.isRemoveDuplicateJustifications()) {
+            removeDuplicateJustifications(connection,baseJustifications);
+        }
+
+        log.debug("{} justifications added after resolving inferred triples", baseJustifications.size());
+
+        return baseJustifications;
     }
 
     /**
@@ -563,17 +847,25 @@ public class ReasoningEngine implements TransactionListener {
      *
      * @param rule
      * @param match
+     * @param tripleIdRanges optional triple id ranges restricting the triples matched by the body patterns, by
+     *                       position of the pattern in the rule body
      */
-    private void processRule(Rule rule, QueryResult match, Pattern p) throws SQLException, SailException, ReasoningException {
+    private void processRule(Rule rule, QueryResult match, Pattern p, long[][] tripleIdRanges) throws SQLException, SailException, ReasoningException {
 
         // get the variable bindings for the rule evaluation
         log.debug("REASONER(rule '{}'): evaluating rule body {} ...", rule.getName() != null ? rule.getName() : rule.getId(), rule);
 
-        // create a collection consisting of the body minus the pattern that already matched
-        Set<Pattern> body = new HashSet<>(rule.getBody());
+        // create a collection consisting of the body minus the pattern that already matched; triple id ranges
+        // refer to the positions of the patterns in the body, so in this case the body is used as it is
+        Collection<Pattern> body;
+        if(tripleIdRanges != null) {
+            body = rule.getBody();
+        } else {
+            body = new HashSet<>(rule.getBody());
 
-        if(p != null) {
-            body.remove(p);
+            if(p != null) {
+                body.remove(p);
+            }
         }
 
         CloseableIteration<QueryResult, SQLException> bodyResult;
@@ -586,7 +878,7 @@ public class ReasoningEngine implements TransactionListener {
             // if there are further patterns, evaluate them; if the matched pattern was the only pattern, then
             // simply take the match as binding
             if(body.size() > 0) {
-                bodyResult = connection.query(body,match,null,null,true);
+                bodyResult = connection.query(body,match,null,null,true,tripleIdRanges);
             } else if(match != null) {
                 bodyResult = new SingletonIteration<>(match);
             } else {
@@ -648,63 +940,19 @@ public class ReasoningEngine implements TransactionListener {
                 justification.getSupportingTriples().addAll(row.getJustifications());
                 justifications.add(justification);
 
-                // when the batch size is reached, commit the transaction, save the justifications, and start a new
-                // transaction and new justification set
+                // when the batch size is reached, commit the transaction, collect the justifications, and start a
+                // new transaction and new justification set
                 if(++counter % config.getBatchSize() == 0) {
-                    persistenceLock.lock();
-
-                    try {
-
-                        sail.commit();
-
-                        log.debug("adding {} justifications",justifications.size());
-
-                        updateTaskStatus("storing justifications ...");
-                        Set<Justification> baseJustifications = getBaseJustifications(connection,justifications);
-
-                        if(config.isRemoveDuplicateJustifications()) {
-                            removeDuplicateJustifications(connection,baseJustifications);
-                        }
-
-                        log.debug("{} justifications added after resolving inferred triples", baseJustifications.size());
-
-                        // persist the justifications that have been created in the rule processing
-                        if(baseJustifications.size() > 0) {
-                            connection.storeJustifications(baseJustifications);
-                        }
-                        connection.commit();
-                        sail.begin();
-                    } finally {
-                        persistenceLock.unlock();
-                    }
+                    commitBatch(connection, sail, isail, justifications);
+                    sail.begin();
                     justifications.clear();
                 }
             }
 
-            persistenceLock.lock();
-            try {
-                sail.commit();
-
-                log.debug("adding {} justifications",justifications.size());
-                updateTaskStatus("storing justifications ...");
-                Set<Justification> baseJustifications = getBaseJustifications(connection,justifications);
-
-                if(config.isRemoveDuplicateJustifications()) {
-                    removeDuplicateJustifications(connection,baseJustifications);
-                }
-
-                // persist the justifications that have been created in the rule processing
-                if(baseJustifications.size() > 0) {
-                    connection.storeJustifications(baseJustifications);
-                }
+            commitBatch(connection, sail, isail, justifications);
 
-                log.debug("{} justifications added after resolving inferred triples", baseJustifications.size());
-
-                Iterations.closeCloseable(bodyResult);
-                connection.commit();
-            } finally {
-                persistenceLock.unlock();
-            }
+            Iterations.closeCloseable(bodyResult);
+            connection.commit();
         } catch(SailException | SQLException | ReasoningException ex) {
             log.error("REASONING ERROR: could not process rule, database state will be inconsistent! Message: {}",ex.getMessage());
             log.debug("Exception details:",ex);
@@ -719,6 +967,26 @@ public class ReasoningEngine implements TransactionListener {
 
     }
 
+    /**
+     * Commit the inferred triples of a batch together with their justifications: the triples are written to the
+     * database connection of the sail transaction, and the justifications are stored in the same database
+     * transaction, so that inferred triples never become visible (or survive a crash) without their justifications,
+     * where they could be removed by cleanupUnsupported().
+     */
+    private void commitBatch(KiWiReasoningConnection connection, SailConnection sail, KiWiSailConnection isail, Set<Justification> justifications) throws SQLException, SailException, ReasoningException {
+        Set<Justification> baseJustifications = resolveJustifications(connection, justifications);
+
+        if(baseJustifications.size() > 0) {
+            updateTaskStatus("storing justifications ...");
+
+            // the justifications reference the inferred triples, so these need to be written first
+            KiWiConnection database = isail.getDatabaseConnection();
+            database.flushBatch();
+            KiWiReasoningConnection.storeJustifications(database, baseJustifications);
+        }
+        sail.commit();
+    }
+
     /**
      * Return the justifications for the triple passed as argument.
      * @param t
@@ -926,6 +1194,10 @@ public class ReasoningEngine implements TransactionListener {
             reasonerThread.shutdown(false);
         }
 
+        if(workers != null) {
+            workers.shutdownNow();
+        }
+
         isshutdown = true;
     }
 
@@ -590,11 +590,23 @@ public class KiWiReasoningConnection extends KiWiConnection {
      * @throws SQLException
      */
     public void storeJustifications(Iterable<Justification> justifications) throws SQLException {
-        requireJDBCConnection();
+        storeJustifications(this, justifications);
+    }
+
+    /**
+     * Store a collection of new justifications using the database connection given as argument, e.g. in the same
+     * transaction as the inferred triples they justify. The triples need to be written to the connection before.
+     *
+     * @param connection the connection to store the justifications in; it is not committed
+     * @param justifications
+     * @throws SQLException
+     */
+    public static void storeJustifications(KiWiConnection connection, Iterable<Justification> justifications) throws SQLException {
+        connection.getJDBCConnection();
 
-        PreparedStatement insertJustification = getPreparedStatement("justifications.insert");
-        PreparedStatement justificationAddTriple = getPreparedStatement("justifications.add_triple");
-        PreparedStatement justificationAddRule   = getPreparedStatement("justifications.add_rule");
+        PreparedStatement insertJustification = connection.getPreparedStatement("justifications.insert");
+        PreparedStatement justificationAddTriple = connection.getPreparedStatement("justifications.add_triple");
+        PreparedStatement justificationAddRule   = connection.getPreparedStatement("justifications.add_rule");
 
         synchronized (insertJustification) {
             insertJustification.clearBatch();
@@ -605,7 +617,7 @@ public class KiWiReasoningConnection extends KiWiConnection {
                 if(j.getId() >= 0) {
                     log.warn("justification is already stored in database, not persisting again (database ID: {})", j.getId());
                 } else {
-                    j.setId(getNextSequence());
+                    j.setId(connection.getNextSequence());
                     j.setCreatedAt(new Date());
 
                     // insert an entry to the reasoner_justifications table
@@ -892,6 +904,27 @@ public class KiWiReasoningConnection extends KiWiConnection {
 
 
 
+    /**
+     * Return the highest triple id currently used in the triple store, or 0 if the triple store is empty. Triple ids
+     * are generated in increasing order, so triples created after calling this method will usually have a higher
+     * id; a triple created before but committed after the call may however have a lower id.
+     *
+     * @return the maximum triple id
+     * @throws SQLException
+     */
+    public long getMaximumTripleId() throws SQLException {
+        requireJDBCConnection();
+
+        PreparedStatement queryMaxId = getPreparedStatement("reasoner.max_triple_id");
+        try (ResultSet result = queryMaxId.executeQuery()) {
+            if(result.next()) {
+                return result.getLong(1);
+            } else {
+                return 0;
+            }
+        }
+    }
+
     /**
      * Evaluate a query on the triple store. The query parameters passed to the method call are
      * translated into database queries in HQL and directly evaluated by a single database
@@ -915,6 +948,21 @@ public class KiWiReasoningConnection extends KiWiConnection {
      *         variables and offset and limited by the parameters given
      */
     public CloseableIteration<QueryResult, SQLException> query(final Collection<Pattern> patterns, final QueryResult initialBindings, Set<Filter> filters, List<VariableField> orderBy, final boolean justifications) throws SQLException {
+        return query(patterns, initialBindings, filters, orderBy, justifications, null);
+    }
+
+    /**
+     * Evaluate a query like query(patterns, initialBindings, filters, orderBy, justifications), but restrict the
+     * triples matching some of the patterns to a range of triple ids. This is used by the semi-naive fixpoint
+     * evaluation of the reasoner, where one pattern of a rule body is restricted to the triples inferred in the
+     * previous round (the delta) and the other patterns to the triples that existed before resp. after that round.
+     *
+     * @param tripleIdRanges  id ranges {lower, upper} by position of the pattern in the iteration order of patterns;
+     *                        a triple matches the pattern only if lower &lt; id &lt;= upper; a lower bound of
+     *                        Long.MIN_VALUE means the range is not bounded from below; patterns with a null range
+     *                        are not restricted
+     */
+    public CloseableIteration<QueryResult, SQLException> query(final Collection<Pattern> patterns, final QueryResult initialBindings, Set<Filter> filters, List<VariableField> orderBy, final boolean justifications, long[][] tripleIdRanges) throws SQLException {
         requireJDBCConnection();
 
         if(filters != null) {
@@ -925,12 +973,11 @@ public class KiWiReasoningConnection extends KiWiConnection {
         String[] positions = new String[] {"subject","predicate","object","context"};
 
 
-        // associate a name with each pattern; the names are used in the database query to refer to the triple
-        // that matched this pattern and in the construction of variable names for the HQL query
-        int patternCount = 0;
-        final Map<Pattern,String> patternNames = new HashMap<>();
-        for(Pattern p : patterns) {
-            patternNames.put(p,"P"+ (++patternCount));
+        // associate a name with each pattern position; the names are used in the database query to refer to the
+        // triple that matched this pattern and in the construction of variable names for the HQL query
+        final List<String> patternNames = new ArrayList<>(patterns.size());
+        for(int i = 0; i < patterns.size(); i++) {
+            patternNames.add("P"+ (i+1));
         }
 
         // find all variables occurring in the patterns and create a map to map them to
@@ -946,7 +993,9 @@ public class KiWiReasoningConnection extends KiWiConnection {
         // depending on the number of patterns it occurs in; will look like
         // { ?x -> ["P1_V1", "P2_V1"], ?y -> ["P2_V2"], ... }
         Map<VariableField,List<String>> queryVariables = new HashMap<>();
+        int patternIndex = 0;
         for(Pattern p : patterns) {
+            String pName = patternNames.get(patternIndex++);
             Field[] fields = new Field[] {
                     p.getSubject(),
                     p.getProperty(),
@@ -960,7 +1009,6 @@ public class KiWiReasoningConnection extends KiWiConnection {
                         variableNames.put(v,"V"+ (++variableCount));
                         queryVariables.put(v,new LinkedList<String>());
                     }
-                    String pName = patternNames.get(p);
                     String vName = variableNames.get(v);
                     queryVariables.get(v).add(pName + "_" + positions[i] + "_" + vName);
                 }
@@ -984,13 +1032,13 @@ public class KiWiReasoningConnection extends KiWiConnection {
         }
         if(justifications) {
             // project also the ids of triples that have matched; we use it for building justifications
-            for (Pattern p : patterns) {
+            for (String pName : patternNames) {
                 if (selectClause.length() > 0) {
                     selectClause.append(", ");
                 }
-                selectClause.append(patternNames.get(p));
+                selectClause.append(pName);
                 selectClause.append(".id as ");
-                selectClause.append(patternNames.get(p));
+                selectClause.append(pName);
             }
         }
 
@@ -1005,9 +1053,10 @@ public class KiWiReasoningConnection extends KiWiConnection {
         //    - object, there will be a "inner join P.object as P_O_V" or "left outer join p.object as P_O_V"
         //    - context, there will be a "inner join P.context as P_C_V" or "left outer join p.context as P_C_V"
         StringBuilder fromClause = new StringBuilder();
+        patternIndex = 0;
         for(Iterator<Pattern> it = patterns.iterator(); it.hasNext(); ) {
             Pattern p = it.next();
-            String pName = patternNames.get(p);
+            String pName = patternNames.get(patternIndex++);
             fromClause.append("triples ").append(pName);
 
             Field[] fields = new Field[] {
@@ -1046,8 +1095,9 @@ public class KiWiReasoningConnection extends KiWiConnection {
         // 1. iterate over all patterns and for each resource and literal field in subject,
         //    property, object, or context, and set a query condition according to the
         //    nodes given in the pattern
+        patternIndex = 0;
         for(Pattern p : patterns) {
-            String pName = patternNames.get(p);
+            String pName = patternNames.get(patternIndex++);
             Field[] fields = new Field[] {
                     p.getSubject(),
                     p.getProperty(),
@@ -1095,11 +1145,24 @@ public class KiWiReasoningConnection extends KiWiConnection {
         }
 
         // 4. for each pattern, ensure that the matched triple is not marked as deleted
-        for(Pattern p : patterns) {
-            String pName = patternNames.get(p);
+        for(String pName : patternNames) {
             whereConditions.add(pName+".deleted = false");
         }
 
+        // 5. for each pattern with a triple id range, restrict the matched triple to this range
+        if(tripleIdRanges != null) {
+            for(int i = 0; i < patternNames.size() && i < tripleIdRanges.length; i++) {
+                long[] range = tripleIdRanges[i];
+                if(range != null) {
+                    String pName = patternNames.get(i);
+                    if(range[0] != Long.MIN_VALUE) {
+                        whereConditions.add(pName+".id > "+range[0]);
+                    }
+                    whereConditions.add(pName+".id <= "+range[1]);
+                }
+            }
+        }
+
         // construct the where clause
         StringBuilder whereClause = new StringBuilder();
         for(Iterator<String> it = whereConditions.iterator(); it.hasNext(); ) {
@@ -1153,8 +1216,8 @@ public class KiWiReasoningConnection extends KiWiConnection {
                 }
 
                 if (justifications) {
-                    for (Pattern p : patterns) {
-                        resultRow.getJustifications().add(loadTripleById(row.getLong(patternNames.get(p))));
+                    for (String pName : patternNames) {
+                        resultRow.getJustifications().add(loadTripleById(row.getLong(pName)));
                     }
                 }
 
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.reasoner.test.engine;
+
+import org.apache.marmotta.kiwi.model.rdf.KiWiStringLiteral;
+import org.apache.marmotta.kiwi.model.rdf.KiWiTriple;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.reasoner.engine.PatternIndex;
+import org.apache.marmotta.kiwi.reasoner.model.program.LiteralField;
+import org.apache.marmotta.kiwi.reasoner.model.program.Pattern;
+import org.apache.marmotta.kiwi.reasoner.model.program.ResourceField;
+import org.apache.marmotta.kiwi.reasoner.model.program.VariableField;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+/**
+ * Test the selection of candidate patterns for triples by the PatternIndex.
+ */
+public class PatternIndexTest {
+
+    private KiWiUriResource s1, s2, p1, p2, o1, o2;
+
+    private Pattern typeP1O1, predP1, subjS1, objO1, all, literalP2, subjP1S2;
+
+    private PatternIndex index;
+
+    @Before
+    public void setup() {
+        s1 = new KiWiUriResource("http://localhost/s1");
+        s2 = new KiWiUriResource("http://localhost/s2");
+        p1 = new KiWiUriResource("http://localhost/p1");
+        p2 = new KiWiUriResource("http://localhost/p2");
+        o1 = new KiWiUriResource("http://localhost/o1");
+        o2 = new KiWiUriResource("http://localhost/o2");
+
+        VariableField x = new VariableField("x");
+        VariableField y = new VariableField("y");
+        VariableField z = new VariableField("z");
+
+        typeP1O1  = new Pattern(x, new ResourceField(p1), new ResourceField(o1));
+        predP1    = new Pattern(x, new ResourceField(p1), y);
+        subjP1S2  = new Pattern(new ResourceField(s2), new ResourceField(p1), y);
+        subjS1    = new Pattern(new ResourceField(s1), y, z);
+        objO1     = new Pattern(x, y, new ResourceField(o1));
+        all       = new Pattern(x, y, z);
+        literalP2 = new Pattern(x, new ResourceField(p2), new LiteralField(new KiWiStringLiteral("foo")));
+
+        index = new PatternIndex();
+        index.add(typeP1O1);
+        index.add(predP1);
+        index.add(subjP1S2);
+        index.add(subjS1);
+        index.add(objO1);
+        index.add(all);
+        index.add(literalP2);
+    }
+
+    @Test
+    public void testPredicateAndObject() {
+        List<Pattern> candidates = index.getCandidates(new KiWiTriple(s1, p1, o1, null));
+
+        Assert.assertThat(candidates, containsInAnyOrder(typeP1O1, predP1, subjS1, objO1, all));
+    }
+
+    @Test
+    public void testPredicateAndSubject() {
+        List<Pattern> candidates = index.getCandidates(new KiWiTriple(s2, p1, o2, null));
+
+        Assert.assertThat(candidates, containsInAnyOrder(predP1, subjP1S2, all));
+    }
+
+    @Test
+    public void testLiteralObject() {
+        Assert.assertThat(index.getCandidates(new KiWiTriple(s2, p2, new KiWiStringLiteral("foo"), null)), containsInAnyOrder(literalP2, all));
+        Assert.assertThat(index.getCandidates(new KiWiTriple(s2, p2, new KiWiStringLiteral("bar"), null)), contains(all));
+    }
+
+    @Test
+    public void testSize() {
+        Assert.assertEquals(7, index.size());
+    }
+}
@@ -23,6 +23,7 @@ import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.Iterations;
 
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
@@ -41,6 +42,7 @@ import org.apache.marmotta.kiwi.reasoner.parser.KWRLProgramParser;
 import org.apache.marmotta.kiwi.reasoner.parser.KWRLProgramParserBase;
 import org.apache.marmotta.kiwi.reasoner.persistence.KiWiReasoningConnection;
 import org.apache.marmotta.kiwi.reasoner.persistence.KiWiReasoningPersistence;
+import org.apache.marmotta.kiwi.sail.KiWiSailConnection;
 import org.apache.marmotta.kiwi.sail.KiWiStore;
 import org.apache.marmotta.kiwi.test.junit.KiWiDatabaseRunner;
 import org.junit.After;
@@ -58,6 +60,7 @@ import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryResult;
 import org.openrdf.repository.sail.SailRepository;
 import org.openrdf.rio.RDFFormat;
+import org.openrdf.sail.SailException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -416,6 +419,199 @@ public class ReasoningEngineTest {
     }
 
 
+    /**
+     * Test incremental reasoning over a transitive chain with several workers and a small batch size, so that rule
+     * evaluations running in parallel use inferred triples whose justifications are collected by other workers and
+     * not yet stored. All inferred triples must be justified in the end.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testParallelIncrementalReasoning() throws Exception {
+        final int length = 12;
+
+        engine.shutdown(true);
+
+        ReasoningConfiguration rconfig = new ReasoningConfiguration();
+        rconfig.setWorkers(4);
+        rconfig.setBatchSize(2);
+        engine = new ReasoningEngine(rpersistence,tsail,rconfig);
+        tsail.addTransactionListener(engine);
+
+        RepositoryConnection con = repository.getConnection();
+        KiWiReasoningConnection rcon = rpersistence.getConnection();
+        try {
+            URI t = con.getValueFactory().createURI(NS+"transitive");
+
+            con.begin();
+            for(int i = 0; i < length - 1; i++) {
+                con.add(con.getValueFactory().createURI(NS+"n"+i), t, con.getValueFactory().createURI(NS+"n"+(i+1)));
+            }
+            con.commit();
+
+            // wait for reasoning to complete
+            while(engine.isRunning()) {
+                log.debug("sleeping for 100ms to let engine finish processing ... ");
+                Thread.sleep(100);
+            }
+
+            con.begin();
+            for(int i = 0; i < length; i++) {
+                for(int j = i + 2; j < length; j++) {
+                    Resource ni = con.getValueFactory().createURI(NS+"n"+i);
+                    Resource nj = con.getValueFactory().createURI(NS+"n"+j);
+                    Assert.assertTrue("expected inferred triple not found", con.hasStatement(ni,t,nj,true));
+                }
+            }
+
+            List<Statement> inferred = Iterations.asList(con.getStatements(null, t, null, true, con.getValueFactory().createURI(store.getInferredContext())));
+            Assert.assertEquals("number of inferred triples differs from expected result", (length - 1) * (length - 2) / 2, inferred.size());
+            for(Statement stmt : inferred) {
+                Assert.assertFalse("inferred triple " + stmt + " is not justified", Iterations.asList(rcon.listJustificationsForTriple((KiWiTriple) stmt)).isEmpty());
+            }
+            Assert.assertTrue("unsupported triples exist", Iterations.asList(rcon.listUnsupportedTriples()).isEmpty());
+            con.commit();
+            rcon.commit();
+        } finally {
+            tsail.removeTransactionListener(engine);
+            con.close();
+            rcon.close();
+        }
+    }
+
+
+    /**
+     * Test running a full reasoning in semi-naive evaluation mode. Since the evaluation iterates until a fixpoint
+     * is reached, we also expect triples that involve chaining of the transitive rule.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSemiNaiveReasoning() throws Exception {
+        engine.shutdown(true);
+
+        ReasoningConfiguration rconfig = new ReasoningConfiguration();
+        rconfig.setSemiNaiveEvaluation(true);
+        engine = new ReasoningEngine(rpersistence,tsail,rconfig);
+
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+
+            Resource a   = con.getValueFactory().createURI(NS+"a");
+            Resource b   = con.getValueFactory().createURI(NS+"b");
+            Resource c   = con.getValueFactory().createURI(NS+"c");
+            Resource d   = con.getValueFactory().createURI(NS+"d");
+            URI      t   = con.getValueFactory().createURI(NS+"transitive");
+            URI      s   = con.getValueFactory().createURI(NS+"symmetric");
+
+            con.add(this.getClass().getResourceAsStream("simple.ttl"),"http://localhost/resource/", RDFFormat.TURTLE);
+            con.commit();
+
+            // run the full reasoner; semi-naive evaluation only returns once the fixpoint is reached
+            engine.reRunPrograms();
+
+            con.begin();
+
+            Assert.assertTrue("expected inferred triple not found", con.hasStatement(a,t,c,true));
+            Assert.assertTrue("expected inferred triple not found", con.hasStatement(b,t,d,true));
+            Assert.assertTrue("expected inferred triple not found", con.hasStatement(a,t,d,true));
+            Assert.assertTrue("expected inferred triple not found", con.hasStatement(b,s,a,true));
+            Assert.assertTrue("expected inferred triple not found", con.hasStatement(a,s,b,true));
+
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+
+    /**
+     * Test an inferred triple that is committed during a semi-naive evaluation by a concurrent transaction, but was
+     * created before the evaluation started. Its id is therefore lower than the ids of the triples inferred in the
+     * meantime and outside of the delta of the round after its commit, so it has to be processed by incremental
+     * reasoning.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testSemiNaiveConcurrentTransaction() throws Exception {
+        engine.shutdown(true);
+
+        final Resource a   = repository.getValueFactory().createURI(NS+"a");
+        final Resource b   = repository.getValueFactory().createURI(NS+"b");
+        final Resource d   = repository.getValueFactory().createURI(NS+"d");
+        final URI      t   = repository.getValueFactory().createURI(NS+"transitive");
+
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            con.add(this.getClass().getResourceAsStream("simple.ttl"),"http://localhost/resource/", RDFFormat.TURTLE);
+            // the inferred context must exist before the concurrent transaction creates its triple
+            con.getValueFactory().createURI(store.getInferredContext());
+            con.commit();
+
+            con.begin();
+            final KiWiTriple support = (KiWiTriple) Iterations.asList(con.getStatements(a, t, b, false)).get(0);
+            con.commit();
+
+            // the concurrent transaction creates the triple (d transitive a) before the evaluation starts
+            final KiWiSailConnection icon = (KiWiSailConnection) store.getConnection();
+            icon.begin();
+            final KiWiTriple concurrent = icon.addInferredStatement(d, t, a);
+
+            ReasoningConfiguration rconfig = new ReasoningConfiguration();
+            rconfig.setSemiNaiveEvaluation(true);
+            engine = new ReasoningEngine(rpersistence,tsail,rconfig) {
+                @Override
+                protected void updateTaskStatus(String message) {
+                    if(message.startsWith("semi-naive evaluation, round 3 ")) {
+                        // commit when the delta only contains the triples inferred in round 2
+                        try {
+                            icon.commit();
+                            icon.close();
+
+                            KiWiReasoningConnection rcon = rpersistence.getConnection();
+                            try {
+                                Justification j = new Justification();
+                                j.setTriple(concurrent);
+                                j.getSupportingTriples().add(support);
+                                j.getSupportingRules().add(rcon.loadProgram("simple").getRules().get(0));
+                                rcon.storeJustifications(Collections.singleton(j));
+                                rcon.commit();
+                            } finally {
+                                rcon.close();
+                            }
+                        } catch (SailException | SQLException e) {
+                            throw new IllegalStateException(e);
+                        }
+
+                        TransactionData data = new TransactionData();
+                        data.getAddedTriples().add(concurrent);
+                        afterCommit(data);
+                    }
+                }
+            };
+
+            engine.reRunPrograms();
+
+            // wait for incremental reasoning over the concurrent transaction to complete
+            while(engine.isRunning()) {
+                log.debug("sleeping for 100ms to let engine finish processing ... ");
+                Thread.sleep(100);
+            }
+
+            con.begin();
+            Assert.assertTrue("concurrent transaction was not committed during the evaluation", con.hasStatement(d,t,a,true));
+            // (d transitive a), (a transitive b) are both outside of the delta of all rounds after the commit
+            Assert.assertTrue("expected inferred triple not found", con.hasStatement(d,t,b,true));
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+
     /**
      * Test adding and removing rules to an already inferred state of the triple store. When a rule is added, all
      * possible new inferences should be added to the inferred triples. When a rule is removed, all inferences
@@ -19,9 +19,7 @@ package org.apache.marmotta.kiwi.sparql.builder;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
-import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
 import org.apache.marmotta.kiwi.persistence.KiWiDialect;
-import org.apache.marmotta.kiwi.sail.KiWiValueFactory;
 import org.apache.marmotta.kiwi.sparql.builder.collect.*;
 import org.apache.marmotta.kiwi.sparql.builder.eval.ValueExpressionEvaluator;
 import org.apache.marmotta.kiwi.sparql.builder.model.SQLAbstractSubquery;
@@ -119,7 +117,10 @@ public class SQLBuilder {
 
     private Dataset dataset;
 
-    private ValueConverter converter;
+    /**
+     * The node constants of the query, added to the SQL as parameters instead of inlining their database ids.
+     */
+    private SQLParameters parameters;
 
     private KiWiDialect dialect;
 
@@ -132,18 +133,13 @@ public class SQLBuilder {
      * @param bindings
      * @param dataset
      */
-    public SQLBuilder(TupleExpr query, BindingSet bindings, Dataset dataset, final KiWiValueFactory valueFactory, KiWiDialect dialect, Set<String> projectedVars) throws UnsatisfiableQueryException {
-        this(query, bindings, dataset, new ValueConverter() {
-            @Override
-            public KiWiNode convert(Value value) {
-                return valueFactory.convert(value);
-            }
-        }, dialect, projectedVars);
+    public SQLBuilder(TupleExpr query, BindingSet bindings, Dataset dataset, KiWiDialect dialect, Set<String> projectedVars) throws UnsatisfiableQueryException {
+        this(query, bindings, dataset, new SQLParameters(), dialect, projectedVars);
     }
 
 
-    public SQLBuilder(TupleExpr query, BindingSet bindings, Dataset dataset, ValueConverter converter, KiWiDialect dialect, Set<String> projectedVars) throws UnsatisfiableQueryException {
-        this(query,bindings, dataset, converter, dialect, "", projectedVars, new HashMap<String, SQLVariable>());
+    public SQLBuilder(TupleExpr query, BindingSet bindings, Dataset dataset, SQLParameters parameters, KiWiDialect dialect, Set<String> projectedVars) throws UnsatisfiableQueryException {
+        this(query,bindings, dataset, parameters, dialect, "", projectedVars, new HashMap<String, SQLVariable>());
     }
 
     /**
@@ -152,11 +148,11 @@ public class SQLBuilder {
      * @param bindings
      * @param dataset
      */
-    public SQLBuilder(TupleExpr query, BindingSet bindings, Dataset dataset, ValueConverter converter, KiWiDialect dialect, String prefix, Set<String> projectedVars, Map<String,SQLVariable> variables) throws UnsatisfiableQueryException {
+    public SQLBuilder(TupleExpr query, BindingSet bindings, Dataset dataset, SQLParameters parameters, KiWiDialect dialect, String prefix, Set<String> projectedVars, Map<String,SQLVariable> variables) throws UnsatisfiableQueryException {
         this.query = query;
         this.bindings = bindings;
         this.dataset = dataset;
-        this.converter = converter;
+        this.parameters = parameters;
         this.dialect = dialect;
         this.projectedVars = projectedVars;
         this.prefix = prefix;
@@ -169,8 +165,12 @@ public class SQLBuilder {
         return variables;
     }
 
-    public ValueConverter getConverter() {
-        return converter;
+    /**
+     * Return the node constants of the query; the SQL returned by build() contains markers for the constants that
+     * need to be replaced by JDBC parameters with SQLParameters.parameterize().
+     */
+    public SQLParameters getParameters() {
+        return parameters;
     }
 
     public KiWiDialect getDialect() {
@@ -194,7 +194,7 @@ public class SQLBuilder {
 
 
         // collect all patterns in a list, using depth-first search over the join
-        PatternCollector pc = new PatternCollector(query, bindings, dataset, converter, dialect, projectedVars, prefix);
+        PatternCollector pc = new PatternCollector(query, bindings, dataset, parameters, dialect, projectedVars, prefix);
 
         fragments = pc.parts;
 
@@ -231,7 +231,7 @@ public class SQLBuilder {
                         sv.setProjectionType(ValueType.NODE);
                     }
 
-                    sv.addExpression(""+ converter.convert(v.getValue()).getId());
+                    sv.addExpression(parameters.getNodeId(v.getValue()));
 
                     addVariable(sv);
                 }
@@ -516,16 +516,9 @@ public class SQLBuilder {
                 String pName = p.getName();
                 Var[] fields = p.getFields();
                 for (int i = 0; i < fields.length; i++) {
-                    // find node id of the resource or literal field and use it in the where clause
-                    // in this way we can avoid setting too many query parameters
-                    long nodeId = -1;
+                    // the node id of the resource or literal field is a parameter of the where clause
                     if (fields[i] != null && fields[i].hasValue()) {
-                        Value v = converter.convert(fields[i].getValue());
-                        nodeId = ((KiWiNode) v).getId();
-
-                        if (nodeId >= 0) {
-                            p.addCondition(pName + "." + positions[i] + " = " + nodeId);
-                        }
+                        p.addCondition(pName + "." + positions[i] + " = " + parameters.getNodeId(fields[i].getValue()));
                     }
                 }
             }
@@ -544,10 +537,7 @@ public class SQLBuilder {
                     StringBuilder cCond = new StringBuilder();
                     cCond.append("(");
                     for (Iterator<Resource> it = p.getVariableContexts().iterator(); it.hasNext(); ) {
-                        Value v = converter.convert(it.next());
-                        long nodeId = ((KiWiNode) v).getId();
-
-                        cCond.append(varName).append(".context = ").append(nodeId);
+                        cCond.append(varName).append(".context = ").append(parameters.getNodeId(it.next()));
 
                         if (it.hasNext()) {
                             cCond.append(" OR ");
@@ -694,8 +684,7 @@ public class SQLBuilder {
                 if(sv != null && sv.hasExpressions()) {
                     List<String> vNames = sv.getExpressions();
                     String vName = vNames.get(0);
-                    Value binding = converter.convert(bindings.getValue(v));
-                    whereConditions.add(vName+" = "+((KiWiNode)binding).getId());
+                    whereConditions.add(vName+" = "+parameters.getNodeId(bindings.getValue(v)));
                 }
             }
         }
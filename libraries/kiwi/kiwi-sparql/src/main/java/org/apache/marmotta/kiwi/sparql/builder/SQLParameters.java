@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.builder;
+
+import org.openrdf.model.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The node constants of a SQL query constructed by the SQLBuilder. Instead of inlining the database ids of nodes
+ * into the query, the builder inserts a marker for each constant value. The markers are replaced by JDBC parameters
+ * with parameterize(), and the node ids are looked up and bound each time the query is executed, so the SQL string
+ * of a query never depends on node ids.
+ * <p/>
+ * An instance is shared by the builder of a query and the builders of all its subqueries.
+ */
+public class SQLParameters {
+
+    // markers are enclosed in a control character, which does not occur in SQL generated from SPARQL names
+    private static final char MARKER = '\u0001';
+
+    private List<Value> values = new ArrayList<>();
+
+    private Map<Value,Integer> indexes = new HashMap<>();
+
+    /**
+     * Return the SQL expression representing the database id of the node with the given value.
+     */
+    public String getNodeId(Value value) {
+        Integer index = indexes.get(value);
+        if(index == null) {
+            index = values.size();
+            values.add(value);
+            indexes.put(value, index);
+        }
+        return MARKER + Integer.toString(index) + MARKER;
+    }
+
+    /**
+     * Return the values of all constants added to the query so far.
+     */
+    public List<Value> getValues() {
+        return values;
+    }
+
+    /**
+     * Replace the constant markers in a SQL string built with these parameters by JDBC parameters ('?'). The list
+     * given as argument receives the value of each JDBC parameter in the order of their occurrence in the string.
+     *
+     * @param sql        SQL string containing markers added by getNodeId()
+     * @param parameters the values of the JDBC parameters of the returned query
+     * @return the SQL string with JDBC parameters
+     */
+    public String parameterize(CharSequence sql, List<Value> parameters) {
+        StringBuilder result = new StringBuilder(sql.length());
+        for(int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if(c == MARKER) {
+                int end = i + 1;
+                while (end < sql.length() && Character.isDigit(sql.charAt(end))) {
+                    end++;
+                }
+                if(end > i + 1 && end < sql.length() && sql.charAt(end) == MARKER) {
+                    parameters.add(values.get(Integer.parseInt(sql.subSequence(i + 1, end).toString())));
+                    result.append('?');
+                    i = end;
+                    continue;
+                }
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+}
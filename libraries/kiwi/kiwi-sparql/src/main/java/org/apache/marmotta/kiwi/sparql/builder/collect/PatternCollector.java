@@ -18,7 +18,7 @@
 package org.apache.marmotta.kiwi.sparql.builder.collect;
 
 import org.apache.marmotta.kiwi.persistence.KiWiDialect;
-import org.apache.marmotta.kiwi.sparql.builder.ValueConverter;
+import org.apache.marmotta.kiwi.sparql.builder.SQLParameters;
 import org.apache.marmotta.kiwi.sparql.builder.model.SQLFragment;
 import org.apache.marmotta.kiwi.sparql.builder.model.SQLPattern;
 import org.apache.marmotta.kiwi.sparql.builder.model.SQLSubQuery;
@@ -44,15 +44,15 @@ public class PatternCollector extends QueryModelVisitorBase<RuntimeException> {
 
     private BindingSet bindings;
     private Dataset dataset;
-    private ValueConverter converter;
+    private SQLParameters parameters;
     private KiWiDialect dialect;
     private Set<String> projectedVars;
     private String prefix;
 
-    public PatternCollector(TupleExpr expr, BindingSet bindings, Dataset dataset, ValueConverter converter, KiWiDialect dialect, Set<String> projectedVars, String prefix) {
+    public PatternCollector(TupleExpr expr, BindingSet bindings, Dataset dataset, SQLParameters parameters, KiWiDialect dialect, Set<String> projectedVars, String prefix) {
         this.bindings = bindings;
         this.dataset = dataset;
-        this.converter = converter;
+        this.parameters = parameters;
         this.dialect = dialect;
         this.projectedVars = projectedVars;
         this.prefix  = prefix;
@@ -94,7 +94,7 @@ public class PatternCollector extends QueryModelVisitorBase<RuntimeException> {
     public void meet(Union node) throws RuntimeException {
         // unions are treated as subqueries, don't continue collection, but add the Union to the last part
 
-        final SQLUnion union = new SQLUnion(prefix + "U" + (++counter), node, bindings, dataset, converter, dialect);
+        final SQLUnion union = new SQLUnion(prefix + "U" + (++counter), node, bindings, dataset, parameters, dialect);
         parts.getLast().getSubqueries().add(union);
     }
 
@@ -103,7 +103,7 @@ public class PatternCollector extends QueryModelVisitorBase<RuntimeException> {
         // subqueries are represented with a projection inside a JOIN; we don't continue collection
 
         parts.getLast().getSubqueries().add(new SQLSubQuery(prefix + "S" + (++counter),
-                                            node, bindings, dataset, converter, dialect, projectedVars));
+                                            node, bindings, dataset, parameters, dialect, projectedVars));
     }
 
     @Override
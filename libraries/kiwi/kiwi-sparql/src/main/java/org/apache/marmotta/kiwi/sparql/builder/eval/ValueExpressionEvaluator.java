@@ -21,7 +21,6 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.marmotta.commons.util.DateUtils;
-import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
 import org.apache.marmotta.kiwi.sparql.builder.SQLBuilder;
 import org.apache.marmotta.kiwi.sparql.builder.ValueType;
 import org.apache.marmotta.kiwi.sparql.builder.collect.OPTypeFinder;
@@ -130,7 +129,7 @@ public class ValueExpressionEvaluator extends QueryModelVisitorBase<RuntimeExcep
         // TODO: need to make sure that variables of the parent are visible in the subquery
         //       - pattern names need to be unique even in subqueries
         //       - variable lookup for expressions in the subquery need to refer to the parent
-        SQLBuilder sq_builder = new SQLBuilder(node.getSubQuery(), parent.getBindings(), parent.getDataset(), parent.getConverter(), parent.getDialect(), "_", Collections.EMPTY_SET, copyVariables(parent.getVariables()));
+        SQLBuilder sq_builder = new SQLBuilder(node.getSubQuery(), parent.getBindings(), parent.getDataset(), parent.getParameters(), parent.getDialect(), "_", Collections.EMPTY_SET, copyVariables(parent.getVariables()));
 
         builder.append("EXISTS (").append(sq_builder.build()).append(")");
     }
@@ -654,8 +653,7 @@ public class ValueExpressionEvaluator extends QueryModelVisitorBase<RuntimeExcep
                 // in this case we should return a node ID and also need to make sure it actually exists
                 case TERM:
                 case NODE:
-                    KiWiNode n = parent.getConverter().convert(node.getValue());
-                    builder.append(n.getId());
+                    builder.append(parent.getParameters().getNodeId(node.getValue()));
                     break;
 
                 default: throw new IllegalArgumentException("unsupported value type: " + optypes.peek());
@@ -19,7 +19,7 @@ package org.apache.marmotta.kiwi.sparql.builder.model;
 
 import org.apache.marmotta.kiwi.persistence.KiWiDialect;
 import org.apache.marmotta.kiwi.sparql.builder.SQLBuilder;
-import org.apache.marmotta.kiwi.sparql.builder.ValueConverter;
+import org.apache.marmotta.kiwi.sparql.builder.SQLParameters;
 import org.apache.marmotta.kiwi.sparql.exception.UnsatisfiableQueryException;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
@@ -41,7 +41,7 @@ public class SQLSubQuery extends SQLAbstractSubquery {
 
     private Set<SQLVariable> variables = new HashSet<>();
 
-    public SQLSubQuery(String alias, Projection query, BindingSet bindings, Dataset dataset, ValueConverter converter, KiWiDialect dialect, Set<String> parentProjectedVars) throws UnsatisfiableQueryException {
+    public SQLSubQuery(String alias, Projection query, BindingSet bindings, Dataset dataset, SQLParameters parameters, KiWiDialect dialect, Set<String> parentProjectedVars) throws UnsatisfiableQueryException {
         super(alias);
 
         Set<String> projectedVars = new HashSet<>(parentProjectedVars);
@@ -53,7 +53,7 @@ public class SQLSubQuery extends SQLAbstractSubquery {
 
 
         // we build a full subquery for each of the UNION's arguments
-        builder = new SQLBuilder(query.getArg(), bindings, dataset, converter, dialect, projectedVars);
+        builder = new SQLBuilder(query.getArg(), bindings, dataset, parameters, dialect, projectedVars);
 
         for(SQLVariable svl : builder.getVariables().values()) {
             if(projectedVars.contains(svl.getSparqlName())) {
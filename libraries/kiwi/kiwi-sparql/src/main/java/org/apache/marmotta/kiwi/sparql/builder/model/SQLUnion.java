@@ -19,7 +19,7 @@ package org.apache.marmotta.kiwi.sparql.builder.model;
 
 import org.apache.marmotta.kiwi.persistence.KiWiDialect;
 import org.apache.marmotta.kiwi.sparql.builder.SQLBuilder;
-import org.apache.marmotta.kiwi.sparql.builder.ValueConverter;
+import org.apache.marmotta.kiwi.sparql.builder.SQLParameters;
 import org.apache.marmotta.kiwi.sparql.builder.ValueType;
 import org.apache.marmotta.kiwi.sparql.exception.UnsatisfiableQueryException;
 import org.openrdf.query.BindingSet;
@@ -52,15 +52,15 @@ public class SQLUnion extends SQLAbstractSubquery {
 
     private Set<SQLVariable> variables = new HashSet<>();
 
-    public SQLUnion(String alias, Union query, BindingSet bindings, Dataset dataset, ValueConverter converter, KiWiDialect dialect) throws UnsatisfiableQueryException {
+    public SQLUnion(String alias, Union query, BindingSet bindings, Dataset dataset, SQLParameters parameters, KiWiDialect dialect) throws UnsatisfiableQueryException {
         super(alias);
 
         Set<String> leftProjected = getProjectedVariables(query.getLeftArg());
         Set<String> rightProjected = getProjectedVariables(query.getRightArg());
 
         // we build a full subquery for each of the UNION's arguments
-        left  = new SQLBuilder(query.getLeftArg(), bindings, dataset, converter, dialect, leftProjected);
-        right = new SQLBuilder(query.getRightArg(), bindings, dataset, converter, dialect, rightProjected);
+        left  = new SQLBuilder(query.getLeftArg(), bindings, dataset, parameters, dialect, leftProjected);
+        right = new SQLBuilder(query.getRightArg(), bindings, dataset, parameters, dialect, rightProjected);
 
         // next we make sure that both subqueries share the same SQL variables so the SQL UNION succeeds by
         // adding NULL aliases for all variables present in one but not the other
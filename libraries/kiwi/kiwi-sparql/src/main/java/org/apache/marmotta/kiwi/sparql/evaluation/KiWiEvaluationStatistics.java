@@ -17,21 +17,32 @@
 
 package org.apache.marmotta.kiwi.sparql.evaluation;
 
+import org.apache.marmotta.kiwi.sparql.statistics.KiWiStatistics;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
 import org.openrdf.model.Value;
 import org.openrdf.query.algebra.StatementPattern;
 import org.openrdf.query.algebra.Var;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStatistics;
 
 /**
- * Add file description here!
+ * Evaluation statistics for the KiWi triple store. In case data statistics are available, the cardinality of
+ * statement patterns is estimated from the number of triples per predicate and context and the number of distinct
+ * subjects and objects; otherwise the default Sesame heuristics are used.
  *
  * @author Sebastian Schaffert (sschaffert@apache.org)
  */
 public class KiWiEvaluationStatistics extends EvaluationStatistics {
 
+    private KiWiStatistics statistics;
+
     public KiWiEvaluationStatistics() {
     }
 
+    public KiWiEvaluationStatistics(KiWiStatistics statistics) {
+        this.statistics = statistics;
+    }
+
     @Override
     protected CardinalityCalculator createCardinalityCalculator() {
         return new KiWiCardinalityCalculator();
@@ -41,7 +52,20 @@ public class KiWiEvaluationStatistics extends EvaluationStatistics {
 
         @Override
         protected double getCardinality(StatementPattern sp) {
-            return super.getCardinality(sp);
+            if(statistics == null || !statistics.isAvailable()) {
+                return super.getCardinality(sp);
+            }
+
+            Value subject   = getConstantValue(sp.getSubjectVar());
+            Value predicate = getConstantValue(sp.getPredicateVar());
+            Value object    = getConstantValue(sp.getObjectVar());
+            Value context   = getConstantValue(sp.getContextVar());
+
+            return statistics.getCardinality(
+                    subject instanceof Resource ? (Resource) subject : null,
+                    predicate instanceof URI ? (URI) predicate : null,
+                    object,
+                    context instanceof Resource ? (Resource) context : null);
         }
 
         protected Value getConstantValue(Var var) {
@@ -18,33 +18,25 @@
 package org.apache.marmotta.kiwi.sparql.evaluation;
 
 import info.aduna.iteration.*;
-import org.apache.marmotta.commons.vocabulary.XSD;
 import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
 import org.apache.marmotta.kiwi.persistence.KiWiConnection;
-import org.apache.marmotta.kiwi.persistence.util.ResultSetIteration;
-import org.apache.marmotta.kiwi.persistence.util.ResultTransformerFunction;
 import org.apache.marmotta.kiwi.sail.KiWiValueFactory;
 import org.apache.marmotta.kiwi.sparql.builder.SQLBuilder;
-import org.apache.marmotta.kiwi.sparql.builder.ValueType;
+import org.apache.marmotta.kiwi.sparql.builder.ValueConverter;
 import org.apache.marmotta.kiwi.sparql.builder.collect.SupportedFinder;
-import org.apache.marmotta.kiwi.sparql.builder.model.SQLVariable;
 import org.apache.marmotta.kiwi.sparql.exception.UnsatisfiableQueryException;
-import org.openrdf.model.URI;
-import org.openrdf.model.impl.BNodeImpl;
-import org.openrdf.model.impl.LiteralImpl;
-import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.Value;
 import org.openrdf.query.*;
 import org.openrdf.query.algebra.*;
 import org.openrdf.query.algebra.evaluation.TripleSource;
 import org.openrdf.query.algebra.evaluation.impl.EvaluationStrategyImpl;
-import org.openrdf.query.impl.MapBindingSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -75,6 +67,11 @@ public class KiWiEvaluationStrategy extends EvaluationStrategyImpl{
     private KiWiValueFactory valueFactory;
     private ExecutorService executorService;
 
+    /**
+     * Cache of SQL translations shared between connections; may be null in case plans should not be cached
+     */
+    private SQLPlanCache planCache;
+
 
     private Set<String> projectedVars = new HashSet<>();
 
@@ -96,6 +93,11 @@ public class KiWiEvaluationStrategy extends EvaluationStrategyImpl{
         this.executorService = Executors.newCachedThreadPool();
     }
 
+    public KiWiEvaluationStrategy(TripleSource tripleSource, Dataset dataset, KiWiConnection connection, KiWiValueFactory valueFactory, SQLPlanCache planCache) {
+        this(tripleSource, dataset, connection, valueFactory);
+        this.planCache = planCache;
+    }
+
     @Override
     public CloseableIteration<BindingSet, QueryEvaluationException> evaluate(Projection projection, BindingSet bindings) throws QueryEvaluationException {
         // count projected variables
@@ -202,205 +204,105 @@ public class KiWiEvaluationStrategy extends EvaluationStrategyImpl{
         log.debug("applying KiWi native optimizations on SPARQL query ...");
 
         try {
-            final SQLBuilder builder = new SQLBuilder(join, bindings, dataset, valueFactory, connection.getDialect(), projectedVars);
+            final SQLPlan plan;
+            final PreparedStatement queryStatement;
+            SQLPlanKey key = null;
+            if (planCache != null) {
+                key = SQLPlanKey.create(join, bindings, dataset, projectedVars);
+                SQLPlan cached = planCache.get(key.getKey());
+                if (cached == null) {
+                    cached = new SQLPlan(new SQLBuilder(key.getExpr(), key.getBindings(), dataset, connection.getDialect(), projectedVars));
+                    planCache.put(key.getKey(), cached);
+                }
+                plan = cached;
+
+                // cached plans reuse the prepared statement of this connection unless it is still in use
+                queryStatement = connection.getPreparedQueryStatement(plan.getSql());
+            } else {
+                plan = new SQLPlan(new SQLBuilder(join, bindings, dataset, connection.getDialect(), projectedVars));
 
-            final PreparedStatement queryStatement = connection.getJDBCConnection().prepareStatement(builder.build().toString());
-            if (connection.getDialect().isCursorSupported()) {
-                queryStatement.setFetchSize(connection.getConfiguration().getCursorSize());
+                queryStatement = connection.getJDBCConnection().prepareStatement(plan.getSql());
+                if (connection.getDialect().isCursorSupported()) {
+                    queryStatement.setFetchSize(connection.getConfiguration().getCursorSize());
+                }
             }
 
-            Future<ResultSet> queryFuture =
-                    executorService.submit(new Callable<ResultSet>() {
-                                               @Override
-                                               public ResultSet call() throws Exception {
-                                                   try {
-                                                       return queryStatement.executeQuery();
-                                                   } catch (SQLException ex) {
-                                                       if (Thread.interrupted()) {
-                                                           log.info("SQL query execution cancelled; not returning result (Thread={})", Thread.currentThread());
-                                                           throw new InterruptedException("SPARQL query execution cancelled");
-                                                       } else {
-                                                           throw ex;
+            // the statement is released or closed by the result iteration once it has been created
+            boolean handedOver = false;
+            try {
+                // look up the current database ids of the constants of the query
+                plan.bind(queryStatement, new ValueConverter() {
+                    @Override
+                    public KiWiNode convert(Value value) {
+                        return valueFactory.convert(value);
+                    }
+                }, key != null ? key.getValues() : Collections.<Value>emptyList());
+
+                Future<ResultSet> queryFuture =
+                        executorService.submit(new Callable<ResultSet>() {
+                                                   @Override
+                                                   public ResultSet call() throws Exception {
+                                                       try {
+                                                           return queryStatement.executeQuery();
+                                                       } catch (SQLException ex) {
+                                                           if (Thread.interrupted()) {
+                                                               log.info("SQL query execution cancelled; not returning result (Thread={})", Thread.currentThread());
+                                                               throw new InterruptedException("SPARQL query execution cancelled");
+                                                           } else {
+                                                               throw ex;
+                                                           }
                                                        }
                                                    }
                                                }
-                                           }
-                    );
+                        );
 
-            try {
-                ResultSet result = queryFuture.get();
+                try {
+                    ResultSet result = queryFuture.get();
 
-                ResultSetIteration<BindingSet> it = new ResultSetIteration<>(result, true, new ResultTransformerFunction<BindingSet>() {
-                    @Override
-                    public BindingSet apply(ResultSet row) throws SQLException {
-                        MapBindingSet resultRow = new MapBindingSet();
-
-                        List<SQLVariable> vars = new ArrayList<>(builder.getVariables().values());
-
-                        long[] nodeIds = new long[vars.size()];
-                        for (int i = 0; i < vars.size(); i++) {
-                            SQLVariable sv = vars.get(i);
-                            if (sv.getProjectionType() == ValueType.NODE && (builder.getProjectedVars().isEmpty()
-                                    || builder.getProjectedVars().contains(sv.getSparqlName()))) {
-                                nodeIds[i] = row.getLong(sv.getName());
-                            }
-                        }
-                        KiWiNode[] nodes = connection.loadNodesByIds(nodeIds);
-
-                        for (int i = 0; i < vars.size(); i++) {
-                            SQLVariable sv = vars.get(i);
-                            if (nodes[i] != null) {
-                                // resolved node
-                                resultRow.addBinding(sv.getSparqlName(), nodes[i]);
-                            } else if (sv.getProjectionType() != ValueType.NONE && (builder.getProjectedVars().isEmpty()
-                                    || builder.getProjectedVars().contains(sv.getSparqlName()))) {
-                                // literal value
-                                String svalue;
-                                switch (sv.getProjectionType()) {
-                                    case URI:
-                                        svalue = row.getString(sv.getName());
-                                        if (svalue != null)
-                                            try {
-                                                resultRow.addBinding(sv.getSparqlName(), new URIImpl(svalue));
-                                            } catch (IllegalArgumentException ex) {
-                                            } // illegal URI unbound
-                                        break;
-                                    case BNODE:
-                                        svalue = row.getString(sv.getName());
-                                        if (svalue != null)
-                                            resultRow.addBinding(sv.getSparqlName(), new BNodeImpl(svalue));
-                                        break;
-                                    case INT:
-                                        if (row.getObject(sv.getName()) != null) {
-                                            svalue = Integer.toString(row.getInt(sv.getName()));
-                                            URI type = XSD.Integer;
-                                            try {
-                                                long typeId = row.getLong(sv.getName() + "_TYPE");
-                                                if (typeId > 0)
-                                                    type = (URI) connection.loadNodeById(typeId);
-                                            } catch (SQLException ex) {
-                                            }
-
-                                            resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue, type));
-                                        }
-                                        break;
-                                    case DOUBLE:
-                                        if (row.getObject(sv.getName()) != null) {
-                                            svalue = Double.toString(row.getDouble(sv.getName()));
-                                            URI type = XSD.Double;
-                                            try {
-                                                long typeId = row.getLong(sv.getName() + "_TYPE");
-                                                if (typeId > 0)
-                                                    type = (URI) connection.loadNodeById(typeId);
-                                            } catch (SQLException ex) {
-                                            }
-
-                                            resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue, type));
-                                        }
-                                        break;
-                                    case DECIMAL:
-                                        if (row.getObject(sv.getName()) != null) {
-                                            svalue = row.getBigDecimal(sv.getName()).toString();
-                                            URI type = XSD.Decimal;
-                                            try {
-                                                long typeId = row.getLong(sv.getName() + "_TYPE");
-                                                if (typeId > 0)
-                                                    type = (URI) connection.loadNodeById(typeId);
-                                            } catch (SQLException ex) {
-                                            }
-
-                                            resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue, type));
-                                        }
-                                        break;
-                                    case BOOL:
-                                        if (row.getObject(sv.getName()) != null) {
-                                            svalue = Boolean.toString(row.getBoolean(sv.getName()));
-                                            resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue.toLowerCase(), XSD.Boolean));
-                                        }
-                                        break;
-                                    case STRING:
-                                    default:
-                                        svalue = row.getString(sv.getName());
-
-                                        if (svalue != null) {
-
-                                            // retrieve optional type and language information, because string functions
-                                            // need to preserve this in certain cases, even when constructing new literals
-                                            String lang = null;
-                                            try {
-                                                lang = row.getString(sv.getName() + "_LANG");
-                                            } catch (SQLException ex) {
-                                            }
-
-                                            URI type = null;
-                                            try {
-                                                long typeId = row.getLong(sv.getName() + "_TYPE");
-                                                if (typeId > 0)
-                                                    type = (URI) connection.loadNodeById(typeId);
-                                            } catch (SQLException ex) {
-                                            }
-
-                                            if (lang != null) {
-                                                if (svalue.length() > 0) {
-                                                    resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue, lang));
-                                                } else {
-                                                    // string functions that return empty literal should yield no type or language
-                                                    resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(""));
-                                                }
-                                            } else if (type != null) {
-                                                if (type.stringValue().equals(XSD.String.stringValue())) {
-                                                    // string functions on other datatypes than string should yield no binding
-                                                    if (svalue.length() > 0) {
-                                                        resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue, type));
-                                                    } else {
-                                                        // string functions that return empty literal should yield no type or language
-                                                        resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(""));
-                                                    }
-                                                }
-                                            } else {
-                                                resultRow.addBinding(sv.getSparqlName(), new LiteralImpl(svalue));
-                                            }
-
-                                        }
-                                        break;
-                                }
-                            }
-                        }
+                    NodePrefetchingIteration it = new NodePrefetchingIteration(result, queryStatement, planCache != null, plan, bindings, connection,
+                            connection.getConfiguration().getNodePrefetchSize());
+                    handedOver = true;
 
+                    List<BindingSet> rows;
+                    try {
+                        rows = Iterations.asList(it);
+                    } finally {
+                        it.close();
+                    }
 
-                        if (bindings != null) {
-                            for (Binding binding : bindings) {
-                                resultRow.addBinding(binding);
-                            }
+                    return new ExceptionConvertingIteration<BindingSet, QueryEvaluationException>(
+                            new CloseableIteratorIteration<BindingSet, SQLException>(rows.iterator())) {
+                        @Override
+                        protected QueryEvaluationException convert(Exception e) {
+                            return new QueryEvaluationException(e);
                         }
-                        return resultRow;
+                    };
+
+                } catch (InterruptedException | CancellationException e) {
+                    log.info("SPARQL query execution cancelled");
+                    queryFuture.cancel(true);
+                    queryStatement.cancel();
+                    // the statement may still be executing, so it is not reused
+                    queryStatement.close();
+
+                    throw new QueryInterruptedException("SPARQL query execution cancelled");
+                } catch (ExecutionException e) {
+                    log.error("error executing SPARQL query", e.getCause());
+                    if (e.getCause() instanceof SQLException) {
+                        throw new QueryEvaluationException(e.getCause());
+                    } else if (e.getCause() instanceof InterruptedException) {
+                        throw new QueryInterruptedException(e.getCause());
+                    } else {
+                        throw new QueryEvaluationException("error executing SPARQL query", e);
                     }
-                });
-
-
-                return new ExceptionConvertingIteration<BindingSet, QueryEvaluationException>(
-                        new CloseableIteratorIteration<BindingSet, SQLException>(Iterations.asList(it).iterator())) {
-                    @Override
-                    protected QueryEvaluationException convert(Exception e) {
-                        return new QueryEvaluationException(e);
+                }
+            } finally {
+                if (!handedOver) {
+                    if (planCache != null) {
+                        connection.releasePreparedQueryStatement(queryStatement);
+                    } else {
+                        queryStatement.close();
                     }
-                };
-
-            } catch (InterruptedException | CancellationException e) {
-                log.info("SPARQL query execution cancelled");
-                queryFuture.cancel(true);
-                queryStatement.cancel();
-                queryStatement.close();
-
-                throw new QueryInterruptedException("SPARQL query execution cancelled");
-            } catch (ExecutionException e) {
-                log.error("error executing SPARQL query", e.getCause());
-                if (e.getCause() instanceof SQLException) {
-                    throw new QueryEvaluationException(e.getCause());
-                } else if (e.getCause() instanceof InterruptedException) {
-                    throw new QueryInterruptedException(e.getCause());
-                } else {
-                    throw new QueryEvaluationException("error executing SPARQL query", e);
                 }
             }
         } catch (SQLException | IllegalArgumentException e) {
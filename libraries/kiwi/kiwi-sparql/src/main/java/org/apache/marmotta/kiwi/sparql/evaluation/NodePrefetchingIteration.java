@@ -0,0 +1,311 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.evaluation;
+
+import com.google.common.primitives.Longs;
+import info.aduna.iteration.CloseableIteration;
+import org.apache.marmotta.commons.vocabulary.XSD;
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.persistence.KiWiConnection;
+import org.apache.marmotta.kiwi.sparql.builder.ValueType;
+import org.apache.marmotta.kiwi.sparql.builder.model.SQLVariable;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.BNodeImpl;
+import org.openrdf.model.impl.LiteralImpl;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.Binding;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.impl.MapBindingSet;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * An iteration over the result of a native SPARQL query that reads ahead a window of rows from the
+ * result set, collects the distinct node ids referenced by all rows of the window and resolves them with a
+ * single batched lookup (cache first, then one SQL query per batch) before emitting the binding sets. This
+ * avoids issuing one node lookup per result row when the node cache is cold.
+ */
+public class NodePrefetchingIteration implements CloseableIteration<BindingSet, SQLException> {
+
+    private ResultSet result;
+
+    private BindingSet bindings;
+
+    private KiWiConnection connection;
+
+    private int windowSize;
+
+    // the SQL variables of the query, in projection order
+    private List<SQLVariable> vars;
+
+    // for each variable a flag whether its value is a node id that needs to be resolved
+    private boolean[] nodeVars;
+
+    // for each variable a flag whether it is projected as a literal value computed in the database
+    private boolean[] valueVars;
+
+    private List<BindingSet> window = new ArrayList<>();
+    private int windowPosition = 0;
+
+    private boolean exhausted = false;
+    private boolean closed    = false;
+
+    // the statement producing the result
+    private PreparedStatement statement;
+
+    // set to true if the statement has been obtained from the query statement cache of the connection and needs to
+    // be released instead of closed when the iteration is closed
+    private boolean cachedStatement;
+
+    public NodePrefetchingIteration(ResultSet result, PreparedStatement statement, boolean cachedStatement, SQLPlan plan, BindingSet bindings, KiWiConnection connection, int windowSize) {
+        this.result          = result;
+        this.statement       = statement;
+        this.cachedStatement = cachedStatement;
+        this.bindings       = bindings;
+        this.connection     = connection;
+        this.windowSize     = windowSize > 0 ? windowSize : 1;
+
+        this.vars      = plan.getVariables();
+        this.nodeVars  = new boolean[vars.size()];
+        this.valueVars = new boolean[vars.size()];
+        for (int i = 0; i < vars.size(); i++) {
+            SQLVariable sv = vars.get(i);
+            boolean projected = plan.getProjectedVars().isEmpty() || plan.getProjectedVars().contains(sv.getSparqlName());
+            nodeVars[i]  = projected && sv.getProjectionType() == ValueType.NODE;
+            valueVars[i] = projected && sv.getProjectionType() != ValueType.NODE && sv.getProjectionType() != ValueType.NONE;
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws SQLException {
+        fetchWindow();
+
+        return window.size() > windowPosition;
+    }
+
+    @Override
+    public BindingSet next() throws SQLException {
+        fetchWindow();
+
+        if (window.size() > windowPosition) {
+            return window.get(windowPosition++);
+        } else {
+            throw new NoSuchElementException("no more results");
+        }
+    }
+
+    @Override
+    public void remove() throws SQLException {
+        throw new UnsupportedOperationException("removing result rows not supported");
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            try {
+                result.close();
+            } catch (SQLException ignore) {
+            }
+            if (cachedStatement) {
+                connection.releasePreparedQueryStatement(statement);
+            } else {
+                try {
+                    statement.close();
+                } catch (SQLException ignore) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the next window of rows from the result set in case the current window has been consumed. Node ids
+     * of all rows in the window are collected and resolved in one call to loadNodesByIds.
+     */
+    private void fetchWindow() throws SQLException {
+        if (window.size() > windowPosition || exhausted || closed) {
+            return;
+        }
+
+        window.clear();
+        windowPosition = 0;
+
+        List<long[]> rowIds = new ArrayList<>(windowSize);
+        List<Value[]> rowValues = new ArrayList<>(windowSize);
+        Set<Long> nodeIds = new HashSet<>();
+
+        while (rowIds.size() < windowSize) {
+            if (!result.next()) {
+                exhausted = true;
+                break;
+            }
+
+            long[] ids = new long[vars.size()];
+            Value[] values = new Value[vars.size()];
+            for (int i = 0; i < vars.size(); i++) {
+                if (nodeVars[i]) {
+                    ids[i] = result.getLong(vars.get(i).getName());
+                    if (ids[i] != 0) {
+                        nodeIds.add(ids[i]);
+                    }
+                } else if (valueVars[i]) {
+                    values[i] = constructValue(result, vars.get(i));
+                }
+            }
+            rowIds.add(ids);
+            rowValues.add(values);
+        }
+
+        Map<Long, KiWiNode> nodeMap = new HashMap<>(nodeIds.size() << 1);
+        if (nodeIds.size() > 0) {
+            for (KiWiNode node : connection.loadNodesByIds(Longs.toArray(nodeIds))) {
+                if (node != null) {
+                    nodeMap.put(node.getId(), node);
+                }
+            }
+        }
+
+        for (int r = 0; r < rowIds.size(); r++) {
+            long[] ids = rowIds.get(r);
+            Value[] values = rowValues.get(r);
+
+            MapBindingSet resultRow = new MapBindingSet();
+            for (int i = 0; i < vars.size(); i++) {
+                Value value = nodeVars[i] ? nodeMap.get(ids[i]) : values[i];
+                if (value != null) {
+                    resultRow.addBinding(vars.get(i).getSparqlName(), value);
+                }
+            }
+
+            if (bindings != null) {
+                for (Binding binding : bindings) {
+                    resultRow.addBinding(binding);
+                }
+            }
+            window.add(resultRow);
+        }
+
+        if (exhausted) {
+            close();
+        }
+    }
+
+    /**
+     * Construct the value of a variable whose value has been computed by the database (e.g. by a native function)
+     * rather than being a reference to a node.
+     */
+    private Value constructValue(ResultSet row, SQLVariable sv) throws SQLException {
+        String svalue;
+        switch (sv.getProjectionType()) {
+            case URI:
+                svalue = row.getString(sv.getName());
+                if (svalue != null)
+                    try {
+                        return new URIImpl(svalue);
+                    } catch (IllegalArgumentException ex) {
+                    } // illegal URI unbound
+                return null;
+            case BNODE:
+                svalue = row.getString(sv.getName());
+                if (svalue != null)
+                    return new BNodeImpl(svalue);
+                return null;
+            case INT:
+                if (row.getObject(sv.getName()) != null) {
+                    svalue = Integer.toString(row.getInt(sv.getName()));
+                    return new LiteralImpl(svalue, loadType(row, sv, XSD.Integer));
+                }
+                return null;
+            case DOUBLE:
+                if (row.getObject(sv.getName()) != null) {
+                    svalue = Double.toString(row.getDouble(sv.getName()));
+                    return new LiteralImpl(svalue, loadType(row, sv, XSD.Double));
+                }
+                return null;
+            case DECIMAL:
+                if (row.getObject(sv.getName()) != null) {
+                    svalue = row.getBigDecimal(sv.getName()).toString();
+                    return new LiteralImpl(svalue, loadType(row, sv, XSD.Decimal));
+                }
+                return null;
+            case BOOL:
+                if (row.getObject(sv.getName()) != null) {
+                    svalue = Boolean.toString(row.getBoolean(sv.getName()));
+                    return new LiteralImpl(svalue.toLowerCase(), XSD.Boolean);
+                }
+                return null;
+            case STRING:
+            default:
+                svalue = row.getString(sv.getName());
+
+                if (svalue != null) {
+
+                    // retrieve optional type and language information, because string functions
+                    // need to preserve this in certain cases, even when constructing new literals
+                    String lang = null;
+                    try {
+                        lang = row.getString(sv.getName() + "_LANG");
+                    } catch (SQLException ex) {
+                    }
+
+                    URI type = loadType(row, sv, null);
+
+                    if (lang != null) {
+                        if (svalue.length() > 0) {
+                            return new LiteralImpl(svalue, lang);
+                        } else {
+                            // string functions that return empty literal should yield no type or language
+                            return new LiteralImpl("");
+                        }
+                    } else if (type != null) {
+                        if (type.stringValue().equals(XSD.String.stringValue())) {
+                            // string functions on other datatypes than string should yield no binding
+                            if (svalue.length() > 0) {
+                                return new LiteralImpl(svalue, type);
+                            } else {
+                                // string functions that return empty literal should yield no type or language
+                                return new LiteralImpl("");
+                            }
+                        }
+                    } else {
+                        return new LiteralImpl(svalue);
+                    }
+
+                }
+                return null;
+        }
+    }
+
+    /**
+     * Load the datatype of a computed literal from the optional _TYPE column of the variable; datatypes are few and
+     * almost always served from the node cache.
+     */
+    private URI loadType(ResultSet row, SQLVariable sv, URI defaultType) {
+        try {
+            long typeId = row.getLong(sv.getName() + "_TYPE");
+            if (typeId > 0)
+                return (URI) connection.loadNodeById(typeId);
+        } catch (SQLException ex) {
+        }
+        return defaultType;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.evaluation;
+
+import org.apache.marmotta.kiwi.sparql.builder.SQLBuilder;
+import org.apache.marmotta.kiwi.sparql.builder.ValueConverter;
+import org.apache.marmotta.kiwi.sparql.builder.model.SQLVariable;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The result of translating a SPARQL tuple expression into SQL: the SQL query string, the constant nodes that are
+ * passed as its parameters and the variables it projects. The SQL string does not contain any node ids, these are
+ * looked up when the parameters are bound. Plans are immutable and can therefore be shared between connections
+ * through the SQLPlanCache.
+ * <p/>
+ * A plan translated from the normalized expression of a SQLPlanKey has placeholders among its parameters; each of
+ * them is mapped to the slot of the key, and the slot values of the query at hand are bound in their place.
+ */
+public class SQLPlan {
+
+    private final String sql;
+
+    private final List<Value> parameters;
+
+    // the slot of the SQLPlanKey bound to each parameter, -1 for constants of the plan
+    private final int[] slots;
+
+    private final List<SQLVariable> variables;
+
+    private final Set<String> projectedVars;
+
+    public SQLPlan(SQLBuilder builder) {
+        List<Value> parameters = new ArrayList<>();
+        this.sql           = builder.getParameters().parameterize(builder.build(), parameters);
+        this.parameters    = Collections.unmodifiableList(detach(parameters));
+        this.slots         = new int[parameters.size()];
+        for(int i = 0; i < slots.length; i++) {
+            slots[i] = SQLPlanKey.getSlot(parameters.get(i));
+        }
+        this.variables     = Collections.unmodifiableList(new ArrayList<>(builder.getVariables().values()));
+        this.projectedVars = Collections.unmodifiableSet(new HashSet<>(builder.getProjectedVars()));
+    }
+
+    /**
+     * The SQL query string to execute
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * The values of the constant nodes passed as JDBC parameters to the query, in parameter order
+     */
+    public List<Value> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Bind the parameters of a statement prepared from the SQL query string to the current database ids of the
+     * constant nodes. Nodes that do not exist in the database are bound to an id that does not match any row.
+     *
+     * @param statement statement prepared from getSql()
+     * @param converter converter used to look up the database ids of the constant nodes
+     */
+    public void bind(PreparedStatement statement, ValueConverter converter) throws SQLException {
+        bind(statement, converter, Collections.<Value>emptyList());
+    }
+
+    /**
+     * Bind the parameters of a statement prepared from the SQL query string to the current database ids of the
+     * constant nodes, using the given slot values for the placeholders of the plan.
+     *
+     * @param statement statement prepared from getSql()
+     * @param converter converter used to look up the database ids of the constant nodes
+     * @param values    the slot values of the SQLPlanKey of the query (see SQLPlanKey.getValues())
+     */
+    public void bind(PreparedStatement statement, ValueConverter converter, List<Value> values) throws SQLException {
+        for(int i = 0; i < parameters.size(); i++) {
+            Value value = slots[i] >= 0 ? values.get(slots[i]) : parameters.get(i);
+            statement.setLong(i + 1, converter.convert(value).getId());
+        }
+    }
+
+    /**
+     * The SQL variables of the query, in projection order
+     */
+    public List<SQLVariable> getVariables() {
+        return variables;
+    }
+
+    /**
+     * The names of the SPARQL variables projected by the query; if empty, all variables are projected
+     */
+    public Set<String> getProjectedVars() {
+        return projectedVars;
+    }
+
+    /**
+     * Copy KiWi nodes to plain Sesame values, so that a plan does not keep the database id of a node which might
+     * meanwhile have been deleted.
+     */
+    private static List<Value> detach(List<Value> values) {
+        ValueFactory vf = ValueFactoryImpl.getInstance();
+
+        List<Value> result = new ArrayList<>(values.size());
+        for(Value value : values) {
+            if(value instanceof URI) {
+                result.add(vf.createURI(value.stringValue()));
+            } else if(value instanceof BNode) {
+                result.add(vf.createBNode(((BNode) value).getID()));
+            } else if(value instanceof Literal) {
+                Literal l = (Literal) value;
+                if(l.getLanguage() != null) {
+                    result.add(vf.createLiteral(l.getLabel(), l.getLanguage()));
+                } else if(l.getDatatype() != null) {
+                    result.add(vf.createLiteral(l.getLabel(), l.getDatatype()));
+                } else {
+                    result.add(vf.createLiteral(l.getLabel()));
+                }
+            } else {
+                result.add(value);
+            }
+        }
+        return result;
+    }
+}
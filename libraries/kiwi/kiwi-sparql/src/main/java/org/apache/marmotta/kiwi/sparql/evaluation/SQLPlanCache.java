@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.evaluation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.marmotta.kiwi.persistence.KiWiPersistence;
+
+/**
+ * A least-recently-used cache of SQL translations of SPARQL tuple expressions, shared by all connections of a
+ * KiWiSparqlSail. Plans are keyed by a SQLPlanKey, i.e. the normalized algebra tree with the constants of the query
+ * lifted into parameters, together with the dataset and the projected variables, so a cached plan is reused for all
+ * executions of the same query shape with different constants. This saves the translation in SQLBuilder for the
+ * frequently repeated queries of typical workloads.
+ * <p/>
+ * Neither the keys nor the SQL of the plans contain node ids; the ids of the constants are looked up each time a
+ * plan is executed (see SQLPlan.bind()), so plans stay valid when nodes are deleted and created again with a
+ * different id. The cache is nevertheless cleared together with the node caches of the persistence.
+ */
+public class SQLPlanCache implements KiWiPersistence.NodeCacheListener {
+
+    public static final int DEFAULT_SIZE = 1000;
+
+    private Cache<String, SQLPlan> plans;
+
+    public SQLPlanCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public SQLPlanCache(int size) {
+        plans = CacheBuilder.newBuilder().maximumSize(size).recordStats().build();
+    }
+
+    /**
+     * Return the cached plan for the given key, or null if there is no such plan.
+     */
+    public SQLPlan get(String key) {
+        return plans.getIfPresent(key);
+    }
+
+    public void put(String key, SQLPlan plan) {
+        plans.put(key, plan);
+    }
+
+    public void clear() {
+        plans.invalidateAll();
+    }
+
+    /**
+     * Drop all plans when the node caches of the persistence are cleared.
+     */
+    @Override
+    public void nodeCachesCleared() {
+        clear();
+    }
+
+    /**
+     * Number of SQL translations that have been served from the cache
+     */
+    public long getHitCount() {
+        return plans.stats().hitCount();
+    }
+
+    /**
+     * Number of SQL translations that had to be built because they were not in the cache
+     */
+    public long getMissCount() {
+        return plans.stats().missCount();
+    }
+}
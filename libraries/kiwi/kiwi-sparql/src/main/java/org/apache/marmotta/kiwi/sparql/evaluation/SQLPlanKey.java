@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.evaluation;
+
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.Dataset;
+import org.openrdf.query.algebra.StatementPattern;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.algebra.Var;
+import org.openrdf.query.algebra.helpers.QueryModelVisitorBase;
+import org.openrdf.query.impl.MapBindingSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The key of a tuple expression in the SQLPlanCache. The constants of the query that the SQLBuilder only uses as
+ * node ids (the values of variables in statement patterns and elsewhere, and the initial bindings) are lifted into
+ * positional slots: the normalized expression and bindings carry a placeholder value for each slot instead of the
+ * constant, and the constants are kept as slot values. All executions of the same query shape therefore share the
+ * same key and plan, and the slot values are bound when the plan is executed (see SQLPlan.bind()).
+ * <p/>
+ * Value constants in filters and other expressions are not lifted, since the builder inlines them into the SQL
+ * depending on their type; neither are the contexts of statement patterns when the query has a dataset, since the
+ * builder checks them against the graphs of the dataset.
+ */
+public class SQLPlanKey {
+
+    private static final String SLOT_PREFIX = "urn:x-marmotta:sqlplan:slot:";
+
+    private final String key;
+
+    private final TupleExpr expr;
+
+    private final BindingSet bindings;
+
+    private final List<Value> values;
+
+    private SQLPlanKey(String key, TupleExpr expr, BindingSet bindings, List<Value> values) {
+        this.key      = key;
+        this.expr     = expr;
+        this.bindings = bindings;
+        this.values   = values;
+    }
+
+    /**
+     * Create the key for the translation of a tuple expression. The expression passed as argument is not modified.
+     */
+    public static SQLPlanKey create(TupleExpr expr, BindingSet bindings, Dataset dataset, Set<String> projectedVars) {
+        Normalizer normalizer = new Normalizer(dataset != null);
+
+        TupleExpr normalized = expr.clone();
+        normalized.visit(normalizer);
+
+        MapBindingSet normalizedBindings = new MapBindingSet();
+        if (bindings != null) {
+            for (String name : new TreeSet<>(bindings.getBindingNames())) {
+                normalizedBindings.addBinding(name, normalizer.liftBinding(name, bindings.getValue(name)));
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        key.append(normalized.toString());
+        key.append("\nbindings:");
+        for (String name : new TreeSet<>(normalizedBindings.getBindingNames())) {
+            key.append(' ').append(name).append('=').append(normalizedBindings.getValue(name));
+        }
+        key.append("\ndataset:");
+        if (dataset != null) {
+            key.append(dataset.toString());
+        }
+        key.append("\nprojection:").append(new TreeSet<>(projectedVars));
+
+        return new SQLPlanKey(key.toString(), normalized, normalizedBindings, Collections.unmodifiableList(normalizer.values));
+    }
+
+    /**
+     * Return the slot of a placeholder value, or -1 in case the value is not a placeholder.
+     */
+    public static int getSlot(Value value) {
+        if (value instanceof URI && value.stringValue().startsWith(SLOT_PREFIX)) {
+            return Integer.parseInt(value.stringValue().substring(SLOT_PREFIX.length()));
+        }
+        return -1;
+    }
+
+    /**
+     * The cache key, consisting of the textual form of the normalized expression and bindings, the dataset and the
+     * projected variables
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * The expression with placeholders instead of the lifted constants, to be translated into a plan
+     */
+    public TupleExpr getExpr() {
+        return expr;
+    }
+
+    /**
+     * The initial bindings with placeholders instead of their values, to be translated into a plan
+     */
+    public BindingSet getBindings() {
+        return bindings;
+    }
+
+    /**
+     * The values of the lifted constants, by slot
+     */
+    public List<Value> getValues() {
+        return values;
+    }
+
+    private static Value placeholder(int slot) {
+        return new URIImpl(SLOT_PREFIX + slot);
+    }
+
+    /**
+     * Replaces the values of variables by placeholders. Constant variables (named after the hash of their value)
+     * get a slot and a name of their own for each occurrence; variables bound to a value keep their name and get one
+     * slot per name, which is shared with an initial binding of the same name.
+     */
+    private static class Normalizer extends QueryModelVisitorBase<RuntimeException> {
+
+        private final boolean keepContexts;
+
+        private final List<Value> values = new ArrayList<>();
+
+        private final Map<String,Integer> namedSlots = new HashMap<>();
+
+        private Normalizer(boolean keepContexts) {
+            this.keepContexts = keepContexts;
+        }
+
+        @Override
+        public void meet(StatementPattern node) throws RuntimeException {
+            for (Var var : node.getVarList()) {
+                if (var != node.getContextVar() || !keepContexts) {
+                    var.visit(this);
+                }
+            }
+        }
+
+        @Override
+        public void meet(Var node) throws RuntimeException {
+            if (!node.hasValue()) {
+                return;
+            }
+
+            if (isConst(node)) {
+                int slot = addSlot(node.getValue());
+                node.setName("_const_" + slot);
+                node.setValue(placeholder(slot));
+            } else {
+                Integer slot = namedSlots.get(node.getName());
+                if (slot == null) {
+                    slot = addSlot(node.getValue());
+                    namedSlots.put(node.getName(), slot);
+                } else if (!values.get(slot).equals(node.getValue())) {
+                    // differently bound occurrences of a variable are left as they are
+                    return;
+                }
+                node.setValue(placeholder(slot));
+            }
+        }
+
+        private Value liftBinding(String name, Value value) {
+            Integer slot = namedSlots.get(name);
+            if (slot == null || !values.get(slot).equals(value)) {
+                slot = addSlot(value);
+                namedSlots.put(name, slot);
+            }
+            return placeholder(slot);
+        }
+
+        private int addSlot(Value value) {
+            values.add(value);
+            return values.size() - 1;
+        }
+
+        private static boolean isConst(Var v) {
+            return v.getName().startsWith("-const") || v.getName().startsWith("_const");
+        }
+    }
+}
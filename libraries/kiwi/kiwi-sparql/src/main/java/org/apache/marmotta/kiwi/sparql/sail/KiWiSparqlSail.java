@@ -24,6 +24,9 @@ import org.apache.marmotta.kiwi.persistence.pgsql.PostgreSQLDialect;
 import org.apache.marmotta.kiwi.persistence.util.ScriptRunner;
 import org.apache.marmotta.kiwi.sail.KiWiSailConnection;
 import org.apache.marmotta.kiwi.sail.KiWiStore;
+import org.apache.marmotta.kiwi.sparql.evaluation.SQLPlanCache;
+import org.apache.marmotta.kiwi.sparql.statistics.KiWiStatistics;
+import org.apache.marmotta.kiwi.sparql.statistics.KiWiStatisticsUpdater;
 import org.openrdf.sail.*;
 import org.openrdf.sail.helpers.NotifyingSailWrapper;
 import org.openrdf.sail.helpers.SailConnectionWrapper;
@@ -49,6 +52,12 @@ public class KiWiSparqlSail extends NotifyingSailWrapper {
 
     private KiWiStore parent;
 
+    private KiWiStatistics statistics;
+
+    private KiWiStatisticsUpdater statisticsUpdater;
+
+    private SQLPlanCache planCache = new SQLPlanCache();
+
     public KiWiSparqlSail(NotifyingSail baseSail) {
         super(baseSail);
 
@@ -59,6 +68,9 @@ public class KiWiSparqlSail extends NotifyingSailWrapper {
     public void initialize() throws SailException {
         super.initialize();
 
+        // cached SQL translations are invalidated together with the node caches
+        parent.getPersistence().addNodeCacheListener(planCache);
+
         // start fulltext indexing in a separate thread (MARMOTTA-415)
         Thread indexer = new Thread("Fulltext Indexer") {
             @Override
@@ -67,6 +79,42 @@ public class KiWiSparqlSail extends NotifyingSailWrapper {
             }
         };
         indexer.start();
+
+        // compute data statistics for query optimization in the background; this scans the whole triples table
+        // and therefore needs to be enabled explicitly
+        KiWiConfiguration configuration = parent.getPersistence().getConfiguration();
+        if(configuration.isStatisticsEnabled()) {
+            statistics = new KiWiStatistics(parent.getPersistence());
+            statisticsUpdater = new KiWiStatisticsUpdater(statistics);
+            statisticsUpdater.setInterval(configuration.getStatisticsInterval());
+            statisticsUpdater.start();
+        }
+    }
+
+    @Override
+    public void shutDown() throws SailException {
+        if(statisticsUpdater != null) {
+            statisticsUpdater.shutdown();
+        }
+        parent.getPersistence().removeNodeCacheListener(planCache);
+
+        super.shutDown();
+    }
+
+    /**
+     * Return the data statistics used for estimating the cardinality of statement patterns in SPARQL queries, or
+     * null in case statistics are disabled in the configuration.
+     */
+    public KiWiStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Return the cache of SQL translations of SPARQL queries shared by all connections of this sail; the cache
+     * offers hit and miss counters for monitoring its effect.
+     */
+    public SQLPlanCache getPlanCache() {
+        return planCache;
     }
 
     /**
@@ -197,7 +245,7 @@ public class KiWiSparqlSail extends NotifyingSailWrapper {
         NotifyingSailConnection connection = super.getConnection();
         KiWiSailConnection root   = getRootConnection(connection);
 
-        return new KiWiSparqlSailConnection(connection, root.getDatabaseConnection(), root.getValueFactory());
+        return new KiWiSparqlSailConnection(connection, root.getDatabaseConnection(), root.getValueFactory(), statistics, planCache);
     }
 
 
@@ -23,9 +23,12 @@ import org.apache.marmotta.kiwi.sail.KiWiValueFactory;
 import org.apache.marmotta.kiwi.sparql.evaluation.KiWiEvaluationStatistics;
 import org.apache.marmotta.kiwi.sparql.evaluation.KiWiEvaluationStrategy;
 import org.apache.marmotta.kiwi.sparql.evaluation.KiWiTripleSource;
+import org.apache.marmotta.kiwi.sparql.evaluation.SQLPlanCache;
 import org.apache.marmotta.kiwi.sparql.optimizer.DifferenceOptimizer;
 import org.apache.marmotta.kiwi.sparql.optimizer.DistinctLimitOptimizer;
 import org.apache.marmotta.kiwi.sparql.optimizer.NativeFilterOptimizer;
+import org.apache.marmotta.kiwi.sparql.statistics.KiWiStatistics;
+import org.openrdf.model.Statement;
 import org.openrdf.query.BindingSet;
 import org.openrdf.query.Dataset;
 import org.openrdf.query.QueryEvaluationException;
@@ -35,11 +38,15 @@ import org.openrdf.query.algebra.evaluation.EvaluationStrategy;
 import org.openrdf.query.algebra.evaluation.impl.*;
 import org.openrdf.query.impl.EmptyBindingSet;
 import org.openrdf.sail.NotifyingSailConnection;
+import org.openrdf.sail.SailConnectionListener;
 import org.openrdf.sail.SailException;
 import org.openrdf.sail.helpers.NotifyingSailConnectionWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Add file description here!
  *
@@ -52,10 +59,74 @@ public class KiWiSparqlSailConnection extends NotifyingSailConnectionWrapper {
     private KiWiConnection connection;
     private KiWiValueFactory valueFactory;
 
+    private KiWiStatistics statistics;
+
+    private SQLPlanCache planCache;
+
+    // changes in the number of triples per predicate and context in the current transaction, applied to the
+    // statistics on commit
+    private Map<String,Long> predicateDeltas = new HashMap<>();
+    private Map<String,Long> contextDeltas   = new HashMap<>();
+
     public KiWiSparqlSailConnection(NotifyingSailConnection parent, KiWiConnection connection, KiWiValueFactory valueFactory) {
+        this(parent, connection, valueFactory, null, null);
+    }
+
+    public KiWiSparqlSailConnection(NotifyingSailConnection parent, KiWiConnection connection, KiWiValueFactory valueFactory, KiWiStatistics statistics, SQLPlanCache planCache) {
         super(parent);
         this.connection = connection;
         this.valueFactory = valueFactory;
+        this.statistics = statistics;
+        this.planCache = planCache;
+
+        if(statistics != null) {
+            parent.addConnectionListener(new SailConnectionListener() {
+                @Override
+                public void statementAdded(Statement st) {
+                    recordDelta(st, 1);
+                }
+
+                @Override
+                public void statementRemoved(Statement st) {
+                    recordDelta(st, -1);
+                }
+            });
+        }
+    }
+
+    private synchronized void recordDelta(Statement st, long delta) {
+        String predicate = st.getPredicate().stringValue();
+        Long count = predicateDeltas.get(predicate);
+        predicateDeltas.put(predicate, count != null ? count + delta : delta);
+
+        if(st.getContext() != null) {
+            String context = st.getContext().stringValue();
+            count = contextDeltas.get(context);
+            contextDeltas.put(context, count != null ? count + delta : delta);
+        }
+    }
+
+    @Override
+    public void commit() throws SailException {
+        super.commit();
+
+        if(statistics != null) {
+            synchronized (this) {
+                statistics.update(predicateDeltas, contextDeltas);
+                predicateDeltas.clear();
+                contextDeltas.clear();
+            }
+        }
+    }
+
+    @Override
+    public void rollback() throws SailException {
+        super.rollback();
+
+        synchronized (this) {
+            predicateDeltas.clear();
+            contextDeltas.clear();
+        }
     }
 
     @Override
@@ -71,7 +142,7 @@ public class KiWiSparqlSailConnection extends NotifyingSailConnectionWrapper {
 
         try {
             KiWiTripleSource tripleSource = new KiWiTripleSource(this, valueFactory, includeInferred);
-            EvaluationStrategy strategy = new KiWiEvaluationStrategy(tripleSource, dataset, connection, valueFactory);
+            EvaluationStrategy strategy = new KiWiEvaluationStrategy(tripleSource, dataset, connection, valueFactory, planCache);
 
             new BindingAssigner().optimize(tupleExpr, dataset, bindings);
             //new ConstantOptimizer(strategy).optimize(tupleExpr, dataset, bindings);
@@ -83,7 +154,7 @@ public class KiWiSparqlSailConnection extends NotifyingSailConnectionWrapper {
             //new SameTermFilterOptimizer().optimize(tupleExpr, dataset, bindings);
 
             new QueryModelNormalizer().optimize(tupleExpr, dataset, bindings);
-            new QueryJoinOptimizer(new KiWiEvaluationStatistics()).optimize(tupleExpr, dataset, bindings);
+            new QueryJoinOptimizer(new KiWiEvaluationStatistics(statistics)).optimize(tupleExpr, dataset, bindings);
             new IterativeEvaluationOptimizer().optimize(tupleExpr, dataset, bindings);
 
             new NativeFilterOptimizer().optimize(tupleExpr, dataset, bindings);
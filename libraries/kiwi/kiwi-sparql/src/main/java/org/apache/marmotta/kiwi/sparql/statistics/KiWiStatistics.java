@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.statistics;
+
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.persistence.KiWiConnection;
+import org.apache.marmotta.kiwi.persistence.KiWiPersistence;
+import org.openrdf.model.Resource;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Data statistics of a KiWi triple store used for estimating the cardinality of statement patterns when
+ * optimizing the join order of SPARQL queries. The statistics consist of
+ * <ul>
+ *     <li>the total number of triples and the number of distinct subjects and objects</li>
+ *     <li>per predicate the number of triples and the number of distinct subjects and objects</li>
+ *     <li>per context the number of triples</li>
+ * </ul>
+ * The statistics are computed from the triples table by refresh() (usually run by the KiWiStatisticsUpdater in
+ * the background) and in between maintained incrementally by committed transactions. Distinct counts are only
+ * updated on refresh, since they cannot be maintained incrementally.
+ */
+public class KiWiStatistics {
+
+    private static Logger log = LoggerFactory.getLogger(KiWiStatistics.class);
+
+    private KiWiPersistence persistence;
+
+    private AtomicLong tripleCount = new AtomicLong();
+
+    private volatile long distinctSubjects;
+    private volatile long distinctObjects;
+
+    private volatile ConcurrentHashMap<String, PredicateStatistics> predicates = new ConcurrentHashMap<>();
+
+    private volatile ConcurrentHashMap<String, AtomicLong> contexts = new ConcurrentHashMap<>();
+
+    // false until the statistics have been computed at least once
+    private volatile boolean available = false;
+
+    public KiWiStatistics(KiWiPersistence persistence) {
+        this.persistence = persistence;
+    }
+
+    /**
+     * Return true in case statistics have been computed and can be used for cardinality estimation.
+     */
+    public boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * Recompute all statistics from the database. This runs aggregate queries over the triples table and should
+     * therefore be called from a background thread. Concurrent refreshs are serialized, so the last refresh wins.
+     *
+     * @throws SQLException
+     */
+    public synchronized void refresh() throws SQLException {
+        long start = System.currentTimeMillis();
+
+        long size = 0, subjects = 0, objects = 0;
+        ConcurrentHashMap<String, PredicateStatistics> newPredicates = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, AtomicLong> newContexts = new ConcurrentHashMap<>();
+
+        try (KiWiConnection connection = persistence.getConnection()) {
+            PreparedStatement querySize = connection.getPreparedStatement("stats.size");
+            try (ResultSet result = querySize.executeQuery()) {
+                if (result.next()) {
+                    size     = result.getLong(1);
+                    subjects = result.getLong(2);
+                    objects  = result.getLong(3);
+                }
+            }
+
+            List<long[]> rows = new ArrayList<>();
+            PreparedStatement queryPredicates = connection.getPreparedStatement("stats.predicates");
+            try (ResultSet result = queryPredicates.executeQuery()) {
+                while (result.next()) {
+                    rows.add(new long[]{result.getLong(1), result.getLong(2), result.getLong(3), result.getLong(4)});
+                }
+            }
+            KiWiNode[] nodes = connection.loadNodesByIds(nodeIds(rows));
+            for (int i = 0; i < rows.size(); i++) {
+                if (nodes[i] != null) {
+                    long[] row = rows.get(i);
+                    newPredicates.put(nodes[i].stringValue(), new PredicateStatistics(row[1], row[2], row[3]));
+                }
+            }
+
+            rows.clear();
+            PreparedStatement queryContexts = connection.getPreparedStatement("stats.contexts");
+            try (ResultSet result = queryContexts.executeQuery()) {
+                while (result.next()) {
+                    rows.add(new long[]{result.getLong(1), result.getLong(2)});
+                }
+            }
+            nodes = connection.loadNodesByIds(nodeIds(rows));
+            for (int i = 0; i < rows.size(); i++) {
+                if (nodes[i] != null) {
+                    newContexts.put(nodes[i].stringValue(), new AtomicLong(rows.get(i)[1]));
+                }
+            }
+
+            connection.commit();
+        }
+
+        tripleCount.set(size);
+        distinctSubjects = subjects;
+        distinctObjects  = objects;
+        predicates = newPredicates;
+        contexts   = newContexts;
+        available  = true;
+
+        log.debug("refreshed triple store statistics: {} triples, {} predicates, {} contexts (duration: {} ms)", size, newPredicates.size(), newContexts.size(), System.currentTimeMillis() - start);
+    }
+
+    private static long[] nodeIds(List<long[]> rows) {
+        long[] ids = new long[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            ids[i] = rows.get(i)[0];
+        }
+        return ids;
+    }
+
+    /**
+     * Incrementally update the statistics with the triples added or removed by a committed transaction. The
+     * maps contain the change in the number of triples for each predicate resp. context.
+     */
+    public void update(Map<String, Long> predicateDeltas, Map<String, Long> contextDeltas) {
+        if (!available) {
+            return;
+        }
+
+        long total = 0;
+        for (Map.Entry<String, Long> delta : predicateDeltas.entrySet()) {
+            PredicateStatistics ps = predicates.get(delta.getKey());
+            if (ps == null) {
+                ps = new PredicateStatistics(0, 0, 0);
+                PredicateStatistics existing = predicates.putIfAbsent(delta.getKey(), ps);
+                if (existing != null) {
+                    ps = existing;
+                }
+            }
+            ps.triples.addAndGet(delta.getValue());
+            total += delta.getValue();
+        }
+        tripleCount.addAndGet(total);
+
+        for (Map.Entry<String, Long> delta : contextDeltas.entrySet()) {
+            AtomicLong cs = contexts.get(delta.getKey());
+            if (cs == null) {
+                cs = new AtomicLong();
+                AtomicLong existing = contexts.putIfAbsent(delta.getKey(), cs);
+                if (existing != null) {
+                    cs = existing;
+                }
+            }
+            cs.addAndGet(delta.getValue());
+        }
+    }
+
+    /**
+     * Estimate the number of triples matching a pattern with the given constant values; a null value stands for
+     * an unbound position.
+     */
+    public double getCardinality(Resource subject, URI predicate, Value object, Resource context) {
+        double size = Math.max(tripleCount.get(), 0);
+        double cardinality;
+
+        if (predicate != null) {
+            PredicateStatistics ps = predicates.get(predicate.stringValue());
+            if (ps == null) {
+                // predicate does not occur in the data
+                return 1;
+            }
+            cardinality = Math.max(ps.triples.get(), 0);
+            if (subject != null) {
+                cardinality /= Math.max(ps.distinctSubjects, 1);
+            }
+            if (object != null) {
+                cardinality /= Math.max(ps.distinctObjects, 1);
+            }
+        } else {
+            cardinality = size;
+            if (subject != null) {
+                cardinality /= Math.max(distinctSubjects, 1);
+            }
+            if (object != null) {
+                cardinality /= Math.max(distinctObjects, 1);
+            }
+        }
+
+        if (context != null && size > 0) {
+            AtomicLong cs = contexts.get(context.stringValue());
+            cardinality *= (cs != null ? Math.max(cs.get(), 0) : 0) / size;
+        }
+
+        return Math.max(cardinality, 1);
+    }
+
+    /**
+     * Return the number of triples with the given predicate, or 0 if the predicate is unknown.
+     */
+    public long getPredicateCount(URI predicate) {
+        PredicateStatistics ps = predicates.get(predicate.stringValue());
+        return ps != null ? ps.triples.get() : 0;
+    }
+
+    /**
+     * Return the number of triples in the given context, or 0 if the context is unknown.
+     */
+    public long getContextCount(Resource context) {
+        AtomicLong cs = contexts.get(context.stringValue());
+        return cs != null ? cs.get() : 0;
+    }
+
+    public long getTripleCount() {
+        return tripleCount.get();
+    }
+
+
+    private static class PredicateStatistics {
+        AtomicLong triples;
+        long distinctSubjects;
+        long distinctObjects;
+
+        private PredicateStatistics(long triples, long distinctSubjects, long distinctObjects) {
+            this.triples = new AtomicLong(triples);
+            this.distinctSubjects = distinctSubjects;
+            this.distinctObjects = distinctObjects;
+        }
+    }
+}
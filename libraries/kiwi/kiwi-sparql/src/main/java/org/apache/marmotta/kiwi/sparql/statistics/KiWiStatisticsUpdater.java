@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.statistics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A background thread recomputing the triple store statistics on startup and then in regular intervals
+ * (default: every hour), correcting the drift of the incrementally maintained counts. With an interval of 0, the
+ * statistics are only computed once.
+ */
+public class KiWiStatisticsUpdater extends Thread {
+
+    private static Logger log = LoggerFactory.getLogger(KiWiStatisticsUpdater.class);
+
+    private KiWiStatistics statistics;
+
+    private long interval = TimeUnit.MILLISECONDS.convert(1L, TimeUnit.HOURS);
+
+    private boolean shutdown = false;
+
+    public KiWiStatisticsUpdater(KiWiStatistics statistics) {
+        super("KiWi Statistics Updater");
+        setDaemon(true);
+
+        this.statistics = statistics;
+    }
+
+    /**
+     * Get the interval to wait between statistics refreshs (milliseconds)
+     */
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Set the interval to wait between statistics refreshs (milliseconds); 0 only computes the statistics once
+     * @param interval refresh interval in milliseconds.
+     */
+    public void setInterval(long interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            while(!shutdown) {
+                log.info("computing triple store statistics ...");
+                try {
+                    statistics.refresh();
+                } catch (SQLException e) {
+                    log.error("error while computing triple store statistics: {}", e.getMessage());
+                }
+
+                if(interval <= 0) {
+                    break;
+                }
+
+                try {
+                    this.wait(interval);
+                } catch (InterruptedException ignore) {
+                }
+            }
+        }
+    }
+
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+            this.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.test;
+
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.sail.KiWiStore;
+import org.apache.marmotta.kiwi.sparql.sail.KiWiSparqlSail;
+import org.apache.marmotta.kiwi.sparql.statistics.KiWiStatistics;
+import org.apache.marmotta.kiwi.test.junit.KiWiDatabaseRunner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+
+import java.sql.SQLException;
+
+/**
+ * Test the data statistics used for estimating the cardinality of statement patterns: computation from the
+ * database and incremental maintenance on commit.
+ */
+@RunWith(KiWiDatabaseRunner.class)
+public class KiWiStatisticsTest {
+
+    private KiWiStore store;
+
+    private KiWiSparqlSail ssail;
+
+    private Repository repository;
+
+    private URI p1, p2, p3, context;
+
+    private final KiWiConfiguration dbConfig;
+
+    public KiWiStatisticsTest(KiWiConfiguration dbConfig) {
+        this.dbConfig = dbConfig;
+        dbConfig.setStatisticsEnabled(true);
+        dbConfig.setStatisticsInterval(0);
+    }
+
+    @Before
+    public void initDatabase() throws Exception {
+        store = new KiWiStore(dbConfig);
+        ssail = new KiWiSparqlSail(store);
+        repository = new SailRepository(ssail);
+        repository.initialize();
+
+        ValueFactory vf = repository.getValueFactory();
+        p1      = vf.createURI("http://localhost/test/p1");
+        p2      = vf.createURI("http://localhost/test/p2");
+        p3      = vf.createURI("http://localhost/test/p3");
+        context = vf.createURI("http://localhost/test/context");
+
+        // 10 triples with p1 (5 distinct subjects, 10 distinct objects) and 1 triple with p2
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            for(int i = 0; i < 10; i++) {
+                con.add(vf.createURI("http://localhost/test/s" + (i % 5)), p1, vf.createURI("http://localhost/test/o" + i), context);
+            }
+            con.add(vf.createURI("http://localhost/test/s0"), p2, vf.createLiteral("value"), context);
+            con.commit();
+        } finally {
+            con.close();
+        }
+
+        ssail.getStatistics().refresh();
+    }
+
+    @After
+    public void dropDatabase() throws RepositoryException, SQLException {
+        store.getPersistence().dropDatabase();
+        repository.shutDown();
+    }
+
+    @Test
+    public void testRefresh() {
+        KiWiStatistics statistics = ssail.getStatistics();
+
+        Assert.assertTrue(statistics.isAvailable());
+        Assert.assertEquals(11, statistics.getTripleCount());
+        Assert.assertEquals(10, statistics.getPredicateCount(p1));
+        Assert.assertEquals(1, statistics.getPredicateCount(p2));
+        Assert.assertEquals(0, statistics.getPredicateCount(p3));
+        Assert.assertEquals(11, statistics.getContextCount(context));
+    }
+
+    @Test
+    public void testCardinality() {
+        KiWiStatistics statistics = ssail.getStatistics();
+        URI s0 = repository.getValueFactory().createURI("http://localhost/test/s0");
+        URI o0 = repository.getValueFactory().createURI("http://localhost/test/o0");
+
+        Assert.assertEquals(10.0, statistics.getCardinality(null, p1, null, null), 0.001);
+        Assert.assertEquals(2.0, statistics.getCardinality(s0, p1, null, null), 0.001);
+        Assert.assertEquals(1.0, statistics.getCardinality(null, p1, o0, null), 0.001);
+        Assert.assertEquals(10.0, statistics.getCardinality(null, p1, null, context), 0.001);
+
+        // unknown predicates do not match anything
+        Assert.assertEquals(1.0, statistics.getCardinality(null, p3, null, null), 0.001);
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        KiWiStatistics statistics = ssail.getStatistics();
+        ValueFactory vf = repository.getValueFactory();
+
+        // committed changes are applied without refreshing the statistics
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            con.add(vf.createURI("http://localhost/test/s1"), p2, vf.createLiteral("value"), context);
+            con.add(vf.createURI("http://localhost/test/s2"), p3, vf.createLiteral("value"), context);
+            con.remove(vf.createURI("http://localhost/test/s0"), p1, null, context);
+            con.commit();
+        } finally {
+            con.close();
+        }
+
+        Assert.assertEquals(11, statistics.getTripleCount());
+        Assert.assertEquals(8, statistics.getPredicateCount(p1));
+        Assert.assertEquals(2, statistics.getPredicateCount(p2));
+        Assert.assertEquals(1, statistics.getPredicateCount(p3));
+        Assert.assertEquals(11, statistics.getContextCount(context));
+
+        // changes that are rolled back are not applied
+        con = repository.getConnection();
+        try {
+            con.begin();
+            con.add(vf.createURI("http://localhost/test/s3"), p3, vf.createLiteral("value"), context);
+            con.rollback();
+        } finally {
+            con.close();
+        }
+
+        Assert.assertEquals(11, statistics.getTripleCount());
+        Assert.assertEquals(1, statistics.getPredicateCount(p3));
+
+        // a refresh yields the same counts
+        statistics.refresh();
+        Assert.assertEquals(11, statistics.getTripleCount());
+        Assert.assertEquals(8, statistics.getPredicateCount(p1));
+        Assert.assertEquals(1, statistics.getPredicateCount(p3));
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.test;
+
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.sail.KiWiStore;
+import org.apache.marmotta.kiwi.sparql.sail.KiWiSparqlSail;
+import org.apache.marmotta.kiwi.test.junit.KiWiDatabaseRunner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.query.BindingSet;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Test the batched resolution of result nodes of native SPARQL queries with a window smaller than the result, so
+ * that result rows span several windows and the last window is only partially filled.
+ */
+@RunWith(KiWiDatabaseRunner.class)
+public class NodePrefetchingTest {
+
+    private static final int ROWS = 53;
+
+    private KiWiStore store;
+
+    private Repository repository;
+
+    private URI predicate;
+
+    private final KiWiConfiguration dbConfig;
+
+    public NodePrefetchingTest(KiWiConfiguration dbConfig) {
+        this.dbConfig = dbConfig;
+        dbConfig.setNodePrefetchSize(10);
+    }
+
+    @Before
+    public void initDatabase() throws Exception {
+        store = new KiWiStore(dbConfig);
+        repository = new SailRepository(new KiWiSparqlSail(store));
+        repository.initialize();
+
+        ValueFactory vf = repository.getValueFactory();
+        predicate = vf.createURI("http://localhost/test/value");
+
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            for(int i = 0; i < ROWS; i++) {
+                con.add(vf.createURI("http://localhost/test/r" + i), predicate, vf.createLiteral(i));
+            }
+            con.commit();
+        } finally {
+            con.close();
+        }
+
+        // resolve all result nodes from the database
+        store.getPersistence().clearNodeCaches();
+    }
+
+    @After
+    public void dropDatabase() throws RepositoryException, SQLException {
+        store.getPersistence().dropDatabase();
+        repository.shutDown();
+    }
+
+    @Test
+    public void testAllRowsResolved() throws Exception {
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+
+            Set<String> subjects = new HashSet<>();
+            TupleQueryResult result = con.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s ?o WHERE { ?s <" + predicate.stringValue() + "> ?o }").evaluate();
+            try {
+                while (result.hasNext()) {
+                    BindingSet row = result.next();
+                    Assert.assertTrue(row.getValue("s") instanceof URI);
+                    Assert.assertTrue(row.getValue("o") instanceof Literal);
+
+                    // the values of a row belong to the same triple
+                    int i = ((Literal) row.getValue("o")).intValue();
+                    Assert.assertEquals("http://localhost/test/r" + i, row.getValue("s").stringValue());
+
+                    subjects.add(row.getValue("s").stringValue());
+                }
+            } finally {
+                result.close();
+            }
+            Assert.assertEquals(ROWS, subjects.size());
+
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+    @Test
+    public void testOrderPreserved() throws Exception {
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+
+            TupleQueryResult result = con.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s ?o WHERE { ?s <" + predicate.stringValue() + "> ?o } ORDER BY DESC(?o)").evaluate();
+            try {
+                int expected = ROWS - 1;
+                while (result.hasNext()) {
+                    BindingSet row = result.next();
+                    Assert.assertEquals(expected, ((Literal) row.getValue("o")).intValue());
+                    Assert.assertEquals("http://localhost/test/r" + expected, row.getValue("s").stringValue());
+                    expected--;
+                }
+                Assert.assertEquals(-1, expected);
+            } finally {
+                result.close();
+            }
+
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+    @Test
+    public void testNoResults() throws Exception {
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+
+            TupleQueryResult result = con.prepareTupleQuery(QueryLanguage.SPARQL, "SELECT ?s WHERE { ?s <http://localhost/test/unknown> ?o }").evaluate();
+            try {
+                Assert.assertFalse(result.hasNext());
+            } finally {
+                result.close();
+            }
+
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+}
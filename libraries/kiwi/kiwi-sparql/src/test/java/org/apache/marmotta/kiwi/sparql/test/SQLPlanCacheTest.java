@@ -0,0 +1,262 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.sparql.test;
+
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.sail.KiWiStore;
+import org.apache.marmotta.kiwi.sparql.builder.SQLBuilder;
+import org.apache.marmotta.kiwi.sparql.evaluation.SQLPlan;
+import org.apache.marmotta.kiwi.sparql.evaluation.SQLPlanCache;
+import org.apache.marmotta.kiwi.sparql.sail.KiWiSparqlSail;
+import org.apache.marmotta.kiwi.test.junit.KiWiDatabaseRunner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.query.QueryLanguage;
+import org.openrdf.query.TupleQueryResult;
+import org.openrdf.query.algebra.Projection;
+import org.openrdf.query.algebra.TupleExpr;
+import org.openrdf.query.impl.EmptyBindingSet;
+import org.openrdf.query.parser.QueryParserUtil;
+import org.openrdf.repository.Repository;
+import org.openrdf.repository.RepositoryConnection;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.sail.SailRepository;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Test the cache of SQL translations of SPARQL queries: reuse of plans, also for different constants, invalidation
+ * when the node caches are cleared, and correct results when a constant of a cached query is deleted and created
+ * again with a new id.
+ */
+@RunWith(KiWiDatabaseRunner.class)
+public class SQLPlanCacheTest {
+
+    private static final String QUERY =
+            "SELECT ?s ?n WHERE { ?s <http://localhost/test/knows> <http://localhost/test/o> . ?s <http://localhost/test/name> ?n }";
+
+    private KiWiStore store;
+
+    private KiWiSparqlSail ssail;
+
+    private Repository repository;
+
+    private URI s, o, knows, name;
+
+    private final KiWiConfiguration dbConfig;
+
+    public SQLPlanCacheTest(KiWiConfiguration dbConfig) {
+        this.dbConfig = dbConfig;
+    }
+
+    @Before
+    public void initDatabase() throws Exception {
+        store = new KiWiStore(dbConfig);
+        ssail = new KiWiSparqlSail(store);
+        repository = new SailRepository(ssail);
+        repository.initialize();
+
+        ValueFactory vf = repository.getValueFactory();
+        s     = vf.createURI("http://localhost/test/s");
+        o     = vf.createURI("http://localhost/test/o");
+        knows = vf.createURI("http://localhost/test/knows");
+        name  = vf.createURI("http://localhost/test/name");
+
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            con.add(s, knows, o);
+            con.add(s, name, vf.createLiteral("s"));
+            con.commit();
+        } finally {
+            con.close();
+        }
+    }
+
+    @After
+    public void dropDatabase() throws RepositoryException, SQLException {
+        store.getPersistence().dropDatabase();
+        repository.shutDown();
+    }
+
+    /**
+     * The SQL of a plan does not contain the database ids of the constants of the query; they are parameters.
+     */
+    @Test
+    public void testConstantsAreParameters() throws Exception {
+        TupleExpr expr = ((Projection) QueryParserUtil.parseTupleQuery(QueryLanguage.SPARQL, QUERY, null).getTupleExpr()).getArg();
+
+        SQLPlan plan = new SQLPlan(new SQLBuilder(expr, EmptyBindingSet.getInstance(), null, dbConfig.getDialect(), Collections.<String>emptySet()));
+
+        Set<String> parameters = new HashSet<>();
+        for(Value v : plan.getParameters()) {
+            parameters.add(v.stringValue());
+        }
+        Assert.assertTrue(parameters.contains(o.stringValue()));
+        Assert.assertTrue(parameters.contains(knows.stringValue()));
+        Assert.assertTrue(parameters.contains(name.stringValue()));
+        Assert.assertFalse(plan.getSql().contains("\u0001"));
+        Assert.assertEquals(plan.getParameters().size(), plan.getSql().split("\\?", -1).length - 1);
+    }
+
+    @Test
+    public void testCacheHit() throws Exception {
+        SQLPlanCache cache = ssail.getPlanCache();
+
+        Assert.assertEquals(1, count(QUERY));
+        long misses = cache.getMissCount();
+        long hits   = cache.getHitCount();
+        Assert.assertTrue(misses > 0);
+
+        Assert.assertEquals(1, count(QUERY));
+        Assert.assertEquals(misses, cache.getMissCount());
+        Assert.assertTrue(cache.getHitCount() > hits);
+    }
+
+    /**
+     * Executions of the same query shape with different constants share the plan, and each returns the results for
+     * its own constants.
+     */
+    @Test
+    public void testConstantsSharePlan() throws Exception {
+        ValueFactory vf = repository.getValueFactory();
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            con.add(vf.createURI("http://localhost/test/s2"), knows, vf.createURI("http://localhost/test/o2"));
+            con.add(vf.createURI("http://localhost/test/s2"), name, vf.createLiteral("s2"));
+            con.add(vf.createURI("http://localhost/test/s3"), knows, vf.createURI("http://localhost/test/o2"));
+            con.commit();
+        } finally {
+            con.close();
+        }
+
+        SQLPlanCache cache = ssail.getPlanCache();
+
+        Assert.assertEquals(Collections.singleton("s"), names(QUERY));
+        long misses = cache.getMissCount();
+
+        String query2 = QUERY.replace("<http://localhost/test/o>", "<http://localhost/test/o2>");
+        Assert.assertEquals(Collections.singleton("s2"), names(query2));
+        Assert.assertEquals(misses, cache.getMissCount());
+
+        Assert.assertEquals(Collections.singleton("s"), names(QUERY));
+        Assert.assertEquals(misses, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        SQLPlanCache cache = ssail.getPlanCache();
+
+        Assert.assertEquals(1, count(QUERY));
+        long misses = cache.getMissCount();
+
+        store.getPersistence().clearNodeCaches();
+
+        Assert.assertEquals(1, count(QUERY));
+        Assert.assertTrue(cache.getMissCount() > misses);
+    }
+
+    /**
+     * A constant of a cached query is deleted by the garbage collector and created again with a different id.
+     */
+    @Test
+    public void testRecreatedNode() throws Exception {
+        Assert.assertEquals(1, count(QUERY));
+
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+            con.remove(s, knows, o);
+            con.commit();
+        } finally {
+            con.close();
+        }
+        store.getPersistence().garbageCollect();
+
+        Assert.assertEquals(0, count(QUERY));
+
+        // the KiWi nodes of the test still carry the ids of the deleted nodes, so create the triple from plain values
+        ValueFactory vf = ValueFactoryImpl.getInstance();
+        con = repository.getConnection();
+        try {
+            con.begin();
+            con.add(vf.createURI(s.stringValue()), vf.createURI(knows.stringValue()), vf.createURI(o.stringValue()));
+            con.commit();
+        } finally {
+            con.close();
+        }
+
+        Assert.assertEquals(1, count(QUERY));
+    }
+
+    private Set<String> names(String query) throws Exception {
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+
+            Set<String> names = new HashSet<>();
+            TupleQueryResult result = con.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+            try {
+                while (result.hasNext()) {
+                    names.add(result.next().getValue("n").stringValue());
+                }
+            } finally {
+                result.close();
+            }
+
+            con.commit();
+            return names;
+        } finally {
+            con.close();
+        }
+    }
+
+    private int count(String query) throws Exception {
+        RepositoryConnection con = repository.getConnection();
+        try {
+            con.begin();
+
+            int count = 0;
+            TupleQueryResult result = con.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+            try {
+                while (result.hasNext()) {
+                    result.next();
+                    count++;
+                }
+            } finally {
+                result.close();
+            }
+
+            con.commit();
+            return count;
+        } finally {
+            con.close();
+        }
+    }
+}
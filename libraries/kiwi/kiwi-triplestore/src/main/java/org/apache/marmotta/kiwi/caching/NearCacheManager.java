@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.caching;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.model.rdf.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A cache manager decorator keeping a bounded local cache (L1) in front of the node caches of another, usually
+ * clustered cache manager (L2). Lookups are answered from the local cache if possible and only go to the L2 cache
+ * (and thus over the network) on a local miss; updates are written to both.
+ * <p/>
+ * Only the node, URI, blank node and literal caches are decorated: nodes do not change once they have been persisted,
+ * so a cached node only becomes invalid when it is deleted by the garbage collector, which clears the node caches.
+ * Clearing a decorated cache or removing an entry from it changes a shared epoch stored in the L2 cache manager; all
+ * cluster members check the epoch at most once per second and drop their local caches when it changed. Until then,
+ * other members may still return a removed entry from their local cache, i.e. for up to one second. All other caches
+ * (triples, namespaces, registry) are returned unchanged by the L2 cache manager.
+ * <p/>
+ * In case the L2 cache manager does not provide the epoch cache (e.g. a remote Infinispan server on which it is not
+ * configured), changes cannot be propagated to other members and the local caches are disabled.
+ */
+public class NearCacheManager implements CacheManager {
+
+    private static Logger log = LoggerFactory.getLogger(NearCacheManager.class);
+
+    // name of the L2 cache holding the epoch of the decorated caches and key of the epoch
+    public static final String EPOCH_CACHE = "near-cache-epoch";
+    private static final String EPOCH_KEY  = "nodes";
+
+    // interval for checking the shared epoch (milliseconds); entries removed or cleared on another member may be
+    // returned from the local cache for up to this long
+    private static final long EPOCH_CHECK_INTERVAL = 1000;
+
+    private final CacheManager delegate;
+
+    private final NearCacheMap<Long,KiWiNode> nodeCache;
+    private final NearCacheMap<String,KiWiUriResource> uriCache;
+    private final NearCacheMap<String,KiWiAnonResource> bnodeCache;
+    private final NearCacheMap<String,KiWiLiteral> literalCache;
+
+    private final Map<String,Long> epochs;
+
+    private final Random random = new Random();
+
+    private volatile Long epoch;
+
+    private volatile long epochChecked;
+
+    /**
+     * Create a new near cache manager decorating the cache manager given as argument; the local caches hold at most
+     * {@link KiWiConfiguration#getNearCacheSize()} entries each.
+     *
+     * @param delegate      the (clustered) cache manager used as L2 cache
+     * @param configuration KiWi configuration used by the underlying triple store
+     */
+    @SuppressWarnings("unchecked")
+    public NearCacheManager(CacheManager delegate, KiWiConfiguration configuration) {
+        Map<String,Long> shared = delegate.getCacheByName(EPOCH_CACHE);
+
+        int size = configuration.getNearCacheSize();
+        if(shared == null) {
+            log.warn("L2 cache manager does not provide the cache {}, disabling the near cache", EPOCH_CACHE);
+            shared = new ConcurrentHashMap<>();
+            size   = 0;
+        } else {
+            log.info("initialising near cache with {} local entries per node cache ...", size);
+        }
+
+        this.delegate     = delegate;
+        this.nodeCache    = new NearCacheMap<>(delegate.getNodeCache(), size);
+        this.uriCache     = new NearCacheMap<>(delegate.getUriCache(), size);
+        this.bnodeCache   = new NearCacheMap<>(delegate.getBNodeCache(), size);
+        this.literalCache = new NearCacheMap<>(delegate.getLiteralCache(), size);
+
+        this.epochs       = shared;
+        this.epoch        = epochs.get(EPOCH_KEY);
+        this.epochChecked = System.currentTimeMillis();
+    }
+
+    /**
+     * Return the cache manager used as L2 cache.
+     */
+    public CacheManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Return the node id -> node cache from the cache manager. This cache is heavily used to lookup
+     * nodes when querying or loading triples and should therefore have a decent size (default 500.000 elements).
+     *
+     * @return a map containing the node id -> node mappings, backed by the local and the L2 cache
+     */
+    @Override
+    public Map<Long, KiWiNode> getNodeCache() {
+        return nodeCache;
+    }
+
+    /**
+     * Return the triple id -> triple cache from the cache manager. Triples are not decorated, since their
+     * deletion state may change.
+     *
+     * @return
+     */
+    @Override
+    public Map<Long, KiWiTriple> getTripleCache() {
+        return delegate.getTripleCache();
+    }
+
+    /**
+     * Return the uri -> KiWiUriResource cache from the cache manager. This cache is used when constructing new
+     * KiWiUriResources to avoid a database lookup.
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiUriResource> getUriCache() {
+        return uriCache;
+    }
+
+    /**
+     * Return the anonId -> KiWiAnonResource cache from the cache manager. This cache is used when constructing new
+     * KiWiAnonResources to avoid a database lookup.
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiAnonResource> getBNodeCache() {
+        return bnodeCache;
+    }
+
+    /**
+     * Return the literal cache key -> KiWiLiteral cache from the cache manager. This cache is used when constructing new
+     * KiWiLiterals to avoid a database lookup.
+     *
+     * @return
+     * @see org.apache.marmotta.commons.sesame.model.LiteralCommons#createCacheKey(String, java.util.Locale, String)
+     */
+    @Override
+    public Map<String, KiWiLiteral> getLiteralCache() {
+        return literalCache;
+    }
+
+    /**
+     * Return the URI -> namespace cache from the cache manager. Used for looking up namespaces
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiNamespace> getNamespaceUriCache() {
+        return delegate.getNamespaceUriCache();
+    }
+
+    /**
+     * Return the prefix -> namespace cache from the cache manager. Used for looking up namespaces
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiNamespace> getNamespacePrefixCache() {
+        return delegate.getNamespacePrefixCache();
+    }
+
+    /**
+     * Create and return the cache used by the CacheTripleRegistry. This is an unlimited synchronous replicated
+     * cache and should be used with care.
+     *
+     * @return
+     */
+    @Override
+    public Map<Long, Long> getRegistryCache() {
+        return delegate.getRegistryCache();
+    }
+
+    /**
+     * Get the cache with the given name from the cache manager. Can be used to request additional
+     * caches from the cache manager that are not covered by explicit methods.
+     *
+     * @param name
+     * @return
+     */
+    @Override
+    public Map getCacheByName(String name) {
+        return delegate.getCacheByName(name);
+    }
+
+    /**
+     * Clear all caches managed by this cache manager.
+     */
+    @Override
+    public void clear() {
+        delegate.clear();
+        invalidate();
+    }
+
+    /**
+     * Shutdown this cache manager instance. Will shutdown the underlying cache manager.
+     */
+    @Override
+    public void shutdown() {
+        invalidateLocal();
+        delegate.shutdown();
+    }
+
+    /**
+     * Drop the local caches of all cluster members.
+     */
+    private void invalidate() {
+        invalidateLocal();
+        changeEpoch();
+    }
+
+    /**
+     * Make all other cluster members drop their local caches with their next epoch check.
+     */
+    private void changeEpoch() {
+        Long next = random.nextLong();
+        epochs.put(EPOCH_KEY, next);
+        epoch = next;
+    }
+
+    private void invalidateLocal() {
+        nodeCache.local.invalidateAll();
+        uriCache.local.invalidateAll();
+        bnodeCache.local.invalidateAll();
+        literalCache.local.invalidateAll();
+    }
+
+    /**
+     * Drop the local caches in case another cluster member changed the shared epoch since the last check.
+     */
+    private void checkEpoch() {
+        long now = System.currentTimeMillis();
+        if(now - epochChecked >= EPOCH_CHECK_INTERVAL) {
+            epochChecked = now;
+
+            Long current = epochs.get(EPOCH_KEY);
+            if(current != null && !current.equals(epoch)) {
+                log.debug("node caches have been cleared in the cluster, dropping near cache");
+                invalidateLocal();
+                epoch = current;
+            }
+        }
+    }
+
+
+    /**
+     * A map answering lookups from a local cache before consulting the map of the L2 cache. Bulk operations and
+     * size queries are answered by the L2 cache.
+     */
+    private class NearCacheMap<K,V> implements Map<K,V> {
+
+        private final Map<K,V> remote;
+
+        private final Cache<K,V> local;
+
+        private NearCacheMap(Map<K, V> remote, int size) {
+            this.remote = remote;
+            this.local  = CacheBuilder.newBuilder()
+                    .maximumSize(size)
+                    .expireAfterAccess(30, TimeUnit.MINUTES)
+                    .build();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            checkEpoch();
+
+            V value = local.getIfPresent(key);
+            if(value == null) {
+                value = remote.get(key);
+                if(value != null) {
+                    local.put((K) key, value);
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public V put(K key, V value) {
+            local.put(key, value);
+            return remote.put(key, value);
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> m) {
+            local.putAll(m);
+            remote.putAll(m);
+        }
+
+        @Override
+        public V remove(Object key) {
+            local.invalidate(key);
+            V removed = remote.remove(key);
+            changeEpoch();
+            return removed;
+        }
+
+        @Override
+        public void clear() {
+            remote.clear();
+            invalidate();
+        }
+
+        @Override
+        public int size() {
+            return remote.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return remote.isEmpty();
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return remote.containsValue(value);
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return remote.keySet();
+        }
+
+        @Override
+        public Collection<V> values() {
+            return remote.values();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return remote.entrySet();
+        }
+    }
+}
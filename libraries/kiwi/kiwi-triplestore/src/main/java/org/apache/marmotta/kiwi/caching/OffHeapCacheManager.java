@@ -0,0 +1,407 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.caching;
+
+import org.apache.marmotta.commons.sesame.model.LiteralCommons;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.io.KiWiIO;
+import org.apache.marmotta.kiwi.model.rdf.*;
+import org.openrdf.model.Literal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cache manager keeping the node, URI, blank node and literal caches outside of the Java heap. Nodes are serialized
+ * with {@link KiWiIO#writeNode(java.io.DataOutput, KiWiNode)} into direct memory slabs of a byte budget
+ * (see {@link OffHeapNodeStore}) and indexed by id and by the hash of their URI, blank node id or literal cache key
+ * in primitive hash tables, so millions of cached nodes cost neither heap objects nor garbage collection time.
+ * Lookups return a new node object read from the serialized data on every call. The triple, namespace and registry
+ * caches are kept on the heap like in the {@link GuavaCacheManager}. Does not support clustered operation.
+ * <p/>
+ * All node caches share the same store: a node is stored only once even when it is added to the node cache and to
+ * the URI cache, and clearing one of the node caches clears all of them.
+ * <p/>
+ * Pending nodes of deferred node persistence only exist as objects and cannot be stored with their state, so
+ * KiWiPersistence refuses to start with deferred node persistence and this caching backend.
+ */
+public class OffHeapCacheManager implements CacheManager {
+
+    private static Logger log = LoggerFactory.getLogger(OffHeapCacheManager.class);
+
+    // key indexes of the store
+    private static final int KEY_URI     = 0;
+    private static final int KEY_BNODE   = 1;
+    private static final int KEY_LITERAL = 2;
+
+    private final OffHeapNodeStore store;
+
+    private final CacheManager heapCaches;
+
+    private final Map<Long,KiWiNode> nodeCache;
+    private final Map<String,KiWiUriResource> uriCache;
+    private final Map<String,KiWiAnonResource> bnodeCache;
+    private final Map<String,KiWiLiteral> literalCache;
+
+    public OffHeapCacheManager(KiWiConfiguration configuration) {
+        log.info("initialising off-heap caching backend ({} MB direct memory for nodes) ...", configuration.getOffHeapCacheSize() / (1024 * 1024));
+
+        if(configuration.isClustered()) {
+            log.warn("clustering not supported by off-heap caching backend; please use Infinispan or Hazelcast instead!");
+        }
+
+        store      = new OffHeapNodeStore(configuration.getOffHeapCacheSize(), 3);
+        heapCaches = new GuavaCacheManager(configuration);
+
+        nodeCache    = new NodeMap();
+        uriCache     = new KeyMap<>(KiWiUriResource.class, KEY_URI);
+        bnodeCache   = new KeyMap<>(KiWiAnonResource.class, KEY_BNODE);
+        literalCache = new KeyMap<>(KiWiLiteral.class, KEY_LITERAL);
+    }
+
+    /**
+     * Return the node id -> node cache from the cache manager. This cache is heavily used to lookup
+     * nodes when querying or loading triples and should therefore have a decent size (default 500.000 elements).
+     *
+     * @return a map view of the off-heap node store
+     */
+    @Override
+    public Map<Long, KiWiNode> getNodeCache() {
+        return nodeCache;
+    }
+
+    /**
+     * Return the triple id -> triple cache from the cache manager. This cache is used for speeding up the
+     * construction of query results.
+     *
+     * @return
+     */
+    @Override
+    public Map<Long, KiWiTriple> getTripleCache() {
+        return heapCaches.getTripleCache();
+    }
+
+    /**
+     * Return the uri -> KiWiUriResource cache from the cache manager. This cache is used when constructing new
+     * KiWiUriResources to avoid a database lookup.
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiUriResource> getUriCache() {
+        return uriCache;
+    }
+
+    /**
+     * Return the anonId -> KiWiAnonResource cache from the cache manager. This cache is used when constructing new
+     * KiWiAnonResources to avoid a database lookup.
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiAnonResource> getBNodeCache() {
+        return bnodeCache;
+    }
+
+    /**
+     * Return the literal cache key -> KiWiLiteral cache from the cache manager. This cache is used when constructing new
+     * KiWiLiterals to avoid a database lookup.
+     *
+     * @return
+     * @see org.apache.marmotta.commons.sesame.model.LiteralCommons#createCacheKey(String, java.util.Locale, String)
+     */
+    @Override
+    public Map<String, KiWiLiteral> getLiteralCache() {
+        return literalCache;
+    }
+
+    /**
+     * Return the URI -> namespace cache from the cache manager. Used for looking up namespaces
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiNamespace> getNamespaceUriCache() {
+        return heapCaches.getNamespaceUriCache();
+    }
+
+    /**
+     * Return the prefix -> namespace cache from the cache manager. Used for looking up namespaces
+     *
+     * @return
+     */
+    @Override
+    public Map<String, KiWiNamespace> getNamespacePrefixCache() {
+        return heapCaches.getNamespacePrefixCache();
+    }
+
+    /**
+     * Create and return the cache used by the CacheTripleRegistry. This is an unlimited synchronous replicated
+     * cache and should be used with care.
+     *
+     * @return
+     */
+    @Override
+    public Map<Long, Long> getRegistryCache() {
+        return heapCaches.getRegistryCache();
+    }
+
+    /**
+     * Get the cache with the given name from the cache manager. Can be used to request additional
+     * caches from the cache manager that are not covered by explicit methods.
+     *
+     * @param name
+     * @return
+     */
+    @Override
+    public Map getCacheByName(String name) {
+        return heapCaches.getCacheByName(name);
+    }
+
+    /**
+     * Clear all caches managed by this cache manager.
+     */
+    @Override
+    public void clear() {
+        store.clear();
+        heapCaches.clear();
+    }
+
+    /**
+     * Shutdown this cache manager instance. Releases the direct memory of the node caches.
+     */
+    @Override
+    public void shutdown() {
+        store.release();
+        heapCaches.shutdown();
+    }
+
+    /**
+     * Return the number of bytes of direct memory currently allocated for the node caches.
+     */
+    public long getAllocatedBytes() {
+        return store.allocatedBytes();
+    }
+
+
+    private static byte[] encode(KiWiNode node) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            KiWiIO.writeNode(out, node);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException | IllegalArgumentException ex) {
+            log.warn("could not serialize node {} for off-heap cache: {}", node, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static KiWiNode decode(byte[] data) {
+        if(data == null) {
+            return null;
+        }
+        try {
+            return KiWiIO.readNode(new DataInputStream(new ByteArrayInputStream(data)));
+        } catch (IOException | IllegalArgumentException ex) {
+            log.warn("could not deserialize node from off-heap cache: {}", ex.getMessage());
+            return null;
+        }
+    }
+
+    // only persisted nodes can be cached, pending nodes would lose their state
+    private static boolean isCacheable(KiWiNode node) {
+        return node != null && node.getId() >= 0 && !node.isPending();
+    }
+
+    /**
+     * 64bit FNV-1a hash of the key, with a final mixing step to spread the bits used by the hash tables.
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for(int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+
+    /**
+     * Base class of the map views of the store. Only the operations used on caches are supported; the collection
+     * views would need to deserialize the whole store.
+     */
+    private abstract class StoreMap<K,V> implements Map<K,V> {
+
+        @Override
+        public boolean isEmpty() {
+            return size() == 0;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> m) {
+            for(Entry<? extends K, ? extends V> entry : m.entrySet()) {
+                put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        @Override
+        public void clear() {
+            store.clear();
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            throw new UnsupportedOperationException("not supported by off-heap caches");
+        }
+
+        @Override
+        public Set<K> keySet() {
+            throw new UnsupportedOperationException("not supported by off-heap caches");
+        }
+
+        @Override
+        public Collection<V> values() {
+            throw new UnsupportedOperationException("not supported by off-heap caches");
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            throw new UnsupportedOperationException("not supported by off-heap caches");
+        }
+    }
+
+    /**
+     * Node id -> node view of the store. Like with distributed caches, put and remove do not return the previous
+     * value.
+     */
+    private class NodeMap extends StoreMap<Long,KiWiNode> {
+
+        @Override
+        public KiWiNode get(Object key) {
+            if(key instanceof Long) {
+                return decode(store.get((Long) key));
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Long && store.contains((Long) key);
+        }
+
+        @Override
+        public KiWiNode put(Long key, KiWiNode node) {
+            if(isCacheable(node) && !store.contains(node.getId())) {
+                byte[] data = encode(node);
+                if(data != null) {
+                    store.put(node.getId(), data);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public KiWiNode remove(Object key) {
+            if(key instanceof Long) {
+                store.remove((Long) key);
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return store.size();
+        }
+    }
+
+    /**
+     * Key -> node view of the store (URIs, blank node ids or literal cache keys). Lookups check that the key of the
+     * node found matches the requested key, since different keys may have the same hash.
+     */
+    private class KeyMap<V extends KiWiNode> extends StoreMap<String,V> {
+
+        private final Class<V> type;
+
+        private final int keyType;
+
+        private KeyMap(Class<V> type, int keyType) {
+            this.type    = type;
+            this.keyType = keyType;
+        }
+
+        @Override
+        public V get(Object key) {
+            if(key instanceof String) {
+                KiWiNode node = decode(store.getByKey(keyType, hash((String) key)));
+                if(type.isInstance(node) && key.equals(keyOf(node))) {
+                    return type.cast(node);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public V put(String key, V node) {
+            if(isCacheable(node)) {
+                byte[] data = encode(node);
+                if(data != null) {
+                    store.putWithKey(node.getId(), data, keyType, hash(key));
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            if(key instanceof String) {
+                store.removeKey(keyType, hash((String) key));
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return store.keyCount(keyType);
+        }
+
+        private String keyOf(KiWiNode node) {
+            if(keyType == KEY_LITERAL) {
+                return LiteralCommons.createCacheKey((Literal) node);
+            } else {
+                return node.stringValue();
+            }
+        }
+    }
+}
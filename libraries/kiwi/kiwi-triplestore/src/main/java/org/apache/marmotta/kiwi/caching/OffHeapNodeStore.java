@@ -0,0 +1,396 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.caching;
+
+import org.apache.marmotta.kiwi.persistence.util.LongLongHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A bounded store for serialized nodes in direct (off-heap) memory. Entries are appended to a ring of fixed-size
+ * slabs allocated with ByteBuffer.allocateDirect() and indexed by node id in a primitive long hash table; in addition,
+ * an entry can be indexed by the 64bit hash of a string key (e.g. the URI of a resource) in one of several key
+ * indexes. Neither the entries nor the index entries are Java objects, so the heap only holds the index arrays.
+ * <p/>
+ * When all slabs are in use, the next slab of the ring is recycled using the CLOCK (second chance) algorithm: entries
+ * read since the slab has last been recycled are compacted to the beginning of the slab and lose their reference
+ * bit, all other entries are dropped from the indexes. The memory of removed entries is reclaimed the same way.
+ * <p/>
+ * Entry layout: int length of the data, byte flags, byte key index (or -1), long id, long key hash, data.
+ * <p/>
+ * The store is thread-safe; lookups share a read lock, updates take the write lock.
+ */
+final class OffHeapNodeStore {
+
+    private static final int HEADER = 22;
+
+    private static final int OFFSET_FLAGS = 4;
+    private static final int OFFSET_KEY   = 5;
+    private static final int OFFSET_ID    = 6;
+    private static final int OFFSET_HASH  = 14;
+
+    private static final byte FLAG_REFERENCED = 1;
+
+    private static final byte NO_KEY = -1;
+
+    private static final int MIN_SLAB_SIZE = 64 * 1024;
+    private static final int MAX_SLAB_SIZE = 256 * 1024 * 1024;
+
+    private final int slabSize;
+
+    private final ByteBuffer[] slabs;
+
+    // write position in each slab
+    private final int[] fill;
+
+    // slab currently written to
+    private int current = 0;
+
+    // node id -> location (slab << 32 | offset)
+    private final LongLongHashMap index;
+
+    // key hash -> node id, one index per key type
+    private final LongLongHashMap[] keyIndexes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Create a new store using at most the given number of bytes of direct memory; the memory is allocated in slabs
+     * when it is needed.
+     *
+     * @param maxBytes maximum size of the store in bytes
+     * @param keyTypes number of key indexes
+     */
+    OffHeapNodeStore(long maxBytes, int keyTypes) {
+        this.slabSize   = (int) Math.max(MIN_SLAB_SIZE, Math.min(MAX_SLAB_SIZE, maxBytes / 16));
+        this.slabs      = new ByteBuffer[(int) Math.max(2, maxBytes / slabSize)];
+        this.fill       = new int[slabs.length];
+        this.index      = new LongLongHashMap(1024);
+        this.keyIndexes = new LongLongHashMap[keyTypes];
+        for(int i = 0; i < keyTypes; i++) {
+            keyIndexes[i] = new LongLongHashMap(1024);
+        }
+    }
+
+    /**
+     * Return the data stored for the node with the given id, or null in case it is not (or no longer) contained in
+     * the store.
+     */
+    byte[] get(long id) {
+        lock.readLock().lock();
+        try {
+            return read(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the data of the node indexed with the given key hash, or null in case it is not (or no longer)
+     * contained in the store. Different keys may have the same hash, so callers need to check the returned node.
+     */
+    byte[] getByKey(int keyType, long hash) {
+        lock.readLock().lock();
+        try {
+            long id = keyIndexes[keyType].get(hash, -1L);
+            return id != -1L ? read(id) : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return true in case the node with the given id is contained in the store.
+     */
+    boolean contains(long id) {
+        lock.readLock().lock();
+        try {
+            return index.get(id, -1L) >= 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Store the data of the node with the given id. Nodes do not change, so in case the node is already contained in
+     * the store, the existing entry is kept. Data larger than a slab is not stored.
+     *
+     * @return true in case the node is contained in the store
+     */
+    boolean put(long id, byte[] data) {
+        return put(id, data, NO_KEY, 0L);
+    }
+
+    /**
+     * Store the data of the node with the given id, and index it by the key hash given as argument. In case the node
+     * is already contained in the store, only the key index is updated.
+     *
+     * @return true in case the node is contained in the store
+     */
+    boolean putWithKey(long id, byte[] data, int keyType, long hash) {
+        return put(id, data, (byte) keyType, hash);
+    }
+
+    private boolean put(long id, byte[] data, byte keyType, long hash) {
+        int size = HEADER + data.length;
+        if(size > slabSize) {
+            return false;
+        }
+
+        lock.writeLock().lock();
+        try {
+            long location = index.get(id, -1L);
+            if(location >= 0) {
+                if(keyType != NO_KEY) {
+                    // nodes do not change, only add the key to the existing entry
+                    ByteBuffer slab = slabs[slab(location)];
+                    int offset = offset(location);
+                    slab.put(offset + OFFSET_KEY, keyType);
+                    slab.putLong(offset + OFFSET_HASH, hash);
+                }
+            } else {
+                location = allocate(size);
+
+                ByteBuffer slab = slabs[slab(location)];
+                int offset = offset(location);
+                slab.putInt(offset, data.length);
+                slab.put(offset + OFFSET_FLAGS, (byte) 0);
+                slab.put(offset + OFFSET_KEY, keyType);
+                slab.putLong(offset + OFFSET_ID, id);
+                slab.putLong(offset + OFFSET_HASH, hash);
+
+                ByteBuffer target = slab.duplicate();
+                target.position(offset + HEADER);
+                target.put(data);
+
+                index.put(id, location);
+            }
+
+            if(keyType != NO_KEY) {
+                keyIndexes[keyType].put(hash, id);
+            }
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the node with the given id (and its key); the memory is reclaimed when its slab is recycled.
+     */
+    void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            long location = index.get(id, -1L);
+            if(location >= 0) {
+                index.remove(id);
+                removeKey(slabs[slab(location)], offset(location), id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the key hash from the key index; the node itself stays in the store.
+     */
+    void removeKey(int keyType, long hash) {
+        lock.writeLock().lock();
+        try {
+            keyIndexes[keyType].remove(hash);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of nodes contained in the store.
+     */
+    int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of keys in the given key index.
+     */
+    int keyCount(int keyType) {
+        lock.readLock().lock();
+        try {
+            return keyIndexes[keyType].size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of bytes of direct memory allocated by the store.
+     */
+    long allocatedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for(ByteBuffer slab : slabs) {
+                if(slab != null) {
+                    bytes += slab.capacity();
+                }
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all entries; the allocated slabs are kept for reuse.
+     */
+    void clear() {
+        lock.writeLock().lock();
+        try {
+            index.clear();
+            for(LongLongHashMap keyIndex : keyIndexes) {
+                keyIndex.clear();
+            }
+            for(int i = 0; i < fill.length; i++) {
+                fill[i] = 0;
+            }
+            current = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove all entries and release the direct memory (once the slabs are garbage collected).
+     */
+    void release() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            for(int i = 0; i < slabs.length; i++) {
+                slabs[i] = null;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // caller holds (at least) the read lock
+    private byte[] read(long id) {
+        long location = index.get(id, -1L);
+        if(location < 0) {
+            return null;
+        }
+
+        ByteBuffer slab = slabs[slab(location)];
+        int offset = offset(location);
+
+        // concurrent readers only ever set the flag, so no synchronization is needed
+        slab.put(offset + OFFSET_FLAGS, FLAG_REFERENCED);
+
+        byte[] data = new byte[slab.getInt(offset)];
+        ByteBuffer source = slab.duplicate();
+        source.position(offset + HEADER);
+        source.get(data);
+        return data;
+    }
+
+    // caller holds the write lock; returns the location of size free bytes, recycling slabs if needed
+    private long allocate(int size) {
+        while(true) {
+            if(slabs[current] == null) {
+                slabs[current] = ByteBuffer.allocateDirect(slabSize);
+                fill[current] = 0;
+            }
+            if(fill[current] + size <= slabSize) {
+                long location = ((long) current << 32) | fill[current];
+                fill[current] += size;
+                return location;
+            }
+
+            current = (current + 1) % slabs.length;
+            if(slabs[current] != null) {
+                recycle(current);
+            }
+        }
+    }
+
+    /**
+     * Recycle a slab: entries that have been read since the last time (reference bit set) are moved to the beginning
+     * of the slab and their reference bit is cleared, all other entries are removed from the indexes.
+     */
+    private void recycle(int s) {
+        ByteBuffer slab = slabs[s];
+        int end = fill[s];
+
+        int write = 0;
+        for(int read = 0; read < end; ) {
+            int  size     = HEADER + slab.getInt(read);
+            long id       = slab.getLong(read + OFFSET_ID);
+            long location = ((long) s << 32) | read;
+
+            if(index.get(id, -1L) == location) {
+                if(slab.get(read + OFFSET_FLAGS) == FLAG_REFERENCED) {
+                    // second chance: keep the entry
+                    if(write != read) {
+                        byte[] entry = new byte[size];
+                        ByteBuffer source = slab.duplicate();
+                        source.position(read);
+                        source.get(entry);
+
+                        ByteBuffer target = slab.duplicate();
+                        target.position(write);
+                        target.put(entry);
+                    }
+                    slab.put(write + OFFSET_FLAGS, (byte) 0);
+                    index.put(id, ((long) s << 32) | write);
+                    write += size;
+                } else {
+                    // evict the entry
+                    index.remove(id);
+                    removeKey(slab, read, id);
+                }
+            }
+
+            read += size;
+        }
+        fill[s] = write;
+    }
+
+    // caller holds the write lock; removes the key of the entry at the given offset from its key index
+    private void removeKey(ByteBuffer slab, int offset, long id) {
+        byte keyType = slab.get(offset + OFFSET_KEY);
+        if(keyType != NO_KEY) {
+            keyIndexes[keyType].remove(slab.getLong(offset + OFFSET_HASH), id);
+        }
+    }
+
+    private static int slab(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offset(long location) {
+        return (int) location;
+    }
+
+}
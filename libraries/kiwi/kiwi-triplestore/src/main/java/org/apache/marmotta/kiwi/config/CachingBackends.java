@@ -29,6 +29,11 @@ public enum CachingBackends {
      */
     GUAVA("org.apache.marmotta.kiwi.caching.GuavaCacheManagerFactory"),
 
+    /**
+     * Cache backend keeping the nodes in direct memory outside of the Java heap; no clustering support
+     */
+    OFFHEAP("org.apache.marmotta.kiwi.caching.OffHeapCacheManagerFactory"),
+
     /**
      * Cache backend based on Infinispan using a dynamic cluster setup (UDP multicast)
      */
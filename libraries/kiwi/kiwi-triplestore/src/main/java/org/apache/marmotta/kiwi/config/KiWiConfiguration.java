@@ -87,6 +87,43 @@ public class KiWiConfiguration {
      */
     private int cursorSize = 1000;
 
+    /**
+     * Number of result rows of a native SPARQL query that are read ahead before resolving their node ids, so that
+     * all nodes of the window can be loaded with a single batched lookup instead of one lookup per row.
+     */
+    private int nodePrefetchSize = 1000;
+
+    /**
+     * Defer writing new nodes created by the value factory until a triple referencing them is flushed. New nodes
+     * only get an id from the id generator and are kept in the node caches until then, so nodes that are only used
+     * as query constants are never written to the database.
+     */
+    private boolean deferredNodePersistence = false;
+
+    /**
+     * Maximum number of rows the garbage collector deletes in a single transaction; deleted triples and nodes are
+     * collected in chunks of consecutive ids of this size.
+     */
+    private int gcChunkSize = 10000;
+
+    /**
+     * Maximum number of rows per second the garbage collector deletes; 0 means no limit.
+     */
+    private int gcRowsPerSecond = 0;
+
+    /**
+     * Compute data statistics (triples per predicate and context, distinct subjects and objects) for estimating the
+     * cardinality of SPARQL statement patterns. Computing the statistics scans the whole triples table, so this is
+     * disabled by default.
+     */
+    private boolean statisticsEnabled = false;
+
+    /**
+     * Interval in milliseconds for recomputing the data statistics from the database; in between, triple counts are
+     * maintained incrementally on commit. 0 computes the statistics only once on startup.
+     */
+    private long statisticsInterval = 60 * 60 * 1000L;
+
     private boolean fulltextEnabled     = false;
     private String[] fulltextLanguages;
 
@@ -109,6 +146,17 @@ public class KiWiConfiguration {
 
     private int namespaceCacheSize = 500;
 
+    /**
+     * Maximum number of entries of the local caches kept in front of the node, URI, blank node and literal caches of
+     * a clustered caching backend (only used if clustering is enabled); 0 disables the local caches.
+     */
+    private int nearCacheSize = 0;
+
+    /**
+     * Maximum number of bytes of direct memory used for the node caches by the off-heap caching backend.
+     */
+    private long offHeapCacheSize = 1024L * 1024L * 1024L;
+
     private int datacenterId = 0;
 
 
@@ -265,6 +313,114 @@ public class KiWiConfiguration {
         return this;
     }
 
+    /**
+     * Number of result rows of a native SPARQL query that are read ahead before resolving their node ids, so that
+     * all nodes of the window can be loaded with a single batched lookup instead of one lookup per row (default: 1000).
+     */
+    public int getNodePrefetchSize() {
+        return nodePrefetchSize;
+    }
+
+    /**
+     * Number of result rows of a native SPARQL query that are read ahead before resolving their node ids, so that
+     * all nodes of the window can be loaded with a single batched lookup instead of one lookup per row (default: 1000).
+     */
+    public KiWiConfiguration setNodePrefetchSize(int nodePrefetchSize) {
+        this.nodePrefetchSize = nodePrefetchSize;
+        return this;
+    }
+
+    /**
+     * Defer writing new nodes created by the value factory until a triple referencing them is flushed. New nodes
+     * only get an id from the id generator and are kept in the node caches until then, so nodes that are only used
+     * as query constants are never written to the database (default: false).
+     */
+    public boolean isDeferredNodePersistence() {
+        return deferredNodePersistence;
+    }
+
+    /**
+     * Defer writing new nodes created by the value factory until a triple referencing them is flushed. New nodes
+     * only get an id from the id generator and are kept in the node caches until then, so nodes that are only used
+     * as query constants are never written to the database (default: false).
+     * <p/>
+     * Pending nodes are not shared between cluster members, so this should not be enabled in clustered setups. They
+     * cannot be stored in the off-heap node caches either, so the store refuses to start with the OFFHEAP caching
+     * backend. The node caches should be large enough to hold the nodes created in a transaction, since a pending
+     * node evicted from the caches would be created again with a different id.
+     */
+    public KiWiConfiguration setDeferredNodePersistence(boolean deferredNodePersistence) {
+        this.deferredNodePersistence = deferredNodePersistence;
+        return this;
+    }
+
+    /**
+     * Maximum number of rows the garbage collector deletes in a single transaction; deleted triples and nodes are
+     * collected in chunks of consecutive ids of this size (default: 10000).
+     */
+    public int getGcChunkSize() {
+        return gcChunkSize;
+    }
+
+    /**
+     * Maximum number of rows the garbage collector deletes in a single transaction; deleted triples and nodes are
+     * collected in chunks of consecutive ids of this size (default: 10000).
+     */
+    public KiWiConfiguration setGcChunkSize(int gcChunkSize) {
+        this.gcChunkSize = gcChunkSize;
+        return this;
+    }
+
+    /**
+     * Maximum number of rows per second the garbage collector deletes; 0 means no limit (default: 0).
+     */
+    public int getGcRowsPerSecond() {
+        return gcRowsPerSecond;
+    }
+
+    /**
+     * Maximum number of rows per second the garbage collector deletes; 0 means no limit (default: 0).
+     */
+    public KiWiConfiguration setGcRowsPerSecond(int gcRowsPerSecond) {
+        this.gcRowsPerSecond = gcRowsPerSecond;
+        return this;
+    }
+
+    /**
+     * Compute data statistics (triples per predicate and context, distinct subjects and objects) for estimating the
+     * cardinality of SPARQL statement patterns. Computing the statistics scans the whole triples table, so this is
+     * disabled by default.
+     */
+    public boolean isStatisticsEnabled() {
+        return statisticsEnabled;
+    }
+
+    /**
+     * Compute data statistics (triples per predicate and context, distinct subjects and objects) for estimating the
+     * cardinality of SPARQL statement patterns (default: false).
+     */
+    public KiWiConfiguration setStatisticsEnabled(boolean statisticsEnabled) {
+        this.statisticsEnabled = statisticsEnabled;
+        return this;
+    }
+
+    /**
+     * Interval in milliseconds for recomputing the data statistics from the database; in between, triple counts are
+     * maintained incrementally on commit. 0 computes the statistics only once on startup (default: 1 hour).
+     */
+    public long getStatisticsInterval() {
+        return statisticsInterval;
+    }
+
+    /**
+     * Interval in milliseconds for recomputing the data statistics from the database; in between, triple counts are
+     * maintained incrementally on commit. 0 computes the statistics only once on startup (default: 1 hour).
+     */
+    public KiWiConfiguration setStatisticsInterval(long statisticsInterval) {
+        this.statisticsInterval = statisticsInterval;
+        return this;
+    }
+
     /**
      * Return true in case fulltext support is enabled in this configuration. If this is the case, the SPARQL module
      * will prepare the database with appropriate fulltext index support. Since this adds additional overhead, it is
@@ -429,6 +585,42 @@ public class KiWiConfiguration {
         return this;
     }
 
+    /**
+     * Maximum number of entries of the local caches kept in front of the node, URI, blank node and literal caches of
+     * a clustered caching backend, so that nodes are not fetched over the network on every lookup; 0 disables the
+     * local caches (default: 0).
+     */
+    public int getNearCacheSize() {
+        return nearCacheSize;
+    }
+
+    /**
+     * Maximum number of entries of the local caches kept in front of the node, URI, blank node and literal caches of
+     * a clustered caching backend, so that nodes are not fetched over the network on every lookup; 0 disables the
+     * local caches (default: 0).
+     */
+    public KiWiConfiguration setNearCacheSize(int nearCacheSize) {
+        this.nearCacheSize = nearCacheSize;
+        return this;
+    }
+
+    /**
+     * Maximum number of bytes of direct memory used for the node caches by the off-heap caching backend
+     * (default: 1 GB). The JVM needs to allow at least this amount of direct memory (-XX:MaxDirectMemorySize).
+     */
+    public long getOffHeapCacheSize() {
+        return offHeapCacheSize;
+    }
+
+    /**
+     * Maximum number of bytes of direct memory used for the node caches by the off-heap caching backend
+     * (default: 1 GB). The JVM needs to allow at least this amount of direct memory (-XX:MaxDirectMemorySize).
+     */
+    public KiWiConfiguration setOffHeapCacheSize(long offHeapCacheSize) {
+        this.offHeapCacheSize = offHeapCacheSize;
+        return this;
+    }
+
     /**
      * The datacenter ID of this server for generating unique database IDs. If not given, a random value will
      * be generated.
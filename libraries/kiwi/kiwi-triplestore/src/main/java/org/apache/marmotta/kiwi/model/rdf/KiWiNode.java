@@ -47,6 +47,12 @@ public abstract class KiWiNode implements Value, Serializable {
      **/
     private Date created;
 
+    /**
+     * True in case the node already has an id but has not been written to the database yet (deferred node
+     * persistence). Only cleared once the node has been committed.
+     */
+    private transient volatile boolean pending = false;
+
     protected KiWiNode() {
         this(new Date());
     }
@@ -74,6 +80,21 @@ public abstract class KiWiNode implements Value, Serializable {
         this.id = id;
     }
 
+    /**
+     * Return true in case the node has an id but has not been written to the database yet, i.e. it needs to be
+     * stored before a triple referencing it can be stored.
+     */
+    public boolean isPending() {
+        return pending;
+    }
+
+    /**
+     * Mark the node as pending (not yet written to the database) or persistent.
+     */
+    public void setPending(boolean pending) {
+        this.pending = pending;
+    }
+
     /**
      * Return the timestamp when this node has been created
      *
@@ -115,6 +115,35 @@ public class KiWiConnection implements AutoCloseable {
 
     private Map<String,PreparedStatement> statementCache = new HashMap<>();
 
+    /**
+     * Cache prepared statements of dynamically generated SQL queries (e.g. translated SPARQL queries) by their SQL
+     * string; the least recently used statement is dropped when the cache grows beyond QUERY_STATEMENT_CACHE_SIZE,
+     * and closed unless its result is still being read
+     */
+    private Map<String,PreparedStatement> queryStatementCache = new LinkedHashMap<String,PreparedStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if(size() > QUERY_STATEMENT_CACHE_SIZE) {
+                if(!busyQueryStatements.containsKey(eldest.getValue())) {
+                    try {
+                        eldest.getValue().close();
+                    } catch (SQLException ignore) {
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * Query statements handed out by getPreparedQueryStatement() and not yet released, i.e. whose result may still
+     * be read; busy statements are neither executed again nor closed by the query statement cache
+     */
+    private Map<PreparedStatement,String> busyQueryStatements = new IdentityHashMap<>();
+
+    private static final int QUERY_STATEMENT_CACHE_SIZE = 100;
+
     private boolean autoCommit = false;
     private boolean batchCommit = true;
 
@@ -384,7 +413,7 @@ public class KiWiConnection implements AutoCloseable {
     public KiWiNode loadNodeById(long id) throws SQLException {
 
         // look in cache
-        KiWiNode element = nodeCache.get(id);
+        KiWiNode element = getCachedNode(id);
         if (element != null) {
             return element;
         }
@@ -424,7 +453,7 @@ public class KiWiConnection implements AutoCloseable {
         ArrayList<Long> toFetch = new ArrayList<>(ids.length);
         for(int i=0; i < ids.length; i++) {
             if(ids[i] != 0) {
-                result[i] = nodeCache.get(ids[i]);
+                result[i] = getCachedNode(ids[i]);
                 if(result[i] == null) {
                     toFetch.add(ids[i]);
                 }
@@ -519,7 +548,7 @@ public class KiWiConnection implements AutoCloseable {
         Preconditions.checkNotNull(uri);
 
         // look in cache
-        KiWiUriResource element = uriCache.get(uri);
+        KiWiUriResource element = getCachedUriResource(uri);
         if (element != null) {
             return element;
         }
@@ -560,7 +589,7 @@ public class KiWiConnection implements AutoCloseable {
      */
     public KiWiAnonResource loadAnonResource(String id) throws SQLException {
         // look in cache
-        KiWiAnonResource element = bnodeCache.get(id);
+        KiWiAnonResource element = getCachedAnonResource(id);
         if (element != null) {
             return element;
         }
@@ -605,7 +634,7 @@ public class KiWiConnection implements AutoCloseable {
      */
     public KiWiLiteral loadLiteral(String value, String lang, KiWiUriResource ltype) throws SQLException {
         // look in cache
-        final KiWiLiteral element = literalCache.get(LiteralCommons.createCacheKey(value,getLocale(lang), ltype));
+        final KiWiLiteral element = getCachedLiteral(LiteralCommons.createCacheKey(value,getLocale(lang), ltype));
         if (element != null) {
             return element;
         }
@@ -663,7 +692,7 @@ public class KiWiConnection implements AutoCloseable {
      */
     public KiWiDateLiteral loadLiteral(DateTime date) throws SQLException {
         // look in cache
-        KiWiLiteral element = literalCache.get(LiteralCommons.createCacheKey(date.withMillisOfSecond(0),Namespaces.NS_XSD + "dateTime"));
+        KiWiLiteral element = getCachedLiteral(LiteralCommons.createCacheKey(date.withMillisOfSecond(0),Namespaces.NS_XSD + "dateTime"));
         if (element != null && element instanceof KiWiDateLiteral) {
             return (KiWiDateLiteral)element;
         }
@@ -714,7 +743,7 @@ public class KiWiConnection implements AutoCloseable {
      */
     public KiWiIntLiteral loadLiteral(long value) throws SQLException {
         // look in cache
-        KiWiLiteral element = literalCache.get(LiteralCommons.createCacheKey(Long.toString(value),(String)null,Namespaces.NS_XSD + "integer"));
+        KiWiLiteral element = getCachedLiteral(LiteralCommons.createCacheKey(Long.toString(value),(String)null,Namespaces.NS_XSD + "integer"));
         if (element != null && element instanceof KiWiIntLiteral) {
             return (KiWiIntLiteral)element;
         }
@@ -765,7 +794,7 @@ public class KiWiConnection implements AutoCloseable {
      */
     public KiWiDoubleLiteral loadLiteral(double value) throws SQLException {
         // look in cache
-        KiWiLiteral element = literalCache.get(LiteralCommons.createCacheKey(Double.toString(value), (String)null,Namespaces.NS_XSD + "double"));
+        KiWiLiteral element = getCachedLiteral(LiteralCommons.createCacheKey(Double.toString(value), (String)null,Namespaces.NS_XSD + "double"));
         if (element != null && element instanceof KiWiDoubleLiteral) {
             return (KiWiDoubleLiteral)element;
         }
@@ -818,7 +847,7 @@ public class KiWiConnection implements AutoCloseable {
      */
     public KiWiBooleanLiteral loadLiteral(boolean value) throws SQLException {
         // look in cache
-        KiWiLiteral element = literalCache.get(LiteralCommons.createCacheKey(Boolean.toString(value),(String)null,Namespaces.NS_XSD + "boolean"));
+        KiWiLiteral element = getCachedLiteral(LiteralCommons.createCacheKey(Boolean.toString(value),(String)null,Namespaces.NS_XSD + "boolean"));
         if (element != null && element instanceof KiWiBooleanLiteral) {
             return (KiWiBooleanLiteral)element;
         }
@@ -1008,6 +1037,69 @@ public class KiWiConnection implements AutoCloseable {
         cacheNode(node);
     }
 
+    /**
+     * Register a new node without writing it to the database (deferred node persistence). The node gets a new id and
+     * is added to the node caches, so that subsequent lookups return it, but it is only written once a triple
+     * referencing it is stored or flushed.
+     *
+     * @param node the KiWiNode to register
+     */
+    public void storeNodeDeferred(KiWiNode node) {
+        if (node.getId() < 0) {
+            node.setId(getNextSequence());
+            node.setPending(true);
+            persistence.pinPendingNode(node);
+        }
+
+        cacheNode(node);
+    }
+
+    /**
+     * Make sure the given nodes are written to the database, in case they are still pending because of deferred
+     * node persistence. Needs to be called before storing any row referencing nodes in a table other than the
+     * triples table, since pending nodes are otherwise only written together with the triples using them.
+     *
+     * @param nodes the nodes to write, null values are ignored
+     * @throws SQLException
+     */
+    public void ensurePersisted(KiWiNode... nodes) throws SQLException {
+        Set<KiWiNode> pending = null;
+        for(KiWiNode node : nodes) {
+            if(node != null && node.isPending()) {
+                if(pending == null) {
+                    pending = new LinkedHashSet<>();
+                }
+                if(node instanceof KiWiLiteral && ((KiWiLiteral) node).getType() != null && ((KiWiLiteral) node).getType().isPending()) {
+                    pending.add(((KiWiLiteral) node).getType());
+                }
+                pending.add(node);
+            }
+        }
+
+        if(pending != null) {
+            persistence.storePendingNodes(pending);
+        }
+    }
+
+    /**
+     * Write all pending nodes referenced by the given triples (including the datatypes of pending literals) before
+     * the triples themselves are written.
+     */
+    private void storePendingNodes(Iterable<KiWiTriple> triples) throws SQLException {
+        List<KiWiNode> nodes = new ArrayList<>();
+        for(KiWiTriple triple : triples) {
+            for(KiWiNode node : new KiWiNode[] { triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext(), triple.getCreator() }) {
+                if(node != null && node.isPending()) {
+                    nodes.add(node);
+                }
+            }
+        }
+
+        if(!nodes.isEmpty()) {
+            ensurePersisted(nodes.toArray(new KiWiNode[nodes.size()]));
+        }
+    }
+
     /**
      * Store a triple in the database. This method assumes that all nodes used by the triple are already persisted.
      *
@@ -1045,6 +1137,8 @@ public class KiWiConnection implements AutoCloseable {
                         commitLock.unlock();
                     }
                 }  else {
+                    storePendingNodes(Collections.singleton(triple));
+
                     Preconditions.checkNotNull(triple.getSubject().getId());
                     Preconditions.checkNotNull(triple.getPredicate().getId());
                     Preconditions.checkNotNull(triple.getObject().getId());
@@ -1972,6 +2066,61 @@ public class KiWiConnection implements AutoCloseable {
         return statement;
     }
 
+    /**
+     * Return a prepared statement for the dynamically generated SQL query given as argument; first looks in the
+     * query statement cache and if it does not exist there create a new statement. In case the cached statement is
+     * still in use by an earlier query whose result has not been released, a new statement is prepared instead, so
+     * that executing it does not close the earlier result.
+     * <p/>
+     * The statement is owned by the connection and must not be closed by the caller; it has to be returned with
+     * releasePreparedQueryStatement() once its result has been consumed or closed.
+     *
+     * @param sql the SQL query string
+     * @return the PreparedStatement
+     * @throws SQLException
+     */
+    public PreparedStatement getPreparedQueryStatement(String sql) throws SQLException {
+        requireJDBCConnection();
+
+        PreparedStatement statement;
+        synchronized (queryStatementCache) {
+            statement = queryStatementCache.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                queryStatementCache.put(sql,statement);
+            } else if (busyQueryStatements.containsKey(statement)) {
+                // not cached, closed when released
+                statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            }
+            busyQueryStatements.put(statement, sql);
+        }
+        statement.clearParameters();
+        if (persistence.getDialect().isCursorSupported()) {
+            statement.setFetchSize(persistence.getConfiguration().getCursorSize());
+        }
+        return statement;
+    }
+
+    /**
+     * Return a statement obtained from getPreparedQueryStatement() once its result has been consumed or closed. The
+     * statement is closed in case it is no longer (or was never) held by the query statement cache.
+     *
+     * @param statement the statement returned by getPreparedQueryStatement()
+     */
+    public void releasePreparedQueryStatement(PreparedStatement statement) {
+        boolean cached;
+        synchronized (queryStatementCache) {
+            String sql = busyQueryStatements.remove(statement);
+            cached = sql != null && queryStatementCache.get(sql) == statement;
+        }
+        if (!cached) {
+            try {
+                statement.close();
+            } catch (SQLException ignore) {
+            }
+        }
+    }
+
     /**
      * Return the prepared statement with the given identifier; first looks in the statement cache and if it does
      * not exist there create a new statement. This method is used for building statements with variable argument
@@ -2018,6 +2167,30 @@ public class KiWiConnection implements AutoCloseable {
     }
 
 
+    /*
+     * Lookups in the node caches; pending nodes (deferred node persistence) are found even if the caches evicted them
+     */
+
+    private KiWiNode getCachedNode(long id) {
+        KiWiNode node = nodeCache.get(id);
+        return node != null ? node : persistence.getPendingNode(id);
+    }
+
+    private KiWiUriResource getCachedUriResource(String uri) {
+        KiWiUriResource node = uriCache.get(uri);
+        return node != null ? node : persistence.getPendingUriResource(uri);
+    }
+
+    private KiWiAnonResource getCachedAnonResource(String id) {
+        KiWiAnonResource node = bnodeCache.get(id);
+        return node != null ? node : persistence.getPendingAnonResource(id);
+    }
+
+    private KiWiLiteral getCachedLiteral(String cacheKey) {
+        KiWiLiteral node = literalCache.get(cacheKey);
+        return node != null ? node : persistence.getPendingLiteral(cacheKey);
+    }
+
     private void cacheNode(KiWiNode node) {
         if (node.getId() >= 0) {
             nodeCache.put(node.getId(), node);
@@ -2345,6 +2518,19 @@ public class KiWiConnection implements AutoCloseable {
                         entry.getValue().close();
                     } catch (SQLException ignore) {}
                 }
+                synchronized (queryStatementCache) {
+                    for (Map.Entry<String,PreparedStatement> entry : queryStatementCache.entrySet()) {
+                        try {
+                            entry.getValue().close();
+                        } catch (SQLException ignore) {}
+                    }
+                    for (PreparedStatement statement : busyQueryStatements.keySet()) {
+                        try {
+                            statement.close();
+                        } catch (SQLException ignore) {}
+                    }
+                    busyQueryStatements.clear();
+                }
             } catch(AbstractMethodError ex) {
                 log.debug("database system does not allow closing statements");
             }
@@ -2365,6 +2551,10 @@ public class KiWiConnection implements AutoCloseable {
 
             commitLock.lock();
             try {
+                synchronized (tripleBatch) {
+                    storePendingNodes(tripleBatch);
+                }
+
                 RetryExecution execution = new RetryExecution("FLUSH BATCH");
                 execution.setUseSavepoint(true);
                 execution.execute(connection, new RetryCommand<Void>() {
@@ -125,8 +125,22 @@ public abstract class KiWiDialect {
      *         if the database is already the current version
      */
     public String getMigrationScript(int oldVersion, String name) {
+        return getMigrationScript(oldVersion, VERSION, name);
+    }
+
+    /**
+     * Return the contents of the SQL scripts used for migrating from the old version to the new version given as
+     * arguments. This variant can be used by KiWi modules that keep track of their own schema version (e.g. in the
+     * metadata table).
+     *
+     * @param oldVersion the version to migrate the database from
+     * @param newVersion the version to migrate the database to
+     * @param name       name of the script to create; the method will look for scripts with name upgrade_name_oldv_newv.sql
+     * @return the migration script from the old version to the new version
+     */
+    public String getMigrationScript(int oldVersion, int newVersion, String name) {
         StringBuilder builder = new StringBuilder();
-        for(int i = oldVersion+1; i <= VERSION; i++ ) {
+        for(int i = oldVersion+1; i <= newVersion; i++ ) {
             try {
                 String script = String.format("upgrade_"+name+"_%03d_%03d.sql",i-1,i);
 
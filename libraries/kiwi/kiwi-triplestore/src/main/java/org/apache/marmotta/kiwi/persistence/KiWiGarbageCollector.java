@@ -17,6 +17,7 @@
  */
 package org.apache.marmotta.kiwi.persistence;
 
+import com.google.common.util.concurrent.RateLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +37,11 @@ import java.util.concurrent.TimeUnit;
  * a complex SQL query, checking for all tables referencing rows in the triples and nodes tables. References need
  * to be registered by other components via the addTripleTableDependency and addNodeTableDependency methods.
  * <p/>
+ * Triples and nodes are collected incrementally in chunks of consecutive ids, each deleted in a transaction of its
+ * own, so that no long-running transaction holds locks on the tables. Optionally, the number of rows deleted per
+ * second can be limited. The id up to which a table has been collected is stored in the metadata table after each
+ * chunk, so an interrupted garbage collection resumes where it stopped.
+ * <p/>
  * Author: Sebastian Schaffert (sschaffert@apache.org)
  */
 public class KiWiGarbageCollector extends Thread {
@@ -51,7 +57,36 @@ public class KiWiGarbageCollector extends Thread {
 
     private KiWiPersistence persistence;
 
-    private boolean shutdown = false;
+    private volatile boolean shutdown = false;
+
+    // number of rows deleted per transaction
+    private int chunkSize = 10000;
+
+    // limits the number of deleted rows per second, null if unlimited
+    private RateLimiter rateLimiter;
+
+    // metadata keys of the checkpoints (mkey is varchar(16))
+    private static final String CHECKPOINT_TRIPLES = "gc.triples";
+    private static final String CHECKPOINT_NODES   = "gc.nodes";
+
+    // checkpoint value in case no garbage collection is in progress
+    private static final long CHECKPOINT_START = Long.MIN_VALUE;
+
+    /**
+     * Receives the progress of a garbage collection after each chunk.
+     */
+    public interface ProgressListener {
+
+        /**
+         * Called after a chunk has been committed.
+         *
+         * @param table   the table currently collected ("triples" or "nodes")
+         * @param lastId  the id up to which the table has been collected
+         * @param deleted the total number of rows deleted in this garbage collection so far
+         */
+        void chunkCollected(String table, long lastId, int deleted);
+
+    }
 
     public KiWiGarbageCollector(KiWiPersistence persistence) {
         super("KiWi Garbage Collector");
@@ -77,6 +112,29 @@ public class KiWiGarbageCollector extends Thread {
         this.interval = interval;
     }
 
+    /**
+     * Get the maximum number of rows deleted in a single transaction.
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Set the maximum number of rows deleted in a single transaction.
+     * @param chunkSize number of rows per chunk
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Set the maximum number of rows deleted per second; 0 or less disables the limit.
+     * @param rowsPerSecond number of rows per second
+     */
+    public void setRowsPerSecond(int rowsPerSecond) {
+        this.rateLimiter = rowsPerSecond > 0 ? RateLimiter.create(rowsPerSecond) : null;
+    }
+
     /**
      * Add information about a dependency of a column in some table to the "triples" table; this information
      * is used when cleaning up unreferenced deleted entries in the triples table. In theory, we could
@@ -200,6 +258,18 @@ public class KiWiGarbageCollector extends Thread {
 
 
     protected int garbageCollect() throws SQLException {
+        return garbageCollect(null);
+    }
+
+    /**
+     * Run a garbage collection, resuming an interrupted one in case there is a checkpoint in the metadata table.
+     * Deleted triples are collected in every run, unreferenced nodes only every 10th run (or when resuming), since
+     * this only makes sense when triples have been deleted before.
+     *
+     * @param listener listener notified after each chunk, may be null
+     * @return the number of deleted rows
+     */
+    protected int garbageCollect(ProgressListener listener) throws SQLException {
         round++;
 
         long start = System.currentTimeMillis();
@@ -210,11 +280,7 @@ public class KiWiGarbageCollector extends Thread {
 
             // garbage collect triples
             try {
-                String gcTripleQuery = buildGCTriplesQuery();
-                PreparedStatement stmtGcTriples = con.prepareStatement(gcTripleQuery);
-                count += stmtGcTriples.executeUpdate();
-                stmtGcTriples.close();
-                con.commit();
+                count += collect(con, "triples", CHECKPOINT_TRIPLES, persistence.getDialect().getStatement("gc.next_triples"), buildGCTriplesQuery(), count, listener);
             } catch (SQLException ex) {
                 con.rollback();
 
@@ -222,14 +288,16 @@ public class KiWiGarbageCollector extends Thread {
             }
 
             // garbage collect nodes (only every 10th garbage collection, only makes sense when we previously deleted triples ...)
-            if(count > 0 && round % 10 == 1) {
+            if(nodeTableDependencies.size() > 0 && !shutdown
+                    && ((count > 0 && round % 10 == 1) || getCheckpoint(con, CHECKPOINT_NODES) != CHECKPOINT_START)) {
                 // then delete all unconnected nodes
                 try {
-                    String gcNodesQuery = buildGCNodesQuery();
-                    PreparedStatement stmtGcNodes = con.prepareStatement(gcNodesQuery);
-                    count += stmtGcNodes.executeUpdate();
-                    stmtGcNodes.close();
-                    con.commit();
+                    int nodes = collect(con, "nodes", CHECKPOINT_NODES, persistence.getDialect().getStatement("gc.next_nodes"), buildGCNodesQuery(), count, listener);
+                    if(nodes > 0) {
+                        // deleted nodes must not be returned by the caches anymore
+                        persistence.clearNodeCaches();
+                    }
+                    count += nodes;
                 } catch (SQLException ex) {
                     con.rollback();
 
@@ -244,6 +312,94 @@ public class KiWiGarbageCollector extends Thread {
         }
     }
 
+    /**
+     * Collect a table chunk by chunk, starting after its checkpoint. Each chunk covers the ids of the next chunkSize
+     * candidate rows and is deleted and checkpointed in a transaction of its own. The checkpoint is reset once the
+     * end of the table has been reached; when the collector is shut down, the next run resumes at the checkpoint.
+     *
+     * @param nextQuery   query listing the ids of candidate rows after a given id, in ascending order
+     * @param deleteQuery query deleting the unreferenced rows in a given id range (exclusive, inclusive)
+     * @param deleted     number of rows deleted before, for progress reporting
+     * @return the number of rows deleted
+     */
+    private int collect(Connection con, String table, String checkpoint, String nextQuery, String deleteQuery, int deleted, ProgressListener listener) throws SQLException {
+        long lastId = getCheckpoint(con, checkpoint);
+        if(lastId != CHECKPOINT_START) {
+            log.info("resuming garbage collection of {} table after id {}", table, lastId);
+        }
+
+        int count = 0;
+        while(!shutdown) {
+            long upperId = lastId;
+            try(PreparedStatement stmtNext = con.prepareStatement(nextQuery)) {
+                stmtNext.setMaxRows(chunkSize);
+                stmtNext.setLong(1, lastId);
+                try(ResultSet result = stmtNext.executeQuery()) {
+                    while(result.next()) {
+                        upperId = result.getLong(1);
+                    }
+                }
+            }
+
+            if(upperId == lastId) {
+                // end of table reached, the next garbage collection starts from the beginning
+                setCheckpoint(con, checkpoint, CHECKPOINT_START);
+                con.commit();
+                break;
+            }
+
+            int chunk;
+            try(PreparedStatement stmtDelete = con.prepareStatement(deleteQuery)) {
+                stmtDelete.setLong(1, lastId);
+                stmtDelete.setLong(2, upperId);
+                chunk = stmtDelete.executeUpdate();
+            }
+            setCheckpoint(con, checkpoint, upperId);
+            con.commit();
+
+            lastId  = upperId;
+            count  += chunk;
+
+            if(listener != null) {
+                listener.chunkCollected(table, lastId, deleted + count);
+            }
+
+            if(rateLimiter != null && chunk > 0) {
+                rateLimiter.acquire(chunk);
+            }
+        }
+        return count;
+    }
+
+    private long getCheckpoint(Connection con, String key) throws SQLException {
+        try(PreparedStatement stmtGet = con.prepareStatement(persistence.getDialect().getStatement("meta.get"))) {
+            stmtGet.setString(1, key);
+            try(ResultSet result = stmtGet.executeQuery()) {
+                if(result.next()) {
+                    return Long.parseLong(result.getString(1));
+                }
+            }
+        } catch (NumberFormatException ex) {
+            log.warn("invalid garbage collection checkpoint {}, starting from the beginning", key);
+        }
+        return CHECKPOINT_START;
+    }
+
+    private void setCheckpoint(Connection con, String key, long id) throws SQLException {
+        try(PreparedStatement stmtUpdate = con.prepareStatement(persistence.getDialect().getStatement("meta.update"))) {
+            stmtUpdate.setString(1, Long.toString(id));
+            stmtUpdate.setString(2, key);
+            if(stmtUpdate.executeUpdate() > 0) {
+                return;
+            }
+        }
+        try(PreparedStatement stmtInsert = con.prepareStatement(persistence.getDialect().getStatement("meta.insert"))) {
+            stmtInsert.setString(1, key);
+            stmtInsert.setString(2, Long.toString(id));
+            stmtInsert.executeUpdate();
+        }
+    }
+
 
     /**
      * Run the garbage collector thread. The thread will run garbage collection on startup, and then in a loop wait
@@ -286,15 +442,16 @@ public class KiWiGarbageCollector extends Thread {
     }
 
     public void shutdown() {
+        // set before synchronizing, so a running garbage collection stops after its current chunk
+        shutdown = true;
         synchronized (this) {
-            shutdown = true;
             this.notifyAll();
         }
     }
 
     private String buildGCTriplesQuery() {
         StringBuilder builder = new StringBuilder();
-        builder.append("DELETE FROM triples WHERE deleted = true");
+        builder.append("DELETE FROM triples WHERE deleted = true AND id > ? AND id <= ?");
 
         if(tripleTableDependencies.size() > 0) {
             builder.append(" AND NOT EXISTS (");
@@ -329,7 +486,7 @@ public class KiWiGarbageCollector extends Thread {
         StringBuilder builder = new StringBuilder();
 
         if(nodeTableDependencies.size() > 0) {
-            builder.append("DELETE FROM nodes T1 WHERE NOT EXISTS (");
+            builder.append("DELETE FROM nodes T1 WHERE T1.id > ? AND T1.id <= ? AND NOT EXISTS (");
 
             Iterator<TableDependency> iterator = nodeTableDependencies.iterator();
             while (iterator.hasNext()) {
@@ -20,9 +20,16 @@ package org.apache.marmotta.kiwi.persistence;
 import org.apache.marmotta.kiwi.caching.CacheManager;
 import org.apache.marmotta.kiwi.caching.CacheManagerFactory;
 import org.apache.marmotta.kiwi.caching.GuavaCacheManagerFactory;
+import org.apache.marmotta.kiwi.caching.NearCacheManager;
+import org.apache.marmotta.kiwi.config.CachingBackends;
 import org.apache.marmotta.kiwi.config.KiWiConfiguration;
 import org.apache.marmotta.kiwi.generator.IDGenerator;
 import org.apache.marmotta.kiwi.generator.SnowflakeIDGenerator;
+import org.apache.marmotta.commons.sesame.model.LiteralCommons;
+import org.apache.marmotta.kiwi.model.rdf.KiWiAnonResource;
+import org.apache.marmotta.kiwi.model.rdf.KiWiLiteral;
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
 import org.apache.marmotta.kiwi.persistence.util.ScriptRunner;
 import org.apache.marmotta.kiwi.sail.KiWiValueFactory;
 import org.apache.tomcat.jdbc.pool.DataSource;
@@ -32,9 +39,18 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Add file description here!
@@ -72,6 +88,33 @@ public class KiWiPersistence {
 
     private IDGenerator    idGenerator;
 
+    /**
+     * Serializes writing pending nodes (deferred node persistence), so a node is only written once and transactions
+     * referencing a node written concurrently wait until it is committed.
+     */
+    private final ReentrantLock pendingNodeLock = new ReentrantLock();
+
+    /**
+     * Nodes registered with deferred node persistence and not yet written, indexed like the node caches. The caches
+     * may evict a pending node at any time; looking it up in the database would then create a second node with a
+     * new id for the same value, so pending nodes are pinned here until they have been written.
+     * <p/>
+     * Pins are weak: a pending node that is never written (e.g. a query constant or a node of a transaction that has
+     * been rolled back) is dropped once neither the node caches nor any triple or client refer to it any more, since
+     * nothing can use its id then. Collected pins are expunged whenever a node is pinned.
+     */
+    private final ConcurrentMap<Long,PendingNodeReference>   pendingNodes    = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,PendingNodeReference> pendingUris     = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,PendingNodeReference> pendingBNodes   = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String,PendingNodeReference> pendingLiterals = new ConcurrentHashMap<>();
+
+    private final ReferenceQueue<KiWiNode> collectedPendingNodes = new ReferenceQueue<>();
+
+    /**
+     * Modules keeping data derived from the node caches, notified when the node caches are cleared
+     */
+    private final List<NodeCacheListener> nodeCacheListeners = new CopyOnWriteArrayList<>();
+
 
     /**
      * This lock allows setting the backend into maintenance mode (by locking the write lock), which essentially
@@ -94,6 +137,11 @@ public class KiWiPersistence {
 
 
     public void initialise() {
+        if(configuration.isDeferredNodePersistence() && configuration.getCachingBackend() == CachingBackends.OFFHEAP) {
+            // pending nodes only exist as objects and cannot be stored in the off-heap node caches with their state
+            throw new IllegalStateException("deferred node persistence is not supported by the off-heap caching backend");
+        }
+
         // init JDBC connection pool
         initConnectionPool();
 
@@ -140,6 +188,41 @@ public class KiWiPersistence {
             CacheManagerFactory factory = new GuavaCacheManagerFactory();
             cacheManager = factory.createCacheManager(configuration);
         }
+
+        if(configuration.getNearCacheSize() > 0 && configuration.isClustered()) {
+            cacheManager = new NearCacheManager(cacheManager, configuration);
+        }
+    }
+
+    /**
+     * Remove all nodes from the node caches, e.g. after the garbage collector deleted nodes from the database that
+     * might still be cached.
+     */
+    public void clearNodeCaches() {
+        cacheManager.getNodeCache().clear();
+        cacheManager.getUriCache().clear();
+        cacheManager.getBNodeCache().clear();
+        cacheManager.getLiteralCache().clear();
+
+        notifyNodeCachesCleared();
+    }
+
+    /**
+     * Register a listener that is notified whenever the node caches are cleared, e.g. because the garbage collector
+     * deleted nodes. Modules keeping information derived from nodes (like query plans) use this to invalidate it.
+     */
+    public void addNodeCacheListener(NodeCacheListener listener) {
+        nodeCacheListeners.add(listener);
+    }
+
+    public void removeNodeCacheListener(NodeCacheListener listener) {
+        nodeCacheListeners.remove(listener);
+    }
+
+    private void notifyNodeCachesCleared() {
+        for(NodeCacheListener listener : nodeCacheListeners) {
+            listener.nodeCachesCleared();
+        }
     }
 
 
@@ -187,6 +270,8 @@ public class KiWiPersistence {
 
     private void initGarbageCollector() {
         this.garbageCollector = new KiWiGarbageCollector(this);
+        garbageCollector.setChunkSize(configuration.getGcChunkSize());
+        garbageCollector.setRowsPerSecond(configuration.getGcRowsPerSecond());
 
         garbageCollector.addNodeTableDependency("triples","subject");
         garbageCollector.addNodeTableDependency("triples","predicate");
@@ -271,6 +356,45 @@ public class KiWiPersistence {
 
     }
 
+    /**
+     * Upgrade the tables of a KiWi module that keeps track of its own schema version. The version of a module is
+     * stored in the metadata table under the name of its scripts (e.g. "versioning"), since module tables can be
+     * created long after the base tables. The upgrade scripts upgrade_name_NNN_NNN.sql of such a module are therefore
+     * numbered by the module version and not by the base schema version ({@link KiWiDialect#VERSION}); the create
+     * script and every upgrade script need to store the new module version in the metadata table.
+     * <p/>
+     * This method must be called after initDatabase(scriptName, checkTables) has created the module tables.
+     *
+     * @param scriptName       the name of the module scripts and metadata key (at most 16 characters)
+     * @param untrackedVersion the module version of databases created before the module version was stored
+     * @param version          the current module version
+     */
+    public void upgradeDatabase(String scriptName, int untrackedVersion, int version) throws SQLException {
+        KiWiConnection connection = getConnection();
+        try {
+            String value = connection.getMetadata(scriptName);
+            int current = value != null ? Integer.parseInt(value) : untrackedVersion;
+
+            if(current < version) {
+                log.info("upgrading KiWi {} tables from version {} to version {}", scriptName, current, version);
+
+                ScriptRunner runner = new ScriptRunner(connection.getJDBCConnection(), false, false);
+                runner.runScript(new StringReader(configuration.getDialect().getMigrationScript(current, version, scriptName)));
+            }
+            connection.getJDBCConnection().commit();
+        } catch (SQLException ex) {
+            log.error("SQL exception while upgrading {} tables, rolling back", scriptName);
+            connection.rollback();
+            throw ex;
+        } catch (IOException ex) {
+            log.error("I/O exception while upgrading {} tables, rolling back", scriptName);
+            connection.rollback();
+            throw new SQLException("could not read the upgrade scripts of the " + scriptName + " tables", ex);
+        } finally {
+            connection.close();
+        }
+    }
+
     /**
      * Remove all KiWi base tables from the SQL database. This method will run the drop script of the respective dialect and
      * return.
@@ -466,6 +590,8 @@ public class KiWiPersistence {
      */
     public void clearCache() {
         cacheManager.clear();
+
+        notifyNodeCachesCleared();
     }
 
 
@@ -486,6 +612,13 @@ public class KiWiPersistence {
         this.garbageCollector.garbageCollect();
     }
 
+    /**
+     * Run the garbage collector, notifying the listener given as argument about the progress after each chunk.
+     */
+    public void garbageCollect(KiWiGarbageCollector.ProgressListener listener) throws SQLException {
+        this.garbageCollector.garbageCollect(listener);
+    }
+
     public boolean checkConsistency() throws SQLException {
         return garbageCollector.checkConsistency();
     }
@@ -494,5 +627,174 @@ public class KiWiPersistence {
         return idGenerator;
     }
 
+    /**
+     * Write those of the given nodes that are still pending (see {@link KiWiConfiguration#isDeferredNodePersistence()})
+     * to the database. Nodes are written and committed in a connection of their own, like the value factory does
+     * for nodes that are not deferred, and are only marked as persistent once committed. Datatypes of pending
+     * literals need to be contained in the collection before the literals.
+     *
+     * @param nodes the nodes to write, in case they are pending
+     */
+    public void storePendingNodes(Collection<KiWiNode> nodes) throws SQLException {
+        pendingNodeLock.lock();
+        try {
+            List<KiWiNode> pending = new ArrayList<>();
+            for(KiWiNode node : nodes) {
+                if(node.isPending()) {
+                    pending.add(node);
+                }
+            }
+            if(pending.isEmpty()) {
+                return;
+            }
 
+            KiWiConnection connection = getConnection();
+            try {
+                for(KiWiNode node : pending) {
+                    connection.storeNode(node);
+                }
+                connection.commit();
+            } catch (SQLException ex) {
+                connection.rollback();
+                throw ex;
+            } finally {
+                connection.close();
+            }
+
+            for(KiWiNode node : pending) {
+                node.setPending(false);
+                unpinPendingNode(node);
+            }
+        } finally {
+            pendingNodeLock.unlock();
+        }
+    }
+
+    /**
+     * Keep a pending node (see {@link KiWiConfiguration#isDeferredNodePersistence()}) available for lookups until it
+     * has been written by storePendingNodes(), independent of the eviction policy of the node caches. The node is only
+     * pinned as long as it is referenced elsewhere, so pending nodes that are never written do not accumulate.
+     *
+     * @param node the pending node
+     */
+    public void pinPendingNode(KiWiNode node) {
+        expungePendingNodes();
+
+        ConcurrentMap<String,PendingNodeReference> index;
+        String key;
+        if(node instanceof KiWiUriResource) {
+            index = pendingUris;
+            key   = node.stringValue();
+        } else if(node instanceof KiWiAnonResource) {
+            index = pendingBNodes;
+            key   = node.stringValue();
+        } else if(node instanceof KiWiLiteral) {
+            index = pendingLiterals;
+            key   = LiteralCommons.createCacheKey((KiWiLiteral) node);
+        } else {
+            index = null;
+            key   = null;
+        }
+
+        PendingNodeReference ref = new PendingNodeReference(node, index, key, collectedPendingNodes);
+        pendingNodes.put(node.getId(), ref);
+        if(index != null) {
+            index.put(key, ref);
+        }
+    }
+
+    private void unpinPendingNode(KiWiNode node) {
+        PendingNodeReference ref = pendingNodes.remove(node.getId());
+        if(ref != null) {
+            ref.unindex();
+            ref.clear();
+        }
+    }
+
+    /**
+     * Remove the pins of pending nodes that have been garbage collected.
+     */
+    private void expungePendingNodes() {
+        PendingNodeReference ref;
+        while((ref = (PendingNodeReference) collectedPendingNodes.poll()) != null) {
+            pendingNodes.remove(ref.id, ref);
+            ref.unindex();
+        }
+    }
+
+    /**
+     * Return the number of pending nodes that are currently pinned.
+     */
+    public int getPendingNodeCount() {
+        expungePendingNodes();
+        return pendingNodes.size();
+    }
+
+    /**
+     * Return the pending node with the given id, or null if there is no such node.
+     */
+    public KiWiNode getPendingNode(long id) {
+        return dereference(pendingNodes.get(id));
+    }
+
+    /**
+     * Return the pending URI resource with the given URI, or null if there is no such node.
+     */
+    public KiWiUriResource getPendingUriResource(String uri) {
+        return (KiWiUriResource) dereference(pendingUris.get(uri));
+    }
+
+    /**
+     * Return the pending anonymous resource with the given id, or null if there is no such node.
+     */
+    public KiWiAnonResource getPendingAnonResource(String id) {
+        return (KiWiAnonResource) dereference(pendingBNodes.get(id));
+    }
+
+    /**
+     * Return the pending literal with the given cache key (see LiteralCommons.createCacheKey), or null if there is
+     * no such node.
+     */
+    public KiWiLiteral getPendingLiteral(String cacheKey) {
+        return (KiWiLiteral) dereference(pendingLiterals.get(cacheKey));
+    }
+
+    private static KiWiNode dereference(PendingNodeReference ref) {
+        return ref != null ? ref.get() : null;
+    }
+
+    /**
+     * Weak pin of a pending node, remembering the keys it is indexed with so that it can be removed from the
+     * indexes once the node has been collected.
+     */
+    private static class PendingNodeReference extends WeakReference<KiWiNode> {
+
+        private final long id;
+
+        private final ConcurrentMap<String,PendingNodeReference> index;
+
+        private final String key;
+
+        private PendingNodeReference(KiWiNode node, ConcurrentMap<String,PendingNodeReference> index, String key, ReferenceQueue<KiWiNode> queue) {
+            super(node, queue);
+            this.id    = node.getId();
+            this.index = index;
+            this.key   = key;
+        }
+
+        private void unindex() {
+            if(index != null) {
+                index.remove(key, this);
+            }
+        }
+    }
+
+
+    /**
+     * Listener notified when the node caches of the persistence are cleared.
+     */
+    public interface NodeCacheListener {
+
+        void nodeCachesCleared();
+    }
 }
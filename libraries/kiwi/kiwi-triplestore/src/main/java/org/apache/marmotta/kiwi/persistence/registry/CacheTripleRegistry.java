@@ -17,19 +17,24 @@
 
 package org.apache.marmotta.kiwi.persistence.registry;
 
-import org.apache.marmotta.commons.sesame.tripletable.IntArray;
+import com.google.common.util.concurrent.Striped;
 import org.apache.marmotta.kiwi.caching.CacheManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
 
 /**
  * A triple registry implementation based on the Infinispan cache. Registry entries are stored in a replicated,
  * synchronized Infinispan cache. Transaction information is kept locally.
+ * <p/>
+ * In case the registry cache supports atomic operations (i.e. is a ConcurrentMap), registering keys relies on its
+ * putIfAbsent; otherwise, conditional registrations are guarded by local locks striped by key.
  *
  * @author Sebastian Schaffert (sschaffert@apache.org)
  */
@@ -39,13 +44,22 @@ public class CacheTripleRegistry implements KiWiTripleRegistry {
 
     private Map<Long,Long> cache;
 
+    // the registry cache in case it supports atomic operations, null otherwise
+    private ConcurrentMap<Long,Long> concurrentCache;
 
-    private Map<Long,List<Long>>  transactions;
+    // guard conditional registrations in case the registry cache does not support atomic operations
+    private final Striped<Lock> keyLocks = Striped.lock(64);
 
+    private ConcurrentMap<Long,List<Long>>  transactions;
 
+
+    @SuppressWarnings("unchecked")
     public CacheTripleRegistry(CacheManager cacheManager) {
         cache        = cacheManager.getRegistryCache();
-        transactions = new HashMap<>();
+        if(cache instanceof ConcurrentMap) {
+            concurrentCache = (ConcurrentMap<Long,Long>) cache;
+        }
+        transactions = new ConcurrentHashMap<>();
 
     }
 
@@ -53,31 +67,58 @@ public class CacheTripleRegistry implements KiWiTripleRegistry {
     /**
      * Register a key/triple id pair in the triple registry for the given transaction ID.
      *
-     * @param key           the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key           the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      * @param transactionId the identifier of the transaction registering the triple id
      * @param tripleId      the new triple identifier
      */
     @Override
-    public void registerKey(IntArray key, long transactionId, long tripleId) {
-        List<Long> transaction = transactions.get(transactionId);
-        if(transaction == null) {
-            transaction = new ArrayList<>();
-            transactions.put(transactionId, transaction);
+    public void registerKey(long key, long transactionId, long tripleId) {
+        cache.put(key, tripleId);
+        registerTransaction(key, transactionId);
+    }
+
+    /**
+     * Atomically register the key/triple id pair for the given transaction, unless another (or the same) transaction
+     * has already registered an id for the key. In that case, the existing id is registered for the transaction
+     * and returned instead.
+     *
+     * @param key           the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
+     * @param transactionId the identifier of the transaction registering the triple id
+     * @param tripleId      the new triple identifier
+     * @return the triple id registered for the key
+     */
+    @Override
+    public long registerKeyIfAbsent(long key, long transactionId, long tripleId) {
+        Long existing;
+        if(concurrentCache != null) {
+            existing = concurrentCache.putIfAbsent(key, tripleId);
+        } else {
+            Lock lock = keyLocks.get(key);
+            lock.lock();
+            try {
+                existing = cache.get(key);
+                if(existing == null) {
+                    cache.put(key, tripleId);
+                }
+            } finally {
+                lock.unlock();
+            }
         }
-        cache.put(key.longHashCode(), tripleId);
-        transaction.add(key.longHashCode());
+        registerTransaction(key, transactionId);
+
+        return existing != null ? existing : tripleId;
     }
 
     /**
      * Check if another (or the same) transaction has already registered an ID for the triple with the
      * given key. Returns -1 in case no other ID has been registered, or a value >0 otherwise.
      *
-     * @param key the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      * @return id of the triple or -1
      */
     @Override
-    public long lookupKey(IntArray key) {
-        Long value = cache.get(key.longHashCode());
+    public long lookupKey(long key) {
+        Long value = cache.get(key);
         if(value != null) {
             return value;
         } else {
@@ -93,9 +134,12 @@ public class CacheTripleRegistry implements KiWiTripleRegistry {
      */
     @Override
     public void releaseTransaction(long transactionId) {
-        if(transactions.containsKey(transactionId)) {
-            for(long key : transactions.remove(transactionId)) {
-                cache.remove(key);
+        List<Long> transaction = transactions.remove(transactionId);
+        if(transaction != null) {
+            synchronized (transaction) {
+                for(long key : transaction) {
+                    cache.remove(key);
+                }
             }
         }
     }
@@ -103,10 +147,24 @@ public class CacheTripleRegistry implements KiWiTripleRegistry {
     /**
      * Remove the key with the given key, e.g. when a statement is again deleted during a transaction.
      *
-     * @param key the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      */
     @Override
-    public void deleteKey(IntArray key) {
-        cache.remove(key.longHashCode());
+    public void deleteKey(long key) {
+        cache.remove(key);
+    }
+
+    private void registerTransaction(long key, long transactionId) {
+        List<Long> transaction = transactions.get(transactionId);
+        if(transaction == null) {
+            List<Long> created = new ArrayList<>();
+            transaction = transactions.putIfAbsent(transactionId, created);
+            if(transaction == null) {
+                transaction = created;
+            }
+        }
+        synchronized (transaction) {
+            transaction.add(key);
+        }
     }
 }
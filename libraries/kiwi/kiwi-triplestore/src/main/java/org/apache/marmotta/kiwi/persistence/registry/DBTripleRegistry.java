@@ -17,7 +17,6 @@
 
 package org.apache.marmotta.kiwi.persistence.registry;
 
-import org.apache.marmotta.commons.sesame.tripletable.IntArray;
 import org.apache.marmotta.kiwi.persistence.KiWiConnection;
 import org.apache.marmotta.kiwi.sail.KiWiStore;
 import org.slf4j.Logger;
@@ -51,12 +50,12 @@ public class DBTripleRegistry implements KiWiTripleRegistry {
     }
 
     @Override
-    public void registerKey(IntArray key, long transactionId, long tripleId) {
+    public void registerKey(long key, long transactionId, long tripleId) {
         KiWiConnection con = aqcuireConnection();
         try {
             PreparedStatement stmt = con.getPreparedStatement("registry.register");
             synchronized (stmt) {
-                stmt.setLong(1, key.longHashCode());
+                stmt.setLong(1, key);
                 stmt.setLong(2, tripleId);
                 stmt.setLong(3, transactionId);
                 stmt.executeUpdate();
@@ -69,14 +68,28 @@ public class DBTripleRegistry implements KiWiTripleRegistry {
     }
 
 
+    /**
+     * Register the key unless it has already been registered. The check is only atomic for transactions of this
+     * node; concurrent registrations by other cluster nodes may still both succeed.
+     */
+    @Override
+    public synchronized long registerKeyIfAbsent(long key, long transactionId, long tripleId) {
+        long existing = lookupKey(key);
+        long result   = existing >= 0 ? existing : tripleId;
+
+        registerKey(key, transactionId, result);
+
+        return result;
+    }
+
 
     @Override
-    public long lookupKey(IntArray key) {
+    public long lookupKey(long key) {
         KiWiConnection con = aqcuireConnection();
         try {
             PreparedStatement stmt = con.getPreparedStatement("registry.lookup");
             synchronized (stmt) {
-                stmt.setLong(1, key.longHashCode());
+                stmt.setLong(1, key);
 
                 try(ResultSet r = stmt.executeQuery()) {
                     if(r.next()) {
@@ -112,12 +125,12 @@ public class DBTripleRegistry implements KiWiTripleRegistry {
 
 
     @Override
-    public void deleteKey(IntArray key) {
+    public void deleteKey(long key) {
         KiWiConnection con = aqcuireConnection();
         try {
             PreparedStatement stmt = con.getPreparedStatement("registry.delete");
             synchronized (stmt) {
-                stmt.setLong(1, key.longHashCode());
+                stmt.setLong(1, key);
                 stmt.executeUpdate();
             }
         } catch (SQLException e) {
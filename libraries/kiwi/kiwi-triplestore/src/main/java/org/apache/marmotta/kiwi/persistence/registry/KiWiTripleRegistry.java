@@ -17,10 +17,10 @@
 
 package org.apache.marmotta.kiwi.persistence.registry;
 
-import org.apache.marmotta.commons.sesame.tripletable.IntArray;
-
 /**
- * Add file description here!
+ * A registry of triple ids created by running transactions, used for avoiding duplicate triples when several
+ * transactions create the same triple in parallel. Implementations need to be thread-safe; callers do not
+ * synchronize access to the registry.
  *
  * @author Sebastian Schaffert (sschaffert@apache.org)
  */
@@ -29,20 +29,32 @@ public interface KiWiTripleRegistry {
     /**
      * Register a key/triple id pair in the triple registry for the given transaction ID.
      *
-     * @param key            the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key            the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
+     * @param transactionId  the identifier of the transaction registering the triple id
+     * @param tripleId       the new triple identifier
+     */
+    void registerKey(long key, long transactionId, long tripleId);
+
+    /**
+     * Atomically register the key/triple id pair for the given transaction, unless another (or the same) transaction
+     * has already registered an id for the key. In that case, the existing id is registered for the transaction
+     * and returned instead.
+     *
+     * @param key            the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      * @param transactionId  the identifier of the transaction registering the triple id
      * @param tripleId       the new triple identifier
+     * @return               the triple id registered for the key; equal to tripleId if it has been registered
      */
-    void registerKey(IntArray key, long transactionId, long tripleId);
+    long registerKeyIfAbsent(long key, long transactionId, long tripleId);
 
     /**
      * Check if another (or the same) transaction has already registered an ID for the triple with the
      * given key. Returns -1 in case no other ID has been registered, or a value >0 otherwise.
      *
-     * @param key            the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key            the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      * @return               id of the triple or -1
      */
-    long lookupKey(IntArray key);
+    long lookupKey(long key);
 
     /**
      * Free all registry entries claimed by the transaction with the given identifier. Should remove or
@@ -55,7 +67,7 @@ public interface KiWiTripleRegistry {
     /**
      * Remove the key with the given key, e.g. when a statement is again deleted during a transaction.
      *
-     * @param key            the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key            the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      */
-    void deleteKey(IntArray key);
+    void deleteKey(long key);
 }
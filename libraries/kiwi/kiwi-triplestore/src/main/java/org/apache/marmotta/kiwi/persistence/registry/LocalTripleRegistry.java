@@ -17,26 +17,33 @@
 
 package org.apache.marmotta.kiwi.persistence.registry;
 
-import org.apache.marmotta.commons.sesame.tripletable.IntArray;
+import org.apache.marmotta.kiwi.persistence.util.LongLongHashMap;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * Add file description here!
+ * A triple registry kept in memory, for use in a single-node setup. Keys and triple ids are stored in primitive
+ * long maps, so registering and looking up triples does not allocate boxed objects.
+ * <p/>
+ * The registry is split into stripes selected by the key hash, each guarded by its own lock, so concurrent
+ * transactions only contend when they access keys of the same stripe.
  *
  * @author Sebastian Schaffert (sschaffert@apache.org)
  */
 public class LocalTripleRegistry implements KiWiTripleRegistry {
 
-    private Map<Long,Long> cache;
+    private static final int STRIPES = 64;
 
-    private Map<Long,List<Long>>  transactions;
+    private final LongLongHashMap[] stripes;
+
+    private final ConcurrentMap<Long,LongLongHashMap> transactions;
 
     public LocalTripleRegistry() {
-        cache        = new ConcurrentHashMap<>();
+        stripes      = new LongLongHashMap[STRIPES];
+        for(int i = 0; i < STRIPES; i++) {
+            stripes[i] = new LongLongHashMap(64);
+        }
         transactions = new ConcurrentHashMap<>();
 
     }
@@ -44,36 +51,59 @@ public class LocalTripleRegistry implements KiWiTripleRegistry {
     /**
      * Register a key/triple id pair in the triple registry for the given transaction ID.
      *
-     * @param key           the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key           the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      * @param transactionId the identifier of the transaction registering the triple id
      * @param tripleId      the new triple identifier
      */
     @Override
-    public void registerKey(IntArray key, long transactionId, long tripleId) {
-        List<Long> transaction = transactions.get(transactionId);
-        if(transaction == null) {
-            transaction = new ArrayList<>();
-            transactions.put(transactionId, transaction);
+    public void registerKey(long key, long transactionId, long tripleId) {
+        LongLongHashMap stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, tripleId);
         }
-        cache.put(key.longHashCode(), tripleId);
-        transaction.add(key.longHashCode());
+        registerTransaction(key, transactionId, tripleId);
+    }
+
+    /**
+     * Atomically register the key/triple id pair for the given transaction, unless another (or the same) transaction
+     * has already registered an id for the key. In that case, the existing id is registered for the transaction
+     * and returned instead.
+     *
+     * @param key           the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
+     * @param transactionId the identifier of the transaction registering the triple id
+     * @param tripleId      the new triple identifier
+     * @return the triple id registered for the key
+     */
+    @Override
+    public long registerKeyIfAbsent(long key, long transactionId, long tripleId) {
+        long result;
+
+        LongLongHashMap stripe = stripe(key);
+        synchronized (stripe) {
+            result = stripe.get(key, -1);
+            if(result < 0) {
+                stripe.put(key, tripleId);
+                result = tripleId;
+            }
+        }
+        registerTransaction(key, transactionId, result);
+
+        return result;
     }
 
     /**
      * Check if another (or the same) transaction has already registered an ID for the triple with the
      * given key. Returns -1 in case no other ID has been registered, or a value >0 otherwise.
      *
-     * @param key the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      * @return id of the triple or -1
      */
     @Override
-    public long lookupKey(IntArray key) {
-        Long value = cache.get(key.longHashCode());
-        if(value != null) {
-            return value;
+    public long lookupKey(long key) {
+        LongLongHashMap stripe = stripe(key);
+        synchronized (stripe) {
+            return stripe.get(key, -1);
         }
-
-        return -1;
     }
 
     /**
@@ -84,9 +114,22 @@ public class LocalTripleRegistry implements KiWiTripleRegistry {
      */
     @Override
     public void releaseTransaction(long transactionId) {
-        if(transactions.containsKey(transactionId)) {
-            for(long key : transactions.remove(transactionId)) {
-                cache.remove(key);
+        LongLongHashMap transaction = transactions.remove(transactionId);
+        if(transaction != null) {
+            long[] keys, ids;
+            synchronized (transaction) {
+                keys = transaction.keys();
+                ids  = new long[keys.length];
+                for(int i = 0; i < keys.length; i++) {
+                    ids[i] = transaction.get(keys[i], -1);
+                }
+            }
+
+            for(int i = 0; i < keys.length; i++) {
+                LongLongHashMap stripe = stripe(keys[i]);
+                synchronized (stripe) {
+                    stripe.remove(keys[i], ids[i]);
+                }
             }
         }
     }
@@ -94,10 +137,33 @@ public class LocalTripleRegistry implements KiWiTripleRegistry {
     /**
      * Remove the key with the given key, e.g. when a statement is again deleted during a transaction.
      *
-     * @param key the key identifying the triple arguments (subject, object, predicate, context)
+     * @param key the 64 bit hash identifying the triple arguments (subject, object, predicate, context)
      */
     @Override
-    public void deleteKey(IntArray key) {
-        cache.remove(key.longHashCode());
+    public void deleteKey(long key) {
+        LongLongHashMap stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    private void registerTransaction(long key, long transactionId, long tripleId) {
+        LongLongHashMap transaction = transactions.get(transactionId);
+        if(transaction == null) {
+            LongLongHashMap created = new LongLongHashMap();
+            transaction = transactions.putIfAbsent(transactionId, created);
+            if(transaction == null) {
+                transaction = created;
+            }
+        }
+        synchronized (transaction) {
+            transaction.put(key, tripleId);
+        }
+    }
+
+    private LongLongHashMap stripe(long key) {
+        // the upper 6 bits of the mixed hash select one of the 64 stripes
+        long h = key * 0x9E3779B97F4A7C15L;
+        return stripes[(int) (h >>> 58)];
     }
 }
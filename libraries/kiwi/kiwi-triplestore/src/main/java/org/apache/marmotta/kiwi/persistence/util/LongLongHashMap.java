@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.persistence.util;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from primitive longs to primitive longs using open addressing with linear probing. Keys and values
+ * are stored in two arrays, so neither lookups nor updates allocate boxed objects or map entries. The map is not
+ * thread-safe; callers need to synchronize access (concurrent lookups without concurrent updates are safe).
+ */
+public final class LongLongHashMap {
+
+    // marks an empty slot; the key 0 is stored separately
+    private static final long EMPTY = 0L;
+
+    private long[] keys;
+    private long[] values;
+
+    private boolean hasZeroKey = false;
+    private long    zeroValue;
+
+    private int size = 0;
+    private int mask;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys   = new long[capacity];
+        values = new long[capacity];
+        mask   = capacity - 1;
+    }
+
+    /**
+     * Return the value stored for the key, or the default value in case the map does not contain the key.
+     */
+    public long get(long key, long defaultValue) {
+        if(key == EMPTY) {
+            return hasZeroKey ? zeroValue : defaultValue;
+        }
+        for(int i = slot(key); ; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                return values[i];
+            } else if(keys[i] == EMPTY) {
+                return defaultValue;
+            }
+        }
+    }
+
+    public void put(long key, long value) {
+        if(key == EMPTY) {
+            if(!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return;
+        }
+        for(int i = slot(key); ; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                values[i] = value;
+                return;
+            } else if(keys[i] == EMPTY) {
+                keys[i]   = key;
+                values[i] = value;
+                if(++size * 2 > keys.length) {
+                    resize(keys.length << 1);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Remove the key from the map; returns true in case the map contained the key.
+     */
+    public boolean remove(long key) {
+        if(key == EMPTY) {
+            if(hasZeroKey) {
+                hasZeroKey = false;
+                size--;
+                return true;
+            }
+            return false;
+        }
+        for(int i = slot(key); ; i = (i + 1) & mask) {
+            if(keys[i] == key) {
+                size--;
+                shiftKeys(i);
+                return true;
+            } else if(keys[i] == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Remove the key from the map only if it is currently mapped to the given value.
+     */
+    public boolean remove(long key, long value) {
+        if(get(key, ~value) == value) {
+            return remove(key);
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return a copy of the keys contained in the map.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        if(hasZeroKey) {
+            result[n++] = EMPTY;
+        }
+        for(long key : keys) {
+            if(key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        hasZeroKey = false;
+        size = 0;
+    }
+
+    /**
+     * Close the gap left by removing the entry at the given position by moving back entries of the same probe
+     * sequence, so lookups do not need tombstones.
+     */
+    private void shiftKeys(int pos) {
+        while(true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            while(true) {
+                if(keys[pos] == EMPTY) {
+                    keys[last] = EMPTY;
+                    return;
+                }
+                int s = slot(keys[pos]);
+                if(last <= pos ? (last >= s || s > pos) : (last >= s && s > pos)) {
+                    break;
+                }
+                pos = (pos + 1) & mask;
+            }
+            keys[last]   = keys[pos];
+            values[last] = values[pos];
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys   = keys;
+        long[] oldValues = values;
+
+        keys   = new long[capacity];
+        values = new long[capacity];
+        mask   = capacity - 1;
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != EMPTY) {
+                for(int j = slot(oldKeys[i]); ; j = (j + 1) & mask) {
+                    if(keys[j] == EMPTY) {
+                        keys[j]   = oldKeys[i];
+                        values[j] = oldValues[i];
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
@@ -17,9 +17,10 @@
  */
 package org.apache.marmotta.kiwi.sail;
 
+import com.google.common.util.concurrent.Striped;
 import org.apache.marmotta.commons.sesame.model.LiteralCommons;
 import org.apache.marmotta.commons.sesame.model.Namespaces;
-import org.apache.marmotta.commons.sesame.tripletable.IntArray;
+import org.apache.marmotta.commons.sesame.tripletable.TripleKey;
 import org.apache.marmotta.kiwi.model.rdf.*;
 import org.apache.marmotta.kiwi.persistence.KiWiConnection;
 import org.apache.marmotta.kiwi.persistence.registry.CacheTripleRegistry;
@@ -36,6 +37,7 @@ import org.slf4j.LoggerFactory;
 import javax.xml.datatype.XMLGregorianCalendar;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.locks.Lock;
 
 /**
  * Add file description here!
@@ -55,6 +57,18 @@ public class KiWiValueFactory implements ValueFactory {
 
     private String defaultContext;
 
+    /**
+     * In case deferred node persistence is enabled, new nodes are only registered with the caches and written when
+     * the first triple using them is stored.
+     */
+    private final boolean deferredNodes;
+
+    /**
+     * Locks for making node creation idempotent when several threads create the same node concurrently; the
+     * lookup and the insertion of a new node are carried out while holding the lock for its value.
+     */
+    private final Striped<Lock> nodeLocks = Striped.lock(64);
+
     public KiWiValueFactory(KiWiStore store, String defaultContext) {
         anonIdGenerator = new Random();
 
@@ -78,6 +92,7 @@ public class KiWiValueFactory implements ValueFactory {
 
         this.store          = store;
         this.defaultContext = defaultContext;
+        this.deferredNodes  = store.getPersistence().getConfiguration().isDeferredNodePersistence();
     }
 
     protected KiWiConnection aqcuireConnection() {
@@ -91,6 +106,18 @@ public class KiWiValueFactory implements ValueFactory {
         }
     }
 
+    /**
+     * Store a newly created node, or only register it for writing it with the first triple in case deferred node
+     * persistence is enabled.
+     */
+    protected void storeNode(KiWiConnection connection, KiWiNode node) throws SQLException {
+        if(deferredNodes) {
+            connection.storeNodeDeferred(node);
+        } else {
+            connection.storeNode(node);
+        }
+    }
+
     protected void releaseConnection(KiWiConnection con) {
         try {
             con.close();
@@ -119,6 +146,8 @@ public class KiWiValueFactory implements ValueFactory {
     @Override
     public URI createURI(String uri) {
         KiWiConnection connection = aqcuireConnection();
+        Lock lock = nodeLocks.get(uri);
+        lock.lock();
         try {
             // first look in the registry for newly created resources if the resource has already been created and
             // is still volatile
@@ -127,7 +156,7 @@ public class KiWiValueFactory implements ValueFactory {
             if(result == null) {
                 result = new KiWiUriResource(uri);
 
-                connection.storeNode(result);
+                storeNode(connection, result);
 
             }
             if(result.getId() < 0) {
@@ -139,6 +168,7 @@ public class KiWiValueFactory implements ValueFactory {
             log.error("database error, could not load URI resource",e);
             throw new IllegalStateException("database error, could not load URI resource",e);
         } finally {
+            lock.unlock();
             releaseConnection(connection);
         }
 
@@ -172,6 +202,8 @@ public class KiWiValueFactory implements ValueFactory {
     @Override
     public BNode createBNode(String nodeID) {
         KiWiConnection connection = aqcuireConnection();
+        Lock lock = nodeLocks.get(nodeID);
+        lock.lock();
         try {
             // first look in the registry for newly created resources if the resource has already been created and
             // is still volatile
@@ -180,7 +212,7 @@ public class KiWiValueFactory implements ValueFactory {
             if(result == null) {
                 result = new KiWiAnonResource(nodeID);
 
-                connection.storeNode(result);
+                storeNode(connection, result);
             }
             if(result.getId() < 0) {
                 log.error("node ID is null!");
@@ -191,6 +223,7 @@ public class KiWiValueFactory implements ValueFactory {
             log.error("database error, could not load anonymous resource",e);
             throw new IllegalStateException("database error, could not load anonymous resource",e);
         } finally {
+            lock.unlock();
             releaseConnection(connection);
         }
     }
@@ -297,6 +330,8 @@ public class KiWiValueFactory implements ValueFactory {
         final KiWiUriResource rtype = type==null ? null: (KiWiUriResource)createURI(type);
 
         final KiWiConnection connection = aqcuireConnection();
+        final Lock lock = nodeLocks.get(value.toString());
+        lock.lock();
         try {
 
             try {
@@ -399,7 +434,7 @@ public class KiWiValueFactory implements ValueFactory {
             }
 
             if(result.getId() < 0) {
-                connection.storeNode(result);
+                storeNode(connection, result);
             }
 
             return result;
@@ -409,6 +444,7 @@ public class KiWiValueFactory implements ValueFactory {
             log.error("database error, could not load literal",e);
             throw new IllegalStateException("database error, could not load literal",e);
         } finally {
+            lock.unlock();
             releaseConnection(connection);
         }
     }
@@ -557,7 +593,7 @@ public class KiWiValueFactory implements ValueFactory {
     public Statement createStatement(Resource subject, URI predicate, Value object, Resource context, KiWiConnection connection) {
         try {
 
-            IntArray cacheKey = IntArray.createSPOCKey(subject, predicate, object, context);
+            long cacheKey = TripleKey.spocHash(subject, predicate, object, context);
 
             KiWiResource ksubject   = convert(subject);
             KiWiUriResource kpredicate = convert(predicate);
@@ -566,44 +602,26 @@ public class KiWiValueFactory implements ValueFactory {
 
             KiWiTriple result = new KiWiTriple(ksubject,kpredicate,kobject,kcontext);
 
-            boolean needsDBLookup = false;
-
-            synchronized (registry) {
-                long tripleId = registry.lookupKey(cacheKey);
-
-                if(tripleId >= 0) {
-                    // try getting id from registry
-                    result.setId(tripleId);
+            // the registry is thread-safe, so concurrent transactions do not need to synchronize on it
+            long tripleId = registry.lookupKey(cacheKey);
 
-                    registry.registerKey(cacheKey, connection.getTransactionId(), result.getId());
-                } else {
-                    // not found in registry, try loading from database
-                    needsDBLookup = true;
-                }
-            }
+            if(tripleId >= 0) {
+                // try getting id from registry
+                result.setId(tripleId);
 
-            if(needsDBLookup) {
+                registry.registerKey(cacheKey, connection.getTransactionId(), result.getId());
+            } else {
+                // not found in registry, try loading from database
                 result.setId(connection.getTripleId(ksubject,kpredicate,kobject,kcontext));
             }
 
             // triple has no id from registry or database, so we create one and flag it for reasoning
             if(result.getId() < 0) {
-                synchronized (registry) {
-                    // It's possible a concurrent thread might have created this
-                    // triple while we were blocked.  Check the registry again.
-                    long tripleId = registry.lookupKey(cacheKey);
-
-                    if(tripleId >= 0) {
-                        // A concurrent thread got in first.  Take the one it created.
-                        result.setId(tripleId);
-                    } else {
-                        // Create the new triple
-                        result.setId(connection.getNextSequence());
-                        result.setNewTriple(true);
-                    }
-
-                    registry.registerKey(cacheKey, connection.getTransactionId(), result.getId());
-                }
+                // It's possible a concurrent thread has created this triple in the meantime; in this case the
+                // registry returns the id it created and the new id is simply not used.
+                long newId = connection.getNextSequence();
+                result.setId(registry.registerKeyIfAbsent(cacheKey, connection.getTransactionId(), newId));
+                result.setNewTriple(result.getId() == newId);
             }
 
             return result;
@@ -620,11 +638,9 @@ public class KiWiValueFactory implements ValueFactory {
      */
     protected void removeStatement(KiWiTriple triple) {
         if(triple.getId() >= 0) {
-            IntArray cacheKey = IntArray.createSPOCKey(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext());
+            long cacheKey = TripleKey.spocHash(triple.getSubject(), triple.getPredicate(), triple.getObject(), triple.getContext());
 
-            synchronized (registry) {
-                registry.deleteKey(cacheKey);
-            }
+            registry.deleteKey(cacheKey);
         }
         triple.setDeleted(true);
     }
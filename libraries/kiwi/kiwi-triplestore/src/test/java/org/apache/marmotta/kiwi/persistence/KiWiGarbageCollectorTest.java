@@ -0,0 +1,213 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.persistence;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.model.rdf.KiWiTriple;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.test.junit.KiWiDatabaseRunner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test the incremental garbage collection of deleted triples: a collector that is shut down stops after the current
+ * chunk and keeps its checkpoint, a new collector resumes at the checkpoint, and the checkpoint is reset once the end
+ * of the table has been reached.
+ */
+@RunWith(KiWiDatabaseRunner.class)
+public class KiWiGarbageCollectorTest {
+
+    private static final int TRIPLES    = 35;
+    private static final int CHUNK_SIZE = 10;
+
+    private KiWiPersistence persistence;
+
+    private final KiWiConfiguration kiwiConfig;
+
+    public KiWiGarbageCollectorTest(KiWiConfiguration kiwiConfig) {
+        this.kiwiConfig = kiwiConfig;
+    }
+
+    @Before
+    public void initDatabase() throws SQLException {
+        persistence = new KiWiPersistence(kiwiConfig);
+        persistence.initialise();
+        persistence.initDatabase();
+
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            KiWiUriResource subject   = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource predicate = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            connection.storeNode(subject);
+            connection.storeNode(predicate);
+
+            List<KiWiTriple> triples = new ArrayList<>();
+            for(int i = 0; i < TRIPLES; i++) {
+                KiWiUriResource object = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+                connection.storeNode(object);
+
+                KiWiTriple triple = new KiWiTriple(subject, predicate, object, null);
+                connection.storeTriple(triple);
+                triples.add(triple);
+            }
+            connection.commit();
+
+            for(KiWiTriple triple : triples) {
+                connection.deleteTriple(triple);
+            }
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        persistence.dropDatabase();
+        persistence.shutdown();
+    }
+
+    /**
+     * A collector that is shut down during a garbage collection stops after the current chunk and leaves the
+     * checkpoint at the end of that chunk.
+     */
+    @Test
+    public void testShutdownStopsCollection() throws SQLException {
+        final KiWiGarbageCollector collector = createCollector();
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void chunkCollected(String table, long lastId, int deleted) {
+                super.chunkCollected(table, lastId, deleted);
+                collector.shutdown();
+            }
+        };
+
+        Assert.assertEquals(CHUNK_SIZE, collector.garbageCollect(listener));
+
+        Assert.assertEquals(1, listener.lastIds.size());
+        Assert.assertEquals(Long.toString(listener.lastIds.get(0)), getCheckpoint());
+        Assert.assertEquals(TRIPLES - CHUNK_SIZE, countTriples());
+    }
+
+    /**
+     * A new collector resumes an interrupted garbage collection after the checkpoint and collects the remaining
+     * triples.
+     */
+    @Test
+    public void testResumeFromCheckpoint() throws SQLException {
+        final KiWiGarbageCollector first = createCollector();
+        RecordingListener firstListener = new RecordingListener() {
+            @Override
+            public void chunkCollected(String table, long lastId, int deleted) {
+                super.chunkCollected(table, lastId, deleted);
+                if(lastIds.size() == 2) {
+                    first.shutdown();
+                }
+            }
+        };
+        Assert.assertEquals(2 * CHUNK_SIZE, first.garbageCollect(firstListener));
+
+        long checkpoint = Long.parseLong(getCheckpoint());
+        Assert.assertEquals(firstListener.lastIds.get(1).longValue(), checkpoint);
+
+        RecordingListener secondListener = new RecordingListener();
+        Assert.assertEquals(TRIPLES - 2 * CHUNK_SIZE, createCollector().garbageCollect(secondListener));
+
+        Assert.assertEquals(2, secondListener.lastIds.size());
+        Assert.assertTrue(secondListener.lastIds.get(0) > checkpoint);
+        Assert.assertEquals(0, countTriples());
+    }
+
+    /**
+     * Once the end of the table has been reached, the checkpoint is reset so that the next garbage collection
+     * starts from the beginning of the table.
+     */
+    @Test
+    public void testCheckpointResetAtEndOfTable() throws SQLException {
+        RecordingListener listener = new RecordingListener();
+        Assert.assertEquals(TRIPLES, createCollector().garbageCollect(listener));
+
+        Assert.assertEquals(4, listener.lastIds.size());
+        Assert.assertEquals(TRIPLES, listener.deleted);
+        Assert.assertEquals(Long.toString(Long.MIN_VALUE), getCheckpoint());
+        Assert.assertEquals(0, countTriples());
+
+        // nothing left to collect, the checkpoint stays at the beginning
+        Assert.assertEquals(0, createCollector().garbageCollect(null));
+        Assert.assertEquals(Long.toString(Long.MIN_VALUE), getCheckpoint());
+    }
+
+    private KiWiGarbageCollector createCollector() {
+        KiWiGarbageCollector collector = new KiWiGarbageCollector(persistence);
+        collector.setChunkSize(CHUNK_SIZE);
+        return collector;
+    }
+
+    private String getCheckpoint() throws SQLException {
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            try (PreparedStatement stmt = connection.getJDBCConnection().prepareStatement("SELECT mvalue FROM metadata WHERE mkey = ?")) {
+                stmt.setString(1, "gc.triples");
+                try (ResultSet result = stmt.executeQuery()) {
+                    return result.next() ? result.getString(1) : null;
+                }
+            }
+        } finally {
+            connection.commit();
+            connection.close();
+        }
+    }
+
+    private long countTriples() throws SQLException {
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            try (PreparedStatement stmt = connection.getJDBCConnection().prepareStatement("SELECT count(*) FROM triples")) {
+                try (ResultSet result = stmt.executeQuery()) {
+                    result.next();
+                    return result.getLong(1);
+                }
+            }
+        } finally {
+            connection.commit();
+            connection.close();
+        }
+    }
+
+    private static class RecordingListener implements KiWiGarbageCollector.ProgressListener {
+
+        protected final List<Long> lastIds = new ArrayList<>();
+
+        protected int deleted;
+
+        @Override
+        public void chunkCollected(String table, long lastId, int deleted) {
+            Assert.assertEquals("triples", table);
+            lastIds.add(lastId);
+            this.deleted = deleted;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.test;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.model.rdf.KiWiStringLiteral;
+import org.apache.marmotta.kiwi.model.rdf.KiWiTriple;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.persistence.KiWiConnection;
+import org.apache.marmotta.kiwi.persistence.KiWiPersistence;
+import org.apache.marmotta.kiwi.test.junit.KiWiDatabaseRunner;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Test deferred node persistence: pending nodes are only written with the first triple or explicitly with
+ * ensurePersisted(), and remain available for lookups until they are written, even when the node caches are cleared.
+ */
+@RunWith(KiWiDatabaseRunner.class)
+public class DeferredNodePersistenceTest {
+
+    private KiWiPersistence persistence;
+
+    private final KiWiConfiguration kiwiConfig;
+
+    public DeferredNodePersistenceTest(KiWiConfiguration kiwiConfig) {
+        this.kiwiConfig = kiwiConfig;
+    }
+
+    @Before
+    public void initDatabase() throws SQLException {
+        persistence = new KiWiPersistence(kiwiConfig);
+        persistence.initialise();
+        persistence.initDatabase();
+    }
+
+    @After
+    public void dropDatabase() throws SQLException {
+        persistence.dropDatabase();
+        persistence.shutdown();
+    }
+
+    @Test
+    public void testWrittenWithTriple() throws SQLException {
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            KiWiUriResource subject = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource predicate = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource object = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            connection.storeNodeDeferred(subject);
+            connection.storeNodeDeferred(predicate);
+            connection.storeNodeDeferred(object);
+
+            Assert.assertTrue(subject.getId() >= 0);
+            Assert.assertTrue(subject.isPending());
+            Assert.assertFalse(existsInDatabase(subject));
+
+            connection.storeTriple(new KiWiTriple(subject, predicate, object, null));
+            connection.commit();
+
+            for(KiWiNode node : new KiWiNode[] { subject, predicate, object }) {
+                Assert.assertFalse(node.isPending());
+                Assert.assertTrue(existsInDatabase(node));
+            }
+        } finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testEnsurePersisted() throws SQLException {
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            KiWiUriResource type = new KiWiUriResource("http://localhost/type/"+ RandomStringUtils.randomAlphanumeric(8));
+            KiWiStringLiteral literal = new KiWiStringLiteral(RandomStringUtils.randomAlphanumeric(16), null, type);
+            connection.storeNodeDeferred(type);
+            connection.storeNodeDeferred(literal);
+
+            // the datatype of a pending literal is written with the literal
+            connection.ensurePersisted(literal);
+            connection.commit();
+
+            Assert.assertFalse(literal.isPending());
+            Assert.assertFalse(type.isPending());
+            Assert.assertTrue(existsInDatabase(type));
+            Assert.assertTrue(existsInDatabase(literal));
+
+            // nodes that are already persisted are not written again
+            connection.ensurePersisted(literal);
+            connection.commit();
+
+            Assert.assertEquals(1, countInDatabase(literal));
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Pending nodes are found by lookups even when the node caches evicted them, so creating the same value again
+     * does not produce a second node with a different id.
+     */
+    @Test
+    public void testPendingNodePinned() throws SQLException {
+        String uri = "http://localhost/"+ RandomStringUtils.randomAlphanumeric(8);
+        KiWiUriResource resource = new KiWiUriResource(uri);
+
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            connection.storeNodeDeferred(resource);
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+
+        persistence.clearNodeCaches();
+
+        connection = persistence.getConnection();
+        try {
+            Assert.assertSame(resource, connection.loadUriResource(uri));
+            Assert.assertSame(resource, connection.loadNodeById(resource.getId()));
+
+            connection.ensurePersisted(resource);
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+
+        // once written, the node is loaded from the database
+        persistence.clearNodeCaches();
+
+        connection = persistence.getConnection();
+        try {
+            KiWiUriResource loaded = connection.loadUriResource(uri);
+            Assert.assertNotNull(loaded);
+            Assert.assertNotSame(resource, loaded);
+            Assert.assertEquals(resource.getId(), loaded.getId());
+            Assert.assertFalse(loaded.isPending());
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Pending nodes that are never written (e.g. query constants) are not pinned forever: once they are no longer
+     * referenced by the node caches or anywhere else, their pins are dropped.
+     */
+    @Test
+    public void testUnwrittenPendingNodesReleased() throws Exception {
+        int count = 10000;
+
+        KiWiUriResource kept = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            connection.storeNodeDeferred(kept);
+            for(int i = 0; i < count; i++) {
+                connection.storeNodeDeferred(new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(16)));
+            }
+            connection.rollback();
+        } finally {
+            connection.close();
+        }
+        Assert.assertTrue(persistence.getPendingNodeCount() > 0);
+
+        persistence.clearNodeCaches();
+
+        // garbage collection and reference processing are asynchronous, so give them a few attempts
+        for(int i = 0; i < 20 && persistence.getPendingNodeCount() > 1; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Assert.assertTrue(persistence.getPendingNodeCount() < count / 10);
+
+        // a referenced pending node is still pinned
+        Assert.assertSame(kept, persistence.getPendingUriResource(kept.stringValue()));
+        Assert.assertSame(kept, persistence.getPendingNode(kept.getId()));
+    }
+
+    private boolean existsInDatabase(KiWiNode node) throws SQLException {
+        return countInDatabase(node) > 0;
+    }
+
+    private long countInDatabase(KiWiNode node) throws SQLException {
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            PreparedStatement stmt = connection.getJDBCConnection().prepareStatement("SELECT count(*) FROM nodes WHERE id = ?");
+            try {
+                stmt.setLong(1, node.getId());
+                try (ResultSet result = stmt.executeQuery()) {
+                    result.next();
+                    return result.getLong(1);
+                }
+            } finally {
+                stmt.close();
+            }
+        } finally {
+            connection.commit();
+            connection.close();
+        }
+    }
+}
@@ -1122,4 +1122,52 @@ public class PersistenceTest {
             connection.close();
         }
     }
+
+    /**
+     * Test that a query statement whose result is still open is not executed again: a second request for the same
+     * SQL returns a fresh statement, and the cached statement is reused again once it has been released.
+     */
+    @Test
+    public void testBusyQueryStatements() throws SQLException {
+        KiWiConnection connection = persistence.getConnection();
+        try {
+            KiWiUriResource uri1 = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource uri2 = new KiWiUriResource("http://localhost/"+ RandomStringUtils.randomAlphanumeric(8));
+            connection.storeNode(uri1);
+            connection.storeNode(uri2);
+            connection.commit();
+
+            String sql = "SELECT svalue FROM nodes WHERE id = ?";
+
+            PreparedStatement stmt1 = connection.getPreparedQueryStatement(sql);
+            stmt1.setLong(1, uri1.getId());
+            ResultSet result1 = stmt1.executeQuery();
+
+            PreparedStatement stmt2 = connection.getPreparedQueryStatement(sql);
+            Assert.assertNotSame(stmt1, stmt2);
+            stmt2.setLong(1, uri2.getId());
+            ResultSet result2 = stmt2.executeQuery();
+
+            // both results can be read
+            Assert.assertTrue(result1.next());
+            Assert.assertEquals(uri1.stringValue(), result1.getString(1));
+            Assert.assertTrue(result2.next());
+            Assert.assertEquals(uri2.stringValue(), result2.getString(1));
+
+            result2.close();
+            connection.releasePreparedQueryStatement(stmt2);
+            Assert.assertTrue(stmt2.isClosed());
+
+            result1.close();
+            connection.releasePreparedQueryStatement(stmt1);
+            Assert.assertFalse(stmt1.isClosed());
+
+            Assert.assertSame(stmt1, connection.getPreparedQueryStatement(sql));
+            connection.releasePreparedQueryStatement(stmt1);
+
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.test.caching;
+
+import org.apache.marmotta.kiwi.caching.CacheManager;
+import org.apache.marmotta.kiwi.caching.GuavaCacheManager;
+import org.apache.marmotta.kiwi.caching.NearCacheManager;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.persistence.h2.H2Dialect;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Test the near cache decorator, using a shared Guava cache manager as L2 cache of two near cache managers (acting
+ * as two cluster members).
+ */
+public class NearCacheManagerTest {
+
+    private CacheManager remote;
+
+    private NearCacheManager member1, member2;
+
+    @Before
+    public void setup() {
+        KiWiConfiguration configuration = new KiWiConfiguration("near-cache-test", "jdbc:h2:mem:test", "", "", new H2Dialect());
+        configuration.setNearCacheSize(1000);
+
+        remote  = new GuavaCacheManager(configuration);
+        member1 = new NearCacheManager(remote, configuration);
+        member2 = new NearCacheManager(remote, configuration);
+    }
+
+    @Test
+    public void testWriteThrough() {
+        KiWiUriResource u = createUri(1L, "http://localhost/test1");
+
+        member1.getNodeCache().put(u.getId(), u);
+        member1.getUriCache().put(u.stringValue(), u);
+
+        Assert.assertSame(u, remote.getNodeCache().get(1L));
+        Assert.assertSame(u, remote.getUriCache().get("http://localhost/test1"));
+        Assert.assertSame(u, member2.getNodeCache().get(1L));
+        Assert.assertSame(u, member2.getUriCache().get("http://localhost/test1"));
+    }
+
+    @Test
+    public void testLocalLookup() {
+        KiWiUriResource u = createUri(2L, "http://localhost/test2");
+        member1.getNodeCache().put(u.getId(), u);
+
+        // entries fetched once are answered locally, even if the L2 cache does not have them anymore
+        Assert.assertSame(u, member2.getNodeCache().get(2L));
+        remote.getNodeCache().remove(2L);
+        Assert.assertSame(u, member1.getNodeCache().get(2L));
+        Assert.assertSame(u, member2.getNodeCache().get(2L));
+
+        // removing an entry through the decorator removes it locally and from the L2 cache
+        member1.getNodeCache().remove(2L);
+        Assert.assertNull(member1.getNodeCache().get(2L));
+    }
+
+    @Test
+    public void testClusterInvalidation() throws InterruptedException {
+        KiWiUriResource u = createUri(3L, "http://localhost/test3");
+        member1.getNodeCache().put(u.getId(), u);
+        Assert.assertSame(u, member2.getNodeCache().get(3L));
+
+        // clearing the node cache on one member drops the local caches of all members after the next epoch check
+        member1.getNodeCache().clear();
+        Assert.assertNull(member1.getNodeCache().get(3L));
+
+        Thread.sleep(1100);
+
+        KiWiNode n = member2.getNodeCache().get(3L);
+        Assert.assertNull(n);
+    }
+
+    @Test
+    public void testClusterRemoval() throws InterruptedException {
+        KiWiUriResource u = createUri(4L, "http://localhost/test4");
+        member1.getNodeCache().put(u.getId(), u);
+        Assert.assertSame(u, member2.getNodeCache().get(4L));
+
+        // removing an entry on one member drops it from the local caches of all members after the next epoch check
+        member1.getNodeCache().remove(4L);
+        Assert.assertNull(member1.getNodeCache().get(4L));
+
+        Thread.sleep(1100);
+
+        Assert.assertNull(member2.getNodeCache().get(4L));
+    }
+
+    /**
+     * Without an epoch cache in the L2 cache manager, changes cannot be propagated to other members, so the local
+     * caches are disabled and all lookups go to the L2 cache.
+     */
+    @Test
+    public void testWithoutEpochCache() {
+        KiWiConfiguration configuration = new KiWiConfiguration("near-cache-test", "jdbc:h2:mem:test", "", "", new H2Dialect());
+        configuration.setNearCacheSize(1000);
+
+        CacheManager l2 = new GuavaCacheManager(configuration) {
+            @Override
+            public Map getCacheByName(String name) {
+                return NearCacheManager.EPOCH_CACHE.equals(name) ? null : super.getCacheByName(name);
+            }
+        };
+        NearCacheManager near1 = new NearCacheManager(l2, configuration);
+        NearCacheManager near2 = new NearCacheManager(l2, configuration);
+
+        KiWiUriResource u = createUri(5L, "http://localhost/test5");
+        near1.getNodeCache().put(u.getId(), u);
+        Assert.assertSame(u, near2.getNodeCache().get(5L));
+
+        near1.getNodeCache().remove(5L);
+        Assert.assertNull(near2.getNodeCache().get(5L));
+    }
+
+    private static KiWiUriResource createUri(long id, String uri) {
+        KiWiUriResource u = new KiWiUriResource(uri);
+        u.setId(id);
+        return u;
+    }
+}
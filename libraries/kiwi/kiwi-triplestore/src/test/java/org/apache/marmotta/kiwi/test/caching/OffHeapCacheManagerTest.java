@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.test.caching;
+
+import org.apache.marmotta.commons.sesame.model.LiteralCommons;
+import org.apache.marmotta.commons.vocabulary.XSD;
+import org.apache.marmotta.kiwi.caching.OffHeapCacheManager;
+import org.apache.marmotta.kiwi.config.CachingBackends;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.model.rdf.KiWiLiteral;
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.model.rdf.KiWiStringLiteral;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.persistence.KiWiPersistence;
+import org.apache.marmotta.kiwi.persistence.h2.H2Dialect;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Locale;
+
+/**
+ * Test the off-heap cache manager: nodes stored in the node and key caches, and eviction once the byte budget is
+ * exhausted.
+ */
+public class OffHeapCacheManagerTest {
+
+    private OffHeapCacheManager cacheManager;
+
+    @Before
+    public void setup() {
+        KiWiConfiguration configuration = new KiWiConfiguration("offheap-test", "jdbc:h2:mem:test", "", "", new H2Dialect());
+        configuration.setOffHeapCacheSize(1024 * 1024);
+
+        cacheManager = new OffHeapCacheManager(configuration);
+    }
+
+    @After
+    public void teardown() {
+        cacheManager.shutdown();
+    }
+
+    @Test
+    public void testUriCache() {
+        KiWiUriResource u = createUri(1L, "http://localhost/test1");
+        cacheManager.getNodeCache().put(u.getId(), u);
+        cacheManager.getUriCache().put(u.stringValue(), u);
+
+        KiWiNode n = cacheManager.getNodeCache().get(1L);
+        Assert.assertEquals(u, n);
+        Assert.assertEquals(u.getId(), n.getId());
+
+        KiWiUriResource r = cacheManager.getUriCache().get("http://localhost/test1");
+        Assert.assertEquals(u, r);
+        Assert.assertEquals(u.getId(), r.getId());
+        Assert.assertNull(cacheManager.getUriCache().get("http://localhost/test2"));
+
+        // the node is stored only once
+        Assert.assertEquals(1, cacheManager.getNodeCache().size());
+
+        cacheManager.getNodeCache().remove(1L);
+        Assert.assertNull(cacheManager.getNodeCache().get(1L));
+        Assert.assertNull(cacheManager.getUriCache().get("http://localhost/test1"));
+    }
+
+    @Test
+    public void testLiteralCache() {
+        KiWiUriResource type = createUri(2L, XSD.String.stringValue());
+        KiWiStringLiteral l = new KiWiStringLiteral("hello", Locale.ENGLISH, type);
+        l.setId(3L);
+
+        String key = LiteralCommons.createCacheKey(l);
+        cacheManager.getLiteralCache().put(key, l);
+
+        KiWiLiteral r = cacheManager.getLiteralCache().get(key);
+        Assert.assertEquals(l, r);
+        Assert.assertEquals(3L, r.getId());
+        Assert.assertEquals(2L, r.getType().getId());
+    }
+
+    @Test
+    public void testNotPersisted() {
+        KiWiUriResource u = new KiWiUriResource("http://localhost/transient");
+        cacheManager.getUriCache().put(u.stringValue(), u);
+
+        Assert.assertNull(cacheManager.getUriCache().get("http://localhost/transient"));
+    }
+
+    @Test
+    public void testEviction() {
+        KiWiUriResource hot = createUri(1L, "http://localhost/hot");
+        cacheManager.getUriCache().put(hot.stringValue(), hot);
+
+        for(long id = 100; id < 100000; id++) {
+            KiWiUriResource u = createUri(id, "http://localhost/resource/" + id);
+            cacheManager.getUriCache().put(u.stringValue(), u);
+
+            // frequently used nodes survive the eviction
+            Assert.assertNotNull(cacheManager.getUriCache().get("http://localhost/hot"));
+        }
+
+        Assert.assertTrue(cacheManager.getAllocatedBytes() <= 1024 * 1024);
+        Assert.assertTrue(cacheManager.getNodeCache().size() < 99900);
+        Assert.assertNotNull(cacheManager.getUriCache().get("http://localhost/resource/99999"));
+        Assert.assertNull(cacheManager.getUriCache().get("http://localhost/resource/100"));
+    }
+
+    /**
+     * Pending nodes cannot be stored off-heap, so the persistence refuses to start with deferred node persistence,
+     * and the configuration is left unchanged.
+     */
+    @Test
+    public void testDeferredNodePersistenceRejected() {
+        KiWiConfiguration configuration = new KiWiConfiguration("offheap-test", "jdbc:h2:mem:test", "", "", new H2Dialect());
+        configuration.setCachingBackend(CachingBackends.OFFHEAP);
+        configuration.setDeferredNodePersistence(true);
+
+        try {
+            new KiWiPersistence(configuration).initialise();
+            Assert.fail("deferred node persistence was accepted with the off-heap caching backend");
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+        Assert.assertTrue(configuration.isDeferredNodePersistence());
+    }
+
+    private static KiWiUriResource createUri(long id, String uri) {
+        KiWiUriResource u = new KiWiUriResource(uri);
+        u.setId(id);
+        return u;
+    }
+}
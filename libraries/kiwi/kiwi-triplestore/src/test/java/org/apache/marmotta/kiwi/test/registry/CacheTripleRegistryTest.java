@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.test.registry;
+
+import org.apache.marmotta.kiwi.caching.GuavaCacheManager;
+import org.apache.marmotta.kiwi.config.KiWiConfiguration;
+import org.apache.marmotta.kiwi.persistence.h2.H2Dialect;
+import org.apache.marmotta.kiwi.persistence.registry.CacheTripleRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Test the cache based triple registry on a registry cache that does not support atomic operations, where
+ * conditional registrations are guarded by local locks.
+ */
+public class CacheTripleRegistryTest {
+
+    private static final int KEYS = 10000;
+
+    /**
+     * Several transactions concurrently register the same keys; all of them need to end up with the same triple id
+     * for each key.
+     */
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        KiWiConfiguration configuration = new KiWiConfiguration("registry-test", "jdbc:h2:mem:test", "", "", new H2Dialect());
+        final Map<Long,Long> registryCache = Collections.synchronizedMap(new HashMap<Long,Long>());
+        final CacheTripleRegistry registry = new CacheTripleRegistry(new GuavaCacheManager(configuration) {
+            @Override
+            public Map<Long, Long> getRegistryCache() {
+                return registryCache;
+            }
+        });
+        RegistryTestSupport.assertConcurrentRegistration(registry, 8, KEYS);
+        Assert.assertTrue(registryCache.isEmpty());
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.test.registry;
+
+import org.apache.marmotta.kiwi.persistence.registry.LocalTripleRegistry;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Test the in-memory triple registry with concurrent writers.
+ */
+public class LocalTripleRegistryTest {
+
+    private static final int KEYS = 100000;
+
+    @Test
+    public void testRegisterAndRelease() {
+        LocalTripleRegistry registry = new LocalTripleRegistry();
+
+        registry.registerKey(1L, 1L, 100L);
+        Assert.assertEquals(100L, registry.lookupKey(1L));
+        Assert.assertEquals(100L, registry.registerKeyIfAbsent(1L, 2L, 200L));
+        Assert.assertEquals(300L, registry.registerKeyIfAbsent(3L, 2L, 300L));
+
+        registry.releaseTransaction(1L);
+        Assert.assertEquals(-1L, registry.lookupKey(1L));
+        Assert.assertEquals(300L, registry.lookupKey(3L));
+
+        registry.deleteKey(3L);
+        Assert.assertEquals(-1L, registry.lookupKey(3L));
+    }
+
+    /**
+     * Several transactions concurrently register the same keys; all of them need to end up with the same triple id
+     * for each key.
+     */
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        RegistryTestSupport.assertConcurrentRegistration(new LocalTripleRegistry(), 8, KEYS);
+    }
+
+    /**
+     * Each writer thread runs its own transaction, registering distinct keys like concurrent
+     * KiWiValueFactory.createStatement calls do, and half of the transactions are released while the others are
+     * still registering. Released keys need to be gone, while the keys of all other transactions keep their ids.
+     */
+    @Test
+    public void testConcurrentTransactions() throws Exception {
+        final LocalTripleRegistry registry = new LocalTripleRegistry();
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Void>> writers = new ArrayList<>();
+            for(int t = 0; t < threads; t++) {
+                final long transactionId = t;
+                writers.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for(int i = 0; i < KEYS; i++) {
+                            long key = transactionId * KEYS + i;
+                            Assert.assertEquals(-1L, registry.lookupKey(key));
+                            Assert.assertEquals(key + 1, registry.registerKeyIfAbsent(key, transactionId, key + 1));
+                        }
+                        for(int i = 0; i < KEYS; i++) {
+                            long key = transactionId * KEYS + i;
+                            Assert.assertEquals(key + 1, registry.lookupKey(key));
+                        }
+                        if(transactionId % 2 == 1) {
+                            registry.releaseTransaction(transactionId);
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            for(Future<Void> f : executor.invokeAll(writers)) {
+                f.get();
+            }
+
+            for(int t = 0; t < threads; t++) {
+                for(int i = 0; i < KEYS; i++) {
+                    long key = (long) t * KEYS + i;
+                    Assert.assertEquals(t % 2 == 1 ? -1L : key + 1, registry.lookupKey(key));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
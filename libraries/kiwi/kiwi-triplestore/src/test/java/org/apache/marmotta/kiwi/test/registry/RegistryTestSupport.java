@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.test.registry;
+
+import org.apache.marmotta.kiwi.persistence.registry.KiWiTripleRegistry;
+import org.junit.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks shared by the tests of the different triple registry implementations.
+ */
+class RegistryTestSupport {
+
+    private RegistryTestSupport() {
+    }
+
+    /**
+     * Several transactions concurrently register the same keys; all of them need to end up with the same triple id
+     * for each key, and all keys need to be gone once the transactions have been released.
+     *
+     * @param registry the registry to test
+     * @param threads  the number of concurrent transactions
+     * @param keys     the number of keys registered by each transaction
+     */
+    static void assertConcurrentRegistration(final KiWiTripleRegistry registry, int threads, final int keys) throws Exception {
+        final AtomicLong sequence = new AtomicLong();
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for(int t = 0; t < threads; t++) {
+                final long transactionId = t;
+                results.add(executor.submit(new Callable<long[]>() {
+                    @Override
+                    public long[] call() throws Exception {
+                        long[] ids = new long[keys];
+                        for(int i = 0; i < keys; i++) {
+                            ids[i] = registry.registerKeyIfAbsent(i * 31L + 7L, transactionId, sequence.incrementAndGet());
+                        }
+                        return ids;
+                    }
+                }));
+            }
+
+            long[] expected = results.get(0).get();
+            for(Future<long[]> result : results) {
+                Assert.assertArrayEquals(expected, result.get());
+            }
+            for(int i = 0; i < keys; i++) {
+                Assert.assertEquals(expected[i], registry.lookupKey(i * 31L + 7L));
+            }
+
+            for(int t = 0; t < threads; t++) {
+                registry.releaseTransaction(t);
+            }
+            for(int i = 0; i < keys; i++) {
+                Assert.assertEquals(-1L, registry.lookupKey(i * 31L + 7L));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.marmotta.kiwi.test.registry;
+
+import org.apache.marmotta.kiwi.persistence.registry.KiWiTripleRegistry;
+import org.apache.marmotta.kiwi.persistence.registry.LocalTripleRegistry;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Contention benchmark for the triple registry: compares a registry guarded by a single monitor (like the registry
+ * used to be, with the value factory synchronizing on it) with the striped LocalTripleRegistry for an increasing
+ * number of writer threads. Only logs the throughput, so it is not run with the regular tests.
+ */
+@Ignore("benchmark, run manually")
+public class TripleRegistryContentionBenchmark {
+
+    private static Logger log = LoggerFactory.getLogger(TripleRegistryContentionBenchmark.class);
+
+    private static final int KEYS = 200000;
+
+    private static final int MAX_WRITERS = Math.max(8, 2 * Runtime.getRuntime().availableProcessors());
+
+    @Test
+    public void testContention() throws Exception {
+        // warm up both implementations before measuring
+        measure(new SynchronizedTripleRegistry(new LocalTripleRegistry()), 2);
+        measure(new LocalTripleRegistry(), 2);
+
+        for(int writers = 1; writers <= MAX_WRITERS; writers *= 2) {
+            long monitor = measure(new SynchronizedTripleRegistry(new LocalTripleRegistry()), writers);
+            long striped = measure(new LocalTripleRegistry(), writers);
+
+            log.info("{} writer threads: single monitor {} registrations/sec, striped {} registrations/sec",
+                    writers, monitor, striped);
+        }
+    }
+
+    /**
+     * Each writer thread runs its own transaction, looking up and registering distinct keys like concurrent
+     * KiWiValueFactory.createStatement calls do, and then releases its transaction. Returns the number of
+     * registrations per second.
+     */
+    private static long measure(final KiWiTripleRegistry registry, int writers) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for(int t = 0; t < writers; t++) {
+                final long transactionId = t;
+                tasks.add(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for(int i = 0; i < KEYS; i++) {
+                            long key = transactionId * KEYS + i;
+                            if(registry.lookupKey(key) < 0) {
+                                registry.registerKeyIfAbsent(key, transactionId, key);
+                            }
+                        }
+                        registry.releaseTransaction(transactionId);
+                        return null;
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for(Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+            long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+            return (long) writers * KEYS * 1000L / millis;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Serializes all registry operations on a single monitor.
+     */
+    private static class SynchronizedTripleRegistry implements KiWiTripleRegistry {
+
+        private final KiWiTripleRegistry delegate;
+
+        private SynchronizedTripleRegistry(KiWiTripleRegistry delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public synchronized void registerKey(long key, long transactionId, long tripleId) {
+            delegate.registerKey(key, transactionId, tripleId);
+        }
+
+        @Override
+        public synchronized long registerKeyIfAbsent(long key, long transactionId, long tripleId) {
+            return delegate.registerKeyIfAbsent(key, transactionId, tripleId);
+        }
+
+        @Override
+        public synchronized long lookupKey(long key) {
+            return delegate.lookupKey(key);
+        }
+
+        @Override
+        public synchronized void releaseTransaction(long transactionId) {
+            delegate.releaseTransaction(transactionId);
+        }
+
+        @Override
+        public synchronized void deleteKey(long key) {
+            delegate.deleteKey(key);
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package org.apache.marmotta.kiwi.versioning.persistence;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import info.aduna.iteration.CloseableIteration;
 import info.aduna.iteration.EmptyIteration;
 import info.aduna.iteration.ExceptionConvertingIteration;
@@ -43,6 +44,8 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * Add file description here!
@@ -61,7 +64,8 @@ public class KiWiVersioningConnection extends KiWiConnection {
     /**
      * Store a new version in the database. Will query for a new sequence ID for versions, insert a new row in the
      * versions table, and then add join entries to the versions_added and versions_removed tables for each added
-     * and removed triple.
+     * and removed triple. The versions_resources index table receives an entry for each subject of an added or
+     * removed triple, so that listing the versions of a resource does not need to scan the join tables.
      * <p/>
      * Note that this method assumes the transaction data to be already consistent, i.e. a triple is not added and
      * removed at the same time. No check for this situation is performed
@@ -78,6 +82,9 @@ public class KiWiVersioningConnection extends KiWiConnection {
 
         requireJDBCConnection();
 
+        // the creator might still be pending with deferred node persistence
+        ensurePersisted(data.getCreator());
+
         // first create a new entry in the version table
         data.setId(getNextSequence());
 
@@ -127,11 +134,31 @@ public class KiWiVersioningConnection extends KiWiConnection {
             insertRemoved.executeBatch(); // if this is a performance issue, we could also run it every 1000 inserts or so
         }
 
+        // finally add an index entry for every subject affected by the version
+        Set<Long> subjects = new HashSet<>();
+        for(Statement stmt : Iterables.concat(data.getAddedTriples(), data.getRemovedTriples())) {
+            if(stmt instanceof KiWiTriple) {
+                subjects.add(((KiWiTriple) stmt).getSubject().getId());
+            }
+        }
+        PreparedStatement insertResource = getPreparedStatement("store.version_resource");
+        synchronized (insertResource) {
+            insertResource.clearParameters();
+            for(Long subject : subjects) {
+                insertResource.setLong(1, data.getId());
+                insertResource.setLong(2, subject);
+                insertResource.setTimestamp(3, new Timestamp(data.getCommitTime().getTime()));
+                insertResource.addBatch();
+            }
+            insertResource.executeBatch();
+        }
+
     }
 
     /**
-     * Remove the version with the id passed as argument, including all references to added and removed triples. The
-     * triples themselves are not deleted immediately, we let the garbage collector carry this out periodically.
+     * Remove the version with the id passed as argument, including all references to added and removed triples and
+     * the entries in the resource index. The triples themselves are not deleted immediately, we let the garbage
+     * collector carry this out periodically.
      * @param id
      * @throws SQLException
      */
@@ -151,6 +178,11 @@ public class KiWiVersioningConnection extends KiWiConnection {
         removeRemoved.setLong(1, id);
         removeRemoved.executeUpdate();
 
+        PreparedStatement removeResources = getPreparedStatement("delete.version_resources");
+        removeResources.clearParameters();
+        removeResources.setLong(1, id);
+        removeResources.executeUpdate();
+
         PreparedStatement removeVersion = getPreparedStatement("delete.version");
         removeVersion.clearParameters();
         removeVersion.setLong(1, id);
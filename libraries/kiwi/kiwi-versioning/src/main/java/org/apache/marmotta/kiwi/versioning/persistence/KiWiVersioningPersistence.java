@@ -37,6 +37,11 @@ public class KiWiVersioningPersistence {
 
     private static Logger log = LoggerFactory.getLogger(KiWiVersioningPersistence.class);
 
+    /**
+     * The schema version of the versioning tables, stored in the metadata table under the key "versioning";
+     * databases created before the version was tracked are at version 1.
+     */
+    public static final int VERSION = 3;
 
     /**
      * Get the parent persistence service to access the database
@@ -54,8 +59,10 @@ public class KiWiVersioningPersistence {
      */
     public void initDatabase() throws SQLException {
         persistence.initDatabase("versioning", new String[] {"versions", "versions_added", "versions_removed"});
+        persistence.upgradeDatabase("versioning", 1, VERSION);
 
         persistence.addNodeTableDependency("versions", "creator");
+        persistence.addNodeTableDependency("versions_resources", "subject");
         persistence.addTripleTableDependency("versions_added","triple_id");
         persistence.addTripleTableDependency("versions_removed","triple_id");
     }
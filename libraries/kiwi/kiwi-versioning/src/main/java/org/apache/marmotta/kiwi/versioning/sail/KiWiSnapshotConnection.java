@@ -175,7 +175,7 @@ public class KiWiSnapshotConnection implements SailConnection {
                     @Override
                     protected Iteration<? extends Statement, ? extends RepositoryException> createIteration() throws RepositoryException {
                         try {
-                            return databaseConnection.listTriplesSnapshot(rsubj, rpred, robj, context, includeInferred, snapshotDate);
+                            return listTriples(rsubj, rpred, robj, context, includeInferred);
                         } catch (SQLException e) {
                             throw new RepositoryException("database error while listing triples",e);
                         }
@@ -187,7 +187,7 @@ public class KiWiSnapshotConnection implements SailConnection {
                 @Override
                 protected Iteration<? extends Statement, ? extends RepositoryException> createIteration() throws RepositoryException {
                     try {
-                        return databaseConnection.listTriplesSnapshot(rsubj, rpred, robj, null, includeInferred, snapshotDate);
+                        return listTriples(rsubj, rpred, robj, null, includeInferred);
                     } catch (SQLException e) {
                         throw new RepositoryException("database error while listing triples",e);
                     }
@@ -215,6 +215,19 @@ public class KiWiSnapshotConnection implements SailConnection {
         );
     }
 
+    /**
+     * List the triples matching the pattern in this snapshot, using the materialised snapshots of the parent sail
+     * if enabled.
+     */
+    private CloseableIteration<Statement, RepositoryException> listTriples(KiWiResource subject, KiWiUriResource predicate, KiWiNode object, KiWiResource context, boolean includeInferred) throws SQLException {
+        SnapshotCache cache = parent.getSnapshotCache();
+        if(cache != null) {
+            return cache.listTriples(databaseConnection, subject, predicate, object, context, includeInferred, snapshotDate);
+        } else {
+            return databaseConnection.listTriplesSnapshot(subject, predicate, object, context, includeInferred, snapshotDate);
+        }
+    }
+
     @Override
     public long size(Resource... contexts) throws SailException {
         try {
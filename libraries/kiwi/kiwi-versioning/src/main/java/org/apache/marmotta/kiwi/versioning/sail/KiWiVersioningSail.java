@@ -73,6 +73,8 @@ public class KiWiVersioningSail extends TransactionalSailWrapper implements Tran
 
     private SesameFilter<Statement> filter;
 
+    private SnapshotCache snapshotCache;
+
     /**
      * Build a new {@link KiWiVersioningSail} based on the provided parent
      * {@link TransactionalSail}.
@@ -232,6 +234,30 @@ public class KiWiVersioningSail extends TransactionalSailWrapper implements Tran
         return con;
     }
 
+    /**
+     * Enable the materialisation of snapshot query results with a bound subject or context (see {@link SnapshotCache}).
+     * Repeated Memento requests for the same resource and date are then answered from memory.
+     *
+     * @param maximumSize the maximum number of materialised query results; 0 disables the cache
+     * @param delay       minimum age of a snapshot date (in milliseconds) before its query results are materialised
+     */
+    public void setSnapshotCache(int maximumSize, long delay) {
+        this.snapshotCache = maximumSize > 0 ? new SnapshotCache(maximumSize, delay) : null;
+    }
+
+    /**
+     * Return the cache of materialised snapshot query results, or null in case the cache is disabled.
+     */
+    public SnapshotCache getSnapshotCache() {
+        return snapshotCache;
+    }
+
+    private void clearSnapshotCache() {
+        if(snapshotCache != null) {
+            snapshotCache.clear();
+        }
+    }
+
     /**
      * Unregister the snapshot connection, it has been cleaned up properly.
      * @param con
@@ -330,6 +356,7 @@ public class KiWiVersioningSail extends TransactionalSailWrapper implements Tran
                 connection.removeVersion(id);
                 connection.commit();
             }
+            clearSnapshotCache();
 
         } catch(SQLException ex) {
             throw new SailException("database error while listing versions",ex);
@@ -349,6 +376,7 @@ public class KiWiVersioningSail extends TransactionalSailWrapper implements Tran
                 connection.removeVersions(until);
                 connection.commit();
             }
+            clearSnapshotCache();
 
         } catch(SQLException ex) {
             throw new SailException("database error while listing versions",ex);
@@ -370,6 +398,7 @@ public class KiWiVersioningSail extends TransactionalSailWrapper implements Tran
                 connection.removeVersions(from, to);
                 connection.commit();
             }
+            clearSnapshotCache();
 
         } catch(SQLException ex) {
             throw new SailException("database error while listing versions",ex);
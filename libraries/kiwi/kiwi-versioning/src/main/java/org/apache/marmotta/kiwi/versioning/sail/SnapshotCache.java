@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.kiwi.versioning.sail;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import info.aduna.iteration.CloseableIteration;
+import info.aduna.iteration.CloseableIteratorIteration;
+import info.aduna.iteration.IterationWrapper;
+import org.apache.marmotta.kiwi.model.rdf.KiWiNode;
+import org.apache.marmotta.kiwi.model.rdf.KiWiResource;
+import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.versioning.persistence.KiWiVersioningConnection;
+import org.openrdf.model.Statement;
+import org.openrdf.repository.RepositoryException;
+
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * A cache of materialised snapshot query results. Memento lookups request the state of a resource at the commit
+ * time of one of its versions, so the same (pattern, date) combinations are queried over and over again. Since the
+ * state of the triple store at a date in the past does not change anymore, the result of a snapshot query with a
+ * bound subject or context can be kept in memory and served without going to the database.
+ * <p/>
+ * Only snapshot dates that lie at least the configured delay in the past are materialised, so that transactions
+ * still running at the snapshot date have committed before their results are cached. The cache needs to be cleared
+ * when versions are removed, because the garbage collector may then remove the triples of the removed versions.
+ */
+public class SnapshotCache {
+
+    /**
+     * Results with more triples than this are not materialised.
+     */
+    public static final int MAX_ENTRY_SIZE = 10000;
+
+    private final Cache<Key, List<Statement>> cache;
+
+    private final long delay;
+
+    /**
+     * Create a new snapshot cache.
+     *
+     * @param maximumSize the maximum number of materialised query results
+     * @param delay       minimum age of a snapshot date (in milliseconds) before its query results are materialised
+     */
+    public SnapshotCache(int maximumSize, long delay) {
+        this.cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.delay = delay;
+    }
+
+    /**
+     * List the triples matching the pattern at the snapshot date, either from the materialised results or from the
+     * database. Results of cacheable queries read from the database are materialised when they have been iterated
+     * completely.
+     */
+    public CloseableIteration<Statement, RepositoryException> listTriples(KiWiVersioningConnection connection, KiWiResource subject, KiWiUriResource predicate, KiWiNode object, KiWiResource context, boolean inferred, Date snapshotDate) throws SQLException {
+        if((subject == null && context == null) || snapshotDate.getTime() > System.currentTimeMillis() - delay) {
+            return connection.listTriplesSnapshot(subject, predicate, object, context, inferred, snapshotDate);
+        }
+
+        Key key = new Key(subject, predicate, object, context, inferred, snapshotDate);
+        List<Statement> triples = cache.getIfPresent(key);
+        if(triples != null) {
+            return new CloseableIteratorIteration<>(triples.iterator());
+        } else {
+            return new MaterialisingIteration(key, connection.listTriplesSnapshot(subject, predicate, object, context, inferred, snapshotDate));
+        }
+    }
+
+    /**
+     * Remove all materialised snapshots, e.g. because versions have been removed.
+     */
+    public void clear() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    /**
+     * Records the triples of a database result while they are iterated and adds them to the cache once the
+     * result has been consumed completely.
+     */
+    private class MaterialisingIteration extends IterationWrapper<Statement, RepositoryException> {
+
+        private final Key key;
+
+        private List<Statement> triples = new ArrayList<>();
+
+        private MaterialisingIteration(Key key, CloseableIteration<Statement, RepositoryException> delegate) {
+            super(delegate);
+            this.key = key;
+        }
+
+        @Override
+        public boolean hasNext() throws RepositoryException {
+            boolean hasNext = super.hasNext();
+            if(!hasNext && triples != null) {
+                cache.put(key, Collections.unmodifiableList(triples));
+                triples = null;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public Statement next() throws RepositoryException {
+            Statement next = super.next();
+            if(triples != null) {
+                if(triples.size() < MAX_ENTRY_SIZE) {
+                    triples.add(next);
+                } else {
+                    triples = null;
+                }
+            }
+            return next;
+        }
+    }
+
+    private static class Key {
+        private final long subject, predicate, object, context, snapshotDate;
+        private final boolean inferred;
+
+        private Key(KiWiResource subject, KiWiUriResource predicate, KiWiNode object, KiWiResource context, boolean inferred, Date snapshotDate) {
+            this.subject      = id(subject);
+            this.predicate    = id(predicate);
+            this.object       = id(object);
+            this.context      = id(context);
+            this.inferred     = inferred;
+            this.snapshotDate = snapshotDate.getTime();
+        }
+
+        private static long id(KiWiNode node) {
+            return node != null ? node.getId() : 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return subject == key.subject && predicate == key.predicate && object == key.object
+                    && context == key.context && snapshotDate == key.snapshotDate && inferred == key.inferred;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new long[] {subject, predicate, object, context, snapshotDate, inferred ? 1 : 0});
+        }
+    }
+}
@@ -17,9 +17,17 @@ DROP INDEX idx_versions_added_tid on versions_added;
 DROP INDEX idx_versions_removed on versions_removed;
 DROP INDEX idx_versions_removed_tid on versions_removed;
 DROP INDEX idx_versions_created on versions;
+DROP INDEX idx_versions_resources on versions_resources;
+DROP INDEX idx_versions_resources_vid on versions_resources;
+DROP INDEX idx_triples_snapshot on triples;
+DROP INDEX idx_triples_snapshot_s on triples;
+DROP INDEX idx_triples_snapshot_c on triples;
 
 
+DROP TABLE IF EXISTS versions_resources;
 DROP TABLE IF EXISTS versions_added;
 DROP TABLE IF EXISTS versions_removed;
 DROP TABLE IF EXISTS versions;
 
+DELETE FROM metadata WHERE mkey = 'versioning';
+
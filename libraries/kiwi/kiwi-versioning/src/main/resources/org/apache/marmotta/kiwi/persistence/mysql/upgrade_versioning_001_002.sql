@@ -0,0 +1,31 @@
+-- Licensed to the Apache Software Foundation (ASF) under one or more
+-- contributor license agreements.  See the NOTICE file distributed with
+-- this work for additional information regarding copyright ownership.
+-- The ASF licenses this file to You under the Apache License, Version 2.0
+-- (the "License"); you may not use this file except in compliance with
+-- the License.  You may obtain a copy of the License at
+--
+--      http://www.apache.org/licenses/LICENSE-2.0
+--
+-- Unless required by applicable law or agreed to in writing, software
+-- distributed under the License is distributed on an "AS IS" BASIS,
+-- WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+-- See the License for the specific language governing permissions and
+-- limitations under the License.
+
+-- add the per-resource version index and fill it from the existing versions
+CREATE TABLE versions_resources (
+  version_id  bigint     REFERENCES versions(id),
+  subject     bigint     REFERENCES nodes(id),
+  createdAt   timestamp  NOT NULL
+);
+
+INSERT INTO versions_resources (version_id,subject,createdAt)
+  SELECT V.id, T.subject, V.createdAt FROM versions V, versions_added J, triples T WHERE J.version_id = V.id AND J.triple_id = T.id
+  UNION
+  SELECT V.id, T.subject, V.createdAt FROM versions V, versions_removed J, triples T WHERE J.version_id = V.id AND J.triple_id = T.id;
+
+CREATE INDEX idx_versions_resources ON versions_resources(subject,createdAt);
+CREATE INDEX idx_versions_resources_vid ON versions_resources(version_id);
+
+INSERT INTO metadata(mkey,mvalue) VALUES ('versioning','2');
@@ -31,9 +31,25 @@ CREATE TABLE versions_removed (
   triple_id   bigint REFERENCES triples(id)
 );
 
+-- index table: from resource to the versions that added or removed triples with the resource as subject
+CREATE TABLE versions_resources (
+  version_id  bigint     REFERENCES versions(id),
+  subject     bigint     REFERENCES nodes(id),
+  createdAt   timestamp  NOT NULL
+);
+
 CREATE INDEX idx_versions_added ON versions_added(version_id);
 CREATE INDEX idx_versions_added_tid ON versions_added(triple_id);
 CREATE INDEX idx_versions_removed ON versions_removed(version_id);
 CREATE INDEX idx_versions_removed_tid ON versions_removed(triple_id);
 CREATE INDEX idx_versions_created ON versions(createdAt);
+CREATE INDEX idx_versions_resources ON versions_resources(subject,createdAt);
+CREATE INDEX idx_versions_resources_vid ON versions_resources(version_id);
+
+-- temporal indexes for snapshot queries (all triples, including deleted ones)
+CREATE INDEX idx_triples_snapshot ON triples(createdAt,deletedAt);
+CREATE INDEX idx_triples_snapshot_s ON triples(subject,createdAt,deletedAt);
+CREATE INDEX idx_triples_snapshot_c ON triples(context,createdAt,deletedAt);
+
+INSERT INTO metadata(mkey,mvalue) VALUES ('versioning','3');
 
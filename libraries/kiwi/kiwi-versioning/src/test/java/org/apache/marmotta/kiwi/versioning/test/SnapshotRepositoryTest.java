@@ -217,6 +217,44 @@ public class SnapshotRepositoryTest {
 
     }
 
+    @Test
+    public void testSnapshotCache() throws Exception {
+        vsail.setSnapshotCache(100, 0);
+
+        // base data
+        InputStream baseData = this.getClass().getResourceAsStream("version-base.rdf");
+        assumeThat("Could not load test-data: version-base.rdf", baseData, notNullValue(InputStream.class));
+
+        RepositoryConnection connectionBase = repository.getConnection();
+        try {
+            connectionBase.add(baseData, "http://marmotta.apache.org/testing/ns1/", RDFFormat.RDFXML);
+            connectionBase.commit();
+        } finally {
+            connectionBase.close();
+        }
+
+        Thread.sleep(1000);
+
+        Date date = new Date();
+
+        Thread.sleep(1000);
+
+        for(int i = 0; i < 2; i++) {
+            RepositoryConnection snapshot = repository.getSnapshot(date);
+            try {
+                List<Statement> r1_triples = asList(snapshot.getStatements(repository.getValueFactory().createURI("http://marmotta.apache.org/testing/ns1/R1"), null, null, true));
+                Assert.assertEquals(3, r1_triples.size());
+            } finally {
+                snapshot.commit();
+                snapshot.close();
+            }
+        }
+
+        // the second lookup is answered from the materialised snapshot
+        Assert.assertEquals(1, vsail.getSnapshotCache().getHitCount());
+        Assert.assertEquals(1, vsail.getSnapshotCache().size());
+    }
+
     @Test
     public void testSnapshotSPARQL() throws Exception {
         // import three files in sequence and check if the versions are created properly
@@ -87,8 +87,9 @@ public class VersioningPersistenceTest {
         // test if database exists and has a version
         KiWiConnection connection = vpersistence.getConnection();
         try {
-            Assert.assertThat(connection.getDatabaseTables(), hasItems("versions", "versions_added", "versions_removed"));
+            Assert.assertThat(connection.getDatabaseTables(), hasItems("versions", "versions_added", "versions_removed", "versions_resources"));
             Assert.assertEquals(KiWiDialect.VERSION, connection.getDatabaseVersion());
+            Assert.assertEquals(String.valueOf(KiWiVersioningPersistence.VERSION), connection.getMetadata("versioning"));
 
             connection.commit();
         } finally {
@@ -328,6 +329,10 @@ public class VersioningPersistenceTest {
             Assert.assertEquals("there should be exactly one version",1,list3.size());
             Assert.assertEquals("contents of version differ", version2, list3.get(0));
 
+            // check if the resource index has been cleaned up as well
+            Assert.assertEquals(1, Iterations.asList(connection.listVersions(subject1)).size());
+            Assert.assertEquals(1, Iterations.asList(connection.listVersions(subject2)).size());
+
             connection.commit();
 
         } finally {
@@ -336,6 +341,50 @@ public class VersioningPersistenceTest {
 
     }
 
+    /**
+     * The creator of a version might still be pending with deferred node persistence; it is written with the version.
+     */
+    @Test
+    public void testStoreVersionPendingCreator() throws Exception {
+        KiWiVersioningConnection connection = vpersistence.getConnection();
+        try {
+            KiWiUriResource subject  = new KiWiUriResource("http://localhost/resource/"+ RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource pred     = new KiWiUriResource("http://localhost/predicate/P1");
+            KiWiUriResource object   = new KiWiUriResource("http://localhost/resource/"+RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource context  = new KiWiUriResource("http://localhost/context/"+RandomStringUtils.randomAlphanumeric(8));
+            KiWiUriResource creator  = new KiWiUriResource("http://localhost/user/"+RandomStringUtils.randomAlphanumeric(8));
+
+            connection.storeNode(subject);
+            connection.storeNode(pred);
+            connection.storeNode(object);
+            connection.storeNode(context);
+            connection.storeNodeDeferred(creator);
+
+            KiWiTriple triple = new KiWiTriple(subject,pred,object,context);
+            connection.storeTriple(triple);
+            connection.commit();
+
+            Assert.assertTrue(creator.isPending());
+
+            Version version = new Version();
+            version.setCommitTime(new Date());
+            version.setCreator(creator);
+            version.addTriple(triple);
+            connection.storeVersion(version);
+            connection.commit();
+
+            Assert.assertFalse(creator.isPending());
+
+            List<Version> list = Iterations.asList(connection.listVersions());
+            Assert.assertEquals("there should be exactly one version", 1, list.size());
+            Assert.assertEquals(creator, list.get(0).getCreator());
+
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+    }
+
 
 
     /**
@@ -47,6 +47,17 @@ public interface LDCachingBackend {
     void putEntry(URI resource, CacheEntry entry);
 
 
+    /**
+     * Update only the caching metadata (expiry date, update count, validators) of the cache entry for the given
+     * resource, leaving the cached triples untouched. Used when a conditional refresh reported that the remote
+     * resource has not changed.
+     *
+     * @param resource the resource to update
+     * @param entry    the entry for the resource; its triples are ignored
+     */
+    void touchEntry(URI resource, CacheEntry entry);
+
+
     /**
      * Remove the cache entry for the given resource if it exists. Does nothing otherwise.
      *
@@ -19,6 +19,9 @@ package org.apache.marmotta.ldcache.api;
 import org.openrdf.model.Model;
 import org.openrdf.model.URI;
 
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
 /**
  * This is the next-generation API for LDCache that will become the default in Marmotta 3.3 or 4.0. For now,
  * LDCache implements both the old and the new style.
@@ -40,6 +43,23 @@ public interface LDCachingService {
     void refresh(URI resource, RefreshOpts... options);
 
 
+    /**
+     * Refresh all resources passed as argument, retrieving them in parallel (bounded by the number of parallel requests
+     * of the LDClient). Duplicate resources are only refreshed once, and resources that are already being refreshed by
+     * another call to refreshAll are not retrieved again, unless only this call forces the refresh. Expired resources
+     * are refreshed before the method returns even if the cache refreshes them asynchronously otherwise. The method
+     * returns as soon as all resources have been refreshed or the timeout has passed; in the latter case, the
+     * remaining resources continue to be refreshed in the background.
+     *
+     * @param resources the resources to refresh
+     * @param timeout   the maximum time to wait for the refreshes to complete
+     * @param unit      the time unit of the timeout
+     * @param options   options for refreshing
+     * @return true in case all resources have been refreshed before the timeout passed
+     */
+    boolean refreshAll(Collection<URI> resources, long timeout, TimeUnit unit, RefreshOpts... options);
+
+
     /**
      * Refresh and return the resource passed as argument. If the resource is not yet cached or the cache entry is
      * expired or refreshing is forced, the remote resource is retrieved using LDClient and the result stored
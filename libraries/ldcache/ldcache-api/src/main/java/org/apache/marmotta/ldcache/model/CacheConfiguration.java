@@ -32,6 +32,24 @@ public class CacheConfiguration {
 
     private long defaultExpiry = 86400L;
 
+    /**
+     * If true, expired cache entries are returned immediately and refreshed in the background (stale-while-revalidate);
+     * only resources that are not cached at all are retrieved synchronously.
+     */
+    private boolean asyncRefresh = false;
+
+    /**
+     * Number of seconds before expiry in which cache entries that have been accessed are renewed proactively in the
+     * background; 0 disables refreshing ahead of expiry.
+     */
+    private long refreshAhead = 0L;
+
+    /** maximum number of background refreshes running in parallel */
+    private int refreshThreads = 4;
+
+    /** maximum number of background refreshes waiting for execution; further refreshes are skipped */
+    private int refreshQueueSize = 1000;
+
     public CacheConfiguration() {
         this(new ClientConfiguration());
     }
@@ -55,4 +73,44 @@ public class CacheConfiguration {
     public void setDefaultExpiry(long defaultExpiry) {
         this.defaultExpiry = defaultExpiry;
     }
+
+    /**
+     * If true, expired cache entries are returned immediately and refreshed in the background (stale-while-revalidate);
+     * only resources that are not cached at all are retrieved synchronously.
+     */
+    public boolean isAsyncRefresh() {
+        return asyncRefresh;
+    }
+
+    public void setAsyncRefresh(boolean asyncRefresh) {
+        this.asyncRefresh = asyncRefresh;
+    }
+
+    /**
+     * Number of seconds before expiry in which cache entries that have been accessed are renewed proactively in the
+     * background; 0 disables refreshing ahead of expiry.
+     */
+    public long getRefreshAhead() {
+        return refreshAhead;
+    }
+
+    public void setRefreshAhead(long refreshAhead) {
+        this.refreshAhead = refreshAhead;
+    }
+
+    public int getRefreshThreads() {
+        return refreshThreads;
+    }
+
+    public void setRefreshThreads(int refreshThreads) {
+        this.refreshThreads = refreshThreads;
+    }
+
+    public int getRefreshQueueSize() {
+        return refreshQueueSize;
+    }
+
+    public void setRefreshQueueSize(int refreshQueueSize) {
+        this.refreshQueueSize = refreshQueueSize;
+    }
 }
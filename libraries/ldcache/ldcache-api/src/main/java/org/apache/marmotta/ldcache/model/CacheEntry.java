@@ -62,6 +62,19 @@ public class CacheEntry implements Serializable {
     private Integer tripleCount;
 
 
+    /**
+     * The entity tag returned by the server in the last cache refresh (optional), used for conditional refreshing.
+     */
+    private String etag;
+
+
+    /**
+     * The last modification date returned by the server in the last cache refresh (optional), used for conditional
+     * refreshing.
+     */
+    private Date lastModified;
+
+
     public CacheEntry() {
     }
 
@@ -136,6 +149,36 @@ public class CacheEntry implements Serializable {
         this.tripleCount = tripleCount;
     }
 
+    /**
+     * The entity tag returned by the server in the last cache refresh (optional), used for conditional refreshing.
+     */
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * The entity tag returned by the server in the last cache refresh (optional), used for conditional refreshing.
+     */
+    public void setETag(String etag) {
+        this.etag = etag;
+    }
+
+    /**
+     * The last modification date returned by the server in the last cache refresh (optional), used for conditional
+     * refreshing.
+     */
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * The last modification date returned by the server in the last cache refresh (optional), used for conditional
+     * refreshing.
+     */
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified != null ? new Date(lastModified.getTime()) : null;
+    }
+
     /**
      * The triples cached for the resource by this entry.
      */
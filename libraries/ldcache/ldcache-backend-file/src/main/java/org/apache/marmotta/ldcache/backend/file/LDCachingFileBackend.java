@@ -71,7 +71,6 @@ public class LDCachingFileBackend implements LDCachingBackend {
             final File dataFile = FileBackendUtils.getMetaFile(resource, storageDir);
             if (!(dataFile.exists())) return null;
             final CacheEntry ce = FileBackendUtils.readCacheEntry(dataFile, getValueFactory());
-            if (FileBackendUtils.isExpired(ce)) return null;
 
             // read triples for this entry from cache repository
             RepositoryConnection con = cacheRepository.getConnection();
@@ -129,6 +128,22 @@ public class LDCachingFileBackend implements LDCachingBackend {
 
     }
 
+    /**
+     * Update only the caching metadata (expiry date, update count, validators) of the cache entry for the given
+     * resource, leaving the cached triples untouched.
+     *
+     * @param resource the resource to update
+     * @param entry    the entry for the resource; its triples are ignored
+     */
+    @Override
+    public void touchEntry(URI resource, CacheEntry entry) {
+        try {
+            FileBackendUtils.writeCacheEntry(entry, storageDir);
+        } catch (IOException e) {
+            log.error("could not store cache entry for {}: {}", resource.stringValue(), e.getMessage());
+        }
+    }
+
     /**
      * Remove the cache entry for the given resource if it exists. Does nothing otherwise.
      *
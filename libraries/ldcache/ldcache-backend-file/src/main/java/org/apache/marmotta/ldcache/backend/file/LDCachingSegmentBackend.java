@@ -0,0 +1,497 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldcache.backend.file;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.backend.file.util.Segment;
+import org.apache.marmotta.ldcache.backend.file.util.SegmentBackendUtils;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.URI;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Segment-based implementation of the next generation LDCaching Backend API, storing all cache entries in a few
+ * large append-only segment files instead of one metadata file per resource and a separate triple repository.
+ * <p/>
+ * Every update appends a record with the complete entry (metadata and triples) to the active segment; removals
+ * append a deletion record. An in-memory index maps each resource to the location of its current record, and an
+ * expiry index allows listing expired entries without reading them. Full segments are sealed and memory-mapped.
+ * Superseded records are reclaimed by a periodic compaction, which copies the records still in use from segments
+ * with little live data to the active segment and deletes the old segment files. On startup, the index is rebuilt
+ * by reading all segments in order; an incomplete record at the end of the last segment is discarded.
+ *
+ * @see LDCachingFileBackend
+ */
+public class LDCachingSegmentBackend implements LDCachingBackend {
+
+    private static Logger log = LoggerFactory.getLogger(LDCachingSegmentBackend.class);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.dat");
+
+    /**
+     * Default maximum size of a segment file in bytes (64 MB)
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    // segments with less than this fraction of live data are compacted
+    private static final double COMPACTION_THRESHOLD = 0.5;
+
+    // interval in seconds between two compaction runs
+    private static final long COMPACTION_INTERVAL = 300;
+
+    private final File storageDir;
+
+    private final int maxSegmentSize;
+
+    // all segments by id, in the order they have been written
+    private TreeMap<Integer, Segment> segments;
+
+    private Segment active;
+
+    // resource URI -> location of the current record of the resource
+    private Map<String, Location> index;
+
+    // expiry time -> resources expiring at that time
+    private TreeMap<Long, Set<String>> expiryIndex;
+
+    private ReentrantReadWriteLock lock;
+
+    private ScheduledExecutorService compactor;
+
+    public LDCachingSegmentBackend(File storageDir) {
+        this(storageDir, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public LDCachingSegmentBackend(File storageDir, int maxSegmentSize) {
+        if (storageDir == null) throw new NullPointerException();
+        this.storageDir     = storageDir;
+        this.maxSegmentSize = maxSegmentSize;
+        this.lock           = new ReentrantReadWriteLock();
+    }
+
+    /**
+     * Return the cache entry for the given resource, or null if this entry does not exist.
+     *
+     * @param resource the resource to retrieve the cache entry for
+     * @return
+     */
+    @Override
+    public CacheEntry getEntry(URI resource) {
+        lock.readLock().lock();
+        try {
+            Location location = index.get(resource.stringValue());
+            if (location == null) return null;
+
+            byte[] body = segments.get(location.segment).read(location.offset);
+            if (body == null) {
+                log.error("corrupted cache record for resource {}", resource.stringValue());
+                return null;
+            }
+            return SegmentBackendUtils.decodeEntry(body, getValueFactory(), true);
+        } catch (IOException e) {
+            log.error("error while loading cache entry from segment file:",e);
+
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Update the cache entry for the given resource with the given entry.
+     *
+     * @param resource the resource to update
+     * @param entry    the entry for the resource
+     */
+    @Override
+    public void putEntry(URI resource, CacheEntry entry) {
+        lock.writeLock().lock();
+        try {
+            byte[] body = SegmentBackendUtils.encodeEntry(entry);
+            Location location = append(body);
+            location.expiry = entry.getExpiryDate().getTime();
+
+            replace(resource.stringValue(), location);
+        } catch (IOException e) {
+            log.error("could not store cache entry for {}: {}", resource.stringValue(), e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Update only the caching metadata (expiry date, update count, validators) of the cache entry for the given
+     * resource, leaving the cached triples untouched. Since records are immutable, the entry is appended again with
+     * the triples of the current record.
+     *
+     * @param resource the resource to update
+     * @param entry    the entry for the resource; its triples are ignored
+     */
+    @Override
+    public void touchEntry(URI resource, CacheEntry entry) {
+        lock.writeLock().lock();
+        try {
+            Location current = index.get(resource.stringValue());
+            if (current == null) return;
+
+            byte[] body = segments.get(current.segment).read(current.offset);
+            if (body == null) {
+                log.error("corrupted cache record for resource {}", resource.stringValue());
+                return;
+            }
+
+            CacheEntry touched = SegmentBackendUtils.decodeEntry(body, getValueFactory(), true);
+            touched.setExpiryDate(entry.getExpiryDate());
+            touched.setLastRetrieved(entry.getLastRetrieved());
+            touched.setUpdateCount(entry.getUpdateCount());
+            touched.setETag(entry.getETag());
+            touched.setLastModified(entry.getLastModified());
+
+            Location location = append(SegmentBackendUtils.encodeEntry(touched));
+            location.expiry = touched.getExpiryDate().getTime();
+
+            replace(resource.stringValue(), location);
+        } catch (IOException e) {
+            log.error("could not store cache entry for {}: {}", resource.stringValue(), e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove the cache entry for the given resource if it exists. Does nothing otherwise.
+     *
+     * @param resource the resource to remove the entry for
+     */
+    @Override
+    public void removeEntry(URI resource) {
+        lock.writeLock().lock();
+        try {
+            if (index.containsKey(resource.stringValue())) {
+                append(SegmentBackendUtils.encodeTombstone(resource.stringValue()));
+                replace(resource.stringValue(), null);
+            }
+        } catch (IOException e) {
+            log.error("could not remove cache entry for {}: {}", resource.stringValue(), e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Clear all entries in the cache backend.
+     */
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.delete();
+            }
+            segments.clear();
+            index.clear();
+            expiryIndex.clear();
+
+            active = createSegment(0);
+        } catch (IOException e) {
+            log.error("could not clear cache: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * List the resources whose cache entries expire before the given date, using the expiry index.
+     *
+     * @param date the date to compare the expiry dates with
+     * @return the resources with cache entries expiring before the date
+     */
+    public Collection<URI> listExpiredEntries(Date date) {
+        lock.readLock().lock();
+        try {
+            List<URI> result = new ArrayList<>();
+            for (Set<String> resources : expiryIndex.headMap(date.getTime()).values()) {
+                for (String resource : resources) {
+                    result.add(getValueFactory().createURI(resource));
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of cache entries.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Compact all sealed segments where less than half of the data is still in use: the current records are copied
+     * to the active segment and the segment file is deleted. Deletion records are only kept as long as an older
+     * segment might still contain a previous record of the resource. Called periodically in the background.
+     */
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : new ArrayList<>(segments.values())) {
+                if (segment.isSealed() && segment.getLiveBytes() < segment.getSize() * COMPACTION_THRESHOLD) {
+                    compact(segment);
+                }
+            }
+        } catch (IOException e) {
+            log.error("error while compacting cache segments: {}", e.getMessage());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        log.debug("compacting cache segment {} ({} of {} bytes in use)", new Object[] {segment.getId(), segment.getLiveBytes(), segment.getSize()});
+
+        boolean oldest = segments.firstKey() == segment.getId();
+
+        long offset = 0;
+        byte[] body;
+        while ((body = segment.read(offset)) != null) {
+            String resource = SegmentBackendUtils.getResource(body);
+            Location current = index.get(resource);
+
+            if (SegmentBackendUtils.getType(body) == SegmentBackendUtils.TYPE_ENTRY) {
+                if (current != null && current.segment == segment.getId() && current.offset == offset) {
+                    Location location = append(body);
+                    location.expiry = current.expiry;
+                    replace(resource, location);
+                }
+            } else if (current == null && !oldest) {
+                append(body);
+            }
+
+            offset += Segment.HEADER_SIZE + body.length;
+        }
+
+        segments.remove(segment.getId());
+        segment.delete();
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.marmotta.ldcache.api.LDCachingBackend#initialize()
+     */
+    @Override
+    public void initialize() {
+        if (!storageDir.exists() && !storageDir.mkdirs()){
+            log.error("Could not create storage directory: " + storageDir.getPath());
+        } else if (!storageDir.isDirectory()) {
+            log.error(storageDir.getPath() + " is not a directory");
+        }
+
+        segments    = new TreeMap<>();
+        index       = new HashMap<>();
+        expiryIndex = new TreeMap<>();
+
+        try {
+            String[] names = storageDir.list(new FilenameFilter() {
+                @Override
+                public boolean accept(File dir, String name) {
+                    return SEGMENT_NAME.matcher(name).matches();
+                }
+            });
+            for (String name : names) {
+                Matcher m = SEGMENT_NAME.matcher(name);
+                m.matches();
+                int id = Integer.parseInt(m.group(1));
+                segments.put(id, new Segment(id, new File(storageDir, name)));
+            }
+
+            for (Segment segment : segments.values()) {
+                recover(segment);
+            }
+
+            if (segments.isEmpty()) {
+                active = createSegment(0);
+            } else {
+                active = segments.lastEntry().getValue();
+                for (Segment segment : segments.headMap(active.getId()).values()) {
+                    segment.seal();
+                }
+            }
+            log.info("opened segment cache backend in {} ({} entries, {} segments)", new Object[] {storageDir.getPath(), index.size(), segments.size()});
+        } catch (IOException ex) {
+            log.error("could not initialize cache directory",ex);
+        }
+
+        compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "LDCache Segment Compactor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        compactor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                compact();
+            }
+        }, COMPACTION_INTERVAL, COMPACTION_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Replay the records of a segment into the index. In case the segment ends with an incomplete record, the
+     * segment is truncated after the last complete record.
+     */
+    private void recover(Segment segment) throws IOException {
+        long offset = 0;
+        byte[] body;
+        while ((body = segment.read(offset)) != null) {
+            String resource = SegmentBackendUtils.getResource(body);
+            if (SegmentBackendUtils.getType(body) == SegmentBackendUtils.TYPE_ENTRY) {
+                CacheEntry ce = SegmentBackendUtils.decodeEntry(body, getValueFactory(), false);
+
+                Location location = new Location(segment.getId(), offset, Segment.HEADER_SIZE + body.length);
+                location.expiry = ce.getExpiryDate().getTime();
+
+                replace(resource, location);
+            } else {
+                replace(resource, null);
+            }
+            offset += Segment.HEADER_SIZE + body.length;
+        }
+
+        if (offset < segment.getSize()) {
+            log.warn("discarding incomplete data at the end of cache segment {}", segment.getFile().getName());
+            segment.truncate(offset);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.marmotta.ldcache.api.LDCachingBackend#shutdown()
+     */
+    @Override
+    public void shutdown() {
+        if (compactor != null) {
+            compactor.shutdownNow();
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (active != null) {
+                active.sync();
+            }
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        } catch (IOException e) {
+            log.error("error while shutting down segment cache backend", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Append a record to the active segment, starting a new segment in case the active segment is full.
+     */
+    private Location append(byte[] body) throws IOException {
+        if (active.getSize() > 0 && active.getSize() + Segment.HEADER_SIZE + body.length > maxSegmentSize) {
+            active.seal();
+            active = createSegment(active.getId() + 1);
+        }
+
+        long offset = active.append(body);
+        return new Location(active.getId(), offset, Segment.HEADER_SIZE + body.length);
+    }
+
+    /**
+     * Point the index entry of the resource to a new location (or remove it in case location is null), keeping the
+     * live data counts of the segments and the expiry index up to date.
+     */
+    private void replace(String resource, Location location) {
+        Location previous = location != null ? index.put(resource, location) : index.remove(resource);
+        if (previous != null) {
+            Segment segment = segments.get(previous.segment);
+            if (segment != null) {
+                segment.addLiveBytes(-previous.length);
+            }
+
+            Set<String> expiring = expiryIndex.get(previous.expiry);
+            if (expiring != null) {
+                expiring.remove(resource);
+                if (expiring.isEmpty()) {
+                    expiryIndex.remove(previous.expiry);
+                }
+            }
+        }
+        if (location != null) {
+            segments.get(location.segment).addLiveBytes(location.length);
+
+            Set<String> expiring = expiryIndex.get(location.expiry);
+            if (expiring == null) {
+                expiring = new HashSet<>();
+                expiryIndex.put(location.expiry, expiring);
+            }
+            expiring.add(resource);
+        }
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Segment segment = new Segment(id, new File(storageDir, String.format("segment-%08d.dat", id)));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private ValueFactory getValueFactory() {
+        return ValueFactoryImpl.getInstance();
+    }
+
+    /**
+     * Location of the current record of a resource
+     */
+    private static class Location {
+        private final int  segment;
+        private final long offset;
+        private final int  length;
+        private long expiry;
+
+        private Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset  = offset;
+            this.length  = length;
+        }
+    }
+}
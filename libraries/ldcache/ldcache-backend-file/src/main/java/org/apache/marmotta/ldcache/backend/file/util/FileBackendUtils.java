@@ -95,6 +95,16 @@ public class FileBackendUtils {
 				ce.setUpdateCount(Integer.parseInt(br.readLine().replaceFirst("#.*$", "").trim()));
                 ce.setTripleCount(Integer.parseInt(br.readLine().replaceFirst("#.*$", "").trim()));
 
+				// validators are optional and missing in files written by older versions
+				final String lastModified = br.readLine();
+				if (lastModified != null && !lastModified.startsWith("-")) {
+					ce.setLastModified(new Date(Long.parseLong(lastModified.replaceFirst("#.*$", "").trim())));
+				}
+				final String etag = br.readLine();
+				if (etag != null && etag.length() > 0) {
+					ce.setETag(etag);
+				}
+
 				return ce;
 			} finally {
 				br.close();
@@ -114,6 +124,13 @@ public class FileBackendUtils {
 				ps.printf("%tQ # expires: %<tF %<tT.%<tL%n", ce.getExpiryDate());
 				ps.printf("%d # %<d updates%n", ce.getUpdateCount());
 				ps.printf("%d # %<d triples%n", ce.getTripleCount());
+				if (ce.getLastModified() != null) {
+					ps.printf("%tQ # last modified: %<tF %<tT.%<tL%n", ce.getLastModified());
+				} else {
+					ps.println("- # last modified: unknown");
+				}
+				// the entity tag is written verbatim on the last line, since it may contain any character
+				ps.println(ce.getETag() != null ? ce.getETag() : "");
 				ps.flush();
 			}
 		} catch (FileNotFoundException e) {
@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldcache.backend.file.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only segment file of the segment cache backend. A segment is a sequence of records, each consisting of
+ * the length of the record body, a CRC32 checksum of the body and the body itself. New records are only appended
+ * to the active segment; once a segment is full it is sealed and memory-mapped read-only, so that reading a record
+ * does not require a system call.
+ * <p/>
+ * Reading records is thread-safe; appending records needs to be synchronized by the caller.
+ */
+public class Segment implements Closeable {
+
+    /**
+     * Size of the record header (body length and checksum) in bytes
+     */
+    public static final int HEADER_SIZE = 8;
+
+    private final int id;
+
+    private final File file;
+
+    private final FileChannel channel;
+
+    // read-only mapping of the segment once it is sealed, null for the active segment
+    private volatile MappedByteBuffer mapped;
+
+    // current size of the segment in bytes, i.e. the offset of the next record
+    private long size;
+
+    // number of bytes of records still referenced by the index, used for deciding about compaction
+    private long liveBytes;
+
+    public Segment(int id, File file) throws IOException {
+        this.id      = id;
+        this.file    = file;
+        this.channel = new RandomAccessFile(file, "rw").getChannel();
+        this.size    = channel.size();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public void addLiveBytes(long bytes) {
+        liveBytes += bytes;
+    }
+
+    public boolean isSealed() {
+        return mapped != null;
+    }
+
+    /**
+     * Append a record with the given body to the segment.
+     *
+     * @return the offset of the record in the segment
+     */
+    public long append(byte[] body) throws IOException {
+        if (isSealed()) {
+            throw new IllegalStateException("segment " + id + " is sealed");
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        buffer.putInt(body.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(body);
+        buffer.flip();
+
+        long offset = size;
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        size = position;
+        return offset;
+    }
+
+    /**
+     * Read the body of the record at the given offset. Returns null in case there is no complete record with a valid
+     * checksum at the offset, e.g. because the last write to the segment was interrupted.
+     */
+    public byte[] read(long offset) throws IOException {
+        if (offset + HEADER_SIZE > size) {
+            return null;
+        }
+
+        ByteBuffer header = read(offset, HEADER_SIZE);
+        int length   = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || offset + HEADER_SIZE + length > size) {
+            return null;
+        }
+
+        byte[] body = new byte[length];
+        read(offset + HEADER_SIZE, length).get(body);
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        return body;
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        MappedByteBuffer map = mapped;
+        if (map != null) {
+            ByteBuffer buffer = map.duplicate();
+            buffer.position((int) position);
+            buffer.limit((int) position + length);
+            return buffer.slice();
+        } else {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("unexpected end of segment " + id);
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    /**
+     * Cut off the segment at the given size, e.g. to remove an incomplete record at the end.
+     */
+    public void truncate(long newSize) throws IOException {
+        channel.truncate(newSize);
+        size = newSize;
+    }
+
+    /**
+     * Write all data to disk and map the segment read-only; no further records can be appended afterwards.
+     */
+    public void seal() throws IOException {
+        if (!isSealed()) {
+            channel.force(false);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * Write all data appended so far to disk.
+     */
+    public void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    /**
+     * Close the segment and remove its file.
+     */
+    public void delete() throws IOException {
+        close();
+        if (!file.delete()) {
+            throw new IOException("could not delete segment file " + file);
+        }
+    }
+}
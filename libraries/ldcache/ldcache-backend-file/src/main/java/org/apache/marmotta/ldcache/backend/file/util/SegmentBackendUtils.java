@@ -0,0 +1,207 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldcache.backend.file.util;
+
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.openrdf.model.*;
+import org.openrdf.model.impl.TreeModel;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * Static methods for encoding cache entries as record bodies of the segment backend and decoding them again. A
+ * record body starts with the record type and the resource URI; entry records are followed by the caching metadata
+ * and the triples of the entry, deletion records (tombstones) consist only of type and resource.
+ */
+public class SegmentBackendUtils {
+
+    public static final byte TYPE_ENTRY     = 1;
+    public static final byte TYPE_TOMBSTONE = 2;
+
+    private static final byte NODE_NULL    = 0;
+    private static final byte NODE_URI     = 1;
+    private static final byte NODE_BNODE   = 2;
+    private static final byte NODE_LITERAL = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SegmentBackendUtils() {
+        // static access only
+    }
+
+    /**
+     * Encode the cache entry, including its triples, as record body.
+     */
+    public static byte[] encodeEntry(CacheEntry ce) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(TYPE_ENTRY);
+        writeString(out, ce.getResource().stringValue());
+        out.writeLong(ce.getLastRetrieved().getTime());
+        out.writeLong(ce.getExpiryDate().getTime());
+        out.writeInt(ce.getUpdateCount() != null ? ce.getUpdateCount() : 0);
+        out.writeInt(ce.getTripleCount() != null ? ce.getTripleCount() : 0);
+        out.writeLong(ce.getLastModified() != null ? ce.getLastModified().getTime() : -1L);
+        writeString(out, ce.getETag());
+
+        Model triples = ce.getTriples() != null ? ce.getTriples() : new TreeModel();
+        out.writeInt(triples.size());
+        for (Statement stmt : triples) {
+            writeValue(out, stmt.getSubject());
+            writeValue(out, stmt.getPredicate());
+            writeValue(out, stmt.getObject());
+            writeValue(out, stmt.getContext());
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encode a deletion record for the given resource.
+     */
+    public static byte[] encodeTombstone(String resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(TYPE_TOMBSTONE);
+        writeString(out, resource);
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Return the type of the record body passed as argument (TYPE_ENTRY or TYPE_TOMBSTONE).
+     */
+    public static byte getType(byte[] body) {
+        return body[0];
+    }
+
+    /**
+     * Return the resource URI of the record body passed as argument.
+     */
+    public static String getResource(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        in.readByte();
+        return readString(in);
+    }
+
+    /**
+     * Decode the cache entry of an entry record. In case withTriples is false, only the caching metadata is decoded
+     * and the triples of the returned entry are null.
+     */
+    public static CacheEntry decodeEntry(byte[] body, ValueFactory valueFactory, boolean withTriples) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        if (in.readByte() != TYPE_ENTRY) {
+            throw new IOException("record is not a cache entry");
+        }
+
+        final CacheEntry ce = new CacheEntry();
+        ce.setResource(valueFactory.createURI(readString(in)));
+        ce.setLastRetrieved(new Date(in.readLong()));
+        ce.setExpiryDate(new Date(in.readLong()));
+        ce.setUpdateCount(in.readInt());
+        ce.setTripleCount(in.readInt());
+        long lastModified = in.readLong();
+        if (lastModified >= 0) {
+            ce.setLastModified(new Date(lastModified));
+        }
+        ce.setETag(readString(in));
+
+        if (withTriples) {
+            Model triples = new TreeModel();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Resource subject   = (Resource) readValue(in, valueFactory);
+                URI      predicate = (URI) readValue(in, valueFactory);
+                Value    object    = readValue(in, valueFactory);
+                Resource context   = (Resource) readValue(in, valueFactory);
+                triples.add(subject, predicate, object, context != null ? new Resource[] { context } : new Resource[0]);
+            }
+            ce.setTriples(triples);
+        }
+
+        return ce;
+    }
+
+    private static void writeValue(DataOutputStream out, Value value) throws IOException {
+        if (value == null) {
+            out.writeByte(NODE_NULL);
+        } else if (value instanceof URI) {
+            out.writeByte(NODE_URI);
+            writeString(out, value.stringValue());
+        } else if (value instanceof BNode) {
+            out.writeByte(NODE_BNODE);
+            writeString(out, ((BNode) value).getID());
+        } else {
+            Literal literal = (Literal) value;
+            out.writeByte(NODE_LITERAL);
+            writeString(out, literal.getLabel());
+            writeString(out, literal.getLanguage());
+            writeString(out, literal.getDatatype() != null ? literal.getDatatype().stringValue() : null);
+        }
+    }
+
+    private static Value readValue(DataInputStream in, ValueFactory valueFactory) throws IOException {
+        switch (in.readByte()) {
+            case NODE_NULL:
+                return null;
+            case NODE_URI:
+                return valueFactory.createURI(readString(in));
+            case NODE_BNODE:
+                return valueFactory.createBNode(readString(in));
+            case NODE_LITERAL:
+                String label    = readString(in);
+                String language = readString(in);
+                String datatype = readString(in);
+                if (language != null) {
+                    return valueFactory.createLiteral(label, language);
+                } else if (datatype != null) {
+                    return valueFactory.createLiteral(label, valueFactory.createURI(datatype));
+                } else {
+                    return valueFactory.createLiteral(label);
+                }
+            default:
+                throw new IOException("invalid node type in cache record");
+        }
+    }
+
+    // strings are written with their length in bytes instead of writeUTF(), since literals may exceed 64k
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, UTF8);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldcache.backend.file.test;
+
+import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.backend.file.LDCachingSegmentBackend;
+import org.apache.marmotta.ldcache.model.CacheEntry;
+import org.apache.marmotta.ldcache.services.test.ng.BaseLDCacheTest;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.internal.AssumptionViolatedException;
+import org.junit.rules.TemporaryFolder;
+import org.openrdf.model.Model;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.TreeModel;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Run the LDCache tests against the segment backend and test recovery and compaction of the segment files.
+ */
+public class LDCacheSegmentTest extends BaseLDCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /**
+     * Needs to be implemented by tests to provide the correct backend. Backend needs to be properly initialised.
+     *
+     * @return an LDCachingBackend
+     */
+    @Override
+    protected LDCachingBackend createBackend() {
+        try {
+            final File storageDir = temporaryFolder.newFolder();
+            LDCachingBackend backend = new LDCachingSegmentBackend(storageDir);
+            backend.initialize();
+
+            return backend;
+        } catch (IOException e) {
+            throw new AssumptionViolatedException("could not create storage-dir for segment backend", e);
+        }
+    }
+
+    /**
+     * Write entries to many small segments, update and remove some of them, then compact and reopen the backend
+     * and check that the index has been restored correctly.
+     */
+    @Test
+    public void testRecoverAndCompact() throws Exception {
+        File storageDir = temporaryFolder.newFolder();
+
+        LDCachingSegmentBackend segmentBackend = new LDCachingSegmentBackend(storageDir, 1024);
+        segmentBackend.initialize();
+
+        for (int i = 0; i < 100; i++) {
+            segmentBackend.putEntry(resource(i), entry(i, 1));
+        }
+        // update every other entry and remove every tenth entry
+        for (int i = 0; i < 100; i += 2) {
+            segmentBackend.putEntry(resource(i), entry(i, 2));
+        }
+        for (int i = 0; i < 100; i += 10) {
+            segmentBackend.removeEntry(resource(i));
+        }
+        segmentBackend.compact();
+        segmentBackend.shutdown();
+
+        segmentBackend = new LDCachingSegmentBackend(storageDir, 1024);
+        segmentBackend.initialize();
+
+        Assert.assertEquals(90, segmentBackend.size());
+        for (int i = 0; i < 100; i++) {
+            CacheEntry entry = segmentBackend.getEntry(resource(i));
+            if (i % 10 == 0) {
+                Assert.assertNull(entry);
+            } else {
+                Assert.assertNotNull(entry);
+                Assert.assertEquals(i % 2 == 0 ? 2 : 1, entry.getUpdateCount().intValue());
+                Assert.assertEquals(1, entry.getTriples().size());
+            }
+        }
+        Assert.assertEquals(90, segmentBackend.listExpiredEntries(new Date(System.currentTimeMillis() + 1000000)).size());
+        Assert.assertEquals(0, segmentBackend.listExpiredEntries(new Date(0)).size());
+
+        segmentBackend.shutdown();
+    }
+
+    private URI resource(int i) {
+        return valueFactory.createURI("http://localhost/resource/" + i);
+    }
+
+    private CacheEntry entry(int i, int updateCount) {
+        Model triples = new TreeModel();
+        triples.add(resource(i), valueFactory.createURI("http://localhost/property"), valueFactory.createLiteral("value " + i));
+
+        CacheEntry entry = new CacheEntry();
+        entry.setResource(resource(i));
+        entry.setLastRetrieved(new Date());
+        entry.setExpiryDate(new Date(System.currentTimeMillis() + 100000));
+        entry.setUpdateCount(updateCount);
+        entry.setTripleCount(triples.size());
+        entry.setTriples(triples);
+        return entry;
+    }
+}
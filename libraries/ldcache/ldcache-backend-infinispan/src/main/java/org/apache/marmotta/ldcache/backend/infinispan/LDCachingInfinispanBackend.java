@@ -203,6 +203,25 @@ public class LDCachingInfinispanBackend implements LDCachingBackend {
         getEntryCache().put(resource.stringValue(), entry);
     }
 
+    /**
+     * Update only the caching metadata (expiry date, update count, validators) of the cache entry for the given
+     * resource, leaving the cached triples untouched.
+     *
+     * @param resource the resource to update
+     * @param entry    the entry for the resource; its triples are ignored
+     */
+    @Override
+    public void touchEntry(URI resource, CacheEntry entry) {
+        log.debug("updating metadata of entry for resource {} to {}", resource.stringValue(), entry);
+
+        CacheEntry cached = getEntryCache().get(resource.stringValue());
+        if(cached != null) {
+            entry.setTriples(cached.getTriples());
+            entry.setTripleCount(cached.getTripleCount());
+        }
+        getEntryCache().put(resource.stringValue(), entry);
+    }
+
     /**
      * Remove the cache entry for the given resource if it exists. Does nothing otherwise.
      *
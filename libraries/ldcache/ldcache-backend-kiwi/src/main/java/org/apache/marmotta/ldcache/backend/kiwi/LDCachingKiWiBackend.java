@@ -206,6 +206,29 @@ public class LDCachingKiWiBackend implements LDCachingBackend {
 
     }
 
+    /**
+     * Update only the caching metadata (expiry date, update count, validators) of the cache entry for the given
+     * resource in the database, leaving the cached triples in the triple store untouched.
+     *
+     * @param resource the resource to update
+     * @param entry    the entry for the resource; its triples are ignored
+     */
+    @Override
+    public void touchEntry(URI resource, CacheEntry entry) {
+        try {
+            try(LDCachingKiWiPersistenceConnection dbcon = persistence.getConnection()) {
+                dbcon.removeCacheEntry(resource.stringValue());
+
+                entry.setResource(store.getValueFactory().createURI(resource.stringValue()));
+
+                dbcon.storeCacheEntry(entry);
+                dbcon.commit();
+            }
+        } catch (SQLException e) {
+            log.error("could not update cache entry in database",e);
+        }
+    }
+
     /**
      * Remove the cache entry for the given resource if it exists. Does nothing otherwise.
      *
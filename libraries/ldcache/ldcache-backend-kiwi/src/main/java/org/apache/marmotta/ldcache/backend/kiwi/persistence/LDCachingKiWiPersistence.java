@@ -30,6 +30,12 @@ import java.sql.SQLException;
  */
 public class LDCachingKiWiPersistence {
 
+    /**
+     * The schema version of the ldcache tables, stored in the metadata table under the key "ldcache"; databases
+     * created before the version was tracked are at version 2.
+     */
+    public static final int VERSION = 3;
+
     /**
      * Get the parent persistence service to access the database
      */
@@ -48,6 +54,7 @@ public class LDCachingKiWiPersistence {
      */
     public void initDatabase() throws SQLException {
         persistence.initDatabase("ldcache", new String[] {"ldcache_entries"});
+        persistence.upgradeDatabase("ldcache", 2, VERSION);
     }
 
     /**
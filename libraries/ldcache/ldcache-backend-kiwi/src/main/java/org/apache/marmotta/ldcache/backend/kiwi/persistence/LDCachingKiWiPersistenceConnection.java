@@ -34,6 +34,7 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.Date;
 import java.util.Map;
 import java.util.Set;
@@ -86,6 +87,10 @@ public class LDCachingKiWiPersistenceConnection implements Closeable {
         entry.setUpdateCount(row.getInt("update_count"));
         entry.setResource((URI) connection.loadNodeById(row.getLong("resource_id")));
         entry.setTripleCount(row.getInt("triple_count"));
+        entry.setETag(row.getString("etag"));
+        if(row.getTimestamp("last_modified") != null) {
+            entry.setLastModified(new Date(row.getTimestamp("last_modified").getTime()));
+        }
 
         entryIdCache.put(id,entry);
         entryResourceCache.put(entry.getResource().stringValue(),entry);
@@ -144,14 +149,17 @@ public class LDCachingKiWiPersistenceConnection implements Closeable {
             kEntry.setUpdateCount(entry.getUpdateCount());
             kEntry.setResource(entry.getResource());
             kEntry.setTripleCount(entry.getTripleCount());
+            kEntry.setETag(entry.getETag());
+            kEntry.setLastModified(entry.getLastModified());
         }
 
         if(! (entry.getResource() instanceof KiWiResource) || ((KiWiResource) entry.getResource()).getId() < 0) {
             throw new IllegalStateException("the resource contained in the cache entry is not a KiWiResource!");
         }
 
-        // needed before the entry can be inserted
+        // needed before the entry can be inserted; the resource might still be pending with deferred node persistence
         connection.flushBatch();
+        connection.ensurePersisted((KiWiNode) kEntry.getResource());
 
         kEntry.setId(connection.getNextSequence());
 
@@ -162,6 +170,13 @@ public class LDCachingKiWiPersistenceConnection implements Closeable {
         insertEntry.setLong(4,((KiWiNode)kEntry.getResource()).getId());
         insertEntry.setInt(5, kEntry.getUpdateCount());
         insertEntry.setInt(6, kEntry.getTripleCount());
+        // entity tags that do not fit into the column are not stored; the entry is then revalidated by date only
+        insertEntry.setString(7, kEntry.getETag() != null && kEntry.getETag().length() <= 256 ? kEntry.getETag() : null);
+        if(kEntry.getLastModified() != null) {
+            insertEntry.setTimestamp(8, new Timestamp(kEntry.getLastModified().getTime()));
+        } else {
+            insertEntry.setNull(8, Types.TIMESTAMP);
+        }
         insertEntry.executeUpdate();
 
         log.debug("persisted ld-cache entry with id {}", kEntry.getId());
@@ -19,6 +19,8 @@ CREATE TABLE ldcache_entries (
   resource_id  bigint     NOT NULL REFERENCES nodes(id),
   update_count int        NOT NULL DEFAULT 0,
   triple_count int        NOT NULL DEFAULT 0,
+  etag         varchar(256),
+  last_modified timestamp,
   PRIMARY KEY(id)
 );
 
@@ -26,3 +28,5 @@ CREATE TABLE ldcache_entries (
 CREATE INDEX idx_ldcache_expires ON ldcache_entries(expires_at);
 CREATE INDEX idx_ldcache_resource ON ldcache_entries(resource_id);
 
+-- schema version of the ldcache tables
+INSERT INTO metadata(mkey,mvalue) VALUES ('ldcache','3');
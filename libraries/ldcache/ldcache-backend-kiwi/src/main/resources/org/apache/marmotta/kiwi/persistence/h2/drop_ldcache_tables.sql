@@ -17,3 +17,4 @@ DROP INDEX IF EXISTS idx_ldcache_resource;
 
 DROP TABLE IF EXISTS ldcache_entries;
 
+DELETE FROM metadata WHERE mkey = 'ldcache';
@@ -16,3 +16,5 @@ DROP INDEX idx_ldcache_expires;
 DROP INDEX idx_ldcache_resource;
 
 DROP TABLE IF EXISTS ldcache_entries;
+
+DELETE FROM metadata WHERE mkey = 'ldcache';
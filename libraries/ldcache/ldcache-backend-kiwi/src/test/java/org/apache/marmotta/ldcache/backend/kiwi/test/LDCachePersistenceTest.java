@@ -20,6 +20,7 @@ package org.apache.marmotta.ldcache.backend.kiwi.test;
 import info.aduna.iteration.CloseableIteration;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.apache.marmotta.kiwi.model.rdf.KiWiUriResource;
+import org.apache.marmotta.kiwi.persistence.KiWiConnection;
 import org.apache.marmotta.kiwi.persistence.KiWiDialect;
 import org.apache.marmotta.kiwi.persistence.KiWiPersistence;
 import org.apache.marmotta.kiwi.persistence.h2.H2Dialect;
@@ -292,6 +293,44 @@ public class LDCachePersistenceTest {
     }
 
 
+    /**
+     * Cache entries for resources that are still pending with deferred node persistence write the resource first.
+     */
+    @Test
+    public void testStorePendingResource() throws Exception {
+        KiWiUriResource subject = new KiWiUriResource("http://localhost/resource/"+ RandomStringUtils.randomAlphanumeric(8));
+
+        KiWiConnection kconnection = persistence.getConnection();
+        try {
+            kconnection.storeNodeDeferred(subject);
+            kconnection.commit();
+        } finally {
+            kconnection.close();
+        }
+        Assert.assertTrue(subject.isPending());
+
+        LDCachingKiWiPersistenceConnection connection = vpersistence.getConnection();
+        try {
+            KiWiCacheEntry entry = new KiWiCacheEntry();
+            entry.setExpiryDate(new Date(System.currentTimeMillis()+1000*60));
+            entry.setLastRetrieved(new Date());
+            entry.setUpdateCount(1);
+            entry.setResource(subject);
+            entry.setTripleCount(0);
+            connection.storeCacheEntry(entry);
+
+            connection.commit();
+
+            Assert.assertFalse(subject.isPending());
+            Assert.assertEquals(1,asList(connection.listAll()).size());
+            Assert.assertNotNull(connection.getCacheEntry(subject.stringValue()));
+
+            connection.commit();
+        } finally {
+            connection.close();
+        }
+    }
+
 
     /**
      * Workaround for https://openrdf.atlassian.net/browse/SES-1702 in Sesame 2.7.0-beta1
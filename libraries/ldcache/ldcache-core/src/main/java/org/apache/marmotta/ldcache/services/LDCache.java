@@ -17,6 +17,9 @@
 
 package org.apache.marmotta.ldcache.services;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.marmotta.commons.locking.ObjectLocks;
 import org.apache.marmotta.ldcache.api.LDCachingBackend;
 import org.apache.marmotta.ldcache.api.LDCachingService;
@@ -29,13 +32,12 @@ import org.apache.marmotta.ldclient.services.ldclient.LDClient;
 import org.openrdf.model.Model;
 import org.openrdf.model.URI;
 import org.openrdf.model.impl.TreeModel;
+import org.openrdf.model.impl.URIImpl;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
-import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -58,6 +60,26 @@ public class LDCache implements LDCachingService {
 
     private ReentrantReadWriteLock lock;
 
+    // executor for background refreshes (stale-while-revalidate and refresh ahead of expiry); null if not enabled
+    private ThreadPoolExecutor refreshExecutor;
+
+    // periodically schedules the refreshes ahead of expiry; null if not enabled
+    private ScheduledExecutorService refreshScheduler;
+
+    // resources with a pending or running background refresh, used for de-duplicating refreshes
+    private Set<String> refreshing;
+
+    // resources accessed since their last refresh, with their expiry date; candidates for refreshing ahead of expiry
+    private Cache<String, Date> accessed;
+
+    // executor for bulk refreshes (refreshAll); threads are only kept while there is work to do
+    private ThreadPoolExecutor prefetchExecutor;
+
+    // resources currently refreshed by refreshAll, used for coalescing concurrent bulk refreshes; forced refreshes
+    // are tracked separately, since a refresh that is not forced cannot stand in for a forced one
+    private ConcurrentMap<String, Future<?>> prefetching;
+    private ConcurrentMap<String, Future<?>> forcedPrefetching;
+
     /**
      * Create a new instance of LDCache using the provided LDCache configuration and backend. The backend needs to
      * be initialized already. The cache configuration will be used to create an instance of LDClient.
@@ -71,6 +93,33 @@ public class LDCache implements LDCachingService {
         this.ldclient = new LDClient(config.getClientConfiguration());
         this.config   = config;
         this.lock = new ReentrantReadWriteLock();
+        this.refreshing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        this.prefetching = new ConcurrentHashMap<>();
+        this.forcedPrefetching = new ConcurrentHashMap<>();
+
+        int prefetchThreads = Math.max(config.getClientConfiguration().getMaxParallelRequests(), 1);
+        this.prefetchExecutor = new ThreadPoolExecutor(prefetchThreads, prefetchThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactoryBuilder().setNameFormat("LDCache Prefetcher %d").setDaemon(true).build());
+        this.prefetchExecutor.allowCoreThreadTimeOut(true);
+
+        if(config.isAsyncRefresh() || config.getRefreshAhead() > 0) {
+            refreshExecutor = new ThreadPoolExecutor(config.getRefreshThreads(), config.getRefreshThreads(), 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<Runnable>(config.getRefreshQueueSize()),
+                    new ThreadFactoryBuilder().setNameFormat("LDCache Refresher %d").setDaemon(true).build());
+        }
+        if(config.getRefreshAhead() > 0) {
+            accessed = CacheBuilder.newBuilder().maximumSize(100000).build();
+
+            long period = Math.max(config.getRefreshAhead() / 2, 1L);
+            refreshScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("LDCache Refresh Scheduler").setDaemon(true).build());
+            refreshScheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    refreshAhead();
+                }
+            }, period, period, TimeUnit.SECONDS);
+        }
     }
 
 
@@ -94,6 +143,14 @@ public class LDCache implements LDCachingService {
      * Refresh the resource passed as argument. If the resource is not yet cached or the cache entry is
      * expired or refreshing is forced, the remote resource is retrieved using LDClient and the result stored
      * in the cache. Otherwise the method does nothing.
+     * <p/>
+     * In case the cache entry carries validators (ETag, Last-Modified) from the previous retrieval, the resource
+     * is revalidated with a conditional request (unless refreshing is forced); if it has not been modified, only the
+     * expiry information of the cache entry is updated and the cached triples are kept as they are.
+     * <p/>
+     * In asynchronous refresh mode (see CacheConfiguration.isAsyncRefresh()), an expired cache entry is not
+     * refreshed by the calling thread; instead, a background refresh is scheduled and the method returns
+     * immediately, so that the stale triples can be served in the meantime.
      *
      * @param resource the resource to refresh
      * @param options  options for refreshing
@@ -102,12 +159,117 @@ public class LDCache implements LDCachingService {
     public void refresh(URI resource, RefreshOpts... options) {
         Set<RefreshOpts> optionSet = new HashSet<>(Arrays.asList(options));
 
+        if(config.isAsyncRefresh() && !optionSet.contains(RefreshOpts.FORCE)) {
+            CacheEntry entry = backend.getEntry(resource);
+            if(entry != null) {
+                if(entry.getExpiryDate().after(new Date())) {
+                    markAccessed(resource, entry);
+                } else {
+                    log.debug("scheduling background refresh of expired resource {}", resource);
+                    refreshAsync(resource);
+                }
+                return;
+            }
+        }
+
+        refreshResource(resource, optionSet.contains(RefreshOpts.FORCE), 0L);
+    }
+
+    /**
+     * Refresh all resources passed as argument, retrieving them in parallel with as many threads as the LDClient
+     * runs parallel requests. Duplicate resources are only refreshed once, and resources that are already being
+     * refreshed by another call to refreshAll are not retrieved again but waited for, unless this call forces the
+     * refresh and the running one does not. Cached entries that are not expired are not retrieved again unless
+     * refreshing is forced. Expired entries are always refreshed before the method returns, also in asynchronous
+     * refresh mode, so that callers prefetching resources read fresh data afterwards. The method returns as soon as
+     * all resources have been refreshed or the timeout has passed; in the latter case, the remaining resources
+     * continue to be refreshed in the background.
+     *
+     * @param resources the resources to refresh
+     * @param timeout   the maximum time to wait for the refreshes to complete
+     * @param unit      the time unit of the timeout
+     * @param options   options for refreshing
+     * @return true in case all resources have been refreshed before the timeout passed
+     */
+    @Override
+    public boolean refreshAll(Collection<URI> resources, long timeout, TimeUnit unit, final RefreshOpts... options) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        final boolean force = Arrays.asList(options).contains(RefreshOpts.FORCE);
+        final ConcurrentMap<String, Future<?>> inflight = force ? forcedPrefetching : prefetching;
+
+        Set<String> seen = new HashSet<>();
+        List<Future<?>> pending = new ArrayList<>(resources.size());
+        for(final URI resource : resources) {
+            final String key = resource.stringValue();
+            if(!seen.add(key)) {
+                continue;
+            }
+
+            // a running forced refresh also satisfies a refresh that is not forced
+            Future<?> future = forcedPrefetching.get(key);
+            if(future == null) {
+                future = inflight.get(key);
+            }
+            if(future == null) {
+                FutureTask<Void> task = new FutureTask<>(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            // refresh in this thread instead of scheduling a background refresh in asynchronous
+                            // refresh mode, so that waiting for the task means waiting for the refresh
+                            refreshResource(resource, force, 0L);
+                        } finally {
+                            inflight.remove(key);
+                        }
+                    }
+                }, null);
+
+                future = inflight.putIfAbsent(key, task);
+                if(future == null) {
+                    future = task;
+                    try {
+                        prefetchExecutor.execute(task);
+                    } catch (RejectedExecutionException ex) {
+                        // cache is shutting down, refresh in the calling thread
+                        task.run();
+                    }
+                }
+            }
+            pending.add(future);
+        }
+
+        for(Future<?> future : pending) {
+            try {
+                future.get(Math.max(deadline - System.nanoTime(), 0L), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                log.info("bulk refresh of {} resources did not finish in time, continuing in background", pending.size());
+                return false;
+            } catch (ExecutionException e) {
+                log.error("error while refreshing resource: {}", e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Refresh the resource passed as argument in the calling thread, in case it is not cached, its cache entry
+     * expires within the given time or refreshing is forced.
+     *
+     * @param resource the resource to refresh
+     * @param force    refresh the resource unconditionally
+     * @param ahead    refresh the resource if its cache entry expires within the given number of milliseconds
+     */
+    private void refreshResource(URI resource, boolean force, long ahead) {
         resourceLocks.lock(resource.stringValue());
         try {
             // check if the resource is already cached; if yes, and refresh is not forced, return immediately
             CacheEntry entry = backend.getEntry(resource);
-            if(!optionSet.contains(RefreshOpts.FORCE) && entry != null && entry.getExpiryDate().after(new Date())) {
+            if(!force && entry != null && entry.getExpiryDate().after(new Date(System.currentTimeMillis() + ahead))) {
                 log.debug("not refreshing resource {}, as the cached entry is not yet expired",resource);
+                markAccessed(resource, entry);
                 return;
             }
 
@@ -115,9 +277,29 @@ public class LDCache implements LDCachingService {
             log.debug("refreshing resource {}",resource);
             this.lock.readLock().lock();
             try {
-                ClientResponse response = ldclient.retrieveResource(resource.stringValue());
+                ClientResponse response;
+                if(entry != null && !force && (entry.getETag() != null || entry.getLastModified() != null)) {
+                    response = ldclient.retrieveResource(resource.stringValue(), entry.getETag(), entry.getLastModified());
+                } else {
+                    response = ldclient.retrieveResource(resource.stringValue());
+                }
 
-                if(response != null) {
+                if(response != null && response.isNotModified() && entry != null) {
+                    log.info("revalidated resource {}, not modified",resource);
+
+                    CacheEntry newEntry = new CacheEntry();
+                    newEntry.setResource(resource);
+                    newEntry.setExpiryDate(response.getExpires());
+                    newEntry.setLastRetrieved(new Date());
+                    newEntry.setUpdateCount(entry.getUpdateCount()+1);
+                    newEntry.setTripleCount(entry.getTripleCount());
+                    newEntry.setTriples(entry.getTriples());
+                    newEntry.setETag(response.getETag() != null ? response.getETag() : entry.getETag());
+                    newEntry.setLastModified(response.getLastModified() != null ? response.getLastModified() : entry.getLastModified());
+
+                    backend.touchEntry(resource, newEntry);
+
+                } else if(response != null) {
                     log.info("refreshed resource {}",resource);
 
                     CacheEntry newEntry = new CacheEntry();
@@ -131,6 +313,8 @@ public class LDCache implements LDCachingService {
                     }
                     newEntry.setTripleCount(response.getData().size());
                     newEntry.setTriples(response.getData());
+                    newEntry.setETag(response.getETag());
+                    newEntry.setLastModified(response.getLastModified());
 
                     backend.putEntry(resource, newEntry);
 
@@ -162,6 +346,56 @@ public class LDCache implements LDCachingService {
 
     }
 
+    /**
+     * Schedule a background refresh of the resource passed as argument, unless a refresh of the resource is already
+     * pending. In case the refresh queue is full, the refresh is skipped; it will be scheduled again on the next
+     * access of the resource.
+     */
+    private void refreshAsync(final URI resource) {
+        if(refreshExecutor != null && refreshing.add(resource.stringValue())) {
+            try {
+                refreshExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refreshResource(resource, false, config.getRefreshAhead() * 1000);
+                        } catch(RuntimeException ex) {
+                            log.error("error while refreshing resource {} in background: {}", resource, ex.getMessage());
+                        } finally {
+                            refreshing.remove(resource.stringValue());
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                refreshing.remove(resource.stringValue());
+                log.debug("refresh queue full, not refreshing resource {} in background", resource);
+            }
+        }
+    }
+
+    /**
+     * Remember that the resource has been accessed, so that it will be refreshed ahead of its expiry.
+     */
+    private void markAccessed(URI resource, CacheEntry entry) {
+        if(accessed != null) {
+            accessed.put(resource.stringValue(), entry.getExpiryDate());
+        }
+    }
+
+    /**
+     * Schedule background refreshes for all resources that have been accessed since their last refresh and
+     * expire within the configured refresh ahead time.
+     */
+    private void refreshAhead() {
+        long limit = System.currentTimeMillis() + config.getRefreshAhead() * 1000;
+        for(Map.Entry<String, Date> candidate : accessed.asMap().entrySet()) {
+            if(candidate.getValue().getTime() < limit) {
+                accessed.invalidate(candidate.getKey());
+                refreshAsync(new URIImpl(candidate.getKey()));
+            }
+        }
+    }
+
     /**
      * Refresh and return the resource passed as argument. If the resource is not yet cached or the cache entry is
      * expired or refreshing is forced, the remote resource is retrieved using LDClient and the result stored
@@ -220,6 +454,21 @@ public class LDCache implements LDCachingService {
      */
     @Override
     public void shutdown() {
+        if(refreshScheduler != null) {
+            refreshScheduler.shutdownNow();
+        }
+        if(refreshExecutor != null) {
+            refreshExecutor.shutdown();
+            try {
+                if(!refreshExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("background refreshes did not finish in time, aborting");
+                    refreshExecutor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                refreshExecutor.shutdownNow();
+            }
+        }
+        prefetchExecutor.shutdownNow();
         backend.shutdown();
     }
 
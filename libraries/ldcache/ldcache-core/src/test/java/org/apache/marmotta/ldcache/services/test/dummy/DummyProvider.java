@@ -19,7 +19,7 @@ package org.apache.marmotta.ldcache.services.test.dummy;
 import org.apache.marmotta.commons.sesame.model.ModelCommons;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
-import org.apache.marmotta.ldclient.api.provider.DataProvider;
+import org.apache.marmotta.ldclient.api.provider.ConditionalDataProvider;
 import org.apache.marmotta.ldclient.exception.DataRetrievalException;
 import org.apache.marmotta.ldclient.model.ClientResponse;
 import org.openrdf.model.Model;
@@ -28,8 +28,13 @@ import org.openrdf.rio.RDFFormat;
 import org.openrdf.rio.RDFParseException;
 
 import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class DummyProvider implements DataProvider {
+public class DummyProvider implements ConditionalDataProvider {
+
+    // number of conditional requests answered with "not modified"
+    private static AtomicInteger notModified = new AtomicInteger(0);
 
 	@Override
 	public String getName() {
@@ -56,10 +61,33 @@ public class DummyProvider implements DataProvider {
         }
 
         ClientResponse response = new ClientResponse(200, triples);
+        response.setETag(getETag(resource));
 
         return response;
 
     }
 
+    /**
+     * The dummy resources never change, so a conditional request with the right entity tag is always answered
+     * with "not modified".
+     */
+    @Override
+    public ClientResponse retrieveResource(String resource, LDClientService client, Endpoint endpoint, String etag, Date lastModified) throws DataRetrievalException {
+        if(getETag(resource).equals(etag)) {
+            notModified.incrementAndGet();
+            return new ClientResponse(304, new TreeModel());
+        } else {
+            return retrieveResource(resource, client, endpoint);
+        }
+    }
+
+    public static int getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    private static String getETag(String resource) {
+        return "\"" + resource.substring("http://localhost/".length()) + "\"";
+    }
+
 
 }
@@ -20,10 +20,14 @@ package org.apache.marmotta.ldcache.services.test.ng;
 import org.apache.commons.io.IOUtils;
 import org.apache.marmotta.commons.sesame.model.ModelCommons;
 import org.apache.marmotta.ldcache.api.LDCachingBackend;
+import org.apache.marmotta.ldcache.api.LDCachingService;
 import org.apache.marmotta.ldcache.model.CacheConfiguration;
+import org.apache.marmotta.ldcache.model.CacheEntry;
 import org.apache.marmotta.ldcache.services.LDCache;
+import org.apache.marmotta.ldcache.services.test.dummy.DummyProvider;
 import org.junit.*;
 import org.openrdf.model.Model;
+import org.openrdf.model.URI;
 import org.openrdf.model.ValueFactory;
 import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.query.BooleanQuery;
@@ -36,6 +40,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Base LDCache test
@@ -53,6 +60,8 @@ public abstract class BaseLDCacheTest {
 
     protected LDCache ldcache;
 
+    protected LDCachingBackend backend;
+
     protected ValueFactory valueFactory = ValueFactoryImpl.getInstance();
 
     /**
@@ -64,7 +73,8 @@ public abstract class BaseLDCacheTest {
 
     @Before
     public void setup() {
-        ldcache = new LDCache(new CacheConfiguration(), createBackend());
+        backend = createBackend();
+        ldcache = new LDCache(new CacheConfiguration(), backend);
     }
 
 
@@ -124,6 +134,120 @@ public abstract class BaseLDCacheTest {
     }
 
 
+    /**
+     * Test revalidating an expired resource that has not been modified (provided by DummyProvider): the conditional
+     * request is answered with "not modified", and only the expiry information of the entry is updated.
+     */
+    @Test
+    public void testRevalidate() throws Exception {
+        URI uri = valueFactory.createURI("http://localhost/resource1");
+
+        ldcache.refresh(uri);
+
+        CacheEntry entry = backend.getEntry(uri);
+        Assert.assertNotNull(entry.getETag());
+
+        // expire the entry without removing it from the cache
+        entry.setExpiryDate(new Date(System.currentTimeMillis() - 1000));
+        backend.touchEntry(uri, entry);
+
+        int notModified = DummyProvider.getNotModifiedCount();
+
+        ldcache.refresh(uri);
+
+        Assert.assertEquals(notModified + 1, DummyProvider.getNotModifiedCount());
+
+        CacheEntry revalidated = backend.getEntry(uri);
+        Assert.assertTrue(revalidated.getExpiryDate().after(new Date()));
+        Assert.assertEquals(2, revalidated.getUpdateCount().intValue());
+        Assert.assertEquals(entry.getETag(), revalidated.getETag());
+        Assert.assertEquals(3, ldcache.get(uri).size());
+    }
+
+
+    /**
+     * Test the stale-while-revalidate mode: an expired entry is returned immediately and refreshed in the background.
+     */
+    @Test
+    public void testAsyncRefresh() throws Exception {
+        CacheConfiguration config = new CacheConfiguration();
+        config.setAsyncRefresh(true);
+        LDCache asyncCache = new LDCache(config, backend);
+
+        URI uri = valueFactory.createURI("http://localhost/resource2");
+
+        // resource not cached yet, needs to be retrieved synchronously
+        Assert.assertEquals(2, asyncCache.get(uri).size());
+
+        CacheEntry entry = backend.getEntry(uri);
+        entry.setExpiryDate(new Date(System.currentTimeMillis() - 1000));
+        backend.touchEntry(uri, entry);
+
+        // stale triples are served while the entry is refreshed in the background
+        Assert.assertEquals(2, asyncCache.get(uri).size());
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while(backend.getEntry(uri).getExpiryDate().before(new Date()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertTrue(backend.getEntry(uri).getExpiryDate().after(new Date()));
+        Assert.assertEquals(2, backend.getEntry(uri).getUpdateCount().intValue());
+    }
+
+
+    /**
+     * Test refreshing several resources at once (provided by DummyProvider), including duplicates.
+     */
+    @Test
+    public void testRefreshAll() throws Exception {
+        URI uri1 = valueFactory.createURI("http://localhost/resource1");
+        URI uri2 = valueFactory.createURI("http://localhost/resource2");
+        URI uri3 = valueFactory.createURI("http://localhost/resource3");
+
+        Assert.assertTrue(ldcache.refreshAll(Arrays.asList(uri1, uri2, uri3, uri1), 10, TimeUnit.SECONDS));
+
+        Assert.assertTrue(ldcache.contains(uri1));
+        Assert.assertTrue(ldcache.contains(uri2));
+        Assert.assertTrue(ldcache.contains(uri3));
+        Assert.assertEquals(1, backend.getEntry(uri1).getUpdateCount().intValue());
+        Assert.assertEquals(3, ldcache.get(uri1).size());
+        Assert.assertEquals(2, ldcache.get(uri2).size());
+    }
+
+
+    /**
+     * Test that refreshing several resources at once in stale-while-revalidate mode waits for the refresh of expired
+     * resources instead of only scheduling it, and that forced refreshes retrieve resources that are not expired.
+     */
+    @Test
+    public void testRefreshAllAsync() throws Exception {
+        CacheConfiguration config = new CacheConfiguration();
+        config.setAsyncRefresh(true);
+        LDCache asyncCache = new LDCache(config, backend);
+
+        URI uri1 = valueFactory.createURI("http://localhost/resource1");
+        URI uri2 = valueFactory.createURI("http://localhost/resource2");
+
+        Assert.assertTrue(asyncCache.refreshAll(Arrays.asList(uri1, uri2), 10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, backend.getEntry(uri1).getUpdateCount().intValue());
+
+        CacheEntry entry = backend.getEntry(uri1);
+        entry.setExpiryDate(new Date(System.currentTimeMillis() - 1000));
+        backend.touchEntry(uri1, entry);
+
+        // the expired entry is refreshed before refreshAll returns
+        Assert.assertTrue(asyncCache.refreshAll(Arrays.asList(uri1, uri2), 10, TimeUnit.SECONDS));
+        Assert.assertTrue(backend.getEntry(uri1).getExpiryDate().after(new Date()));
+        Assert.assertEquals(2, backend.getEntry(uri1).getUpdateCount().intValue());
+        Assert.assertEquals(1, backend.getEntry(uri2).getUpdateCount().intValue());
+
+        // forced refreshes also retrieve entries that are not expired
+        Assert.assertTrue(asyncCache.refreshAll(Arrays.asList(uri1, uri2), 10, TimeUnit.SECONDS, LDCachingService.RefreshOpts.FORCE));
+        Assert.assertEquals(3, backend.getEntry(uri1).getUpdateCount().intValue());
+        Assert.assertEquals(2, backend.getEntry(uri2).getUpdateCount().intValue());
+    }
+
+
     protected void testResource(String uri, String sparqlFile) throws Exception {
 
         Assume.assumeTrue(ldcache.getClient().ping(uri));
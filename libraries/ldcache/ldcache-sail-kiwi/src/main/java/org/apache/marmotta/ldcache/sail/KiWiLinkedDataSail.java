@@ -133,4 +133,12 @@ public class KiWiLinkedDataSail extends NotifyingSailWrapper {
     public LDCache getLDCache() {
         return ldcache;
     }
+
+    /**
+     * Return the cache configuration used for the LDCache of this sail; changes need to be made before the sail
+     * is initialised.
+     */
+    public CacheConfiguration getCacheConfiguration() {
+        return config;
+    }
 }
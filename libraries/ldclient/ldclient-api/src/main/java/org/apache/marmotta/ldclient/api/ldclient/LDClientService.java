@@ -24,6 +24,7 @@ import org.apache.marmotta.ldclient.exception.DataRetrievalException;
 import org.apache.marmotta.ldclient.model.ClientConfiguration;
 import org.apache.marmotta.ldclient.model.ClientResponse;
 
+import java.util.Date;
 import java.util.Set;
 
 /**
@@ -55,6 +56,33 @@ public interface LDClientService {
      */
     public ClientResponse retrieveResource(String resource) throws DataRetrievalException;
 
+    /**
+     * Revalidate a resource that has been retrieved before, using the validators returned by the previous retrieval.
+     * Data providers supporting conditional requests (see ConditionalDataProvider) will only transfer the data in case
+     * the resource has changed; otherwise the returned response is "not modified" (see ClientResponse.isNotModified())
+     * and only carries updated expiry information. Other data providers simply retrieve the resource again.
+     *
+     * @param resource     the URI resource for which to retrieve the triples
+     * @param etag         the entity tag returned by the previous retrieval (may be null)
+     * @param lastModified the last modification date returned by the previous retrieval (may be null)
+     * @return the client response, or a "not modified" response in case the resource did not change
+     */
+    public ClientResponse retrieveResource(String resource, String etag, Date lastModified) throws DataRetrievalException;
+
+    /**
+     * Try to acquire an additional retrieval permit without waiting, e.g. for retrieving further pages of a resource
+     * in parallel to the retrieval already in progress. Every permit acquired this way needs to be given back with
+     * releaseRetrievalPermit().
+     *
+     * @return true if a permit was acquired, false if the maximum number of parallel requests is already reached
+     */
+    public boolean tryAcquireRetrievalPermit();
+
+    /**
+     * Release a retrieval permit acquired by tryAcquireRetrievalPermit().
+     */
+    public void releaseRetrievalPermit();
+
     /**
      * Get access to the Apache HTTP Client managed by the connection handler to execute
      * a request.
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldclient.api.provider;
+
+import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
+import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.apache.marmotta.ldclient.model.ClientResponse;
+
+import java.util.Date;
+
+/**
+ * A data provider that is able to revalidate a previously retrieved resource with a conditional request
+ * (HTTP If-None-Match / If-Modified-Since), so that unchanged resources need not be transferred and parsed
+ * again. See AbstractHttpProvider for a generic implementation.
+ */
+public interface ConditionalDataProvider extends DataProvider {
+
+    /**
+     * Retrieve the data for a resource in case it has changed with respect to the validators passed as argument.
+     * In case the remote server reports the resource as unchanged, the method returns a response with HTTP
+     * status 304 (see ClientResponse.isNotModified()) that contains no triples but updated expiry information.
+     *
+     * @param resource     the resource to be retrieved
+     * @param endpoint     the endpoint definition
+     * @param etag         the entity tag returned by the previous retrieval (may be null)
+     * @param lastModified the last modification date returned by the previous retrieval (may be null)
+     * @return a completely specified client response, including expiry information, validators and the set of triples
+     */
+    public ClientResponse retrieveResource(String resource, LDClientService client, Endpoint endpoint, String etag, Date lastModified) throws DataRetrievalException;
+
+}
@@ -47,6 +47,12 @@ public class ClientConfiguration {
      */
     private int maxParallelRequests = 10;
 
+    /**
+     * Maximum number of follow-up pages of a single resource to retrieve in parallel, in case the data provider returns
+     * additional pages to complete the resource data. Can be overridden per endpoint with the endpoint property
+     * "maxParallelPages". Requests for additional pages still count towards maxParallelRequests. Default: 1 (sequential).
+     */
+    private int maxParallelPages = 1;
 
     /**
      * Default expiry time in seconds if not given by the server.
@@ -133,6 +139,24 @@ public class ClientConfiguration {
         this.maxParallelRequests = maxParallelRequests;
     }
 
+    /**
+     * Maximum number of follow-up pages of a single resource to retrieve in parallel, in case the data provider returns
+     * additional pages to complete the resource data. Can be overridden per endpoint with the endpoint property
+     * "maxParallelPages". Requests for additional pages still count towards maxParallelRequests. Default: 1 (sequential).
+     */
+    public int getMaxParallelPages() {
+        return maxParallelPages;
+    }
+
+    /**
+     * Maximum number of follow-up pages of a single resource to retrieve in parallel, in case the data provider returns
+     * additional pages to complete the resource data. Can be overridden per endpoint with the endpoint property
+     * "maxParallelPages". Requests for additional pages still count towards maxParallelRequests. Default: 1 (sequential).
+     */
+    public void setMaxParallelPages(int maxParallelPages) {
+        this.maxParallelPages = maxParallelPages;
+    }
+
 
     /**
      * Default expiry time in seconds if not given by the server.
@@ -18,6 +18,7 @@
 package org.apache.marmotta.ldclient.model;
 
 import org.apache.commons.lang3.time.DateUtils;
+import org.apache.http.HttpStatus;
 import org.apache.marmotta.commons.sesame.model.ModelCommons;
 import org.openrdf.model.Model;
 import org.openrdf.model.impl.TreeModel;
@@ -47,6 +48,17 @@ public class ClientResponse {
 
     private Date expires;
 
+    /**
+     * The entity tag (ETag header) returned by the server, used for revalidating the resource later (optional)
+     */
+    private String etag;
+
+    /**
+     * The last modification date (Last-Modified header) returned by the server, used for revalidating the
+     * resource later (optional)
+     */
+    private Date lastModified;
+
     @Deprecated
     public ClientResponse(int httpStatus, Repository triples) {
         this.expires = DateUtils.addDays(new Date(), DEFAULT_EXPIRATION_IN_DAYS);
@@ -94,4 +106,29 @@ public class ClientResponse {
     public void setHttpStatus(int httpStatus) {
         this.httpStatus = httpStatus;
     }
+
+    public String getETag() {
+        return etag;
+    }
+
+    public void setETag(String etag) {
+        this.etag = etag;
+    }
+
+    public Date getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Date lastModified) {
+        this.lastModified = lastModified != null ? new Date(lastModified.getTime()) : null;
+    }
+
+    /**
+     * Return true in case this is the response to a conditional request and the server reported that the
+     * resource has not been modified (HTTP 304). In this case the response does not contain any triples,
+     * only updated expiry information.
+     */
+    public boolean isNotModified() {
+        return httpStatus == HttpStatus.SC_NOT_MODIFIED;
+    }
 }
@@ -38,6 +38,7 @@ import org.apache.http.params.HttpParams;
 import org.apache.http.protocol.HttpContext;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
+import org.apache.marmotta.ldclient.api.provider.ConditionalDataProvider;
 import org.apache.marmotta.ldclient.api.provider.DataProvider;
 import org.apache.marmotta.ldclient.exception.DataRetrievalException;
 import org.apache.marmotta.ldclient.model.ClientConfiguration;
@@ -207,6 +208,22 @@ public final class LDClient implements LDClientService {
      */
     @Override
     public ClientResponse retrieveResource(String resource) throws DataRetrievalException {
+        return retrieveResource(resource, null, null);
+    }
+
+    /**
+     * Revalidate a resource that has been retrieved before, using the validators returned by the previous retrieval.
+     * In case the data provider for the resource supports conditional requests, the data is only transferred if the
+     * resource has changed; otherwise the returned response is "not modified" and only carries updated expiry
+     * information. Other data providers simply retrieve the resource again.
+     *
+     * @param resource     the URI resource for which to retrieve the triples
+     * @param etag         the entity tag returned by the previous retrieval (may be null)
+     * @param lastModified the last modification date returned by the previous retrieval (may be null)
+     * @return the client response, or a "not modified" response in case the resource did not change
+     */
+    @Override
+    public ClientResponse retrieveResource(String resource, String etag, Date lastModified) throws DataRetrievalException {
         try {
             retrievalSemaphore.acquire();
             if(!config.isExcludedUri(resource)) {
@@ -215,7 +232,9 @@ public final class LDClient implements LDClientService {
 
                 if(endpoint != null) {
                     DataProvider provider = getDataProvider(endpoint);
-                    if(provider != null) {
+                    if(provider instanceof ConditionalDataProvider && (etag != null || lastModified != null)) {
+                        return ((ConditionalDataProvider) provider).retrieveResource(resource, this, endpoint, etag, lastModified);
+                    } else if(provider != null) {
                         return provider.retrieveResource(resource, this, endpoint);
                     } else {
                         log.error("no service provider for type {}",endpoint.getType());
@@ -238,6 +257,25 @@ public final class LDClient implements LDClientService {
         return null;
     }
 
+    /**
+     * Try to acquire an additional retrieval permit without waiting, e.g. for retrieving further pages of a resource
+     * in parallel to the retrieval already in progress.
+     *
+     * @return true if a permit was acquired, false if the maximum number of parallel requests is already reached
+     */
+    @Override
+    public boolean tryAcquireRetrievalPermit() {
+        return retrievalSemaphore.tryAcquire();
+    }
+
+    /**
+     * Release a retrieval permit acquired by tryAcquireRetrievalPermit().
+     */
+    @Override
+    public void releaseRetrievalPermit() {
+        retrievalSemaphore.release();
+    }
+
     /**
      * Get access to the Apache HTTP Client managed by the connection handler to execute
      * a request.
@@ -19,10 +19,13 @@ package org.apache.marmotta.ldclient.services.provider;
 
 import com.google.common.base.Function;
 import com.google.common.base.Joiner;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.impl.cookie.DateParseException;
@@ -31,7 +34,7 @@ import org.apache.http.util.EntityUtils;
 import org.apache.marmotta.commons.http.ContentType;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
-import org.apache.marmotta.ldclient.api.provider.DataProvider;
+import org.apache.marmotta.ldclient.api.provider.ConditionalDataProvider;
 import org.apache.marmotta.ldclient.exception.DataRetrievalException;
 import org.apache.marmotta.ldclient.model.ClientResponse;
 import org.openrdf.model.Model;
@@ -43,9 +46,15 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static com.google.common.net.HttpHeaders.ACCEPT;
 import static com.google.common.net.HttpHeaders.ACCEPT_LANGUAGE;
+import static com.google.common.net.HttpHeaders.ETAG;
+import static com.google.common.net.HttpHeaders.EXPIRES;
+import static com.google.common.net.HttpHeaders.IF_MODIFIED_SINCE;
+import static com.google.common.net.HttpHeaders.IF_NONE_MATCH;
+import static com.google.common.net.HttpHeaders.LAST_MODIFIED;
 import static org.apache.marmotta.commons.http.MarmottaHttpUtils.parseContentType;
 
 /**
@@ -53,11 +62,20 @@ import static org.apache.marmotta.commons.http.MarmottaHttpUtils.parseContentTyp
  * <p/>
  * Author: Sebastian Schaffert
  */
-public abstract class AbstractHttpProvider implements DataProvider {
+public abstract class AbstractHttpProvider implements ConditionalDataProvider {
 
     public static final int RETRY_AFTER = 60;
+
+    /**
+     * Endpoint property overriding the maximum number of pages retrieved in parallel (see ClientConfiguration)
+     */
+    public static final String PROPERTY_MAX_PARALLEL_PAGES = "maxParallelPages";
+
     private static Logger log = LoggerFactory.getLogger(AbstractHttpProvider.class);
 
+    // shared by all providers; the number of concurrent requests is bounded by the retrieval permits of the client
+    private static ExecutorService pageExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("LDClient Page Retriever %d").setDaemon(true).build());
+
     /**
      * Build the URL to use to call the webservice in order to retrieve the data for the resource passed as argument.
      * In many cases, this will just return the URI of the resource (e.g. Linked Data), but there might be data providers
@@ -103,6 +121,24 @@ public abstract class AbstractHttpProvider implements DataProvider {
      */
     @Override
     public ClientResponse retrieveResource(String resource, LDClientService client, Endpoint endpoint) throws DataRetrievalException {
+        return retrieveResource(resource, client, endpoint, null, null);
+    }
+
+    /**
+     * Retrieve the data for a resource in case it has changed with respect to the validators passed as argument.
+     * The validators are sent as If-None-Match / If-Modified-Since headers in case the resource is retrieved with
+     * a single request; if the server answers with 304 (Not Modified), the returned response contains no triples
+     * but only the updated expiry information. Validators returned by the server are only recorded in the response
+     * for resources that have been retrieved with a single request, since they would not cover additional pages.
+     *
+     * @param resource     the resource to be retrieved
+     * @param endpoint     the endpoint definition
+     * @param etag         the entity tag returned by the previous retrieval (may be null)
+     * @param lastModified the last modification date returned by the previous retrieval (may be null)
+     * @return a completely specified client response, including expiry information, validators and the set of triples
+     */
+    @Override
+    public ClientResponse retrieveResource(String resource, LDClientService client, Endpoint endpoint, String etag, Date lastModified) throws DataRetrievalException {
 
         try {
 
@@ -130,30 +166,28 @@ public abstract class AbstractHttpProvider implements DataProvider {
             Queue<String> requestUrls = new LinkedList<String>();
             requestUrls.addAll(buildRequestUrl(resource, endpoint));
 
-            Set<String> visited = new HashSet<String>();
-
-            String requestUrl = requestUrls.poll();
-            while(requestUrl != null) {
+            // conditional requests only make sense if the resource is described by a single document
+            boolean conditional = requestUrls.size() == 1 && (etag != null || lastModified != null);
 
-                if(!visited.contains(requestUrl)) {
-                    HttpGet get = new HttpGet(requestUrl);
-                    try {
-                        get.setHeader(ACCEPT, contentType);
-                        get.setHeader(ACCEPT_LANGUAGE, "*"); // PoolParty compatibility
+            Set<String> visited = new HashSet<String>();
 
-                        log.info("retrieving resource data for {} from '{}' endpoint, request URI is <{}>", new Object[]  {resource, getName(), get.getURI().toASCIIString()});
+            int maxParallelPages = getMaxParallelPages(client, endpoint);
+            if(maxParallelPages > 1) {
+                retrievePagesParallel(resource, client, endpoint, handler, requestUrls, visited, contentType, conditional ? etag : null, conditional ? lastModified : null, maxParallelPages);
+            } else {
+                String requestUrl = requestUrls.poll();
+                while(requestUrl != null) {
 
-                        handler.requestUrl = requestUrl;
-                        List<String> additionalRequestUrls = client.getClient().execute(get, handler);
+                    if(!visited.contains(requestUrl)) {
+                        boolean first = conditional && visited.isEmpty();
+                        List<String> additionalRequestUrls = executeRequest(resource, client, handler, requestUrl, contentType, first ? etag : null, first ? lastModified : null);
                         requestUrls.addAll(additionalRequestUrls);
 
                         visited.add(requestUrl);
-                    } finally {
-                        get.releaseConnection();
                     }
-                }
 
-                requestUrl = requestUrls.poll();
+                    requestUrl = requestUrls.poll();
+                }
             }
 
             Date expiresDate = handler.expiresDate;
@@ -167,12 +201,18 @@ public abstract class AbstractHttpProvider implements DataProvider {
                 expiresDate = new Date(min_expires);
             }
 
-            if(log.isInfoEnabled()) {
+            if(handler.httpStatus == HttpStatus.SC_NOT_MODIFIED) {
+                log.info("resource {} not modified since last retrieval; expiry date: {}", resource, expiresDate);
+            } else if(log.isInfoEnabled()) {
                 log.info("retrieved {} triples for resource {}; expiry date: {}", new Object[]{handler.triples.size(), resource, expiresDate});
             }
 
             ClientResponse result = new ClientResponse(handler.httpStatus, handler.triples);
             result.setExpires(expiresDate);
+            if(visited.size() == 1) {
+                result.setETag(handler.etag);
+                result.setLastModified(handler.lastModified);
+            }
             return result;
         } catch (RepositoryException e) {
             log.error("error while initialising Sesame repository; classpath problem?",e);
@@ -190,6 +230,127 @@ public abstract class AbstractHttpProvider implements DataProvider {
 
     }
 
+    /**
+     * Execute a single HTTP request for retrieving (a page of) the resource data and pass the response to the handler
+     * given as argument. The validators are sent as If-None-Match / If-Modified-Since headers in case they are given.
+     *
+     * @return the URLs of additional pages to retrieve for completing the resource data
+     */
+    private List<String> executeRequest(String resource, LDClientService client, ResponseHandler handler, String requestUrl, String contentType, String etag, Date lastModified) throws IOException {
+        HttpGet get = new HttpGet(requestUrl);
+        try {
+            get.setHeader(ACCEPT, contentType);
+            get.setHeader(ACCEPT_LANGUAGE, "*"); // PoolParty compatibility
+            if(etag != null) {
+                get.setHeader(IF_NONE_MATCH, etag);
+            }
+            if(lastModified != null) {
+                get.setHeader(IF_MODIFIED_SINCE, DateUtils.formatDate(lastModified));
+            }
+
+            log.info("retrieving resource data for {} from '{}' endpoint, request URI is <{}>", new Object[]  {resource, getName(), get.getURI().toASCIIString()});
+
+            handler.requestUrl = requestUrl;
+            return client.getClient().execute(get, handler);
+        } finally {
+            get.releaseConnection();
+        }
+    }
+
+    /**
+     * Retrieve the pages of a resource with up to maxParallelPages concurrent requests. Each page is parsed into its
+     * own response handler and merged into the handler given as argument once it has completed, so the result is
+     * the same as for sequential retrieval. The first request runs on the retrieval permit held by the caller (see
+     * LDClientService.retrieveResource()); every further concurrent request needs an additional permit, which is only
+     * taken if available without waiting, so the overall limit of parallel requests of the client is respected and
+     * page retrieval never blocks other retrievals.
+     */
+    private void retrievePagesParallel(final String resource, final LDClientService client, Endpoint endpoint, ResponseHandler handler,
+                                       Queue<String> requestUrls, Set<String> visited, final String contentType,
+                                       String etag, Date lastModified, int maxParallelPages) throws IOException, RepositoryException {
+        CompletionService<ResponseHandler> completion = new ExecutorCompletionService<ResponseHandler>(pageExecutor);
+
+        int running = 0, permits = 0;
+        try {
+            while(true) {
+                while(!requestUrls.isEmpty() && running < maxParallelPages) {
+                    if(visited.contains(requestUrls.peek())) {
+                        requestUrls.poll();
+                        continue;
+                    }
+                    if(running > 0) {
+                        if(!client.tryAcquireRetrievalPermit()) {
+                            break;
+                        }
+                        permits++;
+                    }
+
+                    final String requestUrl = requestUrls.poll();
+                    final String pageEtag = visited.isEmpty() ? etag : null;
+                    final Date pageLastModified = visited.isEmpty() ? lastModified : null;
+                    final ResponseHandler page = new ResponseHandler(resource, endpoint);
+                    completion.submit(new Callable<ResponseHandler>() {
+                        @Override
+                        public ResponseHandler call() throws Exception {
+                            page.additionalRequestUrls = executeRequest(resource, client, page, requestUrl, contentType, pageEtag, pageLastModified);
+                            return page;
+                        }
+                    });
+                    visited.add(requestUrl);
+                    running++;
+                }
+
+                if(running == 0) {
+                    break;
+                }
+
+                Future<ResponseHandler> next = completion.take();
+                running--;
+                while(permits > 0 && permits >= running) {
+                    client.releaseRetrievalPermit();
+                    permits--;
+                }
+
+                ResponseHandler page = next.get();
+                handler.merge(page);
+                requestUrls.addAll(page.additionalRequestUrls);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("retrieval of resource " + resource + " was interrupted", e);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfInstanceOf(e.getCause(), IOException.class);
+            throw Throwables.propagate(e.getCause());
+        } finally {
+            // wait for requests still running after an error, so the permits are only returned once they have finished
+            try {
+                for( ; running > 0; running--) {
+                    completion.take();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for( ; permits > 0; permits--) {
+                client.releaseRetrievalPermit();
+            }
+        }
+    }
+
+    /**
+     * Return the maximum number of pages to retrieve in parallel for the endpoint given as argument; the endpoint
+     * property "maxParallelPages" takes precedence over the client configuration.
+     */
+    protected int getMaxParallelPages(LDClientService client, Endpoint endpoint) {
+        if(endpoint != null && endpoint.hasProperty(PROPERTY_MAX_PARALLEL_PAGES)) {
+            try {
+                return Integer.parseInt(endpoint.getProperty(PROPERTY_MAX_PARALLEL_PAGES));
+            } catch (NumberFormatException ex) {
+                log.warn("invalid value for endpoint property {}: {}", PROPERTY_MAX_PARALLEL_PAGES, endpoint.getProperty(PROPERTY_MAX_PARALLEL_PAGES));
+            }
+        }
+        return client.getClientConfiguration().getMaxParallelPages();
+    }
+
     /**
      * Check whether the content type returned by the server is acceptable to the endpoint and data provider
      */
@@ -215,6 +376,10 @@ public abstract class AbstractHttpProvider implements DataProvider {
 
         private Date             expiresDate;
 
+        // validators returned with the first response, used for conditional requests on the next refresh
+        private String           etag;
+        private Date             lastModified;
+
         private String                requestUrl;
 
         // the repository where the triples will be stored in case the data providers return them
@@ -226,6 +391,9 @@ public abstract class AbstractHttpProvider implements DataProvider {
 
         private int httpStatus;
 
+        // additional pages returned by the response, in case of parallel page retrieval
+        private List<String> additionalRequestUrls;
+
         public ResponseHandler(String resource, Endpoint endpoint) throws RepositoryException {
             this.resource = resource;
             this.endpoint = endpoint;
@@ -237,7 +405,14 @@ public abstract class AbstractHttpProvider implements DataProvider {
         public List<String> handleResponse(HttpResponse response) throws ClientProtocolException, IOException {
             ArrayList<String> requestUrls = new ArrayList<String>();
 
-            if (response.getStatusLine().getStatusCode() >= 200 && response.getStatusLine().getStatusCode() < 400) {
+            if (response.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+                // the resource did not change since the validators sent with the conditional request; there is no
+                // content, only (possibly) updated expiry information
+                this.httpStatus = HttpStatus.SC_NOT_MODIFIED;
+
+                parseValidators(response);
+                parseExpires(response);
+            } else if (response.getStatusLine().getStatusCode() >= 200 && response.getStatusLine().getStatusCode() < 400) {
             	final HttpEntity entity = response.getEntity();
             	if (entity == null)
             		throw new IOException("no content returned by Linked Data resource " + resource);
@@ -264,16 +439,8 @@ public abstract class AbstractHttpProvider implements DataProvider {
                         List<String> urls = parseResponse(resource, requestUrl, triples, in, parseContentType);
                         requestUrls.addAll(urls);
 
-                        if (expiresDate == null) {
-                            Header expires = response.getFirstHeader("Expires");
-                            if (expires != null) {
-                                try {
-                                    expiresDate = DateUtils.parseDate(expires.getValue());
-                                } catch (DateParseException e) {
-                                    log.debug("error parsing Expires: header");
-                                }
-                            }
-                        }
+                        parseValidators(response);
+                        parseExpires(response);
 
                     } catch (DataRetrievalException e) {
                         // FIXME: get.abort();
@@ -306,6 +473,54 @@ public abstract class AbstractHttpProvider implements DataProvider {
             return requestUrls;
         }
 
+        /**
+         * Merge the result of a page retrieved in parallel into this handler, following the same rules as for
+         * sequential retrieval: the first expiry date wins unless a later request asks for a retry, the last status
+         * code wins and the validators are taken from the first response.
+         */
+        private void merge(ResponseHandler page) {
+            triples.addAll(page.triples);
+
+            if(page.expiresDate != null && (expiresDate == null || page.httpStatus >= 500)) {
+                expiresDate = page.expiresDate;
+            }
+            if(etag == null && lastModified == null) {
+                etag = page.etag;
+                lastModified = page.lastModified;
+            }
+            httpStatus = page.httpStatus;
+        }
+
+        private void parseExpires(HttpResponse response) {
+            if (expiresDate == null) {
+                Header expires = response.getFirstHeader(EXPIRES);
+                if (expires != null) {
+                    try {
+                        expiresDate = DateUtils.parseDate(expires.getValue());
+                    } catch (DateParseException e) {
+                        log.debug("error parsing Expires: header");
+                    }
+                }
+            }
+        }
+
+        private void parseValidators(HttpResponse response) {
+            if (etag == null && lastModified == null) {
+                Header etagHeader = response.getFirstHeader(ETAG);
+                if (etagHeader != null) {
+                    etag = etagHeader.getValue();
+                }
+                Header lastModifiedHeader = response.getFirstHeader(LAST_MODIFIED);
+                if (lastModifiedHeader != null) {
+                    try {
+                        lastModified = DateUtils.parseDate(lastModifiedHeader.getValue());
+                    } catch (DateParseException e) {
+                        log.debug("error parsing Last-Modified: header");
+                    }
+                }
+            }
+        }
+
     }
 
 }
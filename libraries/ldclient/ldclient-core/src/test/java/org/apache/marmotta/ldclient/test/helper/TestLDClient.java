@@ -23,6 +23,7 @@ import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -99,18 +100,43 @@ public class TestLDClient implements LDClientService {
 		try {
 			return delegate.retrieveResource(resource);
 		} catch (final DataRetrievalException e) {
-			if (defaultChecks) {
-				for (Check exCheck : DEFAULT_CHECKS) {
-					exCheck.matches(e);
-				}
-			}
-			for (Check exCheck : extraCheck) {
+			check(e);
+			throw e;
+		}
+	}
+
+    @Override
+	public ClientResponse retrieveResource(String resource, String etag, Date lastModified)
+			throws DataRetrievalException {
+		try {
+			return delegate.retrieveResource(resource, etag, lastModified);
+		} catch (final DataRetrievalException e) {
+			check(e);
+			throw e;
+		}
+	}
+
+	private void check(DataRetrievalException e) throws DataRetrievalException {
+		if (defaultChecks) {
+			for (Check exCheck : DEFAULT_CHECKS) {
 				exCheck.matches(e);
 			}
-			throw e;
+		}
+		for (Check exCheck : extraCheck) {
+			exCheck.matches(e);
 		}
 	}
 	
+    @Override
+	public boolean tryAcquireRetrievalPermit() {
+		return delegate.tryAcquireRetrievalPermit();
+	}
+
+    @Override
+	public void releaseRetrievalPermit() {
+		delegate.releaseRetrievalPermit();
+	}
+
     @Override
 	public HttpClient getClient() {
 		return delegate.getClient();
@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldclient.test.provider;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
+import org.apache.marmotta.ldclient.exception.DataRetrievalException;
+import org.apache.marmotta.ldclient.model.ClientConfiguration;
+import org.apache.marmotta.ldclient.model.ClientResponse;
+import org.apache.marmotta.ldclient.services.ldclient.LDClient;
+import org.apache.marmotta.ldclient.services.provider.AbstractHttpProvider;
+import org.apache.marmotta.ldclient.test.helper.TestLDClient;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.model.ValueFactory;
+import org.openrdf.model.impl.ValueFactoryImpl;
+import org.openrdf.model.vocabulary.RDFS;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Test the parallel retrieval of the pages of a resource with a local HTTP server: all pages are merged into the
+ * result, each page is only requested once, and the additional retrieval permits taken for concurrent requests are
+ * returned, also when a page fails.
+ */
+public class ParallelPageRetrievalTest {
+
+    private static final int MAX_PARALLEL_PAGES = 4;
+
+    private HttpServer server;
+
+    private ExecutorService serverExecutor;
+
+    private String base;
+
+    // the pages linked from each page, by path
+    private Map<String,List<String>> links;
+
+    // pages answering with 404
+    private Set<String> failing;
+
+    private ConcurrentMap<String,AtomicInteger> requests;
+
+    private AtomicInteger running, maxRunning;
+
+    private CountingLDClient client;
+
+    private PagedProvider provider;
+
+    @Before
+    public void setUp() throws IOException {
+        links    = new HashMap<>();
+        failing  = new HashSet<>();
+        requests = new ConcurrentHashMap<>();
+        running    = new AtomicInteger();
+        maxRunning = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new PageHandler());
+        serverExecutor = Executors.newCachedThreadPool();
+        server.setExecutor(serverExecutor);
+        server.start();
+        base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        ClientConfiguration config = new ClientConfiguration();
+        config.setMaxParallelPages(MAX_PARALLEL_PAGES);
+        client   = new CountingLDClient(new LDClient(config));
+        provider = new PagedProvider();
+    }
+
+    @After
+    public void tearDown() {
+        client.shutdown();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testParallelPages() throws Exception {
+        List<String> pages = new ArrayList<>();
+        for(int i = 1; i <= 8; i++) {
+            pages.add("/page" + i);
+            links.put("/page" + i, Collections.<String>emptyList());
+        }
+        links.put("/start", pages);
+
+        ClientResponse response = provider.retrieveResource(base + "/start", client, null);
+
+        Assert.assertEquals(9, response.getData().size());
+        for(String page : pages) {
+            Assert.assertEquals(1, requests.get(page).get());
+        }
+        Assert.assertTrue("pages were not retrieved in parallel", maxRunning.get() > 1);
+        Assert.assertTrue("more pages were retrieved in parallel than configured", maxRunning.get() <= MAX_PARALLEL_PAGES);
+        Assert.assertEquals(client.acquired.get(), client.released.get());
+    }
+
+    @Test
+    public void testPermitsReleasedOnFailure() throws Exception {
+        List<String> pages = new ArrayList<>();
+        for(int i = 1; i <= 8; i++) {
+            pages.add("/page" + i);
+            links.put("/page" + i, Collections.<String>emptyList());
+        }
+        links.put("/start", pages);
+        failing.add("/page2");
+
+        try {
+            provider.retrieveResource(base + "/start", client, null);
+            Assert.fail("retrieval of a failing page did not fail");
+        } catch (DataRetrievalException ex) {
+            // expected
+        }
+
+        Assert.assertTrue(client.acquired.get() > 0);
+        Assert.assertEquals(client.acquired.get(), client.released.get());
+    }
+
+    @Test
+    public void testVisitedPagesNotRetrievedAgain() throws Exception {
+        // the pages link to each other and back to the start page
+        links.put("/start", Arrays.asList("/page1", "/page2", "/page1"));
+        links.put("/page1", Arrays.asList("/page2", "/start"));
+        links.put("/page2", Arrays.asList("/page1", "/page3"));
+        links.put("/page3", Arrays.asList("/start", "/page3"));
+
+        ClientResponse response = provider.retrieveResource(base + "/start", client, null);
+
+        Assert.assertEquals(4, response.getData().size());
+        Assert.assertEquals(4, requests.size());
+        for(AtomicInteger count : requests.values()) {
+            Assert.assertEquals(1, count.get());
+        }
+        Assert.assertEquals(client.acquired.get(), client.released.get());
+    }
+
+    /**
+     * Serves each page as a list of links to further pages, one per line, with a delay so that pages retrieved in
+     * parallel overlap.
+     */
+    private class PageHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+
+            AtomicInteger count = requests.putIfAbsent(path, new AtomicInteger(1));
+            if(count != null) {
+                count.incrementAndGet();
+            }
+
+            int current = running.incrementAndGet();
+            try {
+                synchronized (maxRunning) {
+                    maxRunning.set(Math.max(maxRunning.get(), current));
+                }
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                if(failing.contains(path) || !links.containsKey(path)) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else {
+                    StringBuilder body = new StringBuilder();
+                    for(String link : links.get(path)) {
+                        body.append(base).append(link).append("\n");
+                    }
+                    byte[] content = body.toString().getBytes("UTF-8");
+                    exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                    exchange.sendResponseHeaders(200, content.length);
+                    OutputStream out = exchange.getResponseBody();
+                    try {
+                        out.write(content);
+                    } finally {
+                        out.close();
+                    }
+                }
+            } finally {
+                running.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * Records for each retrieved page a triple (resource rdfs:seeAlso page) and returns the linked pages as
+     * additional pages of the resource.
+     */
+    private static class PagedProvider extends AbstractHttpProvider {
+
+        @Override
+        public String getName() {
+            return "Paged";
+        }
+
+        @Override
+        public String[] listMimeTypes() {
+            return new String[] {"text/plain"};
+        }
+
+        @Override
+        protected List<String> buildRequestUrl(String resourceUri, Endpoint endpoint) {
+            return Collections.singletonList(resourceUri);
+        }
+
+        @Override
+        protected List<String> parseResponse(String resourceUri, String requestUrl, Model model, InputStream in, String contentType) throws DataRetrievalException {
+            ValueFactory vf = ValueFactoryImpl.getInstance();
+            model.add(vf.createURI(resourceUri), RDFS.SEEALSO, vf.createURI(requestUrl));
+            try {
+                List<String> pages = new ArrayList<>();
+                for(String line : IOUtils.readLines(in, "UTF-8")) {
+                    if(line.trim().length() > 0) {
+                        pages.add(line.trim());
+                    }
+                }
+                return pages;
+            } catch (IOException e) {
+                throw new DataRetrievalException(e);
+            }
+        }
+    }
+
+    /**
+     * Counts the additional retrieval permits taken and returned by the provider.
+     */
+    private static class CountingLDClient extends TestLDClient {
+
+        private final AtomicInteger acquired = new AtomicInteger();
+        private final AtomicInteger released = new AtomicInteger();
+
+        private CountingLDClient(LDClient delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public boolean tryAcquireRetrievalPermit() {
+            boolean result = super.tryAcquireRetrievalPermit();
+            if(result) {
+                acquired.incrementAndGet();
+            }
+            return result;
+        }
+
+        @Override
+        public void releaseRetrievalPermit() {
+            released.incrementAndGet();
+            super.releaseRetrievalPermit();
+        }
+    }
+}
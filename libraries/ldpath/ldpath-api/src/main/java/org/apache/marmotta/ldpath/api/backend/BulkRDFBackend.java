@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldpath.api.backend;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * An optional extension of {@link RDFBackend} for backends that can answer property lookups for many subjects at
+ * once. Selectors evaluating a path step over a set of context nodes (e.g. the right side of a path or the frontier
+ * of a recursive path) check whether the backend implements this interface and then issue one bulk lookup per step
+ * instead of one lookup per context node.
+ *
+ * @param <Node> most generic type of a Node (e.g. Value in Sesame).
+ */
+public interface BulkRDFBackend<Node> extends RDFBackend<Node> {
+
+    /**
+     * List the objects of triples in the triple store underlying this backend that have one of the subjects and
+     * the property given as argument. The result is equivalent to calling {@link #listObjects(Object, Object)} for
+     * each of the subjects.
+     *
+     * @param subjects the subjects of the triples to look for; all of them are URI or blank nodes
+     * @param property the property of the triples to look for, <code>null</code> is interpreted as wildcard
+     * @return a map from subject to the objects of the triples with that subject and matching property; subjects
+     *         without matching triples may be missing from the map
+     */
+    Map<Node, Collection<Node>> listObjectsForSubjects(Collection<Node> subjects, Node property);
+
+}
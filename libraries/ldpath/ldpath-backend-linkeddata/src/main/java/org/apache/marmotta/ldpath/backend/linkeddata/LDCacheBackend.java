@@ -21,7 +21,7 @@ import org.apache.marmotta.ldcache.api.LDCachingBackend;
 import org.apache.marmotta.ldcache.backend.infinispan.LDCachingInfinispanBackend;
 import org.apache.marmotta.ldcache.model.CacheConfiguration;
 import org.apache.marmotta.ldcache.services.LDCache;
-import org.apache.marmotta.ldpath.api.backend.RDFBackend;
+import org.apache.marmotta.ldpath.api.backend.BulkRDFBackend;
 import org.openrdf.model.BNode;
 import org.openrdf.model.Literal;
 import org.openrdf.model.Value;
@@ -37,19 +37,27 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * A Linked Data backend with persistent caching of the retrieved data. All data is read and stored in the directory
  * passed as constructor argument.
  * <p/>
+ * Bulk lookups (i.e. the frontier of a path step) prefetch all subjects in parallel before answering the lookup
+ * from the cache, so that following a property over many resources does not result in one round trip after the
+ * other.
+ * <p/>
  * Author: Sebastian Schaffert
  */
-public class LDCacheBackend implements RDFBackend<Value> {
+public class LDCacheBackend implements BulkRDFBackend<Value> {
     private static final Logger log = LoggerFactory.getLogger(LDCacheBackend.class);
 
 
     private LDCache ldcache;
 
+    // maximum time in milliseconds to wait for the resources of a bulk lookup to be prefetched
+    private long prefetchTimeout = 60000;
+
 
     public LDCacheBackend() {
         LDCachingBackend backend = new LDCachingInfinispanBackend();
@@ -326,6 +334,52 @@ public class LDCacheBackend implements RDFBackend<Value> {
         }
     }
 
+    /**
+     * List the objects of triples in the triple store underlying this backend that have one of the subjects and
+     * the property given as argument. All URI subjects are first refreshed in parallel (see
+     * LDCache.refreshAll()); subjects that could not be prefetched before the prefetch timeout passed are
+     * retrieved one by one as with listObjects().
+     *
+     * @param subjects the subjects of the triples to look for
+     * @param property the property of the triples to look for, <code>null</code> is interpreted as wildcard
+     * @return a map from subject to the objects of the triples with that subject and matching property
+     */
+    @Override
+    public Map<Value, Collection<Value>> listObjectsForSubjects(Collection<Value> subjects, Value property) {
+        List<org.openrdf.model.URI> resources = new ArrayList<>(subjects.size());
+        for(Value subject : subjects) {
+            if(subject instanceof org.openrdf.model.URI) {
+                resources.add((org.openrdf.model.URI) subject);
+            }
+        }
+
+        log.info("prefetching {} resources", resources.size());
+        ldcache.refreshAll(resources, prefetchTimeout, TimeUnit.MILLISECONDS);
+
+        Map<Value, Collection<Value>> result = new HashMap<>();
+        for(org.openrdf.model.URI subject : resources) {
+            Collection<Value> objects = listObjects(subject, property);
+            if(!objects.isEmpty()) {
+                result.put(subject, objects);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the maximum time in milliseconds to wait for the resources of a bulk lookup to be prefetched.
+     */
+    public long getPrefetchTimeout() {
+        return prefetchTimeout;
+    }
+
+    /**
+     * Set the maximum time in milliseconds to wait for the resources of a bulk lookup to be prefetched.
+     */
+    public void setPrefetchTimeout(long prefetchTimeout) {
+        this.prefetchTimeout = prefetchTimeout;
+    }
+
     /**
      * List the subjects of triples in the triple store underlying this backend that have the object and
      * property given as argument.
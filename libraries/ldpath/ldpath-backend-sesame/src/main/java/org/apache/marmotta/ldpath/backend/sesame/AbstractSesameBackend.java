@@ -17,8 +17,10 @@
  */
 package org.apache.marmotta.ldpath.backend.sesame;
 
-import org.apache.marmotta.ldpath.api.backend.RDFBackend;
+import org.apache.marmotta.ldpath.api.backend.BulkRDFBackend;
 import org.openrdf.model.*;
+import org.openrdf.query.*;
+import org.openrdf.query.impl.DatasetImpl;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
@@ -26,17 +28,29 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Locale;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.regex.Pattern;
 
 
-public abstract class AbstractSesameBackend extends SesameValueBackend implements RDFBackend<Value> {
+public abstract class AbstractSesameBackend extends SesameValueBackend implements BulkRDFBackend<Value> {
 
     private static final Logger log = LoggerFactory.getLogger(AbstractSesameBackend.class);
 
+    /**
+     * Maximum number of subjects looked up in a single query by {@link #listObjectsForSubjects(Collection, Value)}.
+     */
+    protected static final int BULK_SIZE = 100;
+
+    // marks bulk queries that are not restricted to contexts; these are evaluated without a dataset
+    private static final Dataset EMPTY_DATASET = new DatasetImpl();
+
+    // value factory of the KiWi triple store, whose native SPARQL evaluation translates bulk queries into SQL
+    private static final String KIWI_VALUE_FACTORY = "org.apache.marmotta.kiwi.sail.KiWiValueFactory";
+
+    // characters that are not allowed in a SPARQL IRI reference
+    private static final Pattern IRI_ILLEGAL = Pattern.compile("[\\x00-\\x20<>\"{}|^`\\\\]");
+
     protected org.openrdf.model.URI createURIInternal(final ValueFactory valueFactory, String uri) {
         return valueFactory.createURI(uri);
     }
@@ -74,6 +88,126 @@ public abstract class AbstractSesameBackend extends SesameValueBackend implement
         return  result;
     }
 
+    /**
+     * List the objects of all triples with one of the subjects and the property given as argument. On repositories
+     * that evaluate bulk queries natively (see {@link #isBulkQuerySupported(RepositoryConnection)}), URI subjects
+     * are looked up in chunks of {@link #BULK_SIZE} with a single SPARQL query per chunk, which is answered with a
+     * single database query. Other repositories, blank nodes and subjects that cannot be written into a query fall
+     * back to one lookup per subject on the same connection.
+     */
+    protected Map<Value, Collection<Value>> listObjectsForSubjectsInternal(RepositoryConnection connection, Collection<Value> subjects, org.openrdf.model.URI property, boolean includeInferred, Resource... contexts)
+            throws RepositoryException {
+        Map<Value, Collection<Value>> result = new HashMap<>();
+
+        Dataset dataset = isBulkQuerySupported(connection) ? createDataset(contexts) : null;
+
+        List<org.openrdf.model.URI> batch = new ArrayList<>(BULK_SIZE);
+        for (Value subject : subjects) {
+            if (dataset != null && subject instanceof org.openrdf.model.URI && !IRI_ILLEGAL.matcher(subject.stringValue()).find()) {
+                batch.add((org.openrdf.model.URI) subject);
+                if (batch.size() == BULK_SIZE) {
+                    listObjectsBatch(connection, batch, property, includeInferred, dataset, contexts, result);
+                    batch.clear();
+                }
+            } else {
+                addObjects(result, subject, listObjectsInternal(connection, (Resource) subject, property, includeInferred, contexts));
+            }
+        }
+        if (batch.size() > 0) {
+            listObjectsBatch(connection, batch, property, includeInferred, dataset, contexts, result);
+        }
+        return result;
+    }
+
+    private void listObjectsBatch(RepositoryConnection connection, List<org.openrdf.model.URI> subjects, org.openrdf.model.URI property, boolean includeInferred, Dataset dataset, Resource[] contexts, Map<Value, Collection<Value>> result)
+            throws RepositoryException {
+        if (subjects.size() > 1 && (property == null || !IRI_ILLEGAL.matcher(property.stringValue()).find())) {
+            StringBuilder query = new StringBuilder();
+            query.append("SELECT ?s ?o WHERE { ?s ");
+            query.append(property != null ? "<" + property.stringValue() + ">" : "?p");
+            query.append(" ?o . FILTER(");
+            for (int i = 0; i < subjects.size(); i++) {
+                if (i > 0) {
+                    query.append(" || ");
+                }
+                query.append("?s = <").append(subjects.get(i).stringValue()).append(">");
+            }
+            query.append(") }");
+
+            try {
+                TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query.toString());
+                tupleQuery.setIncludeInferred(includeInferred);
+                if (dataset != EMPTY_DATASET) {
+                    tupleQuery.setDataset(dataset);
+                }
+
+                TupleQueryResult qResult = tupleQuery.evaluate();
+                try {
+                    while (qResult.hasNext()) {
+                        BindingSet row = qResult.next();
+                        addObjects(result, row.getValue("s"), Collections.singleton(row.getValue("o")));
+                    }
+                } finally {
+                    qResult.close();
+                }
+                return;
+            } catch (MalformedQueryException | QueryEvaluationException | UnsupportedQueryLanguageException e) {
+                log.debug("bulk lookup of objects failed, falling back to single lookups ({})", e.getMessage());
+            }
+        }
+
+        for (org.openrdf.model.URI subject : subjects) {
+            addObjects(result, subject, listObjectsInternal(connection, subject, property, includeInferred, contexts));
+        }
+    }
+
+    /**
+     * Return true in case the repository of the connection translates the bulk query of
+     * {@link #listObjectsForSubjectsInternal(RepositoryConnection, Collection, org.openrdf.model.URI, boolean, Resource...)}
+     * into an index lookup of the subjects, like the native SPARQL evaluation of the KiWi triple store does. Generic
+     * SPARQL engines (e.g. on memory or native stores) evaluate the filter on the subjects only after scanning all
+     * triples with the property, which is slower than looking up each subject. Subclasses for other stores with a
+     * native evaluation of such filters may override this method.
+     */
+    protected boolean isBulkQuerySupported(RepositoryConnection connection) {
+        for (Class<?> c = connection.getValueFactory().getClass(); c != null; c = c.getSuperclass()) {
+            if (KIWI_VALUE_FACTORY.equals(c.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Create the dataset restricting a bulk query to the given contexts; returns null in case the contexts cannot
+     * be expressed as a dataset (e.g. the null context or blank node contexts).
+     */
+    private static Dataset createDataset(Resource[] contexts) {
+        if (contexts == null || contexts.length == 0) {
+            return EMPTY_DATASET;
+        }
+        DatasetImpl dataset = new DatasetImpl();
+        for (Resource context : contexts) {
+            if (context instanceof org.openrdf.model.URI) {
+                dataset.addDefaultGraph((org.openrdf.model.URI) context);
+            } else {
+                return null;
+            }
+        }
+        return dataset;
+    }
+
+    private static void addObjects(Map<Value, Collection<Value>> result, Value subject, Collection<Value> objects) {
+        if (!objects.isEmpty()) {
+            Collection<Value> values = result.get(subject);
+            if (values == null) {
+                values = new HashSet<>();
+                result.put(subject, values);
+            }
+            values.addAll(objects);
+        }
+    }
+
     protected Collection<Value> listSubjectsInternal(final RepositoryConnection connection, org.openrdf.model.URI property, Value object, boolean includeInferred, Resource... contexts)
             throws RepositoryException {
         final ValueFactory valueFactory = connection.getValueFactory();
@@ -123,6 +257,9 @@ public abstract class AbstractSesameBackend extends SesameValueBackend implement
     @Override
     public abstract Collection<Value> listSubjects(Value property, Value object);
 
+    @Override
+    public abstract Map<Value, Collection<Value>> listObjectsForSubjects(Collection<Value> subjects, Value property);
+
     @Override
     @Deprecated
     public boolean supportsThreading() {
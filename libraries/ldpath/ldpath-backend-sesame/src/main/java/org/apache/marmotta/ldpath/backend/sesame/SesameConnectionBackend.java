@@ -20,6 +20,7 @@ package org.apache.marmotta.ldpath.backend.sesame;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
@@ -81,6 +82,21 @@ public class SesameConnectionBackend extends AbstractSesameBackend {
         }
     }
 
+    @Override
+    public Map<Value, Collection<Value>> listObjectsForSubjects(Collection<Value> subjects, Value property) {
+        try {
+            return listObjectsForSubjectsInternal(connection, subjects, (org.openrdf.model.URI) property, includeInferred, contexts);
+        } catch (RepositoryException e) {
+            throw new RuntimeException(
+                    "error while querying Sesame repository!", e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Subjects need to be URI or blank nodes, property a URI node "
+                            + "(types: [property: %s])",
+                    debugType(property)), e);
+        }
+    }
+
     @Override
     public Collection<Value> listSubjects(Value property, Value object) {
         try {
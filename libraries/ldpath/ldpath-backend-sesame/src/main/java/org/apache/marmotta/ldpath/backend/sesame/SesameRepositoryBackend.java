@@ -20,6 +20,7 @@ package org.apache.marmotta.ldpath.backend.sesame;
 import java.net.URI;
 import java.util.Collection;
 import java.util.Locale;
+import java.util.Map;
 
 import org.openrdf.model.Literal;
 import org.openrdf.model.Resource;
@@ -151,6 +152,36 @@ public class SesameRepositoryBackend extends AbstractSesameBackend {
 
     }
 
+    /**
+     * List the objects of triples in the triple store underlying this backend that have one of the subjects and
+     * the property given as argument. All subjects are looked up in the same transaction.
+     *
+     * @param subjects the subjects of the triples to look for
+     * @param property the property of the triples to look for
+     * @return a map from subject to the objects of triples with matching subject and property
+     */
+    @Override
+    public Map<Value, Collection<Value>> listObjectsForSubjects(Collection<Value> subjects, Value property) {
+        try {
+            RepositoryConnection connection = repository.getConnection();
+
+            try {
+                connection.begin();
+                return listObjectsForSubjectsInternal(connection, subjects, (org.openrdf.model.URI) property, includeInferred, contexts);
+            } finally {
+                connection.commit();
+                connection.close();
+            }
+        } catch (RepositoryException e) {
+            throw new RuntimeException("error while querying Sesame repository!",e);
+        } catch (ClassCastException e) {
+            throw new IllegalArgumentException(String.format(
+                    "Subjects need to be URI or blank nodes, property a URI node (property type: %s)",
+                    debugType(property)),e);
+        }
+
+    }
+
     /**
      * List the subjects of triples in the triple store underlying this backend that have the object and
      * property given as argument.
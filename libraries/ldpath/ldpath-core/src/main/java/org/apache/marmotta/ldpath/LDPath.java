@@ -20,6 +20,7 @@ package org.apache.marmotta.ldpath;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CharStreams;
 import org.apache.marmotta.ldpath.api.backend.RDFBackend;
 import org.apache.marmotta.ldpath.api.functions.SelectorFunction;
 import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
@@ -31,13 +32,19 @@ import org.apache.marmotta.ldpath.parser.Configuration;
 import org.apache.marmotta.ldpath.parser.DefaultConfiguration;
 import org.apache.marmotta.ldpath.parser.LdPathParser;
 import org.apache.marmotta.ldpath.parser.ParseException;
+import org.apache.marmotta.ldpath.parser.ParserCache;
 
+import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.Callable;
 
 /**
  * Main class providing query functionality for the different RDF backends.
+ * <p/>
+ * Parsed paths and programs are kept in a ParserCache, so evaluating the same path or program repeatedly only
+ * parses it once. The cache is cleared when functions or transformers are registered.
  *
  * @param <Node> the node type used by the backend
  * <p/>
@@ -53,6 +60,8 @@ public class LDPath<Node> {
 
     private Configuration<Node> config;
 
+    private ParserCache<Node> parserCache;
+
     /**
      * Initialise a new LDPath instance for querying the backend passed as argument with the default configuration.
      * @param backend
@@ -69,10 +78,23 @@ public class LDPath<Node> {
      * @param config
      */
     public LDPath(RDFBackend<Node> backend, Configuration<Node> config) {
+        this(backend, config, new ParserCache<Node>());
+    }
+
+    /**
+     * Initialise a new LDPath instance for querying the backend passed as argument with a custom configuration
+     * and a parser cache that can be shared with other LDPath instances using the same configuration.
+     *
+     * @param backend
+     * @param config
+     * @param parserCache
+     */
+    public LDPath(RDFBackend<Node> backend, Configuration<Node> config, ParserCache<Node> parserCache) {
         this.backend      = backend;
         this.functions    = new HashSet<>();
         this.transformers = new HashMap<>();
         this.config       = config;
+        this.parserCache  = parserCache;
     }
 
     /**
@@ -98,16 +120,8 @@ public class LDPath<Node> {
      * @throws LDPathParseException when the path passed as argument is not valid
      */
     public Collection<Node> pathQuery(Node context, String path, Map<String, String> namespaces) throws LDPathParseException {
-        LdPathParser<Node> parser = new LdPathParser<>(backend, config, new StringReader(path));
-        for(SelectorFunction<Node> function : functions) {
-            parser.registerFunction(function);
-        }
-        for(String typeUri : transformers.keySet()) {
-            parser.registerTransformer(typeUri,transformers.get(typeUri));
-        }
-
         try {
-            NodeSelector<Node> selector = parser.parseSelector(namespaces);
+            NodeSelector<Node> selector = parseSelector(path, namespaces);
 
             return selector.select(backend,context,null,null);
 
@@ -144,16 +158,8 @@ public class LDPath<Node> {
      * @throws LDPathParseException when the path passed as argument is not valid
      */
     public Collection<Node> pathQuery(Node context, String path, Map<String, String> namespaces, Map<Node,List<Node>> paths) throws LDPathParseException {
-        LdPathParser<Node> parser = new LdPathParser<>(backend, config, new StringReader(path));
-        for(SelectorFunction<Node> function : functions) {
-            parser.registerFunction(function);
-        }
-        for(String typeUri : transformers.keySet()) {
-            parser.registerTransformer(typeUri,transformers.get(typeUri));
-        }
-
         try {
-            NodeSelector<Node> selector = parser.parseSelector(namespaces);
+            NodeSelector<Node> selector = parseSelector(path, namespaces);
 
             return selector.select(backend, context, ImmutableList.<Node> of(), paths);
 
@@ -188,16 +194,8 @@ public class LDPath<Node> {
      * @throws LDPathParseException when the path passed as argument is not valid
      */
     public <T> Collection<T> pathTransform(Node context, String path, Map<String, String> namespaces) throws LDPathParseException {
-        LdPathParser<Node> parser = new LdPathParser<>(backend, config, new StringReader(path));
-        for(SelectorFunction<Node> function : functions) {
-            parser.registerFunction(function);
-        }
-        for(String typeUri : transformers.keySet()) {
-            parser.registerTransformer(typeUri,transformers.get(typeUri));
-        }
-
         try {
-            FieldMapping<T,Node> mapping = parser.parseRule(namespaces);
+            FieldMapping<T,Node> mapping = parseRule(path, namespaces);
 
             return mapping.getValues(backend, context);
 
@@ -217,16 +215,8 @@ public class LDPath<Node> {
      * @throws LDPathParseException
      */
     public Map<String,Collection<?>> programQuery(Node context, Reader program) throws LDPathParseException {
-        LdPathParser<Node> parser = new LdPathParser<>(backend, config, program);
-        for(SelectorFunction<Node> function : functions) {
-            parser.registerFunction(function);
-        }
-        for(String typeUri : transformers.keySet()) {
-            parser.registerTransformer(typeUri, transformers.get(typeUri));
-        }
-
         try {
-            Program<Node> p = parser.parseProgram();
+            Program<Node> p = parseProgram(read(program));
 
             Map<String,Collection<?>> result = new HashMap<>();
 
@@ -249,18 +239,60 @@ public class LDPath<Node> {
      * @throws LDPathParseException
      */
     public Program<Node> parseProgram(Reader program) throws LDPathParseException {
-        LdPathParser<Node> parser = new LdPathParser<>(backend, config, program);
+        try {
+            return parseProgram(read(program));
+        } catch (ParseException e) {
+            throw new LDPathParseException("error while parsing path program",e);
+        }
+    }
+
+    private NodeSelector<Node> parseSelector(final String path, final Map<String, String> namespaces) throws ParseException {
+        return parserCache.getSelector(path, namespaces, new Callable<NodeSelector<Node>>() {
+            @Override
+            public NodeSelector<Node> call() throws Exception {
+                return createParser(path).parseSelector(namespaces);
+            }
+        });
+    }
+
+    private <T> FieldMapping<T,Node> parseRule(final String path, final Map<String, String> namespaces) throws ParseException {
+        return parserCache.getRule(path, namespaces, new Callable<FieldMapping<T,Node>>() {
+            @Override
+            public FieldMapping<T,Node> call() throws Exception {
+                return createParser(path).parseRule(namespaces);
+            }
+        });
+    }
+
+    private Program<Node> parseProgram(final String program) throws ParseException {
+        return parserCache.getProgram(program, new Callable<Program<Node>>() {
+            @Override
+            public Program<Node> call() throws Exception {
+                return createParser(program).parseProgram();
+            }
+        });
+    }
+
+    /**
+     * Create a new parser for the expression given as argument and register the functions and transformers
+     * of this LDPath instance with it.
+     */
+    private LdPathParser<Node> createParser(String expression) {
+        LdPathParser<Node> parser = new LdPathParser<>(backend, config, new StringReader(expression));
         for(SelectorFunction<Node> function : functions) {
             parser.registerFunction(function);
         }
         for(String typeUri : transformers.keySet()) {
             parser.registerTransformer(typeUri, transformers.get(typeUri));
         }
+        return parser;
+    }
 
+    private static String read(Reader program) throws LDPathParseException {
         try {
-            return parser.parseProgram();
-        } catch (ParseException e) {
-            throw new LDPathParseException("error while parsing path program",e);
+            return CharStreams.toString(program);
+        } catch (IOException e) {
+            throw new LDPathParseException("error while reading path program",e);
         }
     }
 
@@ -271,6 +303,7 @@ public class LDPath<Node> {
      */
     public void registerFunction(SelectorFunction<Node> function) {
         functions.add(function);
+        parserCache.invalidate();
     }
 
     /**
@@ -291,6 +324,7 @@ public class LDPath<Node> {
      */
     public void registerTransformer(String typeUri, NodeTransformer<?,Node> transformer) {
         transformers.put(typeUri,transformer);
+        parserCache.invalidate();
     }
 
     public Map<String, NodeTransformer<?,Node>> getTransformers() {
@@ -305,4 +339,12 @@ public class LDPath<Node> {
     public Configuration<Node> getConfig() {
         return config;
     }
+
+    /**
+     * Return the cache of parsed paths and programs used by this LDPath instance.
+     * @return
+     */
+    public ParserCache<Node> getParserCache() {
+        return parserCache;
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldpath.model.selectors;
+
+import org.apache.marmotta.ldpath.api.backend.BulkRDFBackend;
+import org.apache.marmotta.ldpath.api.backend.RDFBackend;
+import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
+
+import java.util.*;
+
+/**
+ * Set-at-a-time evaluation of a selector over a collection of context nodes without path tracking. Property
+ * steps are answered with a single call to {@link BulkRDFBackend#listObjectsForSubjects(Collection, Object)} in
+ * case the backend supports it; all other selectors are evaluated once per context node as before.
+ */
+final class BulkSelection {
+
+    private BulkSelection() {
+    }
+
+    /**
+     * Return true in case the backend passed as argument supports bulk lookups.
+     */
+    static boolean isSupported(RDFBackend<?> rdfBackend) {
+        return rdfBackend instanceof BulkRDFBackend;
+    }
+
+    /**
+     * Apply the selector to all context nodes passed as argument and return the union of the selected nodes.
+     */
+    static <Node> Set<Node> select(NodeSelector<Node> selector, RDFBackend<Node> rdfBackend, Collection<Node> contexts) {
+        final Set<Node> result = new HashSet<>();
+
+        if (selector instanceof PropertySelector && isSupported(rdfBackend) && contexts.size() > 1) {
+            List<Node> subjects = new ArrayList<>(contexts.size());
+            for (Node n : contexts) {
+                if (rdfBackend.isURI(n) || rdfBackend.isBlank(n)) {
+                    subjects.add(n);
+                }
+            }
+            if (!subjects.isEmpty()) {
+                Node property = ((PropertySelector<Node>) selector).getProperty();
+                for (Collection<Node> objects : ((BulkRDFBackend<Node>) rdfBackend).listObjectsForSubjects(subjects, property).values()) {
+                    result.addAll(objects);
+                }
+            }
+        } else if (selector instanceof GroupedSelector) {
+            result.addAll(select(((GroupedSelector<Node>) selector).getContent(), rdfBackend, contexts));
+        } else if (selector instanceof PathSelector) {
+            PathSelector<Node> path = (PathSelector<Node>) selector;
+            result.addAll(select(path.getRight(), rdfBackend, select(path.getLeft(), rdfBackend, contexts)));
+        } else {
+            for (Node n : contexts) {
+                result.addAll(selector.select(rdfBackend, n, null, null));
+            }
+        }
+        return result;
+    }
+}
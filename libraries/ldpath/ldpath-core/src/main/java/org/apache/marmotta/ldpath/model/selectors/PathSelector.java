@@ -56,6 +56,9 @@ public class PathSelector<Node> implements NodeSelector<Node> {
         Map<Node,List<Node>> myResultPaths = null;
         if(resultPaths != null && path != null) {
             myResultPaths = new HashMap<>();
+        } else if(BulkSelection.isSupported(rdfBackend)) {
+            // without path tracking, evaluate the right selector for all nodes selected by the left selector at once
+            return BulkSelection.select(right, rdfBackend, left.select(rdfBackend, context, null, null));
         }
         
         Collection<Node> nodesLeft = left.select(rdfBackend,context,path,myResultPaths);
@@ -22,10 +22,7 @@ import org.apache.marmotta.ldpath.api.backend.NodeBackend;
 import org.apache.marmotta.ldpath.api.backend.RDFBackend;
 import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
 
-import java.util.Collection;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 public class RecursivePathSelector<Node> implements NodeSelector<Node> {
 
@@ -42,6 +39,11 @@ public class RecursivePathSelector<Node> implements NodeSelector<Node> {
     /**
      * Apply the selector to the context node passed as argument and return the collection
      * of selected nodes in appropriate order.
+     * <p/>
+     * The recursion is evaluated breadth-first, so the selected nodes are returned level by level and each node
+     * is expanded on the lowest level it is reached on within the bounds. Without path tracking, the successors of
+     * all nodes of a level are selected with one bulk lookup in case the backend supports it; the order of the
+     * nodes within a level is then unspecified.
      *
      * @param context     the node where to start the selection
      * @param path        the path leading to but not including the context node in the current evaluation of LDPath; may be null,
@@ -52,32 +54,53 @@ public class RecursivePathSelector<Node> implements NodeSelector<Node> {
      */
     @Override
     public Collection<Node> select(RDFBackend<Node> rdfBackend, Node context, List<Node> path, Map<Node, List<Node>> resultPaths) {
-		List<Node> result = new LinkedList<>();
+		final boolean tracking = path != null && resultPaths != null;
+
+		Set<Node> result   = new LinkedHashSet<>();
+		Set<Node> expanded = new HashSet<>();
 
 		if (minRecursions <= 0) {
 			result.add(context);
+			expanded.add(context);
 		}
-		subSelect(context, 0, rdfBackend, result,path,resultPaths);
-
-		return result;
-	}
 
-	private void subSelect(Node currentContext, int depth, RDFBackend<Node> rdfBackend, List<Node> resultList, List<Node> path, Map<Node, List<Node>> resultPaths) {
-		Collection<Node> nextNodes = delegate.select(rdfBackend, currentContext,path,resultPaths);
-		depth++;
-		for (Node n : nextNodes) {
-			if (!resultList.contains(n)) {
-				if (depth >= minRecursions){
-					resultList.add(n);
+		// the nodes of the current level, with the path leading to each of them
+		Map<Node, List<Node>> frontier = new LinkedHashMap<>();
+		frontier.put(context, path);
+		for (int depth = 1; depth <= maxRecursions && !frontier.isEmpty(); depth++) {
+			Map<Node, List<Node>> nextFrontier = new LinkedHashMap<>();
+			if (!tracking && BulkSelection.isSupported(rdfBackend)) {
+				for (Node n : BulkSelection.select(delegate, rdfBackend, frontier.keySet())) {
+					visit(n, null, depth, result, expanded, nextFrontier);
 				}
-				if (depth < maxRecursions) {
-                    if(path != null && resultPaths != null) {
-					    subSelect(n, depth, rdfBackend, resultList, new ImmutableList.Builder<Node>().addAll(path).add(currentContext).build(),resultPaths);
-                    } else {
-                        subSelect(n, depth, rdfBackend, resultList, null,resultPaths);
-                    }
+			} else {
+				for (Map.Entry<Node, List<Node>> entry : frontier.entrySet()) {
+					List<Node> nextPath = tracking ? new ImmutableList.Builder<Node>().addAll(entry.getValue()).add(entry.getKey()).build() : null;
+					for (Node n : delegate.select(rdfBackend, entry.getKey(), entry.getValue(), resultPaths)) {
+						visit(n, nextPath, depth, result, expanded, nextFrontier);
+					}
 				}
 			}
+			frontier = nextFrontier;
+		}
+
+		return new ArrayList<>(result);
+	}
+
+	/**
+	 * Add a node reached on the given level to the result and to the next level. Nodes reached below the minimum
+	 * depth are expanded again when reached on another level, nodes reached within the bounds are expanded only once.
+	 */
+	private void visit(Node n, List<Node> path, int depth, Set<Node> result, Set<Node> expanded, Map<Node, List<Node>> nextFrontier) {
+		if (depth < minRecursions) {
+			if (!nextFrontier.containsKey(n)) {
+				nextFrontier.put(n, path);
+			}
+		} else {
+			result.add(n);
+			if (expanded.add(n)) {
+				nextFrontier.put(n, path);
+			}
 		}
 	}
 
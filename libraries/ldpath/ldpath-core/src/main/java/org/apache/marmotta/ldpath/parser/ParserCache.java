@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldpath.parser;
+
+import com.google.common.base.Objects;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
+import org.apache.marmotta.ldpath.model.fields.FieldMapping;
+import org.apache.marmotta.ldpath.model.programs.Program;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A thread-safe cache for parsed path selectors, field mappings and programs, keyed by the text of the path
+ * expression and the namespaces used for resolving prefixes. Parsed expressions only depend on the functions and
+ * transformers that were registered at parse time, so the cache needs to be invalidated whenever the set of
+ * functions or transformers changes.
+ * <p/>
+ * A cache may be shared by several LDPath instances as long as they use the same configuration and functions.
+ *
+ * @param <Node> the node type used by the backend
+ */
+public class ParserCache<Node> {
+
+    public static final int DEFAULT_SIZE = 1000;
+
+    private final Cache<Key, Object> cache;
+
+    public ParserCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public ParserCache(int maximumSize) {
+        cache = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    /**
+     * Return the selector parsed from the given path, calling the parser function in case it is not yet cached.
+     */
+    @SuppressWarnings("unchecked")
+    public NodeSelector<Node> getSelector(String path, Map<String, String> namespaces, Callable<NodeSelector<Node>> parser) throws ParseException {
+        return (NodeSelector<Node>) get(new Key(Kind.SELECTOR, path, namespaces), parser);
+    }
+
+    /**
+     * Return the field mapping parsed from the given rule, calling the parser function in case it is not yet cached.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> FieldMapping<T,Node> getRule(String rule, Map<String, String> namespaces, Callable<FieldMapping<T,Node>> parser) throws ParseException {
+        return (FieldMapping<T,Node>) get(new Key(Kind.RULE, rule, namespaces), parser);
+    }
+
+    /**
+     * Return the program parsed from the given program text, calling the parser function in case it is not yet cached.
+     */
+    @SuppressWarnings("unchecked")
+    public Program<Node> getProgram(String program, Callable<Program<Node>> parser) throws ParseException {
+        return (Program<Node>) get(new Key(Kind.PROGRAM, program, null), parser);
+    }
+
+    /**
+     * Remove all parsed expressions from the cache, e.g. because functions or transformers have been registered.
+     */
+    public void invalidate() {
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return cache.stats().missCount();
+    }
+
+    private Object get(Key key, Callable<?> parser) throws ParseException {
+        try {
+            return cache.get(key, parser);
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if(e.getCause() instanceof ParseException) {
+                throw (ParseException) e.getCause();
+            } else if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else {
+                throw new IllegalStateException("error while parsing path expression", e.getCause());
+            }
+        }
+    }
+
+
+    private enum Kind { SELECTOR, RULE, PROGRAM }
+
+    private static class Key {
+        private final Kind kind;
+        private final String text;
+        private final Map<String,String> namespaces;
+
+        private Key(Kind kind, String text, Map<String, String> namespaces) {
+            this.kind       = kind;
+            this.text       = text;
+            this.namespaces = namespaces != null ? new HashMap<>(namespaces) : Collections.<String,String>emptyMap();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+
+            return kind == key.kind && text.equals(key.text) && namespaces.equals(key.namespaces);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(kind, text, namespaces);
+        }
+    }
+}
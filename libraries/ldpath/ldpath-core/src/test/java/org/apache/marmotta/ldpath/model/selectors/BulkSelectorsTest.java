@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldpath.model.selectors;
+
+import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
+import org.apache.marmotta.ldpath.backend.sesame.SesameRepositoryBackend;
+import org.apache.marmotta.ldpath.parser.ParseException;
+import org.apache.marmotta.ldpath.test.AbstractTestBase;
+import org.junit.Before;
+import org.junit.Test;
+import org.openrdf.model.Value;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFFormat;
+import org.openrdf.rio.RDFParseException;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test the set-at-a-time evaluation of path and recursive path selectors on a backend supporting bulk lookups.
+ */
+public class BulkSelectorsTest extends AbstractTestBase {
+
+    private AtomicInteger singleLookups, bulkLookups;
+
+    @Before
+    public void setup() throws RepositoryException, RDFParseException, IOException {
+        loadData("/ldpath/bulk-data.n3", RDFFormat.N3);
+
+        singleLookups = new AtomicInteger();
+        bulkLookups   = new AtomicInteger();
+
+        backend = new SesameRepositoryBackend(repository) {
+            @Override
+            public Collection<Value> listObjects(Value subject, Value property) {
+                singleLookups.incrementAndGet();
+                return super.listObjects(subject, property);
+            }
+
+            @Override
+            public Map<Value, Collection<Value>> listObjectsForSubjects(Collection<Value> subjects, Value property) {
+                bulkLookups.incrementAndGet();
+                return super.listObjectsForSubjects(subjects, property);
+            }
+        };
+    }
+
+    @Test
+    public void testPathSelector() throws ParseException {
+        assertEquals(values("B", "C"), select("ex:knows / ex:name", "ex:a"));
+        assertEquals(values("A", "C", "D", "Anon"), select("ex:knows / ex:knows / ex:name", "ex:a"));
+
+        // one lookup for the start node, then one bulk lookup per path step
+        assertTrue(singleLookups.get() <= 2);
+        assertEquals(3, bulkLookups.get());
+    }
+
+    @Test
+    public void testRecursivePathSelector() throws ParseException {
+        assertEquals(values("A", "B", "C", "D", "E", "Anon"), select("(ex:knows)+ / ex:name", "ex:a"));
+        assertEquals(values("D", "E"), select("(ex:knows)* / ex:name", "ex:d"));
+    }
+
+    @Test
+    public void testRecursionBounds() {
+        PropertySelector<Value> knows = new PropertySelector<Value>(createURI("ex:knows"));
+        PropertySelector<Value> name  = new PropertySelector<Value>(createURI("ex:name"));
+
+        assertEquals(values("A", "C", "Anon"), select(new PathSelector<>(RecursivePathSelector.getPathSelectorMaxBound(knows, 1), name), "ex:c"));
+
+        // nodes reached below the minimum depth are expanded again when reached on a deeper level
+        assertEquals(values("A", "B", "C", "E", "Anon"), select(new PathSelector<>(RecursivePathSelector.getPathSelectorMinMaxBound(knows, 3, 3), name), "ex:a"));
+    }
+
+    /**
+     * Recursive paths are evaluated breadth-first with and without path tracking, so both select the same nodes:
+     * ex:c is reached on the first level from ex:a and expanded there, although it is also reached on the second
+     * level through ex:b.
+     */
+    @Test
+    public void testSameResultWithPathTracking() {
+        PropertySelector<Value> knows = new PropertySelector<Value>(createURI("ex:knows"));
+        RecursivePathSelector<Value> selector = RecursivePathSelector.getPathSelectorMaxBound(knows, 2);
+
+        Collection<Value> bulk = selector.select(backend, createURI("ex:a"), null, null);
+        assertTrue(bulkLookups.get() > 0);
+
+        int bulkCount = bulkLookups.get();
+        Map<Value, List<Value>> paths = new HashMap<>();
+        List<Value> tracked = new ArrayList<>(selector.select(backend, createURI("ex:a"), Collections.<Value>emptyList(), paths));
+        assertEquals(bulkCount, bulkLookups.get());
+
+        assertEquals(new HashSet<>(bulk), new HashSet<>(tracked));
+        assertEquals(5, tracked.size());
+
+        // the nodes are returned level by level, the second level contains ex:d and the anonymous node
+        assertEquals(createURI("ex:a"), tracked.get(0));
+        assertEquals(new HashSet<Value>(Arrays.asList(createURI("ex:b"), createURI("ex:c"))), new HashSet<>(tracked.subList(1, 3)));
+        assertTrue(tracked.subList(3, 5).contains(createURI("ex:d")));
+        assertEquals(Arrays.<Value>asList(createURI("ex:a"), createURI("ex:b"), createURI("ex:d")), paths.get(createURI("ex:d")));
+    }
+
+    private Set<String> select(String path, String context) throws ParseException {
+        return strings(evaluateSelector(path, createURI(context)));
+    }
+
+    private Set<String> select(NodeSelector<Value> selector, String context) {
+        return strings(selector.select(backend, createURI(context), null, null));
+    }
+
+    private static Set<String> strings(Collection<Value> values) {
+        Set<String> result = new HashSet<>();
+        for (Value value : values) {
+            result.add(value.stringValue());
+        }
+        return result;
+    }
+
+    private static Set<String> values(String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.ldpath.parser;
+package org.apache.marmotta.ldpath.parser;
+
+import org.apache.marmotta.ldpath.api.backend.NodeBackend;
+import org.apache.marmotta.ldpath.api.selectors.NodeSelector;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test caching of parsed path expressions.
+ */
+public class ParserCacheTest {
+
+    private static final Map<String, String> NAMESPACES = Collections.singletonMap("test", "http://example.com/");
+
+    private NodeBackend<String> backend;
+
+    private ParserCache<String> cache;
+
+    private AtomicInteger parses;
+
+    @Before
+    public void setup() {
+        backend = new StringTestingBackend();
+        cache   = new ParserCache<>();
+        parses  = new AtomicInteger();
+    }
+
+    private Callable<NodeSelector<String>> parser(final String path, final Map<String, String> namespaces) {
+        return new Callable<NodeSelector<String>>() {
+            @Override
+            public NodeSelector<String> call() throws Exception {
+                parses.incrementAndGet();
+                return new LdPathParser<>(backend, new StringReader(path)).parseSelector(namespaces);
+            }
+        };
+    }
+
+    @Test
+    public void testCachedSelector() throws Exception {
+        NodeSelector<String> s1 = cache.getSelector("test:p / test:q", NAMESPACES, parser("test:p / test:q", NAMESPACES));
+        NodeSelector<String> s2 = cache.getSelector("test:p / test:q", NAMESPACES, parser("test:p / test:q", NAMESPACES));
+
+        assertSame(s1, s2);
+        assertEquals(1, parses.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testNamespacesInKey() throws Exception {
+        Map<String, String> other = Collections.singletonMap("test", "http://example.org/");
+
+        NodeSelector<String> s1 = cache.getSelector("test:p", NAMESPACES, parser("test:p", NAMESPACES));
+        NodeSelector<String> s2 = cache.getSelector("test:p", other, parser("test:p", other));
+
+        assertNotSame(s1, s2);
+        assertEquals(2, parses.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        cache.getSelector("test:p", NAMESPACES, parser("test:p", NAMESPACES));
+        cache.invalidate();
+        cache.getSelector("test:p", NAMESPACES, parser("test:p", NAMESPACES));
+
+        assertEquals(2, parses.get());
+    }
+
+    @Test(expected = ParseException.class)
+    public void testParseErrorNotCached() throws Exception {
+        try {
+            cache.getSelector("test:p / ", NAMESPACES, parser("test:p / ", NAMESPACES));
+        } finally {
+            assertEquals(0, cache.size());
+        }
+    }
+}
@@ -84,4 +84,26 @@ public class LoaderOptions {
      */
     public static final String STATISTICS_INTERVAL = "loader.statistics.interval";
 
+    /**
+     * Number of files to parse in parallel. Values greater than 1 enable the pipelined loader, which parses files in
+     * parallel threads and writes their data to the backend in a single writer thread. Default is 1 (sequential).
+     */
+    public static final String PIPELINE_THREADS = "loader.pipeline.threads";
+
+    /**
+     * Number of statement batches a parser thread can hand off to the writer before it has to wait (default 16).
+     */
+    public static final String PIPELINE_QUEUE_SIZE = "loader.pipeline.queue";
+
+    /**
+     * Number of statements per batch handed off from the parser threads to the writer (default 1000).
+     */
+    public static final String PIPELINE_BATCH_SIZE = "loader.pipeline.batch";
+
+    /**
+     * Size in bytes of the blocks N-Triples and N-Quads files are split into for parsing them in parallel (default 4MB,
+     * 0 disables splitting). Only used by the pipelined loader.
+     */
+    public static final String PIPELINE_BLOCK_SIZE = "loader.pipeline.block";
+
 }
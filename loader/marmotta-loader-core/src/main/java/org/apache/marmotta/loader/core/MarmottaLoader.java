@@ -31,6 +31,7 @@ import org.apache.commons.compress.archivers.sevenz.SevenZFile;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
 import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorInputStream;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2Utils;
@@ -40,22 +41,30 @@ import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZUtils;
 import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.MapConfiguration;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.marmotta.loader.api.LoaderBackend;
 import org.apache.marmotta.loader.api.LoaderHandler;
 import org.apache.marmotta.loader.api.LoaderOptions;
 import org.apache.marmotta.loader.context.ContextHandler;
 import org.apache.marmotta.loader.functions.BackendIdentifierFunction;
+import org.apache.marmotta.loader.pipeline.LoaderPipeline;
+import org.apache.marmotta.loader.pipeline.NTriplesSplitter;
 import org.apache.marmotta.loader.rio.GeonamesFormat;
 import org.apache.marmotta.loader.statistics.StatisticsHandler;
+import org.apache.marmotta.loader.util.ByteBufferInputStream;
 import org.apache.marmotta.loader.util.DirectoryFilter;
+import org.openrdf.model.BNode;
 import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.impl.ValueFactoryImpl;
 import org.openrdf.rio.*;
 import org.openrdf.rio.helpers.BasicParserSettings;
+import org.openrdf.rio.helpers.RDFHandlerWrapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
@@ -92,6 +101,14 @@ public class MarmottaLoader {
 
         handler.initialise();
 
+        int parserThreads = configuration.getInt(LoaderOptions.PIPELINE_THREADS, 1);
+        if(parserThreads > 1) {
+            loadPipelined(handler, parserThreads);
+            handler.shutdown();
+
+            return handler;
+        }
+
         if(configuration.containsKey(LoaderOptions.DIRS)) {
             for(String dirname : configuration.getStringArray(LoaderOptions.DIRS)) {
                 File dir = new File(dirname);
@@ -134,6 +151,170 @@ public class MarmottaLoader {
         return handler;
     }
 
+    /**
+     * Load all directories, archives and files specified in the configuration using a {@link LoaderPipeline}, i.e.
+     * parse up to parserThreads files in parallel while a single writer forwards the data to the handler in the
+     * same order as sequential loading would. N-Triples and N-Quads files are split into blocks of lines that are
+     * parsed in parallel as well (unless the block size is set to 0).
+     */
+    private void loadPipelined(LoaderHandler handler, int parserThreads) throws RDFHandlerException {
+        final RDFFormat format = getRDFFormat(configuration.getString(LoaderOptions.FORMAT));
+        final String compression = configuration.getString(LoaderOptions.COMPRESSION);
+
+        log.info("loading data using {} parser threads ...", parserThreads);
+
+        final LoaderPipeline pipeline = new LoaderPipeline(handler, parserThreads,
+                configuration.getInt(LoaderOptions.PIPELINE_QUEUE_SIZE, 16), configuration.getInt(LoaderOptions.PIPELINE_BATCH_SIZE, 1000));
+
+        // units are submitted by a separate thread, since splitting files blocks until the writer catches up
+        Thread feeder = new Thread("Loader Feeder") {
+            @Override
+            public void run() {
+                try {
+                    submitAll(pipeline, format, compression);
+                } finally {
+                    pipeline.finish();
+                }
+            }
+        };
+        feeder.setDaemon(true);
+        feeder.start();
+
+        pipeline.run();
+    }
+
+    private void submitAll(LoaderPipeline pipeline, RDFFormat format, String compression) {
+        if(configuration.containsKey(LoaderOptions.DIRS)) {
+            for(String dirname : configuration.getStringArray(LoaderOptions.DIRS)) {
+                File dir = new File(dirname);
+
+                if(dir.exists() && dir.isDirectory()) {
+                    log.info("loading files in directory {} ...", dir);
+                    for(File f : listDirectory(dir)) {
+                        submit(pipeline, f, isArchive(f), format, compression);
+                    }
+                } else {
+                    log.warn("error importing directory {}: it does not exist or is not a directory", dir);
+                }
+            }
+        }
+
+        if(configuration.containsKey(LoaderOptions.ARCHIVES)) {
+            for(String archiveName : configuration.getStringArray(LoaderOptions.ARCHIVES)) {
+                submit(pipeline, new File(archiveName), true, format, compression);
+            }
+        }
+
+        if(configuration.containsKey(LoaderOptions.FILES)) {
+            for(String fname : configuration.getStringArray(LoaderOptions.FILES)) {
+                submit(pipeline, new File(fname), false, format, compression);
+            }
+        }
+    }
+
+    private void submit(LoaderPipeline pipeline, final File file, final boolean archive, final RDFFormat format, final String compression) {
+        RDFFormat fileFormat = format != null ? format : Rio.getParserFormatForFileName(uncompressedName(file));
+        int blockSize = configuration.getInt(LoaderOptions.PIPELINE_BLOCK_SIZE, 4 * 1024 * 1024);
+
+        if(!archive && blockSize > 0 && (RDFFormat.NTRIPLES.equals(fileFormat) || RDFFormat.NQUADS.equals(fileFormat))) {
+            split(pipeline, file, fileFormat, compression, blockSize);
+        } else {
+            pipeline.submit(file.getPath(), new LoaderPipeline.Task() {
+                @Override
+                public void parse(LoaderHandler handler) throws Exception {
+                    if(archive) {
+                        loadArchive(file, handler, format);
+                    } else {
+                        loadFile(file, handler, format, compression);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Split a line-based file into blocks and submit each block to the pipeline for parsing. The file is read and
+     * decompressed only once by the calling thread; uncompressed files are memory-mapped instead of read. Blank node
+     * labels are scoped per file, i.e. the same label in different blocks of the file refers to the same blank node.
+     */
+    private void split(final LoaderPipeline pipeline, final File file, final RDFFormat format, String compression, int blockSize) {
+        log.info("loading file {} in blocks of {} ...", file, FileUtils.byteCountToDisplaySize(blockSize));
+
+        final String scope = "genid-" + UUID.randomUUID().toString().replace("-", "") + "-";
+
+        pipeline.submit(file.getPath(), new LoaderPipeline.Task() {
+            @Override
+            public void parse(LoaderHandler handler) throws Exception {
+                handler.startRDF();
+            }
+        });
+
+        NTriplesSplitter.BlockHandler blockHandler = new NTriplesSplitter.BlockHandler() {
+            @Override
+            public void handleBlock(final ByteBuffer block, int number) {
+                pipeline.submit(file.getPath() + " (block " + number + ")", new LoaderPipeline.Task() {
+                    @Override
+                    public void parse(LoaderHandler handler) throws Exception {
+                        loadBlock(new ByteBufferInputStream(block), handler, format, scope);
+                    }
+                });
+            }
+        };
+
+        try {
+            NTriplesSplitter splitter = new NTriplesSplitter(blockSize);
+
+            int blocks;
+            InputStream in = openFile(file, compression);
+            try {
+                if(in instanceof CompressorInputStream) {
+                    blocks = splitter.split(in, blockHandler);
+                } else {
+                    blocks = splitter.split(file, blockHandler);
+                }
+            } finally {
+                in.close();
+            }
+            log.debug("split file {} into {} blocks", file, blocks);
+        } catch (IOException e) {
+            log.warn("error importing file {}: {}", file, e.getMessage());
+            return;
+        }
+
+        pipeline.submit(file.getPath(), new LoaderPipeline.Task() {
+            @Override
+            public void parse(LoaderHandler handler) throws Exception {
+                handler.endRDF();
+            }
+        });
+    }
+
+    /**
+     * Parse a block of a split file into the handler. Other than {@link #load(InputStream, LoaderHandler, RDFFormat)},
+     * this does not notify the handler of start and end of the data, and blank nodes labels are prefixed with the
+     * scope given as argument instead of creating new blank nodes for each parser.
+     */
+    private void loadBlock(InputStream in, LoaderHandler handler, RDFFormat format, final String scope) throws RDFParseException, RDFHandlerException, IOException {
+        RDFParser parser = createParser(format);
+        parser.getParserConfig().set(BasicParserSettings.PRESERVE_BNODE_IDS, true);
+        parser.setValueFactory(new ValueFactoryImpl() {
+            @Override
+            public BNode createBNode(String nodeID) {
+                return super.createBNode(scope + nodeID);
+            }
+        });
+        parser.setRDFHandler(new RDFHandlerWrapper(handler) {
+            @Override
+            public void startRDF() throws RDFHandlerException {
+            }
+
+            @Override
+            public void endRDF() throws RDFHandlerException {
+            }
+        });
+        parser.parse(in, configuration.getString(LoaderOptions.BASE_URI, "http://localhost/"));
+    }
+
     /**
      * Load data from the inputstream given as first argument into the handler given as second argument.
      *
@@ -190,6 +371,32 @@ public class MarmottaLoader {
     public void loadFile(File file, LoaderHandler handler, RDFFormat format, String compression) throws RDFParseException, IOException {
         log.info("loading file {} ...", file);
 
+        // detect the file format
+        RDFFormat detectedFormat = Rio.getParserFormatForFileName(uncompressedName(file));
+        if(format == null) {
+            if(detectedFormat != null) {
+                log.info("using auto-detected format ({})", detectedFormat.getName());
+                format = detectedFormat;
+            } else {
+                throw new RDFParseException("could not detect input format of file "+ file);
+            }
+        } else {
+            if(detectedFormat != null && !format.equals(detectedFormat)) {
+                log.warn("user-specified format ({}) overrides auto-detected format ({})", format.getName(), detectedFormat.getName());
+            }
+        }
+
+        // load using the input stream
+        load(openFile(file, compression), handler, format);
+    }
+
+    /**
+     * Open the file given as argument for reading, wrapped in a decompressing stream in case the file is compressed.
+     *
+     * @param file        file to read the data from
+     * @param compression compression format to use, or null for auto-detection
+     */
+    private InputStream openFile(File file, String compression) throws IOException {
         CompressorStreamFactory cf = new CompressorStreamFactory();
         cf.setDecompressConcatenated(true);
 
@@ -208,22 +415,6 @@ public class MarmottaLoader {
             }
         }
 
-
-        // detect the file format
-        RDFFormat detectedFormat = Rio.getParserFormatForFileName(uncompressedName(file));
-        if(format == null) {
-            if(detectedFormat != null) {
-                log.info("using auto-detected format ({})", detectedFormat.getName());
-                format = detectedFormat;
-            } else {
-                throw new RDFParseException("could not detect input format of file "+ file);
-            }
-        } else {
-            if(detectedFormat != null && !format.equals(detectedFormat)) {
-                log.warn("user-specified format ({}) overrides auto-detected format ({})", format.getName(), detectedFormat.getName());
-            }
-        }
-
         // create input stream from file and wrap in compressor stream
         InputStream in;
         InputStream fin = new BufferedInputStream(new FileInputStream(file));
@@ -247,8 +438,7 @@ public class MarmottaLoader {
             in = fin;
         }
 
-        // load using the input stream
-        load(in, handler, format);
+        return in;
     }
 
     /**
@@ -265,9 +455,7 @@ public class MarmottaLoader {
     public void loadDirectory(File directory, LoaderHandler handler, RDFFormat format, String compression) throws RDFParseException, IOException {
         log.info("loading files in directory {} ...", directory);
         if(directory.exists() && directory.isDirectory()) {
-            final List<File> files = Arrays.asList(directory.listFiles(new DirectoryFilter())); //TODO: follow subdirectories
-            Collections.sort(files); //TODO: somewhere there should be a helper to get them natively ordered from the fs
-            for(File f : files) {
+            for(File f : listDirectory(directory)) {
                 try {
                     if(isArchive(f)) {
                         loadArchive(f, handler, format);
@@ -401,6 +589,12 @@ public class MarmottaLoader {
     }
 
 
+    private List<File> listDirectory(File directory) {
+        final List<File> files = Arrays.asList(directory.listFiles(new DirectoryFilter())); //TODO: follow subdirectories
+        Collections.sort(files); //TODO: somewhere there should be a helper to get them natively ordered from the fs
+        return files;
+    }
+
     private void logArchiveType(ArchiveInputStream stream) {
         if(log.isInfoEnabled()) {
             if(stream instanceof ZipArchiveInputStream) {
@@ -542,6 +736,7 @@ public class MarmottaLoader {
      *     <li>-d | --dir:  input directory containing files to use for loading</li>
      *     <li>-t | --type: input format to use for parsing (MIME type)</li>
      *     <li>-s | --statistics: collect statistics and write a graph into the file given</li>
+     *     <li>-p | --parsers: number of files to parse in parallel</li>
      * </ul>
      *
      * In addition, loader backends can provide their own additional command line options.
@@ -628,6 +823,14 @@ public class MarmottaLoader {
                         .create('s');
         options.addOption(statistics);
 
+        final Option parsers =
+                OptionBuilder.withArgName("threads")
+                        .hasArgs(1)
+                        .withDescription("number of files to parse in parallel (default: 1, sequential loading)")
+                        .withLongOpt("parsers")
+                        .create('p');
+        options.addOption(parsers);
+
         final Option property  =
                 OptionBuilder.withArgName("property=value")
                         .hasArgs(2)
@@ -707,6 +910,14 @@ public class MarmottaLoader {
             result.setProperty(LoaderOptions.STATISTICS_GRAPH,   cmd.getOptionValue('s'));
         }
 
+        if(cmd.hasOption('p')) {
+            try {
+                result.setProperty(LoaderOptions.PIPELINE_THREADS, Integer.parseInt(cmd.getOptionValue('p')));
+            } catch (NumberFormatException e) {
+                throw new ParseException("invalid number of parser threads: " + cmd.getOptionValue('p'));
+            }
+        }
+
         if(cmd.hasOption('D')) {
             for(Map.Entry e : cmd.getOptionProperties("D").entrySet()) {
                 result.setProperty(e.getKey().toString(), e.getValue());
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.loader.pipeline;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.marmotta.loader.api.LoaderHandler;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.NamespaceImpl;
+import org.openrdf.rio.RDFHandlerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A staged import pipeline: the input units (files or archives) submitted to the pipeline are parsed in parallel by
+ * a pool of parser threads, while a single writer stage forwards the parsed data to the (not thread-safe) loader
+ * handler. Each unit hands off its data in batches through its own bounded queue, and the writer consumes the units
+ * strictly in the order they have been submitted, so the handler sees exactly the same sequence of events as with
+ * sequential loading. Parsers running ahead of the writer block once their queue is full, and submitting blocks
+ * while more than 2 * parserThreads units are waiting to be written, which limits the memory needed by the pipeline.
+ * <p/>
+ * Units can be submitted by a different thread than the one running the writer stage, e.g. while splitting a large
+ * file into blocks; the submitting thread needs to call {@link #finish()} once all units have been submitted.
+ */
+public class LoaderPipeline {
+
+    private static Logger log = LoggerFactory.getLogger(LoaderPipeline.class);
+
+    // markers in the hand-off batches
+    private static final Object START_RDF = new Object();
+    private static final Object END_RDF   = new Object();
+
+    private final LoaderHandler handler;
+
+    private final ExecutorService parsers;
+
+    private final int queueSize;
+
+    private final int batchSize;
+
+    // units in submission order, consumed by the writer
+    private final BlockingQueue<Unit> units;
+
+    // limits the number of units submitted but not yet written
+    private final Semaphore inFlight;
+
+    // marker unit added by finish()
+    private final Unit end;
+
+    private volatile boolean closed = false;
+
+    /**
+     * A unit of work parsed by one of the parser threads and sending all its data to the handler passed as argument.
+     */
+    public interface Task {
+
+        void parse(LoaderHandler handler) throws Exception;
+
+    }
+
+
+    /**
+     * Create a new pipeline writing to the handler given as argument.
+     *
+     * @param handler       handler to forward the parsed data to; only called from the thread running {@link #run()}
+     * @param parserThreads number of units that are parsed in parallel
+     * @param queueSize     number of batches a unit can hand off before the parser blocks
+     * @param batchSize     number of statements per batch
+     */
+    public LoaderPipeline(LoaderHandler handler, int parserThreads, int queueSize, int batchSize) {
+        this.handler   = handler;
+        this.queueSize = Math.max(1, queueSize);
+        this.batchSize = Math.max(1, batchSize);
+        this.units     = new LinkedBlockingQueue<>();
+        this.inFlight  = new Semaphore(2 * Math.max(1, parserThreads));
+        this.end       = new Unit("end");
+        this.parsers   = Executors.newFixedThreadPool(Math.max(1, parserThreads),
+                new ThreadFactoryBuilder().setNameFormat("Loader Parser %d").setDaemon(true).build());
+    }
+
+    /**
+     * Submit a unit of work to the pipeline. Units are parsed as soon as a parser thread is free, and their data is
+     * written when {@link #run()} reaches them. Blocks while too many units are waiting to be written.
+     *
+     * @param name name of the unit (e.g. file name), used for logging
+     * @param task task parsing the unit
+     */
+    public void submit(final String name, final Task task) {
+        try {
+            while(!inFlight.tryAcquire(1, TimeUnit.SECONDS)) {
+                if(closed) {
+                    log.warn("loader pipeline has been shut down, not importing {}", name);
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.warn("interrupted while waiting for loader pipeline, not importing {}", name);
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        final Unit unit = new Unit(name);
+        try {
+            parsers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.parse(unit.handler);
+                    } catch (Exception e) {
+                        log.warn("error importing {}: {}", name, e.getMessage());
+                    } finally {
+                        unit.handler.finish();
+                    }
+                }
+            });
+            units.add(unit);
+        } catch (RejectedExecutionException e) {
+            log.warn("loader pipeline has been shut down, not importing {}", name);
+        }
+    }
+
+    /**
+     * Signal that no further units will be submitted to the pipeline.
+     */
+    public void finish() {
+        units.add(end);
+    }
+
+    /**
+     * Run the writer stage in the current thread until {@link #finish()} has been called and all units submitted
+     * before have been written to the handler, and shut down the parser threads afterwards.
+     * <p/>
+     * Like with sequential loading, an error thrown by the handler only skips the rest of the data parsed by the
+     * current parser run and is otherwise logged.
+     */
+    public void run() throws RDFHandlerException {
+        try {
+            for(Unit unit = units.take(); unit != end; unit = units.take()) {
+                log.debug("writing data of {} ...", unit.name);
+
+                boolean skip = false;
+                for(List<Object> batch = unit.queue.take(); batch != unit.done; batch = unit.queue.take()) {
+                    for(Object item : batch) {
+                        if(item == START_RDF) {
+                            skip = false;
+                        }
+                        if(skip) {
+                            continue;
+                        }
+
+                        try {
+                            if(item instanceof Statement) {
+                                handler.handleStatement((Statement) item);
+                            } else if(item instanceof NamespaceImpl) {
+                                handler.handleNamespace(((NamespaceImpl) item).getPrefix(), ((NamespaceImpl) item).getName());
+                            } else if(item == START_RDF) {
+                                handler.startRDF();
+                            } else if(item == END_RDF) {
+                                handler.endRDF();
+                            }
+                        } catch (RDFHandlerException e) {
+                            log.error("error loading data of {}: {}", unit.name, e.getMessage());
+                            skip = true;
+                        }
+                    }
+                }
+
+                inFlight.release();
+            }
+        } catch (InterruptedException e) {
+            throw new RDFHandlerException("interrupted while waiting for parser threads", e);
+        } finally {
+            closed = true;
+            units.clear();
+            parsers.shutdownNow();
+        }
+
+        try {
+            parsers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private class Unit {
+
+        private final String name;
+
+        private final BlockingQueue<List<Object>> queue;
+
+        // end marker, identified by reference
+        private final List<Object> done;
+
+        private final BatchingHandler handler;
+
+        private Unit(String name) {
+            this.name    = name;
+            this.queue   = new ArrayBlockingQueue<>(queueSize);
+            this.done    = new ArrayList<>(0);
+            this.handler = new BatchingHandler(this);
+        }
+    }
+
+    /**
+     * Handler used by the parser threads, collecting the parsed data into batches and handing them off to the
+     * queue of its unit.
+     */
+    private class BatchingHandler implements LoaderHandler {
+
+        private final Unit unit;
+
+        private List<Object> batch;
+
+        private BatchingHandler(Unit unit) {
+            this.unit  = unit;
+            this.batch = new ArrayList<>(batchSize);
+        }
+
+        @Override
+        public void initialise() throws RDFHandlerException {
+        }
+
+        @Override
+        public void shutdown() throws RDFHandlerException {
+        }
+
+        @Override
+        public void startRDF() throws RDFHandlerException {
+            batch.add(START_RDF);
+        }
+
+        @Override
+        public void endRDF() throws RDFHandlerException {
+            batch.add(END_RDF);
+            flush();
+        }
+
+        @Override
+        public void handleNamespace(String prefix, String uri) throws RDFHandlerException {
+            batch.add(new NamespaceImpl(prefix, uri));
+        }
+
+        @Override
+        public void handleStatement(Statement st) throws RDFHandlerException {
+            batch.add(st);
+            if(batch.size() >= batchSize) {
+                flush();
+            }
+        }
+
+        @Override
+        public void handleComment(String comment) throws RDFHandlerException {
+        }
+
+        private void flush() throws RDFHandlerException {
+            if(batch.isEmpty()) {
+                return;
+            }
+            try {
+                unit.queue.put(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                throw new RDFHandlerException("loader pipeline has been shut down", e);
+            }
+        }
+
+        /**
+         * Hand off remaining data (e.g. of a parser run aborted by an error) and signal the writer that the unit is
+         * complete.
+         */
+        private void finish() {
+            try {
+                flush();
+                unit.queue.put(unit.done);
+            } catch (RDFHandlerException | InterruptedException e) {
+                log.debug("loader pipeline has been shut down, discarding remaining data of {}", unit.name);
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.loader.pipeline;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Split line-based RDF data (N-Triples or N-Quads, where each statement is on a line of its own) into blocks of
+ * complete lines that can be parsed independently of each other. The input is read only once; blocks have about the
+ * configured block size, unless a single line is longer than that.
+ * <p/>
+ * Streams (e.g. decompressed input) are read into heap buffers, uncompressed files can be split using read-only
+ * memory mappings of the file instead.
+ */
+public class NTriplesSplitter {
+
+    private final int blockSize;
+
+    /**
+     * Receives the blocks of the input in order.
+     */
+    public interface BlockHandler {
+
+        /**
+         * Handle the next block; the buffer contains complete lines from its position up to its limit.
+         *
+         * @param block  buffer containing the data of the block
+         * @param number running number of the block, starting at 0
+         */
+        void handleBlock(ByteBuffer block, int number) throws IOException;
+
+    }
+
+    public NTriplesSplitter(int blockSize) {
+        this.blockSize = Math.max(1024, blockSize);
+    }
+
+    /**
+     * Split the data read from the stream into blocks and pass them to the handler.
+     *
+     * @return the number of blocks
+     */
+    public int split(InputStream in, BlockHandler handler) throws IOException {
+        byte[] buffer = new byte[blockSize];
+        int fill  = 0;
+        int count = 0;
+
+        for(int read = in.read(buffer, fill, buffer.length); read >= 0; read = in.read(buffer, fill, buffer.length - fill)) {
+            fill += read;
+
+            if(fill == buffer.length) {
+                int end = lastNewline(ByteBuffer.wrap(buffer));
+                if(end < 0) {
+                    // line longer than the buffer
+                    buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                    continue;
+                }
+
+                // start the next block with the rest of the incomplete last line
+                byte[] next = new byte[Math.max(blockSize, fill - end - 1)];
+                System.arraycopy(buffer, end + 1, next, 0, fill - end - 1);
+
+                handler.handleBlock(ByteBuffer.wrap(buffer, 0, end + 1), count++);
+
+                buffer = next;
+                fill   = fill - end - 1;
+            }
+        }
+
+        if(fill > 0) {
+            handler.handleBlock(ByteBuffer.wrap(buffer, 0, fill), count++);
+        }
+
+        return count;
+    }
+
+    /**
+     * Split the (uncompressed) file into blocks and pass them to the handler. Blocks are read-only memory mappings of
+     * the file, so the data is not copied into the heap.
+     *
+     * @return the number of blocks
+     */
+    public int split(File file, BlockHandler handler) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+
+            long size     = channel.size();
+            long position = 0;
+            int  count    = 0;
+
+            while(position < size) {
+                long length = Math.min(blockSize, size - position);
+
+                ByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                int end = lastNewline(block);
+                while(end < 0 && position + length < size) {
+                    // line longer than the block
+                    length = Math.min(Math.min(2 * length, Integer.MAX_VALUE), size - position);
+                    block  = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                    end    = lastNewline(block);
+                }
+
+                if(position + length < size) {
+                    block.limit(end + 1);
+                }
+
+                handler.handleBlock(block, count++);
+                position += block.limit();
+            }
+
+            return count;
+        }
+    }
+
+    private static int lastNewline(ByteBuffer buffer) {
+        for(int i = buffer.limit() - 1; i >= buffer.position(); i--) {
+            if(buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -130,6 +130,19 @@ public class CLITest {
         Assert.assertEquals("file.png", cfg.getString(LoaderOptions.STATISTICS_GRAPH));
     }
 
+    @Test
+    public void testParserThreads() throws ParseException {
+        Configuration cfg = MarmottaLoader.parseOptions(new String[] { "-p", "4", "-f", "file1.ttl" });
+
+        Assert.assertNotNull(cfg.getProperty(LoaderOptions.PIPELINE_THREADS));
+        Assert.assertEquals(4, cfg.getInt(LoaderOptions.PIPELINE_THREADS));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testParserThreadsError() throws ParseException {
+        Configuration cfg = MarmottaLoader.parseOptions(new String[] { "-p", "many", "-f", "file1.ttl" });
+    }
+
 
     @Test
     public void testProperties() throws ParseException {
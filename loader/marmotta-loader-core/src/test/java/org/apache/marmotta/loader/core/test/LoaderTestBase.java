@@ -112,6 +112,20 @@ public abstract class LoaderTestBase {
         testData(handler.getModel(), new URIImpl("http://localhost/contexts/mycontext"));
     }
 
+    @Test
+    public void testPipelined() throws RDFHandlerException {
+        log.info("testing pipelined loading ...");
+
+        cfg.setProperty(LoaderOptions.PIPELINE_THREADS, 4);
+        cfg.setProperty(LoaderOptions.PIPELINE_QUEUE_SIZE, 2);
+        cfg.setProperty(LoaderOptions.PIPELINE_BATCH_SIZE, 10);
+
+        MarmottaLoader loader = new MarmottaLoader(cfg);
+        DummyLoaderHandler handler = getBase(loader.load());
+
+        testData(handler.getModel());
+    }
+
     private void testData(Model model, URI... contexts) {
         Assert.assertTrue(model.size() > 0);
 
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.marmotta.loader.core.test;
+
+import org.apache.commons.configuration.Configuration;
+import org.apache.commons.configuration.MapConfiguration;
+import org.apache.commons.io.FileUtils;
+import org.apache.marmotta.loader.api.LoaderOptions;
+import org.apache.marmotta.loader.core.MarmottaLoader;
+import org.apache.marmotta.loader.core.test.dummy.DummyLoaderHandler;
+import org.apache.marmotta.loader.pipeline.NTriplesSplitter;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.openrdf.model.Model;
+import org.openrdf.rio.RDFHandlerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Test splitting N-Triples files into blocks and loading them with parallel parsers.
+ */
+public class SplitterTest {
+
+    private static File tempDir;
+
+    private static byte[] data;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        tempDir = Files.createTempDirectory("splitter").toFile();
+
+        // 1000 statements about 10 blank nodes, spread over all blocks of the file
+        StringBuilder builder = new StringBuilder();
+        for(int i = 0; i < 1000; i++) {
+            builder.append("_:b").append(i % 10).append(" <http://localhost/p").append(i).append("> \"value ").append(i).append("\" .\n");
+        }
+        data = builder.toString().getBytes("UTF-8");
+
+        FileUtils.writeByteArrayToFile(new File(tempDir, "data.nt"), data);
+
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(new File(tempDir, "data.nt.gz")))) {
+            out.write(data);
+        }
+    }
+
+    @AfterClass
+    public static void teardown() throws IOException {
+        FileUtils.deleteDirectory(tempDir);
+    }
+
+    @Test
+    public void testSplitStream() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+        int blocks = new NTriplesSplitter(1024).split(new ByteArrayInputStream(data), new CollectingHandler(result));
+
+        Assert.assertTrue(blocks > 1);
+        Assert.assertArrayEquals(data, result.toByteArray());
+    }
+
+    @Test
+    public void testSplitFile() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+        int blocks = new NTriplesSplitter(1024).split(new File(tempDir, "data.nt"), new CollectingHandler(result));
+
+        Assert.assertTrue(blocks > 1);
+        Assert.assertArrayEquals(data, result.toByteArray());
+    }
+
+    @Test
+    public void testLoadSplitFile() throws RDFHandlerException {
+        testLoad("data.nt");
+    }
+
+    @Test
+    public void testLoadSplitCompressedFile() throws RDFHandlerException {
+        testLoad("data.nt.gz");
+    }
+
+    private void testLoad(String filename) throws RDFHandlerException {
+        Configuration cfg = new MapConfiguration(new HashMap<String,Object>());
+        cfg.setProperty(LoaderOptions.FILES, Collections.singletonList(new File(tempDir, filename).toString()));
+        cfg.setProperty(LoaderOptions.PIPELINE_THREADS, 4);
+        cfg.setProperty(LoaderOptions.PIPELINE_BLOCK_SIZE, 1024);
+
+        MarmottaLoader loader = new MarmottaLoader(cfg);
+        Model model = ((DummyLoaderHandler) loader.load()).getModel();
+
+        Assert.assertEquals(1000, model.size());
+
+        // blank node labels are scoped per file, not per block
+        Assert.assertEquals(10, model.subjects().size());
+    }
+
+    private static class CollectingHandler implements NTriplesSplitter.BlockHandler {
+
+        private final ByteArrayOutputStream result;
+
+        private CollectingHandler(ByteArrayOutputStream result) {
+            this.result = result;
+        }
+
+        @Override
+        public void handleBlock(ByteBuffer block, int number) throws IOException {
+            Assert.assertEquals('\n', block.get(block.limit() - 1));
+
+            byte[] bytes = new byte[block.remaining()];
+            block.get(bytes);
+            result.write(bytes);
+        }
+    }
+}
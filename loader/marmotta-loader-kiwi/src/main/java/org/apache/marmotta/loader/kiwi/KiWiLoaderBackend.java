@@ -101,6 +101,13 @@ public class KiWiLoaderBackend implements LoaderBackend {
                         .create('I');
         options.add(indexes);
 
+        Option binaryCopy =
+                OptionBuilder.withArgName("binary-copy")
+                        .withLongOpt("binary-copy")
+                        .withDescription("use the binary COPY format for bulk loading into PostgreSQL")
+                        .create('K');
+        options.add(binaryCopy);
+
         return options;
     }
 }
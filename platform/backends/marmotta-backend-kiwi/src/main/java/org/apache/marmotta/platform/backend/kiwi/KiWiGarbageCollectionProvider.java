@@ -17,12 +17,17 @@
 
 package org.apache.marmotta.platform.backend.kiwi;
 
+import org.apache.marmotta.kiwi.persistence.KiWiGarbageCollector;
 import org.apache.marmotta.kiwi.sail.KiWiStore;
+import org.apache.marmotta.platform.core.api.task.Task;
+import org.apache.marmotta.platform.core.api.task.TaskManagerService;
 import org.apache.marmotta.platform.core.api.triplestore.GarbageCollectionProvider;
 import org.openrdf.sail.Sail;
 import org.openrdf.sail.SailException;
 
 import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import java.sql.SQLException;
 
 /**
  * Add file description here!
@@ -32,15 +37,34 @@ import javax.enterprise.context.ApplicationScoped;
 @ApplicationScoped
 public class KiWiGarbageCollectionProvider implements GarbageCollectionProvider {
 
+    @Inject
+    private TaskManagerService taskManagerService;
+
     /**
-     * Run garbage collection for the sail given as argument.
+     * Run garbage collection for the sail given as argument. The progress of the garbage collection (table and id
+     * up to which it has been collected, number of deleted rows) is reported through the task manager.
      *
      * @param sail
      */
     @Override
     public void garbageCollect(Sail sail) throws SailException {
         if(sail instanceof KiWiStore) {
-            ((KiWiStore) sail).garbageCollect();
+            final Task task = taskManagerService.createSubTask("KiWi Garbage Collection", "Triple Store");
+            task.updateMessage("cleaning up deleted triples and unreferenced nodes");
+            try {
+                ((KiWiStore) sail).getPersistence().garbageCollect(new KiWiGarbageCollector.ProgressListener() {
+                    @Override
+                    public void chunkCollected(String table, long lastId, int deleted) {
+                        task.updateDetailMessage("table", table);
+                        task.updateDetailMessage("checkpoint", Long.toString(lastId));
+                        task.updateProgress(deleted);
+                    }
+                });
+            } catch (SQLException e) {
+                throw new SailException("error calling garbage collector",e);
+            } finally {
+                taskManagerService.endTask(task);
+            }
         }
     }
 }
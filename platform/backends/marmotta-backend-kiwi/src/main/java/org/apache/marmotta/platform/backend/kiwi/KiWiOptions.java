@@ -33,6 +33,8 @@ public class KiWiOptions {
     public static final String CACHING_BNODE_SIZE = "caching.bnode.size";
     public static final String CACHING_URI_SIZE = "caching.uri.size";
     public static final String CACHING_TRIPLE_SIZE = "caching.triple.size";
+    public static final String CACHING_NEAR_SIZE = "caching.near.size";
+    public static final String CACHING_OFFHEAP_SIZE = "caching.offheap.size";
     public static final String CLUSTERING_NAME = "clustering.name";
     public static final String CACHING_QUERY_ENABLED = "caching.query.enabled";
     public static final String CONTEXTS_DEFAULT = "contexts.default";
@@ -46,6 +48,11 @@ public class KiWiOptions {
 
     public static final String TRIPLES_BATCHCOMMIT = "database.triples.batchcommit";
     public static final String TRIPLES_BATCHSIZE = "database.triples.batchsize";
+    public static final String NODES_DEFERRED = "database.nodes.deferred";
+    public static final String GC_CHUNKSIZE = "database.gc.chunksize";
+    public static final String GC_RATE = "database.gc.rate";
+    public static final String STATISTICS_ENABLED = "database.statistics.enabled";
+    public static final String STATISTICS_INTERVAL = "database.statistics.interval";
     public static final String CLUSTERING_BACKEND = "clustering.backend";
     public static final String CLUSTERING_MODE = "clustering.mode";
 }
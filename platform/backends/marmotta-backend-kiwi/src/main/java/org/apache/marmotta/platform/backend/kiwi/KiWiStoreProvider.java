@@ -52,6 +52,10 @@ import javax.inject.Inject;
  *     <li>database.batchcommit: commit triples in batches instead of individual inserts - faster but no recovery if
  *         system stops during transaction</li>
  *     <li>database.batchsize: how many triples to keep in one batch (default 10000)</li>
+ *     <li>database.nodes.deferred: only write new nodes together with the first triple using them (default false,
+ *         ignored when clustering is enabled, not supported by the OFFHEAP caching backend)</li>
+ *     <li>database.gc.chunksize: how many rows the garbage collector deletes per transaction (default 10000)</li>
+ *     <li>database.gc.rate: how many rows per second the garbage collector deletes at most (default 0, unlimited)</li>
  *     <li>database.generator: which strategy to use for generating database ids (options are "snowflake", "database",
  *         "memory", "uuid-time", and "uuid-random", "snowflake" is very fast and reliable and therefore preferred)</li>
  * </ul>
@@ -104,6 +108,10 @@ public class KiWiStoreProvider implements StoreProvider {
         configuration.setQueryLoggingEnabled(configurationService.getBooleanConfiguration(KiWiOptions.DEBUG_SLOWQUERIES, false));
         configuration.setTripleBatchCommit(configurationService.getBooleanConfiguration(KiWiOptions.TRIPLES_BATCHCOMMIT, true));
         configuration.setTripleBatchSize(configurationService.getIntConfiguration(KiWiOptions.TRIPLES_BATCHSIZE, 10000));
+        configuration.setGcChunkSize(configurationService.getIntConfiguration(KiWiOptions.GC_CHUNKSIZE, 10000));
+        configuration.setGcRowsPerSecond(configurationService.getIntConfiguration(KiWiOptions.GC_RATE, 0));
+        configuration.setStatisticsEnabled(configurationService.getBooleanConfiguration(KiWiOptions.STATISTICS_ENABLED, false));
+        configuration.setStatisticsInterval(configurationService.getIntConfiguration(KiWiOptions.STATISTICS_INTERVAL, 60) * 60L * 1000L);
 
         configuration.setDatacenterId(configurationService.getIntConfiguration(KiWiOptions.DATACENTER_ID,0));
         configuration.setFulltextEnabled(configurationService.getBooleanConfiguration(KiWiOptions.FULLTEXT_ENABLED, true));
@@ -111,11 +119,14 @@ public class KiWiStoreProvider implements StoreProvider {
 
         configuration.setClustered(configurationService.getBooleanConfiguration(KiWiOptions.CLUSTERING_ENABLED, false));
         configuration.setClusterName(configurationService.getStringConfiguration(KiWiOptions.CLUSTERING_NAME, "Marmotta"));
+        configuration.setDeferredNodePersistence(!configuration.isClustered() && configurationService.getBooleanConfiguration(KiWiOptions.NODES_DEFERRED, false));
 
         configuration.setLiteralCacheSize(configurationService.getIntConfiguration(KiWiOptions.CACHING_LITERAL_SIZE, 100000));
         configuration.setBNodeCacheSize(configurationService.getIntConfiguration(KiWiOptions.CACHING_BNODE_SIZE, 10000));
         configuration.setUriCacheSize(configurationService.getIntConfiguration(KiWiOptions.CACHING_URI_SIZE, 500000));
         configuration.setTripleCacheSize(configurationService.getIntConfiguration(KiWiOptions.CACHING_TRIPLE_SIZE, 100000));
+        configuration.setNearCacheSize(configurationService.getIntConfiguration(KiWiOptions.CACHING_NEAR_SIZE, 0));
+        configuration.setOffHeapCacheSize(configurationService.getIntConfiguration(KiWiOptions.CACHING_OFFHEAP_SIZE, 1024) * 1024L * 1024L);
 
         configuration.setClusterPort(configurationService.getIntConfiguration(KiWiOptions.CLUSTERING_PORT, 46655));
         configuration.setClusterAddress(configurationService.getStringConfiguration(KiWiOptions.CLUSTERING_ADDRESS, "228.6.7.8"));
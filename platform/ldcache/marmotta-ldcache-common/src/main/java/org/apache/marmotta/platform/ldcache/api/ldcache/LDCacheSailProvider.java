@@ -17,6 +17,7 @@
 
 package org.apache.marmotta.platform.ldcache.api.ldcache;
 
+import org.apache.marmotta.ldcache.model.CacheConfiguration;
 import org.apache.marmotta.ldcache.services.LDCache;
 import org.apache.marmotta.ldclient.api.endpoint.Endpoint;
 import org.apache.marmotta.ldclient.api.ldclient.LDClientService;
@@ -51,6 +52,12 @@ public abstract class LDCacheSailProvider implements NotifyingSailProvider {
 
     public static final String LDCACHE_ENABLED = "ldcache.enabled";
 
+    public static final String LDCACHE_ASYNC_REFRESH = "ldcache.async_refresh";
+
+    public static final String LDCACHE_REFRESH_AHEAD = "ldcache.refresh_ahead";
+
+    public static final String LDCACHE_REFRESH_THREADS = "ldcache.refresh_threads";
+
     @Inject
     protected ConfigurationService configurationService;
 
@@ -104,9 +111,20 @@ public abstract class LDCacheSailProvider implements NotifyingSailProvider {
             if(!isEnabled()) {
                 clearSail();
             }
+        } else if(e.containsChangedKey(LDCACHE_ASYNC_REFRESH) || e.containsChangedKey(LDCACHE_REFRESH_AHEAD) || e.containsChangedKey(LDCACHE_REFRESH_THREADS)) {
+            sesameService.restart();
         }
     }
 
+    /**
+     * Apply the background refresh settings of the configuration to the cache configuration of a newly created sail.
+     */
+    protected void configureCache(CacheConfiguration cacheConfig) {
+        cacheConfig.setAsyncRefresh(configurationService.getBooleanConfiguration(LDCACHE_ASYNC_REFRESH, false));
+        cacheConfig.setRefreshAhead(configurationService.getLongConfiguration(LDCACHE_REFRESH_AHEAD, 0L));
+        cacheConfig.setRefreshThreads(configurationService.getIntConfiguration(LDCACHE_REFRESH_THREADS, 4));
+    }
+
     @PostConstruct
     public void initialize() {
         volatileEndpoints = new HashSet<Endpoint>();
@@ -132,6 +150,7 @@ public abstract class LDCacheSailProvider implements NotifyingSailProvider {
         ldclientConfig.setSocketTimeout(configurationService.getIntConfiguration("ldcache.so_timeout", 60000));
         ldclientConfig.setConnectionTimeout(configurationService.getIntConfiguration("ldcache.connection_timeout", 10000));
         ldclientConfig.setMaxParallelRequests(configurationService.getIntConfiguration("ldcache.max_parallel_requests",10));
+        ldclientConfig.setMaxParallelPages(configurationService.getIntConfiguration("ldcache.max_parallel_pages",1));
 
         HashSet<Endpoint> endpoints = new HashSet<Endpoint>();
         endpoints.addAll(endpointService.listEndpoints());
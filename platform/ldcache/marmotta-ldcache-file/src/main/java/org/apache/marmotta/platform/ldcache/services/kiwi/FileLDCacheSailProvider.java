@@ -85,6 +85,7 @@ public class FileLDCacheSailProvider extends LDCacheSailProvider {
 
         backend = new LDCachingFileBackend(directory);
         sail = new GenericLinkedDataSail(parent, backend, new NotFilter<Resource>(cacheFilters), ldclientConfig);
+        configureCache(sail.getCacheConfiguration());
         return sail;
     }
 
@@ -75,6 +75,7 @@ public class KiWiLDCacheSailProvider extends LDCacheSailProvider {
 
         String cache_context = configurationService.getCacheContext();
         sail = new KiWiLinkedDataSail(parent, new NotFilter<Resource>(cacheFilters), cache_context, ldclientConfig);
+        configureCache(sail.getCacheConfiguration());
         return sail;
     }
 
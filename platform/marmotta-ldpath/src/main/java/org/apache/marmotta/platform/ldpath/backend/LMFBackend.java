@@ -30,6 +30,10 @@ import javax.inject.Inject;
  * Implementation of the LDPath RDFBackend<KiWiNode>, making use of the LMF internal triple store
  * implementation.
  * <p/>
+ * Bulk lookups issued by path selectors ({@link #listObjectsForSubjects(java.util.Collection, org.openrdf.model.Value)})
+ * are sent to the triple store as one SPARQL query per chunk of subjects, which the KiWi native SPARQL evaluation
+ * translates into a single SQL query.
+ * <p/>
  * Author: Sebastian Schaffert
  * 
  * @deprecated Use a {@link org.apache.marmotta.ldpath.backend.sesame.SesameConnectionBackend} instead
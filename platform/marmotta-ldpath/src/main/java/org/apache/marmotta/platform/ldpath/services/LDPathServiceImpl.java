@@ -32,6 +32,7 @@ import org.apache.marmotta.ldpath.exception.LDPathParseException;
 import org.apache.marmotta.ldpath.model.Constants;
 import org.apache.marmotta.ldpath.parser.Configuration;
 import org.apache.marmotta.ldpath.parser.DefaultConfiguration;
+import org.apache.marmotta.ldpath.parser.ParserCache;
 import org.openrdf.model.Value;
 import org.openrdf.repository.RepositoryConnection;
 import org.openrdf.repository.RepositoryException;
@@ -62,6 +63,9 @@ public class LDPathServiceImpl implements LDPathService {
 
     private Configuration<Value>        config;
 
+    // parsed paths and programs, shared by all LDPath instances created by this service
+    private ParserCache<Value>          parserCache;
+
     @Inject @Any
     private Instance<AutoRegisteredLDPathFunction> functions;
 
@@ -70,6 +74,7 @@ public class LDPathServiceImpl implements LDPathService {
         log.info("initialising LDPath service ...");
 
         config = new DefaultConfiguration<Value>();
+        parserCache = new ParserCache<Value>();
 
         for(AutoRegisteredLDPathFunction function : functions) {
             config.addFunction(Constants.NS_LMF_FUNCS + function.getLocalName(), function);
@@ -102,11 +107,13 @@ public class LDPathServiceImpl implements LDPathService {
                 log.warn("Could not add function:" + function.getSignature(), e);
             }
         }
+        parserCache.invalidate();
     }
 
     @Override
     public void registerTransformer(String typeUri, NodeTransformer<?, Value> transformer) {
         config.addTransformer(typeUri, transformer);
+        parserCache.invalidate();
     }
 
 
@@ -149,7 +156,7 @@ public class LDPathServiceImpl implements LDPathService {
             try {
                 conn.begin();
                 SesameConnectionBackend backend = SesameConnectionBackend.withConnection(conn);
-                LDPath<Value> ldpath = new LDPath<Value>(backend, config);
+                LDPath<Value> ldpath = new LDPath<Value>(backend, config, parserCache);
 
                 return ldpath.pathQuery(context, path, namespaces);
             } finally {
@@ -178,7 +185,7 @@ public class LDPathServiceImpl implements LDPathService {
             try {
                 conn.begin();
                 SesameConnectionBackend backend = SesameConnectionBackend.withConnection(conn);
-                LDPath<Value> ldpath = new LDPath<Value>(backend, config);
+                LDPath<Value> ldpath = new LDPath<Value>(backend, config, parserCache);
 
                 return ldpath.programQuery(context, new StringReader(program));
             } finally {
@@ -208,7 +215,7 @@ public class LDPathServiceImpl implements LDPathService {
             try {
                 conn.begin();
                 SesameConnectionBackend backend = SesameConnectionBackend.withConnection(conn);
-                LDPath<Value> ldpath = new LDPath<Value>(backend, config);
+                LDPath<Value> ldpath = new LDPath<Value>(backend, config, parserCache);
 
                 Program<Value> p = ldpath.parseProgram(new StringReader(program));
 
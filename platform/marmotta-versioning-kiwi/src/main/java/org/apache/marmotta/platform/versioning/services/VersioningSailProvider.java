@@ -55,6 +55,8 @@ import java.util.Set;
 public class VersioningSailProvider implements TransactionalSailProvider {
 
     public static final String VERSIONING_ENABLED = "versioning.enabled";
+    public static final String SNAPSHOT_CACHE_SIZE = "versioning.snapshots.cache_size";
+    public static final String SNAPSHOT_CACHE_DELAY = "versioning.snapshots.cache_delay";
     @Inject
     private Logger                    log;
 
@@ -93,7 +95,7 @@ public class VersioningSailProvider implements TransactionalSailProvider {
 
 
     public void configurationChanged(@Observes ConfigurationChangedEvent e) {
-        if(e.containsChangedKey(VERSIONING_ENABLED)) {
+        if(e.containsChangedKey(VERSIONING_ENABLED) || e.containsChangedKey(SNAPSHOT_CACHE_SIZE) || e.containsChangedKey(SNAPSHOT_CACHE_DELAY)) {
             sesameService.restart();
         }
     }
@@ -140,6 +142,8 @@ public class VersioningSailProvider implements TransactionalSailProvider {
         }
 
         sail = new KiWiVersioningSail(parent, new AllOfFilter<Statement>(sFilters));
+        sail.setSnapshotCache(configurationService.getIntConfiguration(SNAPSHOT_CACHE_SIZE, 0),
+                configurationService.getLongConfiguration(SNAPSHOT_CACHE_DELAY, 60000L));
 
         return sail;
     }